@@ -1,11 +1,19 @@
 package org.sagebionetworks.migration;
 
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.migration.async.MigrationDriver;
 import org.sagebionetworks.migration.async.ResultPair;
 import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactory;
 import org.sagebionetworks.migration.utils.ToolMigrationUtils;
 import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
 import org.sagebionetworks.repo.model.migration.MigrationType;
@@ -16,17 +24,19 @@ import com.google.inject.Inject;
 
 public class FullMigrationImpl implements FullMigration {
 
+	static final String CHECKSUM_THREAD_NAME = "full-table-checksum";
 	Logger logger;
 	StackStatusService stackStatusService;
 	TypeService typeService;
 	Reporter typeReporter;
 	MigrationDriver migrationDriver;
 	Configuration config;
+	ExecutorServiceFactory executorServiceFactory;
 
 	@Inject
 	public FullMigrationImpl(LoggerFactory loggerFactory, StackStatusService stackStatusService,
 			TypeService typeService, Reporter typeReporter, MigrationDriver migrationDriver,
-			Configuration config) {
+			Configuration config, ExecutorServiceFactory executorServiceFactory) {
 		super();
 		this.logger = loggerFactory.getLogger(FullMigrationImpl.class);
 		this.stackStatusService = stackStatusService;
@@ -34,6 +44,7 @@ public class FullMigrationImpl implements FullMigration {
 		this.typeReporter = typeReporter;
 		this.migrationDriver = migrationDriver;
 		this.config = config;
+		this.executorServiceFactory = executorServiceFactory;
 	}
 
 	@Override
@@ -60,20 +71,152 @@ public class FullMigrationImpl implements FullMigration {
 		logger.info("Starting the asynchronous of all types...");
 		migrationDriver.migratePrimaryTypes(typesToMigrate);
 
+		verifyMigration(allCommonTypes);
+	}
+
+	/**
+	 * Gather the final counts and the optional full table checksums of all
+	 * types. The final counts are started first. The checksums of each type are
+	 * chained on the final counts and skipped when the counts prove the type does
+	 * not match. When that skip is disabled the checksums run while the counts
+	 * are gathered on both stacks.
+	 * 
+	 * @param allCommonTypes
+	 */
+	void verifyMigration(List<MigrationType> allCommonTypes) {
 		// Gather the final counts
 		logger.info("Computing final counts...");
-		countResults = typeService.getMigrationTypeCounts(allCommonTypes);
-
+		CompletableFuture<ResultPair<List<MigrationTypeCount>>> finalCounts = typeService
+				.startMigrationTypeCounts(allCommonTypes);
+		ResultPair<List<MigrationTypeCount>> countResults;
+		try {
+			if (config.includeFullTableChecksums()) {
+				logger.info("Starting full table checksums...");
+				runFullTableChecksums(allCommonTypes, finalCounts);
+			}
+			countResults = finalCounts.get();
+		} catch (InterruptedException e) {
+			// interrupt will trigger failure.
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw ToolMigrationUtils.unwrap(e);
+		} finally {
+			// stop waiting on the counts after a failure.
+			finalCounts.cancel(true);
+		}
 		// print the counts to the log.
 		logger.info("Final counts after migration:");
 		typeReporter.reportCountDifferences(countResults);
+	}
 
-		if (config.includeFullTableChecksums()) {
-			logger.info("Starting full table checksums...");
-			for(MigrationType type: allCommonTypes) {
-				ResultPair<MigrationTypeChecksum> checksum = typeService.getFullTableChecksums(type);
-				typeReporter.reportChecksums(type, checksum);
+	/**
+	 * Run the full table checksums of the given types concurrently on a bounded
+	 * pool of threads. The checksums of each type are reported as soon as they
+	 * finish. This method will not return until all checksums are reported. The
+	 * first failure will cancel the remaining checksums.
+	 * <p>
+	 * When enabled, the checksum of each type waits for the final counts and is
+	 * skipped if the counts prove the type does not match. If the counts fail,
+	 * the checksums still run.
+	 * 
+	 * @param types
+	 * @param finalCounts
+	 */
+	void runFullTableChecksums(List<MigrationType> types,
+			CompletableFuture<ResultPair<List<MigrationTypeCount>>> finalCounts) {
+		ExecutorService executor = executorServiceFactory.createFixedThreadPool(CHECKSUM_THREAD_NAME,
+				config.getMaximumNumberThreads());
+		CompletableFuture<ResultPair<List<MigrationTypeCount>>> counts = config.skipFullTableChecksumsOnCountMismatch()
+				? finalCounts.handle((result, exception) -> result)
+				: CompletableFuture.completedFuture(null);
+		List<CompletableFuture<TypeChecksum>> started = new LinkedList<>();
+		try {
+			BlockingQueue<CompletableFuture<TypeChecksum>> finished = new LinkedBlockingQueue<>();
+			for (MigrationType type : types) {
+				CompletableFuture<TypeChecksum> future = counts.thenApplyAsync(result -> {
+					if (result != null && isCountMismatch(type, result)) {
+						return new TypeChecksum(type, null);
+					}
+					return new TypeChecksum(type, typeService.getFullTableChecksums(type));
+				}, executor);
+				future.whenComplete((result, exception) -> finished.add(future));
+				started.add(future);
+			}
+			// Report each type in the order they finish.
+			for (int i = 0; i < types.size(); i++) {
+				TypeChecksum result;
+				try {
+					result = finished.take().get();
+				} catch (ExecutionException e) {
+					throw ToolMigrationUtils.unwrap(e);
+				}
+				if (result.checksums == null) {
+					logger.warn("Skipped full table checksums since the final counts do not match for: "
+							+ result.type.name());
+				} else {
+					typeReporter.reportChecksums(result.type, result.checksums);
+				}
 			}
+		} catch (InterruptedException e) {
+			// interrupt will trigger failure.
+			throw new RuntimeException(e);
+		} finally {
+			// stop any checksums still waiting or running after a failure.
+			started.forEach(future -> future.cancel(true));
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Do the given counts prove that the given type does not match? The counts
+	 * prove a mismatch when the number of rows, the minimum ID or the maximum ID
+	 * differ between the source and destination.
+	 * 
+	 * @param type
+	 * @param counts
+	 * @return
+	 */
+	static boolean isCountMismatch(MigrationType type, ResultPair<List<MigrationTypeCount>> counts) {
+		MigrationTypeCount source = findCount(type, counts.getSourceResult());
+		MigrationTypeCount destination = findCount(type, counts.getDestinationResult());
+		if (source == null || destination == null) {
+			// cannot prove anything without both counts.
+			return false;
+		}
+		return !Objects.equals(source.getCount(), destination.getCount())
+				|| !Objects.equals(source.getMinid(), destination.getMinid())
+				|| !Objects.equals(source.getMaxid(), destination.getMaxid());
+	}
+
+	/**
+	 * Find the count of the given type.
+	 * 
+	 * @param type
+	 * @param counts
+	 * @return The count or null if the type is not in the list.
+	 */
+	static MigrationTypeCount findCount(MigrationType type, List<MigrationTypeCount> counts) {
+		if (counts != null) {
+			for (MigrationTypeCount count : counts) {
+				if (type.equals(count.getType())) {
+					return count;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The full table checksums of a single type.
+	 */
+	static class TypeChecksum {
+
+		MigrationType type;
+		ResultPair<MigrationTypeChecksum> checksums;
+
+		TypeChecksum(MigrationType type, ResultPair<MigrationTypeChecksum> checksums) {
+			this.type = type;
+			this.checksums = checksums;
 		}
 	}
 
@@ -1,6 +1,7 @@
 package org.sagebionetworks.migration;
 
 import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.migration.async.ProgressJournal;
 import org.sagebionetworks.migration.config.Configuration;
 
 import com.google.inject.Inject;
@@ -11,14 +12,17 @@ public class MigrationClientImpl implements MigrationClient {
 	Configuration config;
 	StackStatusService stackStatus;
 	FullMigration fullMigration;
+	ProgressJournal progressJournal;
 
 	@Inject
-	public MigrationClientImpl(Configuration config, StackStatusService stackStatus, FullMigration fullMigration, LoggerFactory loggerFactory) {
+	public MigrationClientImpl(Configuration config, StackStatusService stackStatus, FullMigration fullMigration,
+			ProgressJournal progressJournal, LoggerFactory loggerFactory) {
 		super();
 		this.logger = loggerFactory.getLogger(MigrationClientImpl.class);
 		this.config = config;
 		this.stackStatus = stackStatus;
 		this.fullMigration = fullMigration;
+		this.progressJournal = progressJournal;
 	}
 
 	@Override
@@ -36,7 +40,8 @@ public class MigrationClientImpl implements MigrationClient {
 
 	/**
 	 * Attempt the migration. If there is a failure, retry until the max number of
-	 * retries are exhausted.
+	 * retries are exhausted. Each retry resumes from the progress journal, which
+	 * is cleared once the migration succeeds.
 	 */
 	void attemptMigraionWithRetry() {
 		for (int tryCount = 0; tryCount < config.getMaxRetries(); tryCount++) {
@@ -44,6 +49,7 @@ public class MigrationClientImpl implements MigrationClient {
 				logger.info("Attempting migration try number: " + tryCount + "...");
 				fullMigration.runFullMigration();
 				logger.info("migration successful");
+				progressJournal.clear();
 				return;
 			} catch (AsyncMigrationException e) {
 				logger.error("Migration Failed:", e);
@@ -5,18 +5,32 @@ import java.util.TimerTask;
 
 import org.sagebionetworks.migration.async.AsynchronousJobExecutor;
 import org.sagebionetworks.migration.async.AsynchronousJobExecutorImpl;
+import org.sagebionetworks.migration.async.AsynchronousJobPoller;
+import org.sagebionetworks.migration.async.AsynchronousJobPollerImpl;
 import org.sagebionetworks.migration.async.BackupJobExecutor;
 import org.sagebionetworks.migration.async.BackupJobExecutorImpl;
 import org.sagebionetworks.migration.async.DestinationJobExecutor;
 import org.sagebionetworks.migration.async.DestinationJobExecutorImpl;
 import org.sagebionetworks.migration.async.FutureFactory;
 import org.sagebionetworks.migration.async.FutureFactoryImpl;
+import org.sagebionetworks.migration.async.IdDensityIndex;
+import org.sagebionetworks.migration.async.IdDensityIndexImpl;
 import org.sagebionetworks.migration.async.MigrationDriver;
 import org.sagebionetworks.migration.async.MigrationDriverImpl;
 import org.sagebionetworks.migration.async.MissingFromDestinationBuilder;
 import org.sagebionetworks.migration.async.MissingFromDestinationBuilderImpl;
+import org.sagebionetworks.migration.async.ProgressJournal;
+import org.sagebionetworks.migration.async.ProgressJournalImpl;
+import org.sagebionetworks.migration.async.RestoreConflictModel;
+import org.sagebionetworks.migration.async.RestoreConflictModelImpl;
 import org.sagebionetworks.migration.async.RestoreJobQueue;
 import org.sagebionetworks.migration.async.RestoreJobQueueImpl;
+import org.sagebionetworks.migration.async.RestoredRangeLedger;
+import org.sagebionetworks.migration.async.RestoredRangeLedgerImpl;
+import org.sagebionetworks.migration.async.RowsPerRangeController;
+import org.sagebionetworks.migration.async.RowsPerRangeControllerImpl;
+import org.sagebionetworks.migration.async.checksum.ChecksumCache;
+import org.sagebionetworks.migration.async.checksum.ChecksumCacheImpl;
 import org.sagebionetworks.migration.async.checksum.ChecksumDeltaBuilder;
 import org.sagebionetworks.migration.async.checksum.ChecksumDeltaBuilderImpl;
 import org.sagebionetworks.migration.async.checksum.RangeCheksumBuilder;
@@ -27,6 +41,8 @@ import org.sagebionetworks.migration.config.FileProviderImp;
 import org.sagebionetworks.migration.config.MigrationConfigurationImpl;
 import org.sagebionetworks.migration.config.SystemPropertiesProvider;
 import org.sagebionetworks.migration.config.SystemPropertiesProviderImpl;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactory;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactoryImpl;
 import org.sagebionetworks.migration.factory.SynapseClientFactory;
 import org.sagebionetworks.migration.factory.SynapseClientFactoryImpl;
 import org.sagebionetworks.util.Clock;
@@ -38,9 +54,13 @@ import com.amazonaws.services.secretsmanager.AWSSecretsManager;
 import com.amazonaws.services.secretsmanager.AWSSecretsManagerClientBuilder;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
 
 public class MigrationModule extends AbstractModule {
 
+	static final String RESTORE_COMPLETION_THREAD_NAME = "restore-completion";
+	static final String JOB_COMPLETION_THREAD_NAME = "job-completion";
+
 	@Override
 	protected void configure() {
 		bind(LoggerFactory.class).to(LoggerFactoryImpl.class);
@@ -62,6 +82,13 @@ public class MigrationModule extends AbstractModule {
 		bind(BackupJobExecutor.class).to(BackupJobExecutorImpl.class);
 		bind(ChecksumDeltaBuilder.class).to(ChecksumDeltaBuilderImpl.class);
 		bind(RangeCheksumBuilder.class).to(RangeCheksumBuilderImpl.class);
+		bind(ChecksumCache.class).to(ChecksumCacheImpl.class);
+		bind(ProgressJournal.class).to(ProgressJournalImpl.class);
+		bind(RestoredRangeLedger.class).to(RestoredRangeLedgerImpl.class);
+		bind(IdDensityIndex.class).to(IdDensityIndexImpl.class);
+		bind(RowsPerRangeController.class).to(RowsPerRangeControllerImpl.class);
+		bind(RestoreConflictModel.class).to(RestoreConflictModelImpl.class);
+		bind(ExecutorServiceFactory.class).to(ExecutorServiceFactoryImpl.class);
 	}
 	
 	@Provides
@@ -73,21 +100,54 @@ public class MigrationModule extends AbstractModule {
 	}
 	
 	/**
-	 * Setup the RestoreJobQueue with a timer thread.
+	 * Setup the RestoreJobQueue with a pool of threads to dispatch jobs and
+	 * handle job completion and a timer thread to report status and retry
+	 * failed jobs.
 	 * 
 	 * @param jobExecutor
+	 * @param conflictModel
 	 * @param loggerFactory
+	 * @param executorServiceFactory
+	 * @param clock
+	 * @param config
 	 * @return
 	 */
 	@Provides
-	public RestoreJobQueue provideRestorJobQueue(DestinationJobExecutor jobExecutor, LoggerFactory loggerFactory) {
-		// setup the queue to run on a timer.
-		RestoreJobQueueImpl queue = new RestoreJobQueueImpl(jobExecutor, loggerFactory);
+	public RestoreJobQueue provideRestorJobQueue(DestinationJobExecutor jobExecutor,
+			RestoreConflictModel conflictModel, LoggerFactory loggerFactory,
+			ExecutorServiceFactory executorServiceFactory, Clock clock, Configuration config) {
+		RestoreJobQueueImpl queue = new RestoreJobQueueImpl(jobExecutor, conflictModel,
+				executorServiceFactory.createCachedThreadPool(RESTORE_COMPLETION_THREAD_NAME), clock,
+				config.getMaxRestoreJobRetries(), config.getMaximumWaitingRestoreJobsPerType(),
+				config.getMaximumWaitingRestoreJobs(), loggerFactory);
+		// report the status of the queue on a timer.
 		long delayMS = 100;
 		long periodMS = 1000;
 		MigrationModule.startDaemonTimer(delayMS, periodMS, queue);
 		return queue;
 	}
+
+	/**
+	 * Setup the single AsynchronousJobPoller shared by all jobs with a timer
+	 * thread to poll the jobs and a pool of threads to complete the jobs.
+	 * 
+	 * @param reporter
+	 * @param clock
+	 * @param configuration
+	 * @param executorServiceFactory
+	 * @return
+	 */
+	@Provides
+	@Singleton
+	public AsynchronousJobPoller provideAsynchronousJobPoller(Reporter reporter, Clock clock,
+			Configuration configuration, ExecutorServiceFactory executorServiceFactory) {
+		AsynchronousJobPollerImpl poller = new AsynchronousJobPollerImpl(reporter, clock,
+				configuration.getWorkerTimeoutMs(),
+				executorServiceFactory.createCachedThreadPool(JOB_COMPLETION_THREAD_NAME));
+		long delayMS = 0;
+		MigrationModule.startDaemonTimer(delayMS, AsynchronousJobPollerImpl.MINIMUM_POLL_INTERVAL_MS, poller);
+		return poller;
+	}
 	
 	/**
 	 * Start a daemon timer to fire the passed runnable.
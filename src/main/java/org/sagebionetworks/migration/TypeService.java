@@ -1,6 +1,7 @@
 package org.sagebionetworks.migration;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.sagebionetworks.migration.async.ResultPair;
 import org.sagebionetworks.repo.model.migration.MigrationType;
@@ -33,6 +34,17 @@ public interface TypeService {
 	public ResultPair<List<MigrationTypeCount>> getMigrationTypeCounts(
 			List<MigrationType> migrationTypes) throws AsyncMigrationException;
 
+	/**
+	 * Start gathering the counts for the given migration types for both the
+	 * source and destination without waiting for the results.
+	 * 
+	 * @param migrationTypes
+	 * @return A future that completes when the counts from both stacks are
+	 *         available.
+	 */
+	public CompletableFuture<ResultPair<List<MigrationTypeCount>>> startMigrationTypeCounts(
+			List<MigrationType> migrationTypes);
+
 	/**
 	 * Get the full table checksum for all of the provided types.
 	 * @param migrationTypes
@@ -4,6 +4,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.sagebionetworks.client.SynapseAdminClient;
 import org.sagebionetworks.client.exceptions.SynapseException;
@@ -106,6 +107,27 @@ public class TypeServiceImpl implements TypeService {
 		AsyncMigrationTypeCountsRequest request = new AsyncMigrationTypeCountsRequest();
 		request.setTypes(migrationTypes);
 		ResultPair<MigrationTypeCounts> bundleResult = asynchronousJobExecutor.executeSourceAndDestinationJob(request, MigrationTypeCounts.class);
+		return unbundleCounts(bundleResult);
+	}
+
+	@Override
+	public CompletableFuture<ResultPair<List<MigrationTypeCount>>> startMigrationTypeCounts(
+			List<MigrationType> migrationTypes) {
+		AsyncMigrationTypeCountsRequest request = new AsyncMigrationTypeCountsRequest();
+		request.setTypes(migrationTypes);
+		return asynchronousJobExecutor
+				.<AsyncMigrationTypeCountsRequest, MigrationTypeCounts>startSourceAndDestinationJob(request,
+						MigrationTypeCounts.class)
+				.thenApply(TypeServiceImpl::unbundleCounts);
+	}
+
+	/**
+	 * Extract the list of counts from each of the given results.
+	 * 
+	 * @param bundleResult
+	 * @return
+	 */
+	static ResultPair<List<MigrationTypeCount>> unbundleCounts(ResultPair<MigrationTypeCounts> bundleResult) {
 		ResultPair<List<MigrationTypeCount>> result = new ResultPair<List<MigrationTypeCount>>();
 		result.setSourceResult(bundleResult.getSourceResult().getList());
 		result.setDestinationResult(bundleResult.getDestinationResult().getList());
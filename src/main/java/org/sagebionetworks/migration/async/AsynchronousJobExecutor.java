@@ -1,6 +1,6 @@
 package org.sagebionetworks.migration.async;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 import org.sagebionetworks.migration.AsyncMigrationException;
 import org.sagebionetworks.repo.model.migration.AdminRequest;
@@ -50,7 +50,7 @@ public interface AsynchronousJobExecutor {
 	 * @param reponseClass
 	 * @return
 	 */
-	public <I extends AdminRequest, O extends AdminResponse> Future<O> startSourceJob(I request,
+	public <I extends AdminRequest, O extends AdminResponse> CompletableFuture<O> startSourceJob(I request,
 			Class<? extends O> reponseClass);
 	
 	/**
@@ -59,6 +59,17 @@ public interface AsynchronousJobExecutor {
 	 * @param reponseClass
 	 * @return
 	 */
-	public <I extends AdminRequest, O extends AdminResponse> Future<O> startDestionationJob(I request,
+	public <I extends AdminRequest, O extends AdminResponse> CompletableFuture<O> startDestionationJob(I request,
 			Class<? extends O> reponseClass);
+
+	/**
+	 * Start the given request on both the source and destination and immediately
+	 * return a future that is completed when both jobs are done.
+	 * 
+	 * @param request
+	 * @param reponseClass
+	 * @return
+	 */
+	public <I extends AdminRequest, O extends AdminResponse> CompletableFuture<ResultPair<O>> startSourceAndDestinationJob(
+			I request, Class<? extends O> reponseClass);
 }
@@ -1,6 +1,6 @@
 package org.sagebionetworks.migration.async;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 import org.sagebionetworks.client.SynapseAdminClient;
 import org.sagebionetworks.client.exceptions.SynapseException;
@@ -49,7 +49,7 @@ public class AsynchronousJobExecutorImpl implements AsynchronousJobExecutor{
 			Class<? extends O> reponseClass) {
 		try {
 			// start the job
-			Future<O> future = startSourceJob(request, reponseClass);
+			CompletableFuture<O> future = startSourceJob(request, reponseClass);
 			// wait for the job to finish.
 			return future.get();
 		}catch(Exception e) {
@@ -66,7 +66,7 @@ public class AsynchronousJobExecutorImpl implements AsynchronousJobExecutor{
 			Class<? extends O> reponseClass)  {
 		try {
 			// start the job
-			Future<O> future = startDestionationJob(request, reponseClass);
+			CompletableFuture<O> future = startDestionationJob(request, reponseClass);
 			// wait for the job to finish.
 			return future.get();
 		}catch(Exception e) {
@@ -82,14 +82,8 @@ public class AsynchronousJobExecutorImpl implements AsynchronousJobExecutor{
 	public <I extends AdminRequest, O extends AdminResponse> ResultPair<O> executeSourceAndDestinationJob(I request,
 			Class<? extends O> reponseClass) {
 		try {
-			// start the job on the source and destination.
-			Future<O> sourceFuture = startSourceJob(request, reponseClass);
-			Future<O> destinationFuture = startDestionationJob(request, reponseClass);
 			// wait for both results.
-			ResultPair<O> resultPair = new ResultPair<>();
-			resultPair.setSourceResult(sourceFuture.get());
-			resultPair.setDestinationResult(destinationFuture.get());
-			return resultPair;
+			return this.<I, O>startSourceAndDestinationJob(request, reponseClass).get();
 		}catch(Exception e) {
 			throw new AsyncMigrationException(e);
 		}
@@ -100,7 +94,7 @@ public class AsynchronousJobExecutorImpl implements AsynchronousJobExecutor{
 	 * @see org.sagebionetworks.migration.async.AsynchronousJobExecutor#startSourceJob(org.sagebionetworks.repo.model.migration.AdminRequest, java.lang.Class)
 	 */
 	@Override
-	public <I extends AdminRequest, O extends AdminResponse> Future<O> startSourceJob(I request,
+	public <I extends AdminRequest, O extends AdminResponse> CompletableFuture<O> startSourceJob(I request,
 			Class<? extends O> reponseClass) {
 		return startJob(JobTarget.SOURCE, request, reponseClass);
 	}
@@ -110,10 +104,35 @@ public class AsynchronousJobExecutorImpl implements AsynchronousJobExecutor{
 	 * @see org.sagebionetworks.migration.async.AsynchronousJobExecutor#startDestionationJob(org.sagebionetworks.repo.model.migration.AdminRequest, java.lang.Class)
 	 */
 	@Override
-	public <I extends AdminRequest, O extends AdminResponse> Future<O> startDestionationJob(I request,
+	public <I extends AdminRequest, O extends AdminResponse> CompletableFuture<O> startDestionationJob(I request,
 			Class<? extends O> reponseClass) {
 		return startJob(JobTarget.DESTINATION, request, reponseClass);
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.sagebionetworks.migration.async.AsynchronousJobExecutor#startSourceAndDestinationJob(org.sagebionetworks.repo.model.migration.AdminRequest, java.lang.Class)
+	 */
+	@Override
+	public <I extends AdminRequest, O extends AdminResponse> CompletableFuture<ResultPair<O>> startSourceAndDestinationJob(
+			I request, Class<? extends O> reponseClass) {
+		// start the job on the source and destination.
+		CompletableFuture<O> sourceFuture = startSourceJob(request, reponseClass);
+		CompletableFuture<O> destinationFuture;
+		try {
+			destinationFuture = startDestionationJob(request, reponseClass);
+		} catch (RuntimeException e) {
+			// The source result can no longer be used so stop watching the job.
+			sourceFuture.cancel(false);
+			throw e;
+		}
+		return sourceFuture.thenCombine(destinationFuture, (sourceResult, destinationResult) -> {
+			ResultPair<O> resultPair = new ResultPair<>();
+			resultPair.setSourceResult(sourceResult);
+			resultPair.setDestinationResult(destinationResult);
+			return resultPair;
+		});
+	}
 	
 	/**
 	 * Start the given request on the provided client.  Return a future to be used to get the results when
@@ -123,7 +142,7 @@ public class AsynchronousJobExecutorImpl implements AsynchronousJobExecutor{
 	 * @param reponseClass
 	 * @return
 	 */
-	<I extends AdminRequest, O extends AdminResponse> Future<O> startJob(JobTarget jobTarget, I request,
+	<I extends AdminRequest, O extends AdminResponse> CompletableFuture<O> startJob(JobTarget jobTarget, I request,
 			Class<? extends O> reponseClass) {
 		try {
 			// start the job
@@ -0,0 +1,28 @@
+package org.sagebionetworks.migration.async;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.sagebionetworks.client.SynapseAdminClient;
+import org.sagebionetworks.repo.model.asynch.AsynchronousJobStatus;
+import org.sagebionetworks.repo.model.migration.AdminResponse;
+
+/**
+ * A single service that tracks the status of all outstanding asynchronous jobs.
+ *
+ */
+public interface AsynchronousJobPoller {
+
+	/**
+	 * Start tracking a started job. The returned future will be completed when
+	 * the job finishes. The future will complete exceptionally with an
+	 * AsyncMigrationException if the job fails, times out, or its status cannot
+	 * be fetched.
+	 * 
+	 * @param jobStatus The status of the started job.
+	 * @param jobTarget Target where this job is running.
+	 * @param client    The client used to start and track the job.
+	 * @return
+	 */
+	public <O extends AdminResponse> CompletableFuture<O> watchJob(AsynchronousJobStatus jobStatus,
+			JobTarget jobTarget, SynapseAdminClient client);
+}
@@ -0,0 +1,217 @@
+package org.sagebionetworks.migration.async;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
+import org.sagebionetworks.client.SynapseAdminClient;
+import org.sagebionetworks.migration.AsyncMigrationException;
+import org.sagebionetworks.migration.Reporter;
+import org.sagebionetworks.repo.model.asynch.AsynchJobState;
+import org.sagebionetworks.repo.model.asynch.AsynchronousJobStatus;
+import org.sagebionetworks.repo.model.migration.AdminResponse;
+import org.sagebionetworks.repo.model.migration.AsyncMigrationResponse;
+import org.sagebionetworks.util.Clock;
+
+/**
+ * Polls the status of all outstanding jobs from a single timer thread.
+ * 
+ * Each job is first polled immediately. While a job is still processing, the
+ * time between polls of that job doubles, from MINIMUM_POLL_INTERVAL_MS up to
+ * MAXIMUM_POLL_INTERVAL_MS. Migration can run 1000s of jobs that take < 1s so
+ * short jobs are still noticed quickly, while long running jobs do not flood
+ * the workers with status calls.
+ * 
+ * The caller must call run() from a timer thread every
+ * MINIMUM_POLL_INTERVAL_MS. Status calls are made outside of the lock so new
+ * jobs can be watched while a poll is in progress.
+ * 
+ * The future of each finished job is completed on the completion executor
+ * rather than the timer thread. Any non-async stage that a caller chains on a
+ * future runs on the thread that completes it, so work such as file writes or
+ * starting the next job must never delay the polling of other jobs.
+ *
+ */
+public class AsynchronousJobPollerImpl implements AsynchronousJobPoller, Runnable {
+
+	public static final long MINIMUM_POLL_INTERVAL_MS = 100L;
+	static final long MAXIMUM_POLL_INTERVAL_MS = 2000L;
+	// throttles the number of reports.
+	static final long MINIMUM_MS_BETWEEN_REPORTS = 2000L;
+	static final String TIMEOUT_MESSAGE = "Timeout waiting for asynchronous job.";
+
+	Reporter reporter;
+	Clock clock;
+	long timeoutMS;
+	Executor completionExecutor;
+	/*
+	 * All outstanding jobs by target and job ID.
+	 */
+	Map<JobTarget, Map<String, WatchedJob<?>>> watchedJobs;
+
+	/**
+	 * @param reporter
+	 * @param clock
+	 * @param timeoutMS          A job that is still processing after this amount
+	 *                           of time will fail with a timeout.
+	 * @param completionExecutor Completes the future of each finished job.
+	 */
+	public AsynchronousJobPollerImpl(Reporter reporter, Clock clock, long timeoutMS, Executor completionExecutor) {
+		this.reporter = reporter;
+		this.clock = clock;
+		this.timeoutMS = timeoutMS;
+		this.completionExecutor = completionExecutor;
+		this.watchedJobs = new EnumMap<>(JobTarget.class);
+		for (JobTarget target : JobTarget.values()) {
+			watchedJobs.put(target, new LinkedHashMap<>());
+		}
+	}
+
+	@Override
+	public synchronized <O extends AdminResponse> CompletableFuture<O> watchJob(AsynchronousJobStatus jobStatus,
+			JobTarget jobTarget, SynapseAdminClient client) {
+		WatchedJob<O> job = new WatchedJob<>(jobStatus, jobTarget, client, clock.currentTimeMillis());
+		watchedJobs.get(jobTarget).put(jobStatus.getJobId(), job);
+		return job.future;
+	}
+
+	/**
+	 * Called each time the timer is fired. Note: This method is called from the
+	 * timer thread.
+	 */
+	@Override
+	public void run() {
+		long now = clock.currentTimeMillis();
+		for (WatchedJob<?> job : getJobsDueForPoll(now)) {
+			pollJob(job, now);
+		}
+	}
+
+	/**
+	 * Get all of the jobs that are due to be polled. A job whose future was
+	 * cancelled by the caller is no longer watched.
+	 * 
+	 * @param now
+	 * @return
+	 */
+	synchronized List<WatchedJob<?>> getJobsDueForPoll(long now) {
+		List<WatchedJob<?>> dueJobs = new ArrayList<>();
+		for (Map<String, WatchedJob<?>> targetJobs : watchedJobs.values()) {
+			targetJobs.values().removeIf(job -> job.future.isCancelled());
+			for (WatchedJob<?> job : targetJobs.values()) {
+				if (job.nextPollMS <= now) {
+					dueJobs.add(job);
+				}
+			}
+		}
+		return dueJobs;
+	}
+
+	/**
+	 * Fetch the current status of the given job and complete its future if the
+	 * job is no longer processing.
+	 * 
+	 * @param job
+	 * @param now
+	 */
+	<O extends AdminResponse> void pollJob(WatchedJob<O> job, long now) {
+		try {
+			if (AsynchJobState.PROCESSING == job.jobStatus.getJobState()) {
+				// fetch the current status
+				job.jobStatus = job.client.getAdminAsynchronousJobStatus(job.jobStatus.getJobId());
+			}
+			if (now - job.lastReportMS >= MINIMUM_MS_BETWEEN_REPORTS) {
+				job.lastReportMS = now;
+				reporter.reportProgress(job.jobTarget, job.jobStatus);
+			}
+			switch (job.jobStatus.getJobState()) {
+			case PROCESSING:
+				if (now - job.startMS > timeoutMS) {
+					failJob(job, new AsyncMigrationException(new TimeoutException(TIMEOUT_MESSAGE)));
+				} else {
+					job.backoff(now);
+				}
+				break;
+			case FAILED:
+				failJob(job, new AsyncMigrationException("Job failed: " + job.jobStatus.getErrorMessage()));
+				break;
+			case COMPLETE:
+				AsyncMigrationResponse reponse = (AsyncMigrationResponse) job.jobStatus.getResponseBody();
+				O result = (O) reponse.getAdminResponse();
+				CompletableFuture<O> future = finishJob(job);
+				completionExecutor.execute(() -> future.complete(result));
+				break;
+			default:
+				failJob(job, new RuntimeException("Unknown type: " + job.jobStatus.getJobState()));
+			}
+		} catch (Exception e) {
+			failJob(job, new AsyncMigrationException(e));
+		}
+	}
+
+	/**
+	 * Stop tracking the given job and complete its future with the given failure
+	 * on the completion executor.
+	 * 
+	 * @param job
+	 * @param exception
+	 */
+	void failJob(WatchedJob<?> job, Throwable exception) {
+		CompletableFuture<?> future = finishJob(job);
+		completionExecutor.execute(() -> future.completeExceptionally(exception));
+	}
+
+	/**
+	 * Stop tracking the given job.
+	 * 
+	 * @param job
+	 * @return The future of the job to be completed by the caller.
+	 */
+	synchronized <O extends AdminResponse> CompletableFuture<O> finishJob(WatchedJob<O> job) {
+		watchedJobs.get(job.jobTarget).remove(job.jobStatus.getJobId());
+		return job.future;
+	}
+
+	/**
+	 * The current state of a single job being watched.
+	 *
+	 * @param <O> Response type.
+	 */
+	static class WatchedJob<O extends AdminResponse> {
+
+		AsynchronousJobStatus jobStatus;
+		JobTarget jobTarget;
+		SynapseAdminClient client;
+		CompletableFuture<O> future;
+		long startMS;
+		long nextPollMS;
+		long pollIntervalMS;
+		long lastReportMS;
+
+		WatchedJob(AsynchronousJobStatus jobStatus, JobTarget jobTarget, SynapseAdminClient client, long startMS) {
+			this.jobStatus = jobStatus;
+			this.jobTarget = jobTarget;
+			this.client = client;
+			this.future = new CompletableFuture<>();
+			this.startMS = startMS;
+			this.nextPollMS = startMS;
+			this.pollIntervalMS = MINIMUM_POLL_INTERVAL_MS;
+			this.lastReportMS = 0L;
+		}
+
+		/**
+		 * Schedule the next poll of this job, doubling the interval each time.
+		 * 
+		 * @param now
+		 */
+		void backoff(long now) {
+			nextPollMS = now + pollIntervalMS;
+			pollIntervalMS = Math.min(pollIntervalMS * 2, MAXIMUM_POLL_INTERVAL_MS);
+		}
+	}
+}
@@ -12,6 +12,8 @@ public interface BackupJobExecutor {
 
 	/**
 	 * Create as many backup requests as is needed to backup the given range.
+	 * Any part of the range that the journal shows as restored or verified by a
+	 * previous attempt is skipped.
 	 * 
 	 * @param type
 	 * @param minimumId
@@ -19,4 +21,16 @@ public interface BackupJobExecutor {
 	 * @return
 	 */
 	public Iterator<DestinationJob> executeBackupJob(MigrationType type, long minimumId, long maximumId);
+
+	/**
+	 * Create as many backup requests as is needed to backup the given range
+	 * whose checksums did not match. The journal is not consulted: a mismatch
+	 * proves the range is not finished even if a previous attempt restored it.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @return
+	 */
+	public Iterator<DestinationJob> executeMismatchBackupJob(MigrationType type, long minimumId, long maximumId);
 }
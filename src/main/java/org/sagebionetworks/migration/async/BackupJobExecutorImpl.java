@@ -1,50 +1,161 @@
 package org.sagebionetworks.migration.async;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
 import org.sagebionetworks.repo.model.daemon.BackupAliasType;
 import org.sagebionetworks.repo.model.migration.BackupTypeRangeRequest;
 import org.sagebionetworks.repo.model.migration.CalculateOptimalRangeRequest;
 import org.sagebionetworks.repo.model.migration.CalculateOptimalRangeResponse;
 import org.sagebionetworks.repo.model.migration.IdRange;
 import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.util.Clock;
 
 import com.google.inject.Inject;
 
 public class BackupJobExecutorImpl implements BackupJobExecutor {
 
+	/**
+	 * The range calculated to seed the index of a type is at most this many times
+	 * the size of the requested range.
+	 */
+	static final long MAXIMUM_INDEX_MULTIPLE = 10L;
 	Configuration configuration;
 	AsynchronousJobExecutor asynchronousJobExecutor;
+	ProgressJournal progressJournal;
+	IdDensityIndex idDensityIndex;
+	RowsPerRangeController rowsPerRangeController;
+	Clock clock;
 
 	@Inject
-	public BackupJobExecutorImpl(Configuration configuration, AsynchronousJobExecutor asynchronousJobExecutor) {
+	public BackupJobExecutorImpl(Configuration configuration, AsynchronousJobExecutor asynchronousJobExecutor,
+			ProgressJournal progressJournal, IdDensityIndex idDensityIndex, RowsPerRangeController rowsPerRangeController,
+			Clock clock) {
 		super();
 		this.configuration = configuration;
 		this.asynchronousJobExecutor = asynchronousJobExecutor;
+		this.progressJournal = progressJournal;
+		this.idDensityIndex = idDensityIndex;
+		this.rowsPerRangeController = rowsPerRangeController;
+		this.clock = clock;
 	}
 
 	@Override
 	public Iterator<DestinationJob> executeBackupJob(MigrationType type, long minimumId, long maximumId) {
-		// Request the optimal ranges for this range from the source.
+		return executeBackupJob(type, minimumId, maximumId, true);
+	}
+
+	@Override
+	public Iterator<DestinationJob> executeMismatchBackupJob(MigrationType type, long minimumId, long maximumId) {
+		return executeBackupJob(type, minimumId, maximumId, false);
+	}
+
+	/**
+	 * Create the backup requests for the given range.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @param skipFinished When true, ranges the journal shows as finished are
+	 *                     skipped.
+	 * @return
+	 */
+	Iterator<DestinationJob> executeBackupJob(MigrationType type, long minimumId, long maximumId,
+			boolean skipFinished) {
+		if (skipFinished && progressJournal.isFinished(type, minimumId, maximumId)) {
+			// This range was already restored by a previous attempt.
+			return Collections.emptyIterator();
+		}
+		long rowsPerRange = rowsPerRangeController.getRowsPerRange(type);
+		// Plan from the index when possible to avoid another job on the source.
+		List<IdRange> optimalRanges = idDensityIndex.findOptimalRanges(type, minimumId, maximumId, rowsPerRange);
+		if (optimalRanges.isEmpty()) {
+			optimalRanges = calculateOptimalRanges(type, minimumId, maximumId, rowsPerRange);
+		}
+		if (optimalRanges.isEmpty()) {
+			/*
+			 * There is no data for this range in the source. Rather than restoring an empty
+			 * backup of the full range, delete the full range from the destination.
+			 */
+			return Collections.singletonList((DestinationJob) createRangeDeleteJob(type, minimumId, maximumId))
+					.iterator();
+		}
+		// Create contiguous backup requests based on the optimal ranges.
+		List<BackupTypeRangeRequest> requests = createContiguousBackupRangeRequests(configuration.getBackupAliasType(),
+				configuration.getMaximumBackupBatchSize(), type, minimumId, maximumId, optimalRanges);
+		// Skip any range that was already restored by a previous attempt.
+		if (skipFinished) {
+			requests.removeIf(
+					request -> progressJournal.isFinished(type, request.getMinimumId(), request.getMaximumId()));
+		}
+		return new BackupRangeIterator(asynchronousJobExecutor, requests, configuration.getMaximumBackupJobsPerType(),
+				rowsPerRangeController, clock);
+	}
+
+	/**
+	 * Request the optimal ranges for the given range from the source and add them
+	 * to the index. The first request for a type also calculates the range of the
+	 * type around it, up to MAXIMUM_INDEX_MULTIPLE times the size of the given
+	 * range, so nearby ranges can be planned from the index. A small delta does
+	 * not calculate the full table.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @param rowsPerRange
+	 * @return The optimal ranges within the given range.
+	 */
+	List<IdRange> calculateOptimalRanges(MigrationType type, long minimumId, long maximumId, long rowsPerRange) {
+		long requestMin = minimumId;
+		long requestMax = maximumId;
+		IdRange rangeToIndex = idDensityIndex.getRangeToIndex(type);
+		if (rangeToIndex != null) {
+			long margin = (maximumId - minimumId + 1) * (MAXIMUM_INDEX_MULTIPLE - 1) / 2;
+			requestMin = Math.min(minimumId, Math.max(rangeToIndex.getMinimumId(), minimumId - margin));
+			requestMax = Math.max(maximumId, Math.min(rangeToIndex.getMaximumId(), maximumId + margin));
+		}
 		CalculateOptimalRangeRequest rangeRequest = new CalculateOptimalRangeRequest();
 		rangeRequest.setMigrationType(type);
-		rangeRequest.setMinimumId(minimumId);
-		rangeRequest.setMaximumId(maximumId);
-		rangeRequest.setOptimalRowsPerRange((long) configuration.getMaximumBackupBatchSize());
+		rangeRequest.setMinimumId(requestMin);
+		rangeRequest.setMaximumId(requestMax);
+		rangeRequest.setOptimalRowsPerRange(rowsPerRange);
 		CalculateOptimalRangeResponse rangeResponse = asynchronousJobExecutor.executeSourceJob(rangeRequest,
 				CalculateOptimalRangeResponse.class);
-		// Create contiguous backup requests based on the optimal ranges.
-		List<BackupTypeRangeRequest> requests = createContiguousBackupRangeRequests(configuration.getBackupAliasType(),
-				configuration.getMaximumBackupBatchSize(), type, minimumId, maximumId, rangeResponse.getRanges());
-		return new BackupRangeIterator(asynchronousJobExecutor, requests);
+		idDensityIndex.recordOptimalRanges(type, requestMin, requestMax, rowsPerRange, rangeResponse.getRanges());
+		return clipRanges(rangeResponse.getRanges(), minimumId, maximumId);
+	}
+
+	/**
+	 * Limit the given sparse ranges to the given range. Ranges outside of the
+	 * range are dropped.
+	 * 
+	 * @param sparseRange
+	 * @param minimumId
+	 * @param maximumId
+	 * @return
+	 */
+	static List<IdRange> clipRanges(List<IdRange> sparseRange, long minimumId, long maximumId) {
+		List<IdRange> clipped = new LinkedList<>();
+		for (IdRange range : sparseRange) {
+			long rangeMin = Math.max(minimumId, range.getMinimumId());
+			long rangeMax = Math.min(maximumId, range.getMaximumId());
+			if (rangeMin <= rangeMax) {
+				clipped.add(ToolMigrationUtils.createIdRange(rangeMin, rangeMax));
+			}
+		}
+		return clipped;
 	}
 
 	/**
 	 * Given a list of sparse ID ranges create a list of contiguous ranges that
-	 * start with the given minimum and end with the given maximum
+	 * start with the given minimum and end with the given maximum. Each gap is
+	 * included in the backup of the range that follows it, which costs no
+	 * additional backup jobs. When the sparse range is empty there is nothing to
+	 * backup and no requests are created.
 	 * 
 	 * @param minimumId
 	 * @param maximumId
@@ -56,15 +167,6 @@ public class BackupJobExecutorImpl implements BackupJobExecutor {
 			List<IdRange> sparseRange) {
 		List<BackupTypeRangeRequest> backupRequests = new LinkedList<>();
 		if (sparseRange.isEmpty()) {
-			/*
-			 * When the sparse range is empty then there is no data for this range in the
-			 * source. However, we still must backup the full range to ensure any data in
-			 * this range is deleted from the destination.
-			 */
-			BackupTypeRangeRequest request = createRequest(backupAlisType, batchSize, migrationType);
-			request.setMinimumId(minimumId);
-			request.setMaximumId(maximumId);
-			backupRequests.add(request);
 			return backupRequests;
 		}
 		BackupTypeRangeRequest last = null;
@@ -85,6 +187,23 @@ public class BackupJobExecutorImpl implements BackupJobExecutor {
 		return backupRequests;
 	}
 
+	/**
+	 * Create a job to delete the given range from the destination.
+	 * 
+	 * @param migrationType
+	 * @param minimumId
+	 * @param maximumId
+	 * @return
+	 */
+	static DeleteDestinationJob createRangeDeleteJob(final MigrationType migrationType, final long minimumId,
+			final long maximumId) {
+		DeleteDestinationJob job = new DeleteDestinationJob();
+		job.setMigrationType(migrationType);
+		job.setMinimumId(minimumId);
+		job.setMaximumId(maximumId);
+		return job;
+	}
+
 	/**
 	 * Start the request with the common parameters.
 	 * 
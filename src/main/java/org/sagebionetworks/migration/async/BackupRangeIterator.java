@@ -1,36 +1,114 @@
 package org.sagebionetworks.migration.async;
 
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
+import org.sagebionetworks.migration.AsyncMigrationException;
 import org.sagebionetworks.repo.model.migration.BackupTypeRangeRequest;
 import org.sagebionetworks.repo.model.migration.BackupTypeResponse;
+import org.sagebionetworks.util.Clock;
 
 /**
  * Executes the given list of backup requests on demand.
- *
+ * <p>
+ * Up to maxBackupsInFlight backup jobs are started on the source ahead of the
+ * caller, so the next backup is already running while the caller processes the
+ * results of the current backup. Restore jobs are returned in the same order as
+ * the provided backup requests.
+ * <p>
+ * The duration of each backup is recorded with the optional
+ * RowsPerRangeController.
  */
 public class BackupRangeIterator implements Iterator<DestinationJob> {
 
 	AsynchronousJobExecutor asynchronousJobExecutor;
 	Iterator<BackupTypeRangeRequest> requestIterator;
+	int maxBackupsInFlight;
+	RowsPerRangeController rowsPerRangeController;
+	Clock clock;
+	LinkedList<StartedBackup> inFlight;
 
 	public BackupRangeIterator(AsynchronousJobExecutor asynchronousJobExecutor, List<BackupTypeRangeRequest> backupRequests) {
+		this(asynchronousJobExecutor, backupRequests, 1);
+	}
+
+	public BackupRangeIterator(AsynchronousJobExecutor asynchronousJobExecutor, List<BackupTypeRangeRequest> backupRequests,
+			int maxBackupsInFlight) {
+		this(asynchronousJobExecutor, backupRequests, maxBackupsInFlight, null, null);
+	}
+
+	/**
+	 * @param asynchronousJobExecutor
+	 * @param backupRequests
+	 * @param maxBackupsInFlight The maximum number of backup jobs that can be
+	 *                           running on the source at the same time.
+	 * @param rowsPerRangeController When not null, the duration of each backup
+	 *                           is recorded with this controller.
+	 * @param clock
+	 */
+	public BackupRangeIterator(AsynchronousJobExecutor asynchronousJobExecutor, List<BackupTypeRangeRequest> backupRequests,
+			int maxBackupsInFlight, RowsPerRangeController rowsPerRangeController, Clock clock) {
 		this.asynchronousJobExecutor = asynchronousJobExecutor;
 		this.requestIterator = backupRequests.iterator();
+		this.maxBackupsInFlight = Math.max(1, maxBackupsInFlight);
+		this.rowsPerRangeController = rowsPerRangeController;
+		this.clock = clock;
+		this.inFlight = new LinkedList<>();
 	}
 
 	@Override
 	public boolean hasNext() {
-		return requestIterator.hasNext();
+		return !inFlight.isEmpty() || requestIterator.hasNext();
 	}
 
 	@Override
 	public DestinationJob next() {
-		BackupTypeRangeRequest rangeRequest = requestIterator.next();
-		// execute the backup job on the source
-		BackupTypeResponse reponse = asynchronousJobExecutor.executeSourceJob(rangeRequest, BackupTypeResponse.class);
+		// keep the pipeline full.
+		startBackups();
+		StartedBackup oldest = inFlight.removeFirst();
+		BackupTypeRangeRequest rangeRequest = oldest.request;
+		// wait for the oldest backup job on the source to finish
+		BackupTypeResponse reponse;
+		try {
+			reponse = oldest.future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new AsyncMigrationException(e);
+		}
 		// return the restore job
 		return new RestoreDestinationJob(rangeRequest.getMigrationType(), reponse.getBackupFileKey(), rangeRequest.getMinimumId(), rangeRequest.getMaximumId());
 	}
+
+	/**
+	 * Start backup jobs until either the maximum number of jobs are in-flight or
+	 * there are no more requests.
+	 */
+	void startBackups() {
+		while (inFlight.size() < maxBackupsInFlight && requestIterator.hasNext()) {
+			BackupTypeRangeRequest request = requestIterator.next();
+			CompletableFuture<BackupTypeResponse> future = asynchronousJobExecutor.startSourceJob(request, BackupTypeResponse.class);
+			if (rowsPerRangeController != null) {
+				long startMs = clock.currentTimeMillis();
+				future.thenAccept(response -> rowsPerRangeController.recordBackup(request.getMigrationType(),
+						response.getBackupFileKey(), clock.currentTimeMillis() - startMs));
+			}
+			inFlight.add(new StartedBackup(request, future));
+		}
+	}
+
+	/**
+	 * A backup request that has been started on the source.
+	 */
+	static class StartedBackup {
+
+		BackupTypeRangeRequest request;
+		CompletableFuture<BackupTypeResponse> future;
+
+		StartedBackup(BackupTypeRangeRequest request, CompletableFuture<BackupTypeResponse> future) {
+			this.request = request;
+			this.future = future;
+		}
+	}
 }
@@ -1,18 +1,25 @@
 package org.sagebionetworks.migration.async;
 
+import java.util.LinkedList;
 import java.util.List;
+import java.util.TreeSet;
 
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
+import org.sagebionetworks.repo.model.migration.IdRange;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 
 /**
- * Job to delete rows from the destination.
+ * Job to delete rows from the destination. The rows to delete are either
+ * individual row IDs, an inclusive range of IDs, or both.
  *
  */
 public class DeleteDestinationJob implements DestinationJob {
 
 	MigrationType migrationType;
 	List<Long> rowIdsToDelete;
-	
+	Long minimumId;
+	Long maximumId;
+
 	@Override
 	public MigrationType getMigrationType() {
 		return migrationType;
@@ -30,11 +37,94 @@ public class DeleteDestinationJob implements DestinationJob {
 		this.rowIdsToDelete = rowIdsToDelete;
 	}
 
+	/**
+	 * The inclusive minimum of the range of IDs to delete.
+	 *
+	 * @return
+	 */
+	public Long getMinimumId() {
+		return minimumId;
+	}
+
+	public void setMinimumId(Long minimumId) {
+		this.minimumId = minimumId;
+	}
+
+	/**
+	 * The inclusive maximum of the range of IDs to delete.
+	 *
+	 * @return
+	 */
+	public Long getMaximumId() {
+		return maximumId;
+	}
+
+	public void setMaximumId(Long maximumId) {
+		this.maximumId = maximumId;
+	}
+
+	/**
+	 * Collapse the row IDs and range of this job into sorted, non-overlapping,
+	 * inclusive ranges. Each run of contiguous row IDs becomes a single range.
+	 *
+	 * @return
+	 */
+	public List<IdRange> getRangesToDelete() {
+		TreeSet<Long> sortedIds = new TreeSet<>();
+		if (rowIdsToDelete != null) {
+			sortedIds.addAll(rowIdsToDelete);
+		}
+		if (minimumId != null && maximumId != null) {
+			// IDs within the range are already covered.
+			sortedIds.subSet(minimumId, true, maximumId, true).clear();
+		}
+		List<IdRange> ranges = new LinkedList<>();
+		IdRange current = null;
+		for (Long id : sortedIds) {
+			if (current != null && current.getMaximumId() + 1 == id) {
+				current.setMaximumId(id);
+			} else {
+				current = ToolMigrationUtils.createIdRange(id, id);
+				ranges.add(current);
+			}
+		}
+		if (minimumId != null && maximumId != null) {
+			addRange(ranges, ToolMigrationUtils.createIdRange(minimumId, maximumId));
+		}
+		return ranges;
+	}
+
+	/**
+	 * Add the given range to the sorted list of ranges, merging it with any
+	 * neighbor it touches.
+	 *
+	 * @param ranges
+	 * @param toAdd
+	 */
+	static void addRange(List<IdRange> ranges, IdRange toAdd) {
+		int index = 0;
+		while (index < ranges.size() && ranges.get(index).getMaximumId() < toAdd.getMinimumId()) {
+			index++;
+		}
+		ranges.add(index, toAdd);
+		// merge with the run that ends right before the range.
+		if (index > 0 && ranges.get(index - 1).getMaximumId() + 1 == toAdd.getMinimumId()) {
+			toAdd.setMinimumId(ranges.remove(index - 1).getMinimumId());
+			index--;
+		}
+		// merge with the run that starts right after the range.
+		if (index + 1 < ranges.size() && ranges.get(index + 1).getMinimumId() == toAdd.getMaximumId() + 1) {
+			toAdd.setMaximumId(ranges.remove(index + 1).getMaximumId());
+		}
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
+		result = prime * result + ((maximumId == null) ? 0 : maximumId.hashCode());
 		result = prime * result + ((migrationType == null) ? 0 : migrationType.hashCode());
+		result = prime * result + ((minimumId == null) ? 0 : minimumId.hashCode());
 		result = prime * result + ((rowIdsToDelete == null) ? 0 : rowIdsToDelete.hashCode());
 		return result;
 	}
@@ -48,8 +138,18 @@ public class DeleteDestinationJob implements DestinationJob {
 		if (getClass() != obj.getClass())
 			return false;
 		DeleteDestinationJob other = (DeleteDestinationJob) obj;
+		if (maximumId == null) {
+			if (other.maximumId != null)
+				return false;
+		} else if (!maximumId.equals(other.maximumId))
+			return false;
 		if (migrationType != other.migrationType)
 			return false;
+		if (minimumId == null) {
+			if (other.minimumId != null)
+				return false;
+		} else if (!minimumId.equals(other.minimumId))
+			return false;
 		if (rowIdsToDelete == null) {
 			if (other.rowIdsToDelete != null)
 				return false;
@@ -60,8 +160,9 @@ public class DeleteDestinationJob implements DestinationJob {
 
 	@Override
 	public String toString() {
-		return "DeleteDestinationJob [migrationType=" + migrationType + ", rowIdsToDelete=" + rowIdsToDelete + "]";
+		return "DeleteDestinationJob [migrationType=" + migrationType + ", rowIdsToDelete=" + rowIdsToDelete
+				+ ", minimumId=" + minimumId + ", maximumId=" + maximumId + "]";
 	}
 
-	
+
 }
@@ -1,6 +1,6 @@
 package org.sagebionetworks.migration.async;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Abstraction for starting jobs on the destination.
@@ -12,6 +12,11 @@ public interface DestinationJobExecutor {
 	 * @param job
 	 * @return
 	 */
-	public Future<?> startDestinationJob(DestinationJob job);
+	public CompletableFuture<?> startDestinationJob(DestinationJob job);
+
+	/**
+	 * Forget any state kept from a previous run.
+	 */
+	public void clear();
 
 }
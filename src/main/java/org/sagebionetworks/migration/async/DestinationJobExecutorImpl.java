@@ -1,27 +1,72 @@
 package org.sagebionetworks.migration.async;
 
-import java.util.concurrent.Future;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
+import org.sagebionetworks.migration.AsyncMigrationException;
 import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactory;
+import org.sagebionetworks.repo.model.migration.BackupTypeRangeRequest;
+import org.sagebionetworks.repo.model.migration.BackupTypeResponse;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.RestoreTypeRequest;
 import org.sagebionetworks.repo.model.migration.RestoreTypeResponse;
+import org.sagebionetworks.util.Clock;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 
+/**
+ * Starts restore and delete jobs on the destination.
+ * <p>
+ * The admin API has no request to delete rows from the destination. Instead,
+ * a restore deletes any row within its ID range that is not in the backup
+ * file, so a DeleteDestinationJob restores an empty backup file over each of
+ * its contiguous ID ranges. A single empty backup file is created per type
+ * from a range that is empty on the source and reused for every delete of
+ * that type until the end of the run. Each delete is started from a separate
+ * pool so no request is made on the thread that completed the previous job.
+ */
+@Singleton
 public class DestinationJobExecutorImpl implements DestinationJobExecutor {
 	
+	static final String DELETE_THREAD_NAME = "destination-delete";
 	Configuration config;
 	AsynchronousJobExecutor asynchronousJobExecutor;
+	ProgressJournal progressJournal;
+	RestoredRangeLedger restoredRangeLedger;
+	RowsPerRangeController rowsPerRangeController;
+	Clock clock;
+	Map<MigrationType, CompletableFuture<String>> emptyBackupFileKeys;
+	Executor deleteExecutor;
 	
 	@Inject
-	public DestinationJobExecutorImpl(Configuration config, AsynchronousJobExecutor asynchronousJobExecutor) {
+	public DestinationJobExecutorImpl(Configuration config, AsynchronousJobExecutor asynchronousJobExecutor,
+			ProgressJournal progressJournal, RestoredRangeLedger restoredRangeLedger,
+			RowsPerRangeController rowsPerRangeController, Clock clock, ExecutorServiceFactory executorServiceFactory) {
 		super();
 		this.config = config;
 		this.asynchronousJobExecutor = asynchronousJobExecutor;
+		this.progressJournal = progressJournal;
+		this.restoredRangeLedger = restoredRangeLedger;
+		this.rowsPerRangeController = rowsPerRangeController;
+		this.clock = clock;
+		this.emptyBackupFileKeys = new ConcurrentHashMap<>();
+		this.deleteExecutor = executorServiceFactory.createCachedThreadPool(DELETE_THREAD_NAME);
 	}
 
 	@Override
-	public Future<?> startDestinationJob(DestinationJob job) {
+	public void clear() {
+		// A row can be added to the source between runs.
+		emptyBackupFileKeys.clear();
+	}
+
+	@Override
+	public CompletableFuture<?> startDestinationJob(DestinationJob job) {
 		if(job instanceof RestoreDestinationJob) {
 			// start a restore job.
 			RestoreDestinationJob restoreJob = (RestoreDestinationJob) job;
@@ -32,10 +77,119 @@ public class DestinationJobExecutorImpl implements DestinationJobExecutor {
 			restoreRequest.setBackupFileKey(restoreJob.getBackupFileKey());
 			restoreRequest.setMinimumRowId(restoreJob.getMinimumId());
 			restoreRequest.setMaximumRowId(restoreJob.getMaximumId());
-			return asynchronousJobExecutor.startDestionationJob(restoreRequest, RestoreTypeResponse.class);
+			long startMs = clock.currentTimeMillis();
+			// journal the range and record the duration once the restore completes.
+			return asynchronousJobExecutor.startDestionationJob(restoreRequest, RestoreTypeResponse.class)
+					.thenApply(response -> {
+						progressJournal.recordRestored(restoreJob.getMigrationType(), restoreJob.getMinimumId(),
+								restoreJob.getMaximumId());
+						restoredRangeLedger.recordRestored(restoreJob.getMigrationType(), restoreJob.getMinimumId(),
+								restoreJob.getMaximumId());
+						rowsPerRangeController.recordRestore(restoreJob.getMigrationType(),
+								restoreJob.getBackupFileKey(), response.getRestoredRowCount(),
+								clock.currentTimeMillis() - startMs);
+						return response;
+					});
+		}else if(job instanceof DeleteDestinationJob) {
+			return startDeleteJob((DeleteDestinationJob) job);
 		}else {
 			throw new IllegalArgumentException("Unknown job type: "+job.getClass().getName());
 		}
 	}
 
+	/**
+	 * Delete the ranges of the given job one at a time, in ID order.
+	 * 
+	 * @param deleteJob
+	 * @return
+	 */
+	CompletableFuture<?> startDeleteJob(DeleteDestinationJob deleteJob) {
+		MigrationType type = deleteJob.getMigrationType();
+		List<IdRange> ranges = deleteJob.getRangesToDelete();
+		if (ranges.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		// Every range to delete is empty on the source so any of them can be used to create the empty backup.
+		return getEmptyBackupFileKey(type, ranges.get(0)).thenComposeAsync(emptyBackupFileKey -> {
+			CompletableFuture<?> chain = CompletableFuture.completedFuture(null);
+			for (IdRange range : ranges) {
+				chain = chain.thenComposeAsync(previous -> deleteRange(type, emptyBackupFileKey, range),
+						deleteExecutor);
+			}
+			return chain;
+		}, deleteExecutor);
+	}
+
+	/**
+	 * Delete all rows of the given range from the destination by restoring the
+	 * empty backup file over the range. The backup response does not include a
+	 * row count so the file is checked each time it is restored. A file that
+	 * restored any rows is forgotten and the delete fails.
+	 * 
+	 * @param type
+	 * @param emptyBackupFileKey
+	 * @param range
+	 * @return
+	 */
+	CompletableFuture<RestoreTypeResponse> deleteRange(MigrationType type, String emptyBackupFileKey, IdRange range) {
+		RestoreTypeRequest restoreRequest = new RestoreTypeRequest();
+		restoreRequest.setAliasType(config.getBackupAliasType());
+		restoreRequest.setBatchSize((long) config.getMaximumBackupBatchSize());
+		restoreRequest.setMigrationType(type);
+		restoreRequest.setBackupFileKey(emptyBackupFileKey);
+		restoreRequest.setMinimumRowId(range.getMinimumId());
+		restoreRequest.setMaximumRowId(range.getMaximumId());
+		return asynchronousJobExecutor.startDestionationJob(restoreRequest, RestoreTypeResponse.class)
+				.thenApply(response -> {
+					if (response.getRestoredRowCount() != null && response.getRestoredRowCount() > 0) {
+						emptyBackupFileKeys.computeIfPresent(type,
+								(key, future) -> emptyBackupFileKey.equals(future.getNow(null)) ? null : future);
+						throw new AsyncMigrationException("The backup file: " + emptyBackupFileKey
+								+ " used to delete rows of type: " + type + " was not empty");
+					}
+					progressJournal.recordRestored(type, range.getMinimumId(), range.getMaximumId());
+					restoredRangeLedger.recordRestored(type, range.getMinimumId(), range.getMaximumId());
+					return response;
+				});
+	}
+
+	/**
+	 * Get the key of an empty backup file for the given type, creating the file
+	 * on the first call for each type. Only the caller that adds the future for
+	 * the type starts the backup. A failed backup is forgotten so the next delete
+	 * will try again.
+	 * 
+	 * @param type
+	 * @param emptyRange A range of IDs with no rows on the source.
+	 * @return
+	 */
+	CompletableFuture<String> getEmptyBackupFileKey(MigrationType type, IdRange emptyRange) {
+		CompletableFuture<String> created = new CompletableFuture<>();
+		CompletableFuture<String> existing = emptyBackupFileKeys.computeIfAbsent(type, key -> created);
+		if (existing != created) {
+			return existing;
+		}
+		BackupTypeRangeRequest backupRequest = new BackupTypeRangeRequest();
+		backupRequest.setAliasType(config.getBackupAliasType());
+		backupRequest.setBatchSize((long) config.getMaximumBackupBatchSize());
+		backupRequest.setMigrationType(type);
+		backupRequest.setMinimumId(emptyRange.getMinimumId());
+		backupRequest.setMaximumId(emptyRange.getMaximumId());
+		try {
+			asynchronousJobExecutor.startSourceJob(backupRequest, BackupTypeResponse.class)
+					.whenComplete((response, exception) -> {
+						if (exception != null) {
+							emptyBackupFileKeys.remove(type, created);
+							created.completeExceptionally(exception);
+						} else {
+							created.complete(response.getBackupFileKey());
+						}
+					});
+		} catch (RuntimeException e) {
+			emptyBackupFileKeys.remove(type, created);
+			created.completeExceptionally(e);
+		}
+		return created;
+	}
+
 }
@@ -1,11 +1,10 @@
 package org.sagebionetworks.migration.async;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 import org.sagebionetworks.client.SynapseAdminClient;
 import org.sagebionetworks.repo.model.asynch.AsynchronousJobStatus;
 import org.sagebionetworks.repo.model.migration.AdminResponse;
-import org.sagebionetworks.repo.model.migration.MigrationType;
 
 /**
  * 
@@ -23,7 +22,7 @@ public interface FutureFactory {
 	 * @param reponseClass response type.
 	 * @return
 	 */
-	public <O extends AdminResponse> Future<O> createFuture(AsynchronousJobStatus jobStatus, JobTarget jobTarget,
+	public <O extends AdminResponse> CompletableFuture<O> createFuture(AsynchronousJobStatus jobStatus, JobTarget jobTarget,
 			SynapseAdminClient client, Class<? extends O> reponseClass);
 
 }
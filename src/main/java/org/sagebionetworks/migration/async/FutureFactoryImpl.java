@@ -1,36 +1,28 @@
 package org.sagebionetworks.migration.async;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 import org.sagebionetworks.client.SynapseAdminClient;
-import org.sagebionetworks.migration.Reporter;
-import org.sagebionetworks.migration.config.Configuration;
 import org.sagebionetworks.repo.model.asynch.AsynchronousJobStatus;
 import org.sagebionetworks.repo.model.migration.AdminResponse;
-import org.sagebionetworks.repo.model.migration.MigrationType;
-import org.sagebionetworks.util.Clock;
 
 import com.google.inject.Inject;
 
 public class FutureFactoryImpl implements FutureFactory {
 	
-	Reporter reporter;
-	Clock clock;
-	Configuration configuration;
+	AsynchronousJobPoller poller;
 
 	@Inject
-	public FutureFactoryImpl(Reporter reporter, Clock clock, Configuration configuration) {
+	public FutureFactoryImpl(AsynchronousJobPoller poller) {
 		super();
-		this.reporter = reporter;
-		this.clock = clock;
-		this.configuration = configuration;
+		this.poller = poller;
 	}
 
 	@Override
-	public <O extends AdminResponse> Future<O> createFuture(AsynchronousJobStatus jobStatus, JobTarget jobTarget,
+	public <O extends AdminResponse> CompletableFuture<O> createFuture(AsynchronousJobStatus jobStatus, JobTarget jobTarget,
 			SynapseAdminClient client, Class<? extends O> reponseClass) {
-		// create a new future for each call.
-		return new AsynchronousJobFuture<O>(reporter, clock, jobStatus, jobTarget, client, configuration.getWorkerTimeoutMs());
+		// all jobs are tracked by the shared poller.
+		return poller.watchJob(jobStatus, jobTarget, client);
 	}
 
 }
@@ -0,0 +1,62 @@
+package org.sagebionetworks.migration.async;
+
+import java.util.List;
+
+import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+/**
+ * An in-memory index of the density of IDs on the source built from the
+ * responses of the optimal range calculations of the current run. Once a range
+ * of a type is indexed, the optimal ranges of any range within it can be
+ * planned without starting another calculation on the source.
+ *
+ */
+public interface IdDensityIndex {
+
+	/**
+	 * Forget the index of the previous run and remember the full range of each
+	 * type to migrate in this run.
+	 * 
+	 * @param primaryTypes
+	 */
+	public void reset(List<TypeToMigrateMetadata> primaryTypes);
+
+	/**
+	 * Get the full range of the given type when nothing has been indexed for the
+	 * type yet. Calculating the optimal ranges of a wider part of this range
+	 * once allows later ranges of the type to be planned from the index.
+	 * 
+	 * @param type
+	 * @return Null if the type has been indexed or its range is unknown.
+	 */
+	public IdRange getRangeToIndex(MigrationType type);
+
+	/**
+	 * Record the optimal ranges calculated by the source for the given range.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @param rowsPerRange The number of rows per range used for the calculation.
+	 * @param ranges       The optimal ranges returned by the source.
+	 */
+	public void recordOptimalRanges(MigrationType type, long minimumId, long maximumId, long rowsPerRange,
+			List<IdRange> ranges);
+
+	/**
+	 * Plan the optimal ranges of the given range from the index. Each returned
+	 * range has no more than the given number of rows as of the time it was
+	 * indexed.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @param rowsPerRange
+	 * @return An empty list if the index cannot plan the range. A range with no
+	 *         rows according to the index is never planned from the index, so
+	 *         the source must confirm it is empty.
+	 */
+	public List<IdRange> findOptimalRanges(MigrationType type, long minimumId, long maximumId, long rowsPerRange);
+}
@@ -0,0 +1,161 @@
+package org.sagebionetworks.migration.async;
+
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
+import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.inject.Singleton;
+
+/**
+ * Index of the optimal ranges of each type held in memory.
+ * <p>
+ * The index is planned from the ranges calculated earlier in the run, so rows
+ * created on the source since then are not counted. Such rows are still backed
+ * up since the planned ranges are made contiguous before they are backed up;
+ * only the size of the ranges can drift. Ranges with no indexed rows are always
+ * confirmed by the source, since an empty range is deleted from the
+ * destination.
+ *
+ */
+@Singleton
+public class IdDensityIndexImpl implements IdDensityIndex {
+
+	/*
+	 * The full range of each type in the current run.
+	 */
+	Map<MigrationType, IdRange> typeRanges;
+	/*
+	 * The indexed ranges of each type.
+	 */
+	Map<MigrationType, TypeIndex> indices;
+
+	public IdDensityIndexImpl() {
+		typeRanges = new EnumMap<>(MigrationType.class);
+		indices = new EnumMap<>(MigrationType.class);
+	}
+
+	@Override
+	public synchronized void reset(List<TypeToMigrateMetadata> primaryTypes) {
+		typeRanges.clear();
+		indices.clear();
+		for (TypeToMigrateMetadata metadata : primaryTypes) {
+			if (metadata.getSrcMinId() != null && metadata.getSrcMaxId() != null) {
+				typeRanges.put(metadata.getType(),
+						ToolMigrationUtils.createIdRange(metadata.getSrcMinId(), metadata.getSrcMaxId()));
+			}
+		}
+	}
+
+	@Override
+	public synchronized IdRange getRangeToIndex(MigrationType type) {
+		if (indices.containsKey(type)) {
+			return null;
+		}
+		return typeRanges.get(type);
+	}
+
+	@Override
+	public synchronized void recordOptimalRanges(MigrationType type, long minimumId, long maximumId, long rowsPerRange,
+			List<IdRange> ranges) {
+		TypeIndex index = indices.computeIfAbsent(type, t -> new TypeIndex());
+		index.covered.add(ToolMigrationUtils.toRange(minimumId, maximumId));
+		// the new calculation replaces anything indexed within the range.
+		Map.Entry<Long, IndexedRange> before = index.ranges.lowerEntry(minimumId);
+		if (before != null && before.getValue().maximumId >= minimumId) {
+			IndexedRange straddling = before.getValue();
+			if (straddling.maximumId > maximumId) {
+				index.ranges.put(maximumId + 1, new IndexedRange(maximumId + 1, straddling.maximumId, straddling.rowsPerRange));
+			}
+			straddling.maximumId = minimumId - 1;
+		}
+		TreeMap<Long, IndexedRange> within = new TreeMap<>(index.ranges.subMap(minimumId, true, maximumId, true));
+		index.ranges.keySet().removeAll(within.keySet());
+		if (!within.isEmpty() && within.lastEntry().getValue().maximumId > maximumId) {
+			IndexedRange last = within.lastEntry().getValue();
+			index.ranges.put(maximumId + 1, new IndexedRange(maximumId + 1, last.maximumId, last.rowsPerRange));
+		}
+		for (IdRange range : ranges) {
+			long rangeMin = Math.max(minimumId, range.getMinimumId());
+			long rangeMax = Math.min(maximumId, range.getMaximumId());
+			if (rangeMin <= rangeMax) {
+				index.ranges.put(rangeMin, new IndexedRange(rangeMin, rangeMax, rowsPerRange));
+			}
+		}
+	}
+
+	@Override
+	public synchronized List<IdRange> findOptimalRanges(MigrationType type, long minimumId, long maximumId,
+			long rowsPerRange) {
+		List<IdRange> planned = new LinkedList<>();
+		TypeIndex index = indices.get(type);
+		if (index == null || !index.covered.encloses(ToolMigrationUtils.toRange(minimumId, maximumId))) {
+			return planned;
+		}
+		List<IndexedRange> overlapping = new LinkedList<>();
+		Map.Entry<Long, IndexedRange> before = index.ranges.lowerEntry(minimumId);
+		if (before != null && before.getValue().maximumId >= minimumId) {
+			overlapping.add(before.getValue());
+		}
+		overlapping.addAll(index.ranges.subMap(minimumId, true, maximumId, true).values());
+		// Combine adjacent indexed ranges up to the requested rows per range.
+		IdRange current = null;
+		long currentRows = 0;
+		for (IndexedRange range : overlapping) {
+			if (range.rowsPerRange > rowsPerRange) {
+				// the indexed ranges are too large to be split without the source.
+				return new LinkedList<>();
+			}
+			long rangeMin = Math.max(minimumId, range.minimumId);
+			long rangeMax = Math.min(maximumId, range.maximumId);
+			if (current != null && currentRows + range.rowsPerRange <= rowsPerRange) {
+				current.setMaximumId(rangeMax);
+				currentRows += range.rowsPerRange;
+			} else {
+				current = ToolMigrationUtils.createIdRange(rangeMin, rangeMax);
+				currentRows = range.rowsPerRange;
+				planned.add(current);
+			}
+		}
+		return planned;
+	}
+
+	/**
+	 * The indexed ranges of a single type.
+	 */
+	static class TypeIndex {
+
+		/*
+		 * The ranges that were calculated by the source.
+		 */
+		RangeSet<Long> covered = TreeRangeSet.create();
+		/*
+		 * The optimal ranges keyed by their minimum ID.
+		 */
+		TreeMap<Long, IndexedRange> ranges = new TreeMap<>();
+	}
+
+	/**
+	 * An optimal range with the number of rows per range used to calculate it.
+	 */
+	static class IndexedRange {
+
+		long minimumId;
+		long maximumId;
+		long rowsPerRange;
+
+		IndexedRange(long minimumId, long maximumId, long rowsPerRange) {
+			this.minimumId = minimumId;
+			this.maximumId = maximumId;
+			this.rowsPerRange = rowsPerRange;
+		}
+	}
+}
@@ -1,79 +1,201 @@
 package org.sagebionetworks.migration.async;
 
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.sagebionetworks.migration.AsyncMigrationException;
 import org.sagebionetworks.migration.async.checksum.ChecksumDeltaBuilder;
 import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactory;
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
 import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
-import org.sagebionetworks.util.Clock;
+import org.sagebionetworks.repo.model.migration.MigrationType;
 
 import com.google.inject.Inject;
 
 /**
  * This algorithm drives the migration process by finding all jobs to be
  * restored on the destination.
- * 
+ *
+ * Each type moves through the phases on its own: once the restore jobs for the
+ * data missing from the destination of a type are done, the checksum deltas of
+ * that type are found while other types are still restoring. The jobs of each
+ * phase are discovered on a bounded pool of threads and each job is pushed to
+ * the restore queue as soon as it is found. No thread is held while a type
+ * waits for its restore jobs to finish. The ranges restored during the run are
+ * not compared again by the checksums of the type.
+ *
  */
 public class MigrationDriverImpl implements MigrationDriver {
 
-	public static final long SLEEP_TIME_MS = 1000L;
+	static final String DISCOVERY_THREAD_NAME = "job-discovery";
 	Configuration config;
 	MissingFromDestinationBuilder missingFromDestinationBuilder;
 	ChecksumDeltaBuilder checksumChangeBuilder;
 	RestoreJobQueue restoreJobQueue;
-	Clock clock;
+	DestinationJobExecutor destinationJobExecutor;
+	RowsPerRangeController rowsPerRangeController;
+	RestoredRangeLedger restoredRangeLedger;
+	IdDensityIndex idDensityIndex;
+	ExecutorServiceFactory executorServiceFactory;
 
 	@Inject
 	public MigrationDriverImpl(Configuration config, MissingFromDestinationBuilder missingFromDestinationBuilder,
-			ChecksumDeltaBuilder checksumChangeBuilder, RestoreJobQueue restoreJobQueue, Clock clock) {
+			ChecksumDeltaBuilder checksumChangeBuilder, RestoreJobQueue restoreJobQueue,
+			DestinationJobExecutor destinationJobExecutor, RowsPerRangeController rowsPerRangeController,
+			RestoredRangeLedger restoredRangeLedger, IdDensityIndex idDensityIndex,
+			ExecutorServiceFactory executorServiceFactory) {
 		super();
 		this.config = config;
 		this.missingFromDestinationBuilder = missingFromDestinationBuilder;
 		this.checksumChangeBuilder = checksumChangeBuilder;
 		this.restoreJobQueue = restoreJobQueue;
-		this.clock = clock;
+		this.destinationJobExecutor = destinationJobExecutor;
+		this.rowsPerRangeController = rowsPerRangeController;
+		this.restoredRangeLedger = restoredRangeLedger;
+		this.idDensityIndex = idDensityIndex;
+		this.executorServiceFactory = executorServiceFactory;
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see
 	 * org.sagebionetworks.migration.async.AsynchronousMigration#migratePrimaryTypes
 	 * (java.util.List)
 	 */
 	@Override
 	public void migratePrimaryTypes(List<TypeToMigrateMetadata> primaryTypes) {
+		// Only ranges restored by this run are skipped by the checksums.
+		restoredRangeLedger.clear();
+		// A range that was empty on the source in a previous run might not be now.
+		destinationJobExecutor.clear();
+		// A backup that was not restored by a previous run never will be.
+		rowsPerRangeController.clear();
+		// The density of the source can change between runs.
+		idDensityIndex.reset(primaryTypes);
+		restoreJobQueue.setWorkEstimates(primaryTypes);
+		// One iterator per type for each phase.
+		List<Iterator<DestinationJob>> missingIterators = missingFromDestinationBuilder
+				.buildDestinationJobs(primaryTypes);
+		List<Iterator<DestinationJob>> deltaIterators = checksumChangeBuilder
+				.buildAllRestoreJobsForMismatchedChecksums(primaryTypes);
+		ExecutorService executor = executorServiceFactory.createFixedThreadPool(DISCOVERY_THREAD_NAME,
+				config.getMaximumNumberThreads());
+		try {
+			CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+			List<CompletableFuture<Void>> pipelines = new LinkedList<>();
+			for (int i = 0; i < primaryTypes.size(); i++) {
+				CompletableFuture<Void> pipeline = startTypePipeline(primaryTypes.get(i).getType(),
+						missingIterators.get(i), deltaIterators.get(i), executor);
+				pipeline.whenComplete((result, exception) -> {
+					if (exception != null) {
+						firstFailure.completeExceptionally(exception);
+					}
+				});
+				pipelines.add(pipeline);
+			}
+			// Wait for all types to finish or for the first failure.
+			CompletableFuture.anyOf(CompletableFuture.allOf(pipelines.toArray(new CompletableFuture[pipelines.size()])),
+					firstFailure).get();
+		} catch (ExecutionException e) {
+			RuntimeException failure = ToolMigrationUtils.unwrap(e);
+			// stop finding new jobs then wait for the jobs already pushed.
+			awaitDiscoveryTermination(executor, failure);
+			awaitRestoreJobsAfterFailure(failure);
+			throw failure;
+		} catch (InterruptedException e) {
+			// interrupt will trigger failure.
+			throw new RuntimeException(e);
+		} finally {
+			// stop any work still running after a failure.
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Start the phases of a single type.
+	 * 
+	 * @param type
+	 * @param missingJobs The jobs for the data that is missing from the destination.
+	 * @param deltaJobs   The jobs for the remaining deltas found by comparing checksums.
+	 * @param executor    The phases of the type are discovered on this executor.
+	 * @return Completes once the restore jobs of both phases are done.
+	 */
+	CompletableFuture<Void> startTypePipeline(MigrationType type, Iterator<DestinationJob> missingJobs,
+			Iterator<DestinationJob> deltaJobs, Executor executor) {
 		/*
-		 * Phase One: Find and process all data that is missing from the destination.
-		 */
-		findAndProcessJobs(missingFromDestinationBuilder.buildDestinationJobs(primaryTypes));
-		/*
-		 * Phase Two: Find and process all remaining deltas between source and
-		 * destination by comparing checkums.
+		 * Phase One: Find and process all data of this type that is missing from the
+		 * destination.
 		 */
-		findAndProcessJobs(checksumChangeBuilder.buildAllRestoreJobsForMismatchedChecksums(primaryTypes));
+		return CompletableFuture.runAsync(() -> pushAllJobs(missingJobs), executor)
+				.thenCompose(result -> restoreJobQueue.whenAllJobsDone(type))
+				/*
+				 * Phase Two: Find and process all remaining deltas of this type between
+				 * source and destination by comparing checkums.
+				 */
+				.thenRunAsync(() -> pushAllJobs(deltaJobs), executor)
+				.thenCompose(result -> restoreJobQueue.whenAllJobsDone(type));
 	}
 
 	/**
-	 * Find and process all jobs from the provided job iterator.
-	 * @param jobIterator
+	 * Drain the provided iterator, pushing each job to the restore queue as it is
+	 * found.
+	 * 
+	 * @param typeIterator
 	 */
-	void findAndProcessJobs(Iterator<DestinationJob> jobIterator) {
-		// find all of the restore jobs as fast as possible.
-		while (jobIterator.hasNext()) {
-			DestinationJob nextJob = jobIterator.next();
+	void pushAllJobs(Iterator<DestinationJob> typeIterator) {
+		while (typeIterator.hasNext()) {
 			// push restore jobs the restore queue
-			restoreJobQueue.pushJob(nextJob);
+			restoreJobQueue.pushJob(typeIterator.next());
 		}
-		// Wait for all of the restore jobs to finish
-		while (!restoreJobQueue.isDone()) {
-			try {
-				clock.sleep(SLEEP_TIME_MS);
-			} catch (InterruptedException e1) {
-				// interrupt will trigger failure.
-				throw new RuntimeException(e1);
+	}
+
+	/**
+	 * After a failure, stop the discovery threads and wait for them to exit, so
+	 * no job can be pushed after the restore queue is drained. A discovery
+	 * thread that does not stop within the worker timeout is added to the given
+	 * failure as a suppressed exception.
+	 * 
+	 * @param executor
+	 * @param failure  The first failure, which will be thrown.
+	 */
+	void awaitDiscoveryTermination(ExecutorService executor, RuntimeException failure) {
+		executor.shutdownNow();
+		try {
+			if (!executor.awaitTermination(config.getWorkerTimeoutMs(), TimeUnit.MILLISECONDS)) {
+				failure.addSuppressed(new AsyncMigrationException(
+						"Job discovery did not stop within " + config.getWorkerTimeoutMs() + " MS"));
+			}
+		} catch (InterruptedException e) {
+			failure.addSuppressed(e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * After a failure, wait for the jobs that were already pushed so the restore
+	 * queue is idle before the failure is thrown. Only the first failure is
+	 * thrown, so any later failure is added to it as a suppressed exception.
+	 * 
+	 * @param failure The first failure, which will be thrown.
+	 */
+	void awaitRestoreJobsAfterFailure(RuntimeException failure) {
+		try {
+			restoreJobQueue.awaitAllJobsDone();
+		} catch (RuntimeException e) {
+			if (e != failure) {
+				failure.addSuppressed(e);
 			}
+		} catch (InterruptedException e) {
+			failure.addSuppressed(e);
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -15,8 +15,10 @@ public interface MissingFromDestinationBuilder {
 	 * Will backup all data that is outside the box that is common to both the source and destination
 	 * for each type.
 	 * @param primaryTypes
-	 * @return
+	 * @return One iterator per type, in the same order as the provided types.
+	 *         Each iterator is independent so the types can be processed
+	 *         concurrently.
 	 */
-	Iterator<DestinationJob> buildDestinationJobs(List<TypeToMigrateMetadata> primaryTypes);
+	List<Iterator<DestinationJob>> buildDestinationJobs(List<TypeToMigrateMetadata> primaryTypes);
 
 }
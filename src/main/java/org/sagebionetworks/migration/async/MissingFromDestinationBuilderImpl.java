@@ -7,7 +7,6 @@ import java.util.List;
 import org.sagebionetworks.migration.config.Configuration;
 import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
 
-import com.google.common.collect.Iterators;
 import com.google.inject.Inject;
 
 public class MissingFromDestinationBuilderImpl implements MissingFromDestinationBuilder {
@@ -23,15 +22,13 @@ public class MissingFromDestinationBuilderImpl implements MissingFromDestination
 	}
 
 	@Override
-	public Iterator<DestinationJob> buildDestinationJobs(List<TypeToMigrateMetadata> primaryTypes) {
-		// start with an empty iterator
-		Iterator<DestinationJob> iterator = new LinkedList<DestinationJob>().iterator();
-		// Concatenate an iterator for each type.
+	public List<Iterator<DestinationJob>> buildDestinationJobs(List<TypeToMigrateMetadata> primaryTypes) {
+		// One iterator for each type.
+		List<Iterator<DestinationJob>> iterators = new LinkedList<>();
 		for(TypeToMigrateMetadata typeToMigrate: primaryTypes) {
-			MissingFromDestinationIterator typeIterator = new MissingFromDestinationIterator(config, backupJobExecutor, typeToMigrate);
-			iterator = Iterators.concat(iterator, typeIterator);
+			iterators.add(new MissingFromDestinationIterator(config, backupJobExecutor, typeToMigrate));
 		}
-		return iterator;
+		return iterators;
 	}
 
 }
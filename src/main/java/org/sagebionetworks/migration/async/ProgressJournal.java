@@ -0,0 +1,78 @@
+package org.sagebionetworks.migration.async;
+
+import java.util.List;
+
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.RangeChecksum;
+
+/**
+ * An append-only local journal of the ID ranges that were either restored on
+ * the destination or verified to match the source during a migration. A
+ * migration that is retried, or a process that is re-launched after a
+ * failure, will not backup the ranges that are finished according to the
+ * journal and will only compare the checksums of the ranges that were not
+ * verified. A journal is bound to the source and destination stacks and
+ * expires after a maximum age.
+ * <p>
+ * When the journal is disabled nothing is recorded and no range is ever
+ * finished.
+ *
+ */
+public interface ProgressJournal {
+
+	/**
+	 * Is the journal enabled?
+	 * 
+	 * @return
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * Record that a restore of the given range completed on the destination.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 */
+	public void recordRestored(MigrationType type, Long minimumId, Long maximumId);
+
+	/**
+	 * Record that the checksums of the given range were compared. The entire
+	 * range is recorded as verified except for the given mismatched bins.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @param mismatchedBins The bins of the range that did not match.
+	 */
+	public void recordVerified(MigrationType type, Long minimumId, Long maximumId,
+			List<RangeChecksum> mismatchedBins);
+
+	/**
+	 * Is the entire given range either restored or verified?
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @return
+	 */
+	public boolean isFinished(MigrationType type, Long minimumId, Long maximumId);
+
+	/**
+	 * Find the sub-ranges of the given range that were not verified. Restored
+	 * ranges are included, since the source could have changed after the
+	 * restore.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @return The unverified sub-ranges ordered by ID.
+	 */
+	public List<IdRange> findUnverifiedRanges(MigrationType type, Long minimumId, Long maximumId);
+
+	/**
+	 * Delete the journal. Called when a migration completes successfully.
+	 */
+	public void clear();
+}
@@ -0,0 +1,308 @@
+package org.sagebionetworks.migration.async;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.RangeChecksum;
+import org.sagebionetworks.util.Clock;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Progress journal stored in a local text file.
+ * <p>
+ * The first line of the file is a header with the format:
+ * 'STARTED,&lt;startedOnMS&gt;,&lt;sourceEndpoint&gt;,&lt;destinationEndpoint&gt;'.
+ * A journal is only resumed if it was started against the same source and
+ * destination and is not older than the configured maximum age. Otherwise it
+ * is discarded and a new journal is started.
+ * <p>
+ * Each following line of the file is a single entry with the format:
+ * '&lt;RESTORED|VERIFIED&gt;,&lt;type&gt;,&lt;minId&gt;,&lt;maxId&gt;'. Entries
+ * are only ever appended, so a process that dies while writing loses at most
+ * the last entry. Malformed entries are ignored.
+ * <p>
+ * The journal is read on first use, so a re-launched process resumes from the
+ * journal of the previous process. Failures to read or write the file are
+ * logged and ignored since the journal is only an optimization.
+ *
+ */
+@Singleton
+public class ProgressJournalImpl implements ProgressJournal {
+
+	static final String RESTORED = "RESTORED";
+	static final String VERIFIED = "VERIFIED";
+	static final String STARTED = "STARTED";
+	static final String DELIMITER = ",";
+
+	Logger logger;
+	Clock clock;
+	String journalFile;
+	long maxAgeMs;
+	String sourceEndpoint;
+	String destinationEndpoint;
+	/*
+	 * The finished ranges of each type. Each range is stored in its canonical
+	 * form so adjacent ranges are merged.
+	 */
+	Map<MigrationType, RangeSet<Long>> finished;
+	/*
+	 * The subset of the finished ranges that were verified with checksums.
+	 */
+	Map<MigrationType, RangeSet<Long>> verified;
+	/*
+	 * The header to write before the first entry of a new journal.
+	 */
+	String header;
+
+	@Inject
+	public ProgressJournalImpl(Configuration config, LoggerFactory loggerFactory, Clock clock) {
+		this.logger = loggerFactory.getLogger(ProgressJournalImpl.class);
+		this.clock = clock;
+		this.journalFile = config.getProgressJournalFile();
+		if (isEnabled()) {
+			this.maxAgeMs = config.getProgressJournalMaxAgeMs();
+			this.sourceEndpoint = config.getSourceConnectionInfo().getRepositoryEndPoint();
+			this.destinationEndpoint = config.getDestinationConnectionInfo().getRepositoryEndPoint();
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return journalFile != null;
+	}
+
+	@Override
+	public synchronized void recordRestored(MigrationType type, Long minimumId, Long maximumId) {
+		if (!isEnabled() || minimumId == null || maximumId == null) {
+			return;
+		}
+		load();
+		List<String> entries = new LinkedList<>();
+		addEntry(RESTORED, type, minimumId, maximumId, entries);
+		append(entries);
+	}
+
+	@Override
+	public synchronized void recordVerified(MigrationType type, Long minimumId, Long maximumId,
+			List<RangeChecksum> mismatchedBins) {
+		if (!isEnabled() || minimumId == null || maximumId == null) {
+			return;
+		}
+		load();
+		RangeSet<Long> verified = TreeRangeSet.create();
+		verified.add(ToolMigrationUtils.toRange(minimumId, maximumId));
+		for (RangeChecksum mismatch : mismatchedBins) {
+			verified.remove(ToolMigrationUtils.toRange(mismatch.getMinimumId(), mismatch.getMaximumId()));
+		}
+		List<String> entries = new LinkedList<>();
+		for (Range<Long> range : verified.asRanges()) {
+			addEntry(VERIFIED, type, range.lowerEndpoint(), range.upperEndpoint() - 1, entries);
+		}
+		append(entries);
+	}
+
+	@Override
+	public synchronized boolean isFinished(MigrationType type, Long minimumId, Long maximumId) {
+		if (!isEnabled()) {
+			return false;
+		}
+		load();
+		return getFinished(type).encloses(ToolMigrationUtils.toRange(minimumId, maximumId));
+	}
+
+	@Override
+	public synchronized List<IdRange> findUnverifiedRanges(MigrationType type, Long minimumId, Long maximumId) {
+		List<IdRange> unverified = new LinkedList<>();
+		if (!isEnabled()) {
+			unverified.add(ToolMigrationUtils.createIdRange(minimumId, maximumId));
+			return unverified;
+		}
+		load();
+		return ToolMigrationUtils.findUncoveredRanges(getVerified(type), minimumId, maximumId);
+	}
+
+	@Override
+	public synchronized void clear() {
+		if (!isEnabled()) {
+			return;
+		}
+		finished = new EnumMap<>(MigrationType.class);
+		verified = new EnumMap<>(MigrationType.class);
+		header = createHeader();
+		try {
+			Files.deleteIfExists(Paths.get(journalFile));
+		} catch (IOException e) {
+			logger.warn("Failed to delete the progress journal: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Add a finished range to the journal in memory and to the given list of
+	 * entries to append to the file.
+	 * 
+	 * @param kind
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @param entries
+	 */
+	void addEntry(String kind, MigrationType type, long minimumId, long maximumId, List<String> entries) {
+		addRange(kind, type, minimumId, maximumId);
+		entries.add(kind + DELIMITER + type.name() + DELIMITER + minimumId + DELIMITER + maximumId);
+	}
+
+	/**
+	 * Append the given entries to the file.
+	 * 
+	 * @param entries
+	 */
+	void append(List<String> entries) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		if (header != null) {
+			entries.add(0, header);
+		}
+		try {
+			Files.write(Paths.get(journalFile), entries, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+			header = null;
+		} catch (IOException e) {
+			logger.warn("Failed to write the progress journal: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Load the journal from the file on the first call.
+	 */
+	void load() {
+		if (finished != null) {
+			return;
+		}
+		finished = new EnumMap<>(MigrationType.class);
+		verified = new EnumMap<>(MigrationType.class);
+		header = createHeader();
+		Path path = Paths.get(journalFile);
+		if (!Files.exists(path)) {
+			return;
+		}
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			logger.warn("Failed to read the progress journal. Will start a new journal: " + e.getMessage());
+			lines = new LinkedList<>();
+		}
+		if (lines.isEmpty() || !isResumable(lines.get(0))) {
+			logger.info("Starting a new progress journal: " + journalFile);
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				logger.warn("Failed to delete the progress journal: " + e.getMessage());
+			}
+			return;
+		}
+		header = null;
+		for (String line : lines.subList(1, lines.size())) {
+			try {
+				String[] parts = line.split(DELIMITER);
+				if (parts.length != 4 || !(RESTORED.equals(parts[0]) || VERIFIED.equals(parts[0]))) {
+					throw new IllegalArgumentException(line);
+				}
+				MigrationType type = MigrationType.valueOf(parts[1]);
+				addRange(parts[0], type, Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+			} catch (IllegalArgumentException e) {
+				// Unknown types and partially written entries are ignored.
+				logger.warn("Ignoring progress journal entry: " + line);
+			}
+		}
+		logger.info("Resuming from progress journal: " + journalFile);
+	}
+
+	/**
+	 * Get the finished ranges for the given type.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	RangeSet<Long> getFinished(MigrationType type) {
+		return finished.computeIfAbsent(type, t -> TreeRangeSet.create());
+	}
+
+	/**
+	 * Get the verified ranges for the given type.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	RangeSet<Long> getVerified(MigrationType type) {
+		return verified.computeIfAbsent(type, t -> TreeRangeSet.create());
+	}
+
+	/**
+	 * Add a finished range to the journal in memory.
+	 * 
+	 * @param kind
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 */
+	void addRange(String kind, MigrationType type, long minimumId, long maximumId) {
+		Range<Long> range = ToolMigrationUtils.toRange(minimumId, maximumId);
+		getFinished(type).add(range);
+		if (VERIFIED.equals(kind)) {
+			getVerified(type).add(range);
+		}
+	}
+
+	/**
+	 * Create the header of a journal started now.
+	 * 
+	 * @return
+	 */
+	String createHeader() {
+		return STARTED + DELIMITER + clock.currentTimeMillis() + DELIMITER + sourceEndpoint + DELIMITER
+				+ destinationEndpoint;
+	}
+
+	/**
+	 * Can a journal with the given header be resumed? The journal must have been
+	 * started against the same stacks and must not be too old.
+	 * 
+	 * @param header
+	 * @return
+	 */
+	boolean isResumable(String header) {
+		String[] parts = header.split(DELIMITER, 4);
+		if (parts.length != 4 || !STARTED.equals(parts[0])) {
+			return false;
+		}
+		try {
+			long startedOn = Long.parseLong(parts[1]);
+			return clock.currentTimeMillis() - startedOn <= maxAgeMs && Objects.equals(sourceEndpoint, parts[2])
+					&& Objects.equals(destinationEndpoint, parts[3]);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package org.sagebionetworks.migration.async;
+
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+/**
+ * Declares which MigrationTypes cannot be restored on the destination at the
+ * same time. Restores of conflicting types will fail with lock timeout or
+ * deadlock exceptions.
+ *
+ */
+public interface RestoreConflictModel {
+
+	/**
+	 * Do restores of the given types conflict? Conflicts are symmetric. Restores
+	 * of the same type are limited by {@link #getMaximumConcurrentRestores(MigrationType)}.
+	 *
+	 * @param one
+	 * @param two
+	 * @return True if a restore of one type cannot run while a restore of the
+	 *         other type is running.
+	 */
+	boolean isConflict(MigrationType one, MigrationType two);
+
+	/**
+	 * The maximum number of restores of the given type that can run at the same
+	 * time. Concurrent restores of the same type must have disjoint ID ranges.
+	 *
+	 * @param type
+	 * @return At least one.
+	 */
+	int getMaximumConcurrentRestores(MigrationType type);
+
+}
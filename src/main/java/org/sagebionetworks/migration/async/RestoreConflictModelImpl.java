@@ -0,0 +1,123 @@
+package org.sagebionetworks.migration.async;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+import com.google.inject.Inject;
+
+/**
+ * Conflict model built from the pairs of types declared by
+ * {@link Configuration#getRestoreConflicts()} and the limits declared by
+ * {@link Configuration#getMaximumRestoreJobsPerType()}.
+ *
+ */
+public class RestoreConflictModelImpl implements RestoreConflictModel {
+
+	static final String WILDCARD = "*";
+	static final String PAIR_SEPARATOR = ",";
+	static final String TYPE_SEPARATOR = ":";
+
+	Map<MigrationType, Set<MigrationType>> conflicts;
+	Map<MigrationType, Integer> maximumConcurrentRestores;
+
+	@Inject
+	public RestoreConflictModelImpl(Configuration config) {
+		this(config.getRestoreConflicts(), config.getMaximumRestoreJobsPerType());
+	}
+
+	/**
+	 * @param declaredConflicts Comma separated pairs of conflicting types such as:
+	 *                          'CHANGE:NODE,CHANGE:ACL'.
+	 */
+	public RestoreConflictModelImpl(String declaredConflicts) {
+		this(declaredConflicts, null);
+	}
+
+	/**
+	 * @param declaredConflicts Comma separated pairs of conflicting types such as:
+	 *                          'CHANGE:NODE,CHANGE:ACL'.
+	 * @param declaredLimits    Comma separated limits of concurrent restores per
+	 *                          type such as: 'NODE:4,ACL:2'.
+	 */
+	public RestoreConflictModelImpl(String declaredConflicts, String declaredLimits) {
+		conflicts = new EnumMap<>(MigrationType.class);
+		maximumConcurrentRestores = new EnumMap<>(MigrationType.class);
+		parseConflicts(declaredConflicts);
+		parseLimits(declaredLimits);
+	}
+
+	void parseConflicts(String declaredConflicts) {
+		for (MigrationType type : MigrationType.values()) {
+			// a type always conflicts with itself.
+			conflicts.put(type, EnumSet.of(type));
+		}
+		if (declaredConflicts == null) {
+			return;
+		}
+		for (String pair : declaredConflicts.split(PAIR_SEPARATOR)) {
+			if (pair.trim().isEmpty()) {
+				continue;
+			}
+			String[] types = pair.split(TYPE_SEPARATOR);
+			if (types.length != 2) {
+				throw new IllegalArgumentException("Expected a pair of types such as 'CHANGE:NODE' but was: " + pair);
+			}
+			for (MigrationType one : parseTypes(types[0])) {
+				for (MigrationType two : parseTypes(types[1])) {
+					conflicts.get(one).add(two);
+					conflicts.get(two).add(one);
+				}
+			}
+		}
+	}
+
+	void parseLimits(String declaredLimits) {
+		if (declaredLimits == null) {
+			return;
+		}
+		for (String pair : declaredLimits.split(PAIR_SEPARATOR)) {
+			if (pair.trim().isEmpty()) {
+				continue;
+			}
+			String[] parts = pair.split(TYPE_SEPARATOR);
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Expected a type and limit such as 'NODE:4' but was: " + pair);
+			}
+			int limit = Integer.parseInt(parts[1].trim());
+			if (limit < 1) {
+				throw new IllegalArgumentException("The limit must be at least one: " + pair);
+			}
+			for (MigrationType type : parseTypes(parts[0])) {
+				maximumConcurrentRestores.put(type, limit);
+			}
+		}
+	}
+
+	/**
+	 * @param name The name of a MigrationType or the wildcard.
+	 * @return
+	 */
+	static Set<MigrationType> parseTypes(String name) {
+		name = name.trim();
+		if (WILDCARD.equals(name)) {
+			return EnumSet.allOf(MigrationType.class);
+		}
+		return EnumSet.of(MigrationType.valueOf(name));
+	}
+
+	@Override
+	public boolean isConflict(MigrationType one, MigrationType two) {
+		return conflicts.get(one).contains(two);
+	}
+
+	@Override
+	public int getMaximumConcurrentRestores(MigrationType type) {
+		return maximumConcurrentRestores.getOrDefault(type, 1);
+	}
+
+}
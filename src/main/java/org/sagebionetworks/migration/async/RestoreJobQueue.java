@@ -1,6 +1,11 @@
 package org.sagebionetworks.migration.async;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.sagebionetworks.migration.AsyncMigrationException;
+import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
+import org.sagebionetworks.repo.model.migration.MigrationType;
 
 /**
  * Abstraction for off-loading DestinationJob to be run asynchronously.
@@ -9,11 +14,20 @@ import org.sagebionetworks.migration.AsyncMigrationException;
 public interface RestoreJobQueue {
 	
 	/**
-	 * Push a new job to be executed on the destination.
+	 * Push a new job to be executed on the destination. This method will block
+	 * while too many jobs are waiting to be started.
 	 * 
 	 * @param job
 	 */
 	public void pushJob(DestinationJob job);
+
+	/**
+	 * Set the estimated work of each type. When more than one job can be started,
+	 * the jobs of the types with the most remaining work are started first.
+	 * 
+	 * @param primaryTypes
+	 */
+	public void setWorkEstimates(List<TypeToMigrateMetadata> primaryTypes);
 	
 	/**
 	 * Are all jobs done?
@@ -24,5 +38,27 @@ public interface RestoreJobQueue {
 	 */
 	public boolean isDone() throws AsyncMigrationException;
 
+	/**
+	 * Block until all pushed jobs are started and completed.
+	 * 
+	 * @throws AsyncMigrationException If one or more AsyncMigrationException
+	 *                                 occur while processing the jobs, this
+	 *                                 method will throw the last
+	 *                                 AsyncMigrationException encountered after
+	 *                                 all jobs are done.
+	 * @throws InterruptedException
+	 */
+	public void awaitAllJobsDone() throws AsyncMigrationException, InterruptedException;
+
+	/**
+	 * Get a future that completes once all pushed jobs of the given type are
+	 * started and completed. Jobs of other types can still be running.
+	 * 
+	 * @param type
+	 * @return The future will complete exceptionally with the last
+	 *         AsyncMigrationException of a job of this type that could not be
+	 *         completed, or if the queue terminates.
+	 */
+	public CompletableFuture<Void> whenAllJobsDone(MigrationType type);
 
 }
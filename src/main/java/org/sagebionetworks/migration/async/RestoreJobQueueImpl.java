@@ -1,70 +1,356 @@
 package org.sagebionetworks.migration.async;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.migration.AsyncMigrationException;
 import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
+import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
+import org.sagebionetworks.repo.model.migration.IdRange;
 import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.util.Clock;
 
 /**
- * DestinationJob of the same MigrationType are run in sequentially, while jobs
- * of different MigrationType are run concurrently.
+ * Up to the per-type limit of DestinationJobs of the same MigrationType run at
+ * the same time, as long as their ID ranges are disjoint. By default the limit
+ * is one, so the jobs of a type run sequentially. Jobs of different
+ * MigrationType run concurrently unless the RestoreConflictModel declares that
+ * the types conflict.
  * 
- * We do not run jobs of the same type concurrently because they will fail with
- * lock timeout or deadlock exceptions.
+ * We do not run jobs of conflicting types concurrently because they will fail
+ * with lock timeout or deadlock exceptions.
  * 
- * The public methods of this class are called from two separate threads; the
- * main thread and the timer thread. All public methods are synchronized to
- * ensure consistency between the two thread.
+ * When more than one type has a job ready to start, the types with the most
+ * estimated remaining work are started first, so the largest types do not end
+ * up restoring alone at the end of the migration. Jobs of the same type are
+ * started in the order they were pushed. A job that is waiting on a conflict
+ * also holds back the lower priority jobs that conflict with it.
+ * 
+ * The number of jobs waiting to start can be bounded per type and globally.
+ * Once either high-water mark is reached, {@link #pushJob(DestinationJob)}
+ * blocks until the restores catch up, which stops the production of new
+ * backups on the source. Concurrent producers can overshoot a high-water mark
+ * by at most one job each.
+ * 
+ * The waiting jobs are held in a deque per type, so the cost of finding the
+ * next job to start grows with the number of types rather than the number of
+ * waiting jobs.
+ * 
+ * Producers push jobs to a lock-free inbox and request a dispatch without
+ * waiting on any lock. A single dispatcher, run on the provided completion
+ * executor, moves the inbox to the waiting deques and starts every eligible
+ * job. The choice of each job is made while holding the monitor, but the call
+ * that starts the job on the destination is made without it, so producers,
+ * completions and the timer are never blocked by the latency of the
+ * destination. When the future of a running job completes, the completion is
+ * handled on the completion executor: a new dispatch is requested and any
+ * thread waiting in {@link #awaitAllJobsDone()} is notified. The futures from
+ * {@link #whenAllJobsDone(MigrationType)} of each type with no remaining jobs
+ * are completed at the same time. No thread is
+ * blocked waiting on a running job. The timer thread only reports the status
+ * of the queue and requests a dispatch to retry any jobs that failed.
+ * 
+ * A job that fails to start or fails while running is put back in the queue
+ * and retried in place with an exponential backoff, so a transient failure of
+ * one job does not require the entire migration to be retried. The later jobs
+ * of the same type wait behind a job in backoff, so the jobs of a type are
+ * never started out of order; a later restore or delete could touch the same
+ * rows as the failed job. Jobs of other types are not held back. Only when a job
+ * has failed maxRetries times is its failure exposed by {@link #isDone()} and
+ * by the future of its type.
+ * 
+ * The waiting deques, running jobs and failures are only accessed while
+ * holding the monitor.
  *
  */
 public class RestoreJobQueueImpl implements RestoreJobQueue, Runnable {
 
+	static final long INITIAL_RETRY_DELAY_MS = 1000L;
+	static final long MAXIMUM_RETRY_DELAY_MS = 60 * 1000L;
+
 	DestinationJobExecutor jobExecutor;
+	RestoreConflictModel conflictModel;
+	Executor completionExecutor;
+	Clock clock;
+	int maxRetries;
+	int maxWaitingJobsPerType;
+	int maxWaitingJobs;
 	Logger logger;
 	/*
-	 * The queue of jobs waiting to be started.
+	 * Jobs pushed by the producers that have not been moved to the waiting deques.
+	 */
+	Queue<WaitingJob> inbox;
+	/*
+	 * The jobs waiting to be started of each type in push order. Only types with
+	 * waiting jobs are included.
 	 */
-	List<DestinationJob> jobWaitingQueue;
+	Map<MigrationType, Deque<WaitingJob>> waitingJobs;
+	/*
+	 * The number of jobs in the inbox or the waiting deques, in total and by type.
+	 */
+	AtomicInteger waitingJobCount;
+	Map<MigrationType, AtomicInteger> waitingJobCounts;
+	/*
+	 * Pushed jobs are numbered up from zero while retried jobs are numbered down
+	 * so they are ahead of all other jobs.
+	 */
+	AtomicLong pushSequence;
+	long retrySequence;
+	/*
+	 * The number of dispatch requests not yet handled by the dispatcher.
+	 */
+	AtomicInteger dispatchRequests;
 	/*
 	 * Mapping of the running jobs by MigrationType.
 	 */
-	Map<MigrationType, Future<?>> runningJobs;
+	Map<MigrationType, List<DestinationJob>> runningJobs;
+	/*
+	 * The estimated remaining work of each type.
+	 */
+	Map<MigrationType, WorkEstimate> workEstimates;
+	/*
+	 * The failures of each job that is waiting to be retried.
+	 */
+	Map<DestinationJob, FailedJob> failedJobs;
 	AsyncMigrationException lastException;
-	RuntimeException terminationException;
+	/*
+	 * The last failure of each type that has not been reported.
+	 */
+	Map<MigrationType, AsyncMigrationException> typeExceptions;
+	/*
+	 * The futures to complete once all jobs of a type are done.
+	 */
+	Map<MigrationType, List<CompletableFuture<Void>>> typeDoneFutures;
+	volatile RuntimeException terminationException;
 
 	/**
-	 * Create a new queue. The caller must all call timerFired() from a timer
-	 * thread.
+	 * Create a new queue. The caller should also call run() from a timer thread to
+	 * report the status of the queue.
 	 * 
 	 * @param jobExecutor
+	 * @param conflictModel      Declares which types cannot be restored at the
+	 *                           same time.
+	 * @param completionExecutor The completion of each job is handled by a task
+	 *                           run on this executor.
+	 * @param clock
+	 * @param maxRetries         The maximum number of times each job will be
+	 *                           attempted before its failure is exposed.
 	 * @param loggerFactory
 	 */
-	public RestoreJobQueueImpl(DestinationJobExecutor jobExecutor, LoggerFactory loggerFactory) {
+	public RestoreJobQueueImpl(DestinationJobExecutor jobExecutor, RestoreConflictModel conflictModel,
+			Executor completionExecutor, Clock clock, int maxRetries, LoggerFactory loggerFactory) {
+		this(jobExecutor, conflictModel, completionExecutor, clock, maxRetries, 0, 0, loggerFactory);
+	}
+
+	/**
+	 * Create a new queue with bounds on the number of jobs waiting to start.
+	 * 
+	 * @param jobExecutor
+	 * @param conflictModel
+	 * @param completionExecutor
+	 * @param clock
+	 * @param maxRetries
+	 * @param maxWaitingJobsPerType The maximum number of waiting jobs of a single
+	 *                              type. Zero for no limit.
+	 * @param maxWaitingJobs        The maximum number of waiting jobs of all
+	 *                              types. Zero for no limit.
+	 * @param loggerFactory
+	 */
+	public RestoreJobQueueImpl(DestinationJobExecutor jobExecutor, RestoreConflictModel conflictModel,
+			Executor completionExecutor, Clock clock, int maxRetries, int maxWaitingJobsPerType, int maxWaitingJobs,
+			LoggerFactory loggerFactory) {
 		this.jobExecutor = jobExecutor;
+		this.conflictModel = conflictModel;
+		this.completionExecutor = completionExecutor;
+		this.clock = clock;
+		this.maxRetries = Math.max(1, maxRetries);
+		this.maxWaitingJobsPerType = maxWaitingJobsPerType;
+		this.maxWaitingJobs = maxWaitingJobs;
 		this.logger = loggerFactory.getLogger(RestoreJobQueueImpl.class);
-		jobWaitingQueue = new LinkedList<>();
-		runningJobs = new LinkedHashMap<>(MigrationType.values().length);
+		inbox = new ConcurrentLinkedQueue<>();
+		waitingJobs = new EnumMap<>(MigrationType.class);
+		waitingJobCount = new AtomicInteger();
+		waitingJobCounts = new EnumMap<>(MigrationType.class);
+		for (MigrationType type : MigrationType.values()) {
+			waitingJobCounts.put(type, new AtomicInteger());
+		}
+		pushSequence = new AtomicLong();
+		dispatchRequests = new AtomicInteger();
+		runningJobs = new EnumMap<>(MigrationType.class);
+		failedJobs = new IdentityHashMap<>();
+		workEstimates = new EnumMap<>(MigrationType.class);
+		typeExceptions = new EnumMap<>(MigrationType.class);
+		typeDoneFutures = new EnumMap<>(MigrationType.class);
 	}
 
 	/**
-	 * Push a job to the waiting job queue. Note: This method will be called from
-	 * the main thread.
+	 * The remaining work of each type is estimated from the number of rows on the
+	 * source and the density of the rows over the source ID span.
 	 */
 	@Override
-	public synchronized void pushJob(DestinationJob job) {
+	public synchronized void setWorkEstimates(List<TypeToMigrateMetadata> primaryTypes) {
+		workEstimates.clear();
+		for (TypeToMigrateMetadata metadata : primaryTypes) {
+			long sourceCount = metadata.getSrcCount() == null ? 0L : metadata.getSrcCount();
+			double rowsPerId = 0;
+			if (metadata.getSrcMinId() != null && metadata.getSrcMaxId() != null) {
+				long idSpan = metadata.getSrcMaxId() - metadata.getSrcMinId() + 1;
+				rowsPerId = idSpan > 0 ? (double) sourceCount / idSpan : 0;
+			}
+			workEstimates.put(metadata.getType(), new WorkEstimate(sourceCount, rowsPerId));
+		}
+	}
+
+	/**
+	 * @param type
+	 * @return The estimated number of rows of the given type that remain to be
+	 *         restored.
+	 */
+	long getRemainingRows(MigrationType type) {
+		WorkEstimate estimate = workEstimates.get(type);
+		return estimate == null ? 0L : estimate.remainingRows;
+	}
+
+	/**
+	 * Deduct the estimated rows of a finished job from the remaining work of its
+	 * type. Only jobs with a known ID range can be estimated.
+	 * 
+	 * @param job
+	 */
+	void deductFinishedWork(DestinationJob job) {
+		WorkEstimate estimate = workEstimates.get(job.getMigrationType());
+		if (estimate == null || !(job instanceof RestoreDestinationJob) || !hasRange(job)) {
+			// deletes do not restore any rows.
+			return;
+		}
+		RestoreDestinationJob restore = (RestoreDestinationJob) job;
+		long idSpan = restore.getMaximumId() - restore.getMinimumId() + 1;
+		long rows = (long) Math.ceil(idSpan * estimate.rowsPerId);
+		estimate.remainingRows = Math.max(0L, estimate.remainingRows - rows);
+	}
+
+	/**
+	 * Push a job to the inbox and request a dispatch to start it if it is
+	 * eligible to run. No lock is taken unless the caller must block on a
+	 * high-water mark. Note: This method will be called from the job discovery
+	 * threads.
+	 */
+	@Override
+	public void pushJob(DestinationJob job) {
+		MigrationType type = job.getMigrationType();
+		if (isAtHighWaterMark(type)) {
+			awaitBelowHighWaterMark(type);
+		}
 		if(this.terminationException != null) {
 			throw terminationException;
 		}
-		// Add the job to the wait queue.
-		jobWaitingQueue.add(job);
+		// counted before it is visible in the inbox so isDone() cannot miss it.
+		waitingJobCount.incrementAndGet();
+		waitingJobCounts.get(type).incrementAndGet();
+		inbox.add(new WaitingJob(job, pushSequence.getAndIncrement()));
+		requestDispatch();
+	}
+
+	/**
+	 * Block until the number of waiting jobs is below both high-water marks or
+	 * the queue terminates.
+	 * 
+	 * @param type
+	 */
+	synchronized void awaitBelowHighWaterMark(MigrationType type) {
+		try {
+			while (terminationException == null && isAtHighWaterMark(type)) {
+				// notified each time a job is started or the queue terminates.
+				wait();
+			}
+		} catch (InterruptedException e) {
+			// interrupt will trigger failure.
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Is the number of waiting jobs at either high-water mark?
+	 * 
+	 * @param type The type of the job to be pushed.
+	 * @return
+	 */
+	boolean isAtHighWaterMark(MigrationType type) {
+		if (maxWaitingJobs > 0 && waitingJobCount.get() >= maxWaitingJobs) {
+			return true;
+		}
+		return maxWaitingJobsPerType > 0 && getWaitingJobCount(type) >= maxWaitingJobsPerType;
+	}
+
+	/**
+	 * @param type
+	 * @return The number of jobs of the given type waiting to be started.
+	 */
+	int getWaitingJobCount(MigrationType type) {
+		return waitingJobCounts.get(type).get();
+	}
+
+	/**
+	 * Move all jobs from the inbox to the waiting deques.
+	 */
+	void drainInbox() {
+		WaitingJob waiting;
+		while ((waiting = inbox.poll()) != null) {
+			addWaitingJob(waiting, false);
+		}
+	}
+
+	/**
+	 * Add a job to the deque of its type. The job must already be counted.
+	 * 
+	 * @param waiting
+	 * @param first   When true the job is added to the front of the deque.
+	 */
+	void addWaitingJob(WaitingJob waiting, boolean first) {
+		Deque<WaitingJob> waitingOfType = waitingJobs.computeIfAbsent(waiting.job.getMigrationType(),
+				t -> new ArrayDeque<>());
+		if (first) {
+			waitingOfType.addFirst(waiting);
+		} else {
+			waitingOfType.addLast(waiting);
+		}
+	}
+
+	/**
+	 * Remove the given job from the deque of its type. The type is removed once
+	 * it has no waiting jobs.
+	 * 
+	 * @param waiting
+	 */
+	void removeWaitingJob(WaitingJob waiting) {
+		MigrationType type = waiting.job.getMigrationType();
+		Deque<WaitingJob> waitingOfType = waitingJobs.get(type);
+		// usually the head of the deque.
+		waitingOfType.remove(waiting);
+		if (waitingOfType.isEmpty()) {
+			waitingJobs.remove(type);
+		}
+		waitingJobCount.decrementAndGet();
+		waitingJobCounts.get(type).decrementAndGet();
 	}
 
 	/**
@@ -76,102 +362,467 @@ public class RestoreJobQueueImpl implements RestoreJobQueue, Runnable {
 		if(this.terminationException != null) {
 			throw terminationException;
 		}
-		boolean isDone = jobWaitingQueue.isEmpty() && runningJobs.isEmpty();
+		boolean isDone = waitingJobCount.get() == 0 && runningJobs.isEmpty();
 		// When all jobs are done throw the last exception if one exists.
 		if(isDone && lastException != null) {
-			throw lastException;
+			// Each exception is only reported once so the queue can be reused.
+			AsyncMigrationException toThrow = lastException;
+			lastException = null;
+			typeExceptions.clear();
+			throw toThrow;
 		}
 		return isDone;
 	}
 
+	@Override
+	public synchronized void awaitAllJobsDone() throws InterruptedException {
+		while (!isDone()) {
+			// notified each time a job finishes or the queue terminates.
+			wait();
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> whenAllJobsDone(MigrationType type) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		synchronized (this) {
+			typeDoneFutures.computeIfAbsent(type, t -> new LinkedList<>()).add(future);
+		}
+		completeFinishedTypes();
+		return future;
+	}
+
 	/**
-	 * Called each time the timer is fired. Note: This method is called from the
-	 * timer thread.
+	 * Complete the futures of each type that has no waiting or running jobs. The
+	 * futures are completed without holding the monitor since their dependent
+	 * stages can run on this thread.
 	 */
-	void timerFired() {
-		try {
-			/*
-			 * Check on all of the running jobs. Finished or failed jobs will be removed.
-			 * Status of all running jobs will be reported to the log.
-			 */
-			removeAllFinishedJobs();
-			/*
-			 * Start all jobs that currently do not have
-			 */
+	void completeFinishedTypes() {
+		List<Runnable> completions = new LinkedList<>();
+		synchronized (this) {
+			Iterator<Map.Entry<MigrationType, List<CompletableFuture<Void>>>> iterator = typeDoneFutures.entrySet()
+					.iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<MigrationType, List<CompletableFuture<Void>>> entry = iterator.next();
+				MigrationType type = entry.getKey();
+				Throwable failure;
+				if (terminationException != null) {
+					failure = terminationException;
+				} else if (isTypeDone(type)) {
+					// Each exception is only reported once.
+					failure = typeExceptions.remove(type);
+					if (failure != null && failure == lastException) {
+						lastException = null;
+					}
+				} else {
+					continue;
+				}
+				iterator.remove();
+				for (CompletableFuture<Void> future : entry.getValue()) {
+					completions.add(() -> {
+						if (failure == null) {
+							future.complete(null);
+						} else {
+							future.completeExceptionally(failure);
+						}
+					});
+				}
+			}
+		}
+		completions.forEach(Runnable::run);
+	}
+
+	/**
+	 * Are all jobs of the given type done? Note: The caller must hold the monitor.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	boolean isTypeDone(MigrationType type) {
+		return waitingJobCounts.get(type).get() == 0 && !runningJobs.containsKey(type);
+	}
+
+	/**
+	 * Request a dispatch. A dispatcher is only submitted to the completion
+	 * executor when one is not already running.
+	 */
+	void requestDispatch() {
+		if (dispatchRequests.getAndIncrement() == 0) {
+			completionExecutor.execute(this::dispatch);
+		}
+	}
+
+	/**
+	 * Start all jobs that are eligible to run. Any dispatch requested while the
+	 * dispatcher is running will trigger another pass, so only one dispatcher
+	 * runs at a time.
+	 */
+	void dispatch() {
+		int requests = dispatchRequests.get();
+		do {
 			startEligibleJobs();
+			requests = dispatchRequests.addAndGet(-requests);
+		} while (requests > 0);
+	}
 
-			logger.info("Currently running: " + runningJobs.size() + " restore jobs.  Waiting to start "
-					+ jobWaitingQueue.size() + " restore jobs.");
-		} catch (AsyncMigrationException | ExecutionException e) {
-			logger.warn("Job exception but will continue: "+e.getMessage());
-			lastException = new AsyncMigrationException(e);
+	/**
+	 * Start all jobs that are eligible to run. Note: This method is only called
+	 * from the dispatcher.
+	 */
+	void startEligibleJobs() {
+		try {
+			DestinationJob job;
+			while ((job = reserveNextEligibleJob()) != null) {
+				startJob(job);
+			}
 		} catch (Throwable e) {
 			// Any other exception will trigger termination
-			logger.error("Unexpected exception. Will terminate.");
-			terminationException = new RuntimeException(e);
-		}
-	}
-
-	/**
-	 * Check on all of the running jobs. Finished jobs and failed jobs are removed.
-	 * Calling this method will trigger each running job to report its current
-	 * status to the log.
-	 * @throws ExecutionException 
-	 * @throws InterruptedException 
-	 */
-	void removeAllFinishedJobs() throws InterruptedException, ExecutionException {
-		// remove all finished jobs
-		Iterator<Future<?>> runningItertor = runningJobs.values().iterator();
-		while (runningItertor.hasNext()) {
-			Future<?> future = runningItertor.next();
-			// check if this job is done.
-			if (future.isDone()) {
-				try {
-					// A call to get() is needed to check if the job failed. PLFM-5430.
-					future.get();
-				}finally {
-					// Unconditionally remove finished jobs
-					runningItertor.remove();
-				}
+			terminate(e);
+			completeFinishedTypes();
+		}
+	}
+
+	/**
+	 * Find the next eligible job and mark it as running, so no conflicting job
+	 * can be chosen while it is being started.
+	 * 
+	 * @return The job to start or null if no job can be started.
+	 */
+	synchronized DestinationJob reserveNextEligibleJob() {
+		if (terminationException != null) {
+			return null;
+		}
+		drainInbox();
+		DestinationJob job = nextEligibleJob();
+		if (job != null) {
+			this.runningJobs.computeIfAbsent(job.getMigrationType(), t -> new LinkedList<>()).add(job);
+			// wake any producer blocked on a high-water mark.
+			notifyAll();
+		}
+		return job;
+	}
+
+	/**
+	 * Only the first job of each type is considered, and the types with the most
+	 * remaining work are considered first followed by push order. A job can be
+	 * started as long as no job of a conflicting MigrationType is running or is
+	 * waiting with a higher priority. A failed job, and every job of its type
+	 * behind it, cannot be started until its retry time. See:
+	 * {@link #canStartWithRunningJobs(DestinationJob)}
+	 * 
+	 * @return The highest priority eligible job from the waiting queue or null if
+	 *         no job can be started. The returned job is removed from the waiting
+	 *         queue.
+	 */
+	DestinationJob nextEligibleJob() {
+		long now = clock.currentTimeMillis();
+		// The first job of each type if it is ready to start.
+		List<WaitingJob> candidates = new ArrayList<>(waitingJobs.size());
+		for (Deque<WaitingJob> waitingOfType : waitingJobs.values()) {
+			WaitingJob first = waitingOfType.peekFirst();
+			if (isReady(first, now)) {
+				candidates.add(first);
+			}
+		}
+		candidates.sort(Comparator
+				.comparingLong((WaitingJob waiting) -> getRemainingRows(waiting.job.getMigrationType())).reversed()
+				.thenComparingLong(waiting -> waiting.sequence));
+		// The types of the higher priority jobs that are waiting on a conflict.
+		Set<MigrationType> blockedTypes = EnumSet.noneOf(MigrationType.class);
+		for (WaitingJob waiting : candidates) {
+			MigrationType type = waiting.job.getMigrationType();
+			if (!canStartWithRunningJobs(waiting.job) || isConflict(type, blockedTypes)) {
+				blockedTypes.add(type);
+				continue;
 			}
+			removeWaitingJob(waiting);
+			return waiting.job;
 		}
+		return null;
 	}
 
 	/**
-	 * A restore job can be started as long as a job of the same MigrationType is
-	 * not already running.
+	 * Is the given job ready to start? A failed job is not ready until its retry
+	 * time.
+	 * 
+	 * @param waiting
+	 * @param now
+	 * @return
 	 */
-	void startEligibleJobs() {
-		Iterator<DestinationJob> queuIterator = jobWaitingQueue.iterator();
-		while (queuIterator.hasNext()) {
-			DestinationJob job = queuIterator.next();
-			boolean canJobStart = false;
-			if(MigrationType.CHANGE.equals(job.getMigrationType())) {
-				// Change jobs can only be run if no other jobs are running.
-				if(this.runningJobs.isEmpty()) {
-					canJobStart = true;
-				}
-			}else {
-				/*
-				 * Non-change jobs can run as long as no other job of the 
-				 * same time is already running
-				 */
-				if (!runningJobs.containsKey(job.getMigrationType())) {
-					canJobStart = true;
-				}
+	boolean isReady(WaitingJob waiting, long now) {
+		FailedJob failed = failedJobs.get(waiting.job);
+		return failed == null || failed.retryTimeMs <= now;
+	}
+
+	/**
+	 * Can the given job start alongside the jobs that are already running? A job
+	 * cannot start while a job of a conflicting type is running. A job of a type
+	 * that is already running can only start if the type's concurrency limit is
+	 * not reached and its ID range does not overlap any running job of the type.
+	 * 
+	 * @param job
+	 * @return
+	 */
+	boolean canStartWithRunningJobs(DestinationJob job) {
+		MigrationType type = job.getMigrationType();
+		for (MigrationType runningType : runningJobs.keySet()) {
+			if (runningType != type && conflictModel.isConflict(type, runningType)) {
+				return false;
 			}
-			if(canJobStart) {
-				// Start a job and add it to the queue
-				Future<?> future = jobExecutor.startDestinationJob(job);
-				this.runningJobs.put(job.getMigrationType(), future);
-				queuIterator.remove();
+		}
+		List<DestinationJob> runningOfType = runningJobs.get(type);
+		if (runningOfType == null) {
+			return true;
+		}
+		if (runningOfType.size() >= conflictModel.getMaximumConcurrentRestores(type)) {
+			return false;
+		}
+		for (DestinationJob running : runningOfType) {
+			if (isOverlapping(job, running)) {
+				return false;
 			}
 		}
+		return true;
+	}
+
+	/**
+	 * Could the rows of the two jobs overlap? Ranges are inclusive.
+	 * 
+	 * @param one
+	 * @param two
+	 * @return
+	 */
+	static boolean isOverlapping(DestinationJob one, DestinationJob two) {
+		IdRange first = getRange(one);
+		IdRange second = getRange(two);
+		if (first == null || second == null) {
+			return true;
+		}
+		return first.getMinimumId() <= second.getMaximumId() && second.getMinimumId() <= first.getMaximumId();
+	}
+
+	static boolean hasRange(DestinationJob job) {
+		return getRange(job) != null;
+	}
+
+	/**
+	 * The inclusive range of IDs that the given job could touch. A
+	 * RestoreDestinationJob has a known range when both its minimum and maximum
+	 * ID are set. A DeleteDestinationJob spans from its lowest to its highest ID
+	 * to delete.
+	 * 
+	 * @param job
+	 * @return Null if the range is unknown.
+	 */
+	static IdRange getRange(DestinationJob job) {
+		if (job instanceof RestoreDestinationJob) {
+			RestoreDestinationJob restore = (RestoreDestinationJob) job;
+			if (restore.getMinimumId() == null || restore.getMaximumId() == null) {
+				return null;
+			}
+			return ToolMigrationUtils.createIdRange(restore.getMinimumId(), restore.getMaximumId());
+		}
+		if (job instanceof DeleteDestinationJob) {
+			List<IdRange> ranges = ((DeleteDestinationJob) job).getRangesToDelete();
+			if (ranges.isEmpty()) {
+				return null;
+			}
+			return ToolMigrationUtils.createIdRange(ranges.get(0).getMinimumId(),
+					ranges.get(ranges.size() - 1).getMaximumId());
+		}
+		return null;
+	}
+
+	/**
+	 * Does the given type conflict with any of the other types?
+	 * 
+	 * @param type
+	 * @param others
+	 * @return
+	 */
+	boolean isConflict(MigrationType type, Set<MigrationType> others) {
+		for (MigrationType other : others) {
+			if (conflictModel.isConflict(type, other)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Start the given reserved job and handle its completion when it finishes. A
+	 * job that fails to start with an AsyncMigrationException will be retried.
+	 * Note: This method is called without holding the monitor.
+	 * 
+	 * @param job
+	 */
+	void startJob(DestinationJob job) {
+		CompletableFuture<?> future;
+		try {
+			future = jobExecutor.startDestinationJob(job);
+		} catch (AsyncMigrationException e) {
+			jobFinished(job, e);
+			return;
+		}
+		// The failure must be checked to detect failed jobs. PLFM-5430.
+		future.whenCompleteAsync((result, failure) -> jobFinished(job, failure), completionExecutor);
 	}
 
+	/**
+	 * Called when a running job finishes or a reserved job fails to start. All
+	 * waiting threads are notified and a dispatch is requested to start the next
+	 * eligible jobs. Note: This method is called from the completion executor.
+	 * 
+	 * @param job
+	 * @param failure The exception thrown by the job or null if the job succeeded.
+	 */
+	void jobFinished(DestinationJob job, Throwable failure) {
+		recordFinished(job, failure);
+		completeFinishedTypes();
+		requestDispatch();
+	}
+
+	/**
+	 * Record the outcome of a job that is no longer running.
+	 * 
+	 * @param job
+	 * @param failure
+	 */
+	synchronized void recordFinished(DestinationJob job, Throwable failure) {
+		List<DestinationJob> runningOfType = runningJobs.get(job.getMigrationType());
+		runningOfType.remove(job);
+		if (runningOfType.isEmpty()) {
+			runningJobs.remove(job.getMigrationType());
+		}
+		if (failure instanceof CompletionException && failure.getCause() != null) {
+			failure = failure.getCause();
+		}
+		if (failure instanceof Error) {
+			// Any error will trigger termination
+			terminate(failure);
+		} else if (failure != null) {
+			jobFailed(job, failure);
+		} else {
+			failedJobs.remove(job);
+			deductFinishedWork(job);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Called when a job fails to start or fails while running. The job is put
+	 * back at the front of the queue to be retried after a backoff. Once the job
+	 * has failed maxRetries times it is dropped and its failure will be thrown
+	 * from {@link #isDone()}.
+	 * 
+	 * @param job
+	 * @param failure
+	 */
+	void jobFailed(DestinationJob job, Throwable failure) {
+		FailedJob failed = failedJobs.computeIfAbsent(job, j -> new FailedJob());
+		failed.failureCount++;
+		failed.lastFailure = failure;
+		if (failed.failureCount >= maxRetries) {
+			failedJobs.remove(job);
+			logger.warn("Job failed " + failed.failureCount + " times and will not be retried: " + job + " "
+					+ failure.getMessage());
+			lastException = new AsyncMigrationException(
+					"Job failed " + failed.failureCount + " times: " + job, failed.lastFailure);
+			typeExceptions.put(job.getMigrationType(), lastException);
+		} else {
+			long delayMs = getRetryDelayMs(failed.failureCount);
+			failed.retryTimeMs = clock.currentTimeMillis() + delayMs;
+			logger.warn("Job failed and will be retried in " + delayMs + " MS: " + job + " " + failure.getMessage());
+			waitingJobCount.incrementAndGet();
+			waitingJobCounts.get(job.getMigrationType()).incrementAndGet();
+			addWaitingJob(new WaitingJob(job, --retrySequence), true);
+		}
+	}
+
+	/**
+	 * The delay before retrying a job doubles with each failure.
+	 * 
+	 * @param failureCount
+	 * @return
+	 */
+	static long getRetryDelayMs(int failureCount) {
+		long delayMs = INITIAL_RETRY_DELAY_MS;
+		for (int i = 1; i < failureCount && delayMs < MAXIMUM_RETRY_DELAY_MS; i++) {
+			delayMs *= 2;
+		}
+		return Math.min(delayMs, MAXIMUM_RETRY_DELAY_MS);
+	}
+
+	/**
+	 * Any unexpected exception will terminate the queue.
+	 * 
+	 * @param e
+	 */
+	synchronized void terminate(Throwable e) {
+		logger.error("Unexpected exception. Will terminate.");
+		terminationException = new RuntimeException(e);
+		notifyAll();
+	}
+
+	/**
+	 * Called each time the timer is fired. Note: This method is called from the
+	 * timer thread.
+	 */
 	@Override
-	public synchronized void run() {
-		this.timerFired();
+	public void run() {
+		// retry any job that failed.
+		requestDispatch();
+		logger.info("Currently running: " + getRunningJobCount() + " restore jobs.  Waiting to start "
+				+ waitingJobCount.get() + " restore jobs.");
+	}
+
+	/**
+	 * @return The number of jobs that are running.
+	 */
+	synchronized int getRunningJobCount() {
+		int runningCount = 0;
+		for (List<DestinationJob> runningOfType : runningJobs.values()) {
+			runningCount += runningOfType.size();
+		}
+		return runningCount;
+	}
+
+	/**
+	 * A job waiting to be started.
+	 */
+	static class WaitingJob {
+
+		DestinationJob job;
+		long sequence;
+
+		WaitingJob(DestinationJob job, long sequence) {
+			this.job = job;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * The estimated work that remains for a type.
+	 */
+	static class WorkEstimate {
+
+		long remainingRows;
+		double rowsPerId;
+
+		WorkEstimate(long remainingRows, double rowsPerId) {
+			this.remainingRows = remainingRows;
+			this.rowsPerId = rowsPerId;
+		}
+	}
+
+	/**
+	 * The failures of a job that is waiting to be retried.
+	 */
+	static class FailedJob {
+
+		int failureCount;
+		long retryTimeMs;
+		Throwable lastFailure;
 	}
 
 }
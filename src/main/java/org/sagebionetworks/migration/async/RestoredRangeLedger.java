@@ -0,0 +1,43 @@
+package org.sagebionetworks.migration.async;
+
+import java.util.List;
+
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+/**
+ * An in-memory ledger of the ID ranges restored on the destination during the
+ * current migration run. A range restored in this run already matches the
+ * source, so it does not need to be compared with checksums again.
+ * <p>
+ * Unlike the {@link ProgressJournal}, the ledger is always enabled and is
+ * cleared at the start of each run.
+ *
+ */
+public interface RestoredRangeLedger {
+
+	/**
+	 * Record that a restore of the given range completed on the destination.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 */
+	public void recordRestored(MigrationType type, Long minimumId, Long maximumId);
+
+	/**
+	 * Find the sub-ranges of the given range that were not restored in the
+	 * current run.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @return The unrestored sub-ranges ordered by ID.
+	 */
+	public List<IdRange> findUnrestoredRanges(MigrationType type, Long minimumId, Long maximumId);
+
+	/**
+	 * Forget all restored ranges. Called at the start of each run.
+	 */
+	public void clear();
+}
@@ -0,0 +1,55 @@
+package org.sagebionetworks.migration.async;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.inject.Singleton;
+
+/**
+ * Ledger of restored ranges held in memory. Adjacent ranges are merged.
+ *
+ */
+@Singleton
+public class RestoredRangeLedgerImpl implements RestoredRangeLedger {
+
+	Map<MigrationType, RangeSet<Long>> restored;
+
+	public RestoredRangeLedgerImpl() {
+		restored = new EnumMap<>(MigrationType.class);
+	}
+
+	@Override
+	public synchronized void recordRestored(MigrationType type, Long minimumId, Long maximumId) {
+		if (minimumId == null || maximumId == null) {
+			return;
+		}
+		getRestored(type).add(ToolMigrationUtils.toRange(minimumId, maximumId));
+	}
+
+	@Override
+	public synchronized List<IdRange> findUnrestoredRanges(MigrationType type, Long minimumId, Long maximumId) {
+		return ToolMigrationUtils.findUncoveredRanges(getRestored(type), minimumId, maximumId);
+	}
+
+	@Override
+	public synchronized void clear() {
+		restored.clear();
+	}
+
+	/**
+	 * Get the restored ranges for the given type.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	RangeSet<Long> getRestored(MigrationType type) {
+		return restored.computeIfAbsent(type, t -> TreeRangeSet.create());
+	}
+}
@@ -0,0 +1,46 @@
+package org.sagebionetworks.migration.async;
+
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+/**
+ * Controls the number of rows requested for each backup range of a
+ * MigrationType. The durations of the backup and restore jobs of each type are
+ * recorded so the number of rows can be tuned to reach a target job duration.
+ *
+ */
+public interface RowsPerRangeController {
+
+	/**
+	 * The number of rows to request for each backup range of the given type.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	public long getRowsPerRange(MigrationType type);
+
+	/**
+	 * Record the duration of a finished backup job.
+	 * 
+	 * @param type
+	 * @param backupFileKey The key of the file created by the backup.
+	 * @param durationMs
+	 */
+	public void recordBackup(MigrationType type, String backupFileKey, long durationMs);
+
+	/**
+	 * Record the duration of a finished restore job. The duration of the backup
+	 * of the same file is added to the duration of the restore.
+	 * 
+	 * @param type
+	 * @param backupFileKey The key of the file that was restored.
+	 * @param restoredRowCount
+	 * @param durationMs
+	 */
+	public void recordRestore(MigrationType type, String backupFileKey, Long restoredRowCount, long durationMs);
+
+	/**
+	 * Forget the durations of any backups that were never restored. The tuned
+	 * rows per range of each type are kept. Called at the start of each run.
+	 */
+	public void clear();
+}
@@ -0,0 +1,153 @@
+package org.sagebionetworks.migration.async;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Tunes the rows per range of each MigrationType to reach the target job
+ * duration.
+ * <p>
+ * The time per row of each type is a moving average of the combined backup and
+ * restore duration of each job divided by the number of rows restored. The
+ * fixed overhead of each job is included, so types with small jobs are given
+ * larger ranges. Each adjustment is limited to a factor of two, and the rows
+ * per range of every type stays within a factor of
+ * {@link #MAXIMUM_SCALE_FACTOR} of the configured batch size.
+ *
+ */
+@Singleton
+public class RowsPerRangeControllerImpl implements RowsPerRangeController {
+
+	static final long MAXIMUM_SCALE_FACTOR = 10L;
+	static final long MAXIMUM_STEP_FACTOR = 2L;
+	/*
+	 * Weight of the newest sample in the moving average.
+	 */
+	static final double SMOOTHING = 0.5;
+	/*
+	 * A backup whose restore fails or is never started is not removed until the
+	 * next run, so the number of pending backups is bounded.
+	 */
+	static final int MAXIMUM_PENDING_BACKUPS = 10000;
+
+	Logger logger;
+	long targetJobDurationMs;
+	long initialRowsPerRange;
+	long minimumRowsPerRange;
+	long maximumRowsPerRange;
+	Map<MigrationType, TypeStatistics> typeStatistics;
+	/*
+	 * The duration of each backup that has not been restored yet.
+	 */
+	Map<String, Long> backupDurations;
+
+	@Inject
+	public RowsPerRangeControllerImpl(Configuration config, LoggerFactory loggerFactory) {
+		this.logger = loggerFactory.getLogger(RowsPerRangeControllerImpl.class);
+		this.targetJobDurationMs = config.getTargetJobDurationMs();
+		this.initialRowsPerRange = config.getMaximumBackupBatchSize();
+		this.minimumRowsPerRange = Math.max(1L, initialRowsPerRange / MAXIMUM_SCALE_FACTOR);
+		this.maximumRowsPerRange = initialRowsPerRange * MAXIMUM_SCALE_FACTOR;
+		this.typeStatistics = new EnumMap<>(MigrationType.class);
+		this.backupDurations = new LinkedHashMap<String, Long>() {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > MAXIMUM_PENDING_BACKUPS;
+			}
+		};
+	}
+
+	/**
+	 * Is the rows per range tuned?
+	 * 
+	 * @return
+	 */
+	boolean isEnabled() {
+		return targetJobDurationMs > 0;
+	}
+
+	@Override
+	public synchronized long getRowsPerRange(MigrationType type) {
+		TypeStatistics statistics = typeStatistics.get(type);
+		if (statistics == null) {
+			return initialRowsPerRange;
+		}
+		return statistics.rowsPerRange;
+	}
+
+	@Override
+	public synchronized void recordBackup(MigrationType type, String backupFileKey, long durationMs) {
+		if (!isEnabled() || backupFileKey == null) {
+			return;
+		}
+		backupDurations.put(backupFileKey, durationMs);
+	}
+
+	@Override
+	public synchronized void recordRestore(MigrationType type, String backupFileKey, Long restoredRowCount,
+			long durationMs) {
+		if (!isEnabled()) {
+			return;
+		}
+		Long backupDurationMs = backupFileKey == null ? null : backupDurations.remove(backupFileKey);
+		if (restoredRowCount == null || restoredRowCount < 1) {
+			// An empty range says nothing about the time per row.
+			return;
+		}
+		long jobDurationMs = durationMs + (backupDurationMs == null ? 0L : backupDurationMs);
+		double msPerRow = Math.max(jobDurationMs, 1L) / (double) restoredRowCount;
+		TypeStatistics statistics = typeStatistics.computeIfAbsent(type,
+				t -> new TypeStatistics(initialRowsPerRange, msPerRow));
+		statistics.msPerRow = SMOOTHING * msPerRow + (1.0 - SMOOTHING) * statistics.msPerRow;
+		long nextRowsPerRange = calculateRowsPerRange(statistics.rowsPerRange, statistics.msPerRow);
+		if (nextRowsPerRange != statistics.rowsPerRange) {
+			logger.info("Changing rows per range for " + type + " from " + statistics.rowsPerRange + " to "
+					+ nextRowsPerRange);
+			statistics.rowsPerRange = nextRowsPerRange;
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		backupDurations.clear();
+	}
+
+	/**
+	 * Calculate the next rows per range given the current rows per range and the
+	 * average time per row.
+	 * 
+	 * @param currentRowsPerRange
+	 * @param msPerRow
+	 * @return
+	 */
+	long calculateRowsPerRange(long currentRowsPerRange, double msPerRow) {
+		long ideal = (long) (targetJobDurationMs / msPerRow);
+		// limit the size of each step.
+		long next = Math.max(currentRowsPerRange / MAXIMUM_STEP_FACTOR,
+				Math.min(currentRowsPerRange * MAXIMUM_STEP_FACTOR, ideal));
+		return Math.max(minimumRowsPerRange, Math.min(maximumRowsPerRange, next));
+	}
+
+	/**
+	 * The tuned rows per range and average time per row of a single type.
+	 */
+	static class TypeStatistics {
+
+		long rowsPerRange;
+		double msPerRow;
+
+		TypeStatistics(long rowsPerRange, double msPerRow) {
+			this.rowsPerRange = rowsPerRange;
+			this.msPerRow = msPerRow;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.sagebionetworks.migration.async.checksum;
+
+import java.util.List;
+
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.RangeChecksum;
+
+/**
+ * A local store of the checksum bins that were verified equal on both the
+ * source and destination in previous migration runs.
+ * <p>
+ * The same salt is used for all runs that share the cache, so the source
+ * checksum of a bin can be compared to the checksum recorded when the bin was
+ * last verified. Since the destination is only modified by migration, a bin
+ * with an unchanged source checksum does not need to be checksummed on the
+ * destination again. A bin that was never compared with the destination is
+ * never trusted, even when it is empty on the source.
+ * <p>
+ * The bin number of an ID is the ID divided by the batch size, so bin n covers
+ * the IDs from n * batchSize to (n + 1) * batchSize - 1.
+ *
+ */
+public interface ChecksumCache {
+
+	/**
+	 * Is the cache enabled?
+	 * 
+	 * @return
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * The salt that must be used for all checksums compared with this cache.
+	 * 
+	 * @return
+	 */
+	public String getSalt();
+
+	/**
+	 * Find all ranges within the given range that could differ between the
+	 * source and destination. This includes source bins that changed since they
+	 * were verified, cached bins that no longer exist on the source, and every
+	 * bin that was never compared with the destination.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @param sourceBins The current source checksums for the given range.
+	 * @return The full bins to compare, ordered by ID and limited to the given
+	 *         range. Adjacent bins are merged into a single range.
+	 */
+	public List<IdRange> findUnverifiedRanges(MigrationType type, Long minimumId, Long maximumId,
+			List<RangeChecksum> sourceBins);
+
+	/**
+	 * Record the results of comparing the source and destination checksums for
+	 * the given range. All previous results within the range are replaced, and
+	 * the range is remembered as compared.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 * @param sourceBins     The source checksums for the given range.
+	 * @param mismatchedBins The bins that did not match on the destination.
+	 */
+	public void recordResults(MigrationType type, Long minimumId, Long maximumId, List<RangeChecksum> sourceBins,
+			List<RangeChecksum> mismatchedBins);
+}
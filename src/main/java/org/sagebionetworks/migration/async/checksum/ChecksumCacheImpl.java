@@ -0,0 +1,337 @@
+package org.sagebionetworks.migration.async.checksum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.RangeChecksum;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Checksum cache stored in a local properties file.
+ * <p>
+ * Each bin is stored with the key: 'bin.&lt;type&gt;.&lt;binNumber&gt;'. A
+ * verified bin has the value: '&lt;minId&gt;,&lt;maxId&gt;,&lt;count&gt;,&lt;checksum&gt;'.
+ * A bin that did not match has the value: '&lt;minId&gt;,&lt;maxId&gt;' and will
+ * be compared on the destination until it matches. The ranges that were
+ * compared with the destination are stored with the key: 'compared.&lt;type&gt;'
+ * and the value: '&lt;minId&gt;-&lt;maxId&gt;,...'.
+ * <p>
+ * The cache is reset with a new salt if the backup batch size (which defines
+ * the bins) or the repository endpoint of either stack changes, since a
+ * different or rebuilt destination cannot be trusted to hold the verified
+ * bins.
+ * <p>
+ * The file is rewritten after each change so a failed run keeps everything it
+ * learned. Failures to read or write the file are logged and ignored since
+ * the cache is only an optimization.
+ *
+ */
+@Singleton
+public class ChecksumCacheImpl implements ChecksumCache {
+
+	static final String KEY_SALT = "salt";
+	static final String KEY_BATCH_SIZE = "batch.size";
+	static final String KEY_SOURCE_ENDPOINT = "source.endpoint";
+	static final String KEY_DESTINATION_ENDPOINT = "destination.endpoint";
+	static final String BIN_PREFIX = "bin.";
+	static final String COMPARED_PREFIX = "compared.";
+	static final String DELIMITER = ",";
+	static final String RANGE_DELIMITER = "-";
+
+	Logger logger;
+	String cacheFile;
+	long batchSize;
+	String sourceEndpoint;
+	String destinationEndpoint;
+	String salt;
+	/*
+	 * Cached bins by type and bin number. A bin with a null checksum did not
+	 * match.
+	 */
+	Map<MigrationType, TreeMap<Long, RangeChecksum>> bins;
+	/*
+	 * The ranges of each type that were compared with the destination.
+	 */
+	Map<MigrationType, RangeSet<Long>> compared;
+
+	@Inject
+	public ChecksumCacheImpl(Configuration config, LoggerFactory loggerFactory) {
+		this.logger = loggerFactory.getLogger(ChecksumCacheImpl.class);
+		this.cacheFile = config.getChecksumCacheFile();
+		this.batchSize = config.getMaximumBackupBatchSize();
+		if (isEnabled()) {
+			this.sourceEndpoint = config.getSourceConnectionInfo().getRepositoryEndPoint();
+			this.destinationEndpoint = config.getDestinationConnectionInfo().getRepositoryEndPoint();
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return cacheFile != null;
+	}
+
+	@Override
+	public synchronized String getSalt() {
+		load();
+		return salt;
+	}
+
+	@Override
+	public synchronized List<IdRange> findUnverifiedRanges(MigrationType type, Long minimumId, Long maximumId,
+			List<RangeChecksum> sourceBins) {
+		load();
+		TreeMap<Long, RangeChecksum> typeBins = getBins(type);
+		RangeSet<Long> unverified = TreeRangeSet.create();
+		Set<Long> sourceBinNumbers = new HashSet<>();
+		if (sourceBins != null) {
+			for (RangeChecksum source : sourceBins) {
+				sourceBinNumbers.add(source.getBinNumber());
+				RangeChecksum cached = typeBins.get(source.getBinNumber());
+				if (cached == null || cached.getChecksum() == null || !cached.getChecksum().equals(source.getChecksum())
+						|| !cached.getCount().equals(source.getCount())) {
+					unverified.add(getBinRange(source.getBinNumber()));
+				}
+			}
+		}
+		// Bins that no longer exist on the source could still exist on the destination.
+		for (RangeChecksum cached : typeBins.values()) {
+			if (!sourceBinNumbers.contains(cached.getBinNumber()) && overlaps(cached, minimumId, maximumId)) {
+				unverified.add(getBinRange(cached.getBinNumber()));
+			}
+		}
+		// The destination could have rows in any bin that was never compared.
+		for (IdRange never : ToolMigrationUtils.findUncoveredRanges(getCompared(type), minimumId, maximumId)) {
+			unverified.add(getBinRange(never.getMinimumId() / batchSize).span(getBinRange(never.getMaximumId() / batchSize)));
+		}
+		List<IdRange> ranges = new ArrayList<>();
+		for (Range<Long> range : unverified.subRangeSet(ToolMigrationUtils.toRange(minimumId, maximumId)).asRanges()) {
+			ranges.add(ToolMigrationUtils.toIdRange(range));
+		}
+		return ranges;
+	}
+
+	/**
+	 * The full range of IDs of the given bin.
+	 * 
+	 * @param binNumber
+	 * @return
+	 */
+	Range<Long> getBinRange(long binNumber) {
+		return ToolMigrationUtils.toRange(binNumber * batchSize, (binNumber + 1) * batchSize - 1);
+	}
+
+	@Override
+	public synchronized void recordResults(MigrationType type, Long minimumId, Long maximumId,
+			List<RangeChecksum> sourceBins, List<RangeChecksum> mismatchedBins) {
+		load();
+		TreeMap<Long, RangeChecksum> typeBins = getBins(type);
+		getCompared(type).add(ToolMigrationUtils.toRange(minimumId, maximumId));
+		// Bins that no longer exist on either stack are removed.
+		typeBins.values().removeIf(cached -> overlaps(cached, minimumId, maximumId));
+		Set<Long> mismatchedBinNumbers = new HashSet<>();
+		for (RangeChecksum mismatch : mismatchedBins) {
+			mismatchedBinNumbers.add(mismatch.getBinNumber());
+			typeBins.put(mismatch.getBinNumber(), copyRange(mismatch));
+		}
+		if (sourceBins != null) {
+			for (RangeChecksum source : sourceBins) {
+				if (!mismatchedBinNumbers.contains(source.getBinNumber())) {
+					RangeChecksum verified = copyRange(source);
+					verified.setCount(source.getCount());
+					verified.setChecksum(source.getChecksum());
+					typeBins.put(source.getBinNumber(), verified);
+				}
+			}
+		}
+		save();
+	}
+
+	/**
+	 * Get the cached bins for the given type.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	TreeMap<Long, RangeChecksum> getBins(MigrationType type) {
+		return bins.computeIfAbsent(type, t -> new TreeMap<>());
+	}
+
+	/**
+	 * Get the ranges of the given type that were compared with the destination.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	RangeSet<Long> getCompared(MigrationType type) {
+		return compared.computeIfAbsent(type, t -> TreeRangeSet.create());
+	}
+
+	/**
+	 * Load the cache from the file on the first call.
+	 */
+	void load() {
+		if (bins != null) {
+			return;
+		}
+		bins = new EnumMap<>(MigrationType.class);
+		compared = new EnumMap<>(MigrationType.class);
+		Path path = Paths.get(cacheFile);
+		Properties props = new Properties();
+		if (Files.exists(path)) {
+			try (InputStream in = Files.newInputStream(path)) {
+				props.load(in);
+			} catch (IOException | IllegalArgumentException e) {
+				logger.warn("Failed to read the checksum cache. Will start a new cache: " + e.getMessage());
+				props.clear();
+			}
+		}
+		salt = props.getProperty(KEY_SALT);
+		if (salt == null || !String.valueOf(batchSize).equals(props.getProperty(KEY_BATCH_SIZE))
+				|| !Objects.equals(sourceEndpoint, props.getProperty(KEY_SOURCE_ENDPOINT))
+				|| !Objects.equals(destinationEndpoint, props.getProperty(KEY_DESTINATION_ENDPOINT))) {
+			// The bins of the cache cannot be used.
+			logger.info("Starting a new checksum cache: " + cacheFile);
+			salt = UUID.randomUUID().toString();
+			return;
+		}
+		for (String key : props.stringPropertyNames()) {
+			if (key.startsWith(BIN_PREFIX)) {
+				try {
+					String[] keyParts = key.substring(BIN_PREFIX.length()).split("\\.");
+					MigrationType type = MigrationType.valueOf(keyParts[0]);
+					RangeChecksum bin = parseBin(Long.parseLong(keyParts[1]), props.getProperty(key));
+					getBins(type).put(bin.getBinNumber(), bin);
+				} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+					// Unknown types and malformed bins are ignored.
+					logger.warn("Ignoring checksum cache entry: " + key);
+				}
+			} else if (key.startsWith(COMPARED_PREFIX)) {
+				try {
+					MigrationType type = MigrationType.valueOf(key.substring(COMPARED_PREFIX.length()));
+					parseRanges(props.getProperty(key), getCompared(type));
+				} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+					// Unknown types and malformed ranges are ignored.
+					logger.warn("Ignoring checksum cache entry: " + key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the entire cache to the file.
+	 */
+	void save() {
+		Properties props = new Properties();
+		props.setProperty(KEY_SALT, salt);
+		props.setProperty(KEY_BATCH_SIZE, String.valueOf(batchSize));
+		props.setProperty(KEY_SOURCE_ENDPOINT, sourceEndpoint);
+		props.setProperty(KEY_DESTINATION_ENDPOINT, destinationEndpoint);
+		for (Map.Entry<MigrationType, TreeMap<Long, RangeChecksum>> entry : bins.entrySet()) {
+			for (RangeChecksum bin : entry.getValue().values()) {
+				props.setProperty(BIN_PREFIX + entry.getKey().name() + "." + bin.getBinNumber(), formatBin(bin));
+			}
+		}
+		for (Map.Entry<MigrationType, RangeSet<Long>> entry : compared.entrySet()) {
+			props.setProperty(COMPARED_PREFIX + entry.getKey().name(), formatRanges(entry.getValue()));
+		}
+		Path path = Paths.get(cacheFile);
+		try {
+			// replace the file only after it is fully written.
+			Path temp = Paths.get(cacheFile + ".tmp");
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				props.store(out, "Migration checksum cache");
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.warn("Failed to write the checksum cache: " + e.getMessage());
+		}
+	}
+
+	static String formatBin(RangeChecksum bin) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(bin.getMinimumId()).append(DELIMITER).append(bin.getMaximumId());
+		if (bin.getChecksum() != null) {
+			builder.append(DELIMITER).append(bin.getCount()).append(DELIMITER).append(bin.getChecksum());
+		}
+		return builder.toString();
+	}
+
+	static String formatRanges(RangeSet<Long> ranges) {
+		StringBuilder builder = new StringBuilder();
+		for (Range<Long> range : ranges.asRanges()) {
+			IdRange idRange = ToolMigrationUtils.toIdRange(range);
+			if (builder.length() > 0) {
+				builder.append(DELIMITER);
+			}
+			builder.append(idRange.getMinimumId()).append(RANGE_DELIMITER).append(idRange.getMaximumId());
+		}
+		return builder.toString();
+	}
+
+	static void parseRanges(String value, RangeSet<Long> ranges) {
+		for (String range : value.split(DELIMITER)) {
+			if (!range.isEmpty()) {
+				String[] parts = range.split(RANGE_DELIMITER);
+				ranges.add(ToolMigrationUtils.toRange(Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+			}
+		}
+	}
+
+	static RangeChecksum parseBin(Long binNumber, String value) {
+		String[] parts = value.split(DELIMITER, 4);
+		RangeChecksum bin = new RangeChecksum();
+		bin.setBinNumber(binNumber);
+		bin.setMinimumId(Long.parseLong(parts[0]));
+		bin.setMaximumId(Long.parseLong(parts[1]));
+		if (parts.length == 4) {
+			bin.setCount(Long.parseLong(parts[2]));
+			bin.setChecksum(parts[3]);
+		}
+		return bin;
+	}
+
+	/**
+	 * Copy the bin number and range of the given bin.
+	 * 
+	 * @param bin
+	 * @return
+	 */
+	static RangeChecksum copyRange(RangeChecksum bin) {
+		RangeChecksum copy = new RangeChecksum();
+		copy.setBinNumber(bin.getBinNumber());
+		copy.setMinimumId(bin.getMinimumId());
+		copy.setMaximumId(bin.getMaximumId());
+		return copy;
+	}
+
+	static boolean overlaps(RangeChecksum bin, Long minimumId, Long maximumId) {
+		return bin.getMaximumId() >= minimumId && bin.getMinimumId() <= maximumId;
+	}
+
+}
@@ -13,11 +13,13 @@ public interface ChecksumDeltaBuilder {
 	 * For each migration type, compare the checksums of Id ranges that both the
 	 * sources and destination have in common. For each case where the checksums do
 	 * not match, create a backup to be restored on the destination. This builder
-	 * provides an iterator over all of the resulting restore jobs.
+	 * provides an iterator over all of the resulting restore jobs for each type.
 	 * 
 	 * @param primaryTypes
-	 * @return
+	 * @return One iterator per type, in the same order as the provided types.
+	 *         Each iterator is independent so the types can be processed
+	 *         concurrently.
 	 */
-	Iterator<DestinationJob> buildAllRestoreJobsForMismatchedChecksums(List<TypeToMigrateMetadata> primaryTypes);
+	List<Iterator<DestinationJob>> buildAllRestoreJobsForMismatchedChecksums(List<TypeToMigrateMetadata> primaryTypes);
 
 }
@@ -1,39 +1,206 @@
 package org.sagebionetworks.migration.async.checksum;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
+import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.async.AsynchronousJobExecutor;
 import org.sagebionetworks.migration.async.DestinationJob;
+import org.sagebionetworks.migration.async.ResultPair;
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactory;
 import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
+import org.sagebionetworks.repo.model.migration.AsyncMigrationTypeChecksumRequest;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.MigrationTypeChecksum;
 
-import com.google.common.collect.Iterators;
 import com.google.inject.Inject;
 
 public class ChecksumDeltaBuilderImpl implements ChecksumDeltaBuilder {
 
+	static final String TYPE_CHECKSUM_THREAD_NAME = "type-checksum-start";
 	RangeCheksumBuilder rangeProvider;
+	ChecksumCache checksumCache;
+	Configuration config;
+	AsynchronousJobExecutor asynchronousJobExecutor;
+	Logger logger;
+	Executor startExecutor;
 
 	@Inject
-	public ChecksumDeltaBuilderImpl(RangeCheksumBuilder rangeProvider) {
+	public ChecksumDeltaBuilderImpl(RangeCheksumBuilder rangeProvider, ChecksumCache checksumCache,
+			Configuration config, AsynchronousJobExecutor asynchronousJobExecutor, LoggerFactory loggerFactory,
+			ExecutorServiceFactory executorServiceFactory) {
 		super();
 		this.rangeProvider = rangeProvider;
+		this.checksumCache = checksumCache;
+		this.config = config;
+		this.asynchronousJobExecutor = asynchronousJobExecutor;
+		this.logger = loggerFactory.getLogger(ChecksumDeltaBuilderImpl.class);
+		this.startExecutor = executorServiceFactory.createCachedThreadPool(TYPE_CHECKSUM_THREAD_NAME);
 	}
 
 	@Override
-	public Iterator<DestinationJob> buildAllRestoreJobsForMismatchedChecksums(
+	public List<Iterator<DestinationJob>> buildAllRestoreJobsForMismatchedChecksums(
 			List<TypeToMigrateMetadata> primaryTypes) {
-		// The same salt is used for all types.
-		String salt = UUID.randomUUID().toString();
-		// Concatenate the iterators for each type.
-		Iterator<DestinationJob> iterator = new LinkedList<DestinationJob>().iterator();
-		for (TypeToMigrateMetadata primary : primaryTypes) {
-			Iterator<DestinationJob> typeIterator = rangeProvider.providerRangeCheck(primary.getType(),
+		// The same salt is used for all types. The cache keeps its salt across runs.
+		String salt = checksumCache.isEnabled() ? checksumCache.getSalt() : UUID.randomUUID().toString();
+		List<CompletableFuture<ResultPair<MigrationTypeChecksum>>> typeChecksums = startTypeChecksums(primaryTypes);
+		// One iterator for each type.
+		List<Iterator<DestinationJob>> iterators = new LinkedList<>();
+		for (int i = 0; i < primaryTypes.size(); i++) {
+			TypeToMigrateMetadata primary = primaryTypes.get(i);
+			Supplier<Iterator<DestinationJob>> rangeCheck = () -> rangeProvider.providerRangeCheck(primary.getType(),
 					primary.getSrcMinId(), primary.getSrcMaxId(), salt);
-			iterator = Iterators.concat(iterator, typeIterator);
+			CompletableFuture<ResultPair<MigrationTypeChecksum>> typeChecksum = typeChecksums.get(i);
+			if (typeChecksum == null) {
+				iterators.add(rangeCheck.get());
+			} else {
+				iterators.add(new TypeChecksumIterator(primary.getType(), typeChecksum, rangeCheck, logger));
+			}
+		}
+		return iterators;
+	}
+
+	/**
+	 * Start the full table checksums of each type that could be unchanged when
+	 * the pre-pass is enabled. No more than the maximum number of threads of
+	 * checksums run at a time. Each checksum is started on the start executor, so
+	 * the next checksum of a lane is not started on the thread that completed the
+	 * previous one and a failure to start is returned as a failed future.
+	 * 
+	 * @param primaryTypes
+	 * @return One future for each type. Null for types without a pre-pass.
+	 */
+	List<CompletableFuture<ResultPair<MigrationTypeChecksum>>> startTypeChecksums(
+			List<TypeToMigrateMetadata> primaryTypes) {
+		List<CompletableFuture<ResultPair<MigrationTypeChecksum>>> futures = new ArrayList<>(primaryTypes.size());
+		if (!config.isTypeChecksumPrePassEnabled()) {
+			futures.addAll(Collections.nCopies(primaryTypes.size(), null));
+			return futures;
+		}
+		// Each lane runs one checksum at a time.
+		int laneCount = Math.max(1, config.getMaximumNumberThreads());
+		List<CompletableFuture<?>> lanes = new ArrayList<>(
+				Collections.nCopies(laneCount, CompletableFuture.completedFuture(null)));
+		int started = 0;
+		for (TypeToMigrateMetadata primary : primaryTypes) {
+			if (!isMetadataMatch(primary)) {
+				// the counts already prove the type changed.
+				futures.add(null);
+				continue;
+			}
+			int lane = started % laneCount;
+			// the next checksum in a lane starts even if the previous failed.
+			CompletableFuture<ResultPair<MigrationTypeChecksum>> future = lanes.get(lane)
+					.handle((result, exception) -> null)
+					.thenComposeAsync(previous -> startTypeChecksum(primary.getType()), startExecutor);
+			lanes.set(lane, future);
+			started++;
+			futures.add(future);
+		}
+		return futures;
+	}
+
+	/**
+	 * Start the full table checksum of the given type on both the source and
+	 * destination.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	CompletableFuture<ResultPair<MigrationTypeChecksum>> startTypeChecksum(MigrationType type) {
+		AsyncMigrationTypeChecksumRequest request = new AsyncMigrationTypeChecksumRequest();
+		request.setMigrationType(type);
+		request.setType(type.name());
+		return asynchronousJobExecutor.startSourceAndDestinationJob(request, MigrationTypeChecksum.class);
+	}
+
+	/**
+	 * Do the counts and ID ranges of the source and destination match? Types
+	 * that do not match cannot have matching full table checksums.
+	 * 
+	 * @param primary
+	 * @return
+	 */
+	static boolean isMetadataMatch(TypeToMigrateMetadata primary) {
+		return Objects.equals(primary.getSrcCount(), primary.getDestCount())
+				&& Objects.equals(primary.getSrcMinId(), primary.getDestMinId())
+				&& Objects.equals(primary.getSrcMaxId(), primary.getDestMaxId());
+	}
+
+	/**
+	 * Do the given full table checksums match?
+	 * 
+	 * @param checksums
+	 * @return
+	 */
+	static boolean isChecksumMatch(ResultPair<MigrationTypeChecksum> checksums) {
+		MigrationTypeChecksum source = checksums.getSourceResult();
+		MigrationTypeChecksum destination = checksums.getDestinationResult();
+		return source != null && destination != null && source.getChecksum() != null
+				&& source.getChecksum().equals(destination.getChecksum());
+	}
+
+	/**
+	 * Only runs the range checksums of a type when its full table checksums do
+	 * not match. The full table checksums are not waited on until the first call,
+	 * so the checksums of all types can run while other work is in progress.
+	 * A failed full table checksum falls back to the range checksums.
+	 */
+	static class TypeChecksumIterator implements Iterator<DestinationJob> {
+
+		MigrationType type;
+		CompletableFuture<ResultPair<MigrationTypeChecksum>> typeChecksum;
+		Supplier<Iterator<DestinationJob>> rangeCheck;
+		Logger logger;
+		Iterator<DestinationJob> delegate;
+
+		TypeChecksumIterator(MigrationType type, CompletableFuture<ResultPair<MigrationTypeChecksum>> typeChecksum,
+				Supplier<Iterator<DestinationJob>> rangeCheck, Logger logger) {
+			this.type = type;
+			this.typeChecksum = typeChecksum;
+			this.rangeCheck = rangeCheck;
+			this.logger = logger;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return getDelegate().hasNext();
+		}
+
+		@Override
+		public DestinationJob next() {
+			return getDelegate().next();
+		}
+
+		Iterator<DestinationJob> getDelegate() {
+			if (delegate == null) {
+				boolean match = false;
+				try {
+					match = isChecksumMatch(typeChecksum.join());
+				} catch (CompletionException e) {
+					logger.warn("Full table checksum failed for: " + type.name() + ". Will compare ranges instead: "
+							+ e.getCause().getMessage());
+				}
+				if (match) {
+					logger.info("Full table checksums match for: " + type.name() + ". Skipping range checksums.");
+					delegate = Collections.emptyIterator();
+				} else {
+					delegate = rangeCheck.get();
+				}
+			}
+			return delegate;
 		}
-		return iterator;
 	}
 
 }
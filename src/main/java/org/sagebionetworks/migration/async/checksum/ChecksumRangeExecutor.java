@@ -1,5 +1,7 @@
 package org.sagebionetworks.migration.async.checksum;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -9,9 +11,12 @@ import java.util.Map;
 import org.sagebionetworks.migration.async.AsynchronousJobExecutor;
 import org.sagebionetworks.migration.async.BackupJobExecutor;
 import org.sagebionetworks.migration.async.DestinationJob;
+import org.sagebionetworks.migration.async.ProgressJournal;
+import org.sagebionetworks.migration.async.RestoredRangeLedger;
 import org.sagebionetworks.migration.async.ResultPair;
 import org.sagebionetworks.repo.model.migration.BatchChecksumRequest;
 import org.sagebionetworks.repo.model.migration.BatchChecksumResponse;
+import org.sagebionetworks.repo.model.migration.IdRange;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.RangeChecksum;
 
@@ -21,12 +26,38 @@ import org.sagebionetworks.repo.model.migration.RangeChecksum;
  * number of backup jobs will be started to restore the entire range. If the
  * checksums match, no further work is required.
  * <p>
+ * When a minimum delta range size is provided, each mismatched bin is narrowed
+ * by recursively comparing checksums of smaller bins within it. Only the
+ * mismatched sub-ranges that are no larger than the minimum delta range size
+ * are backed up.
+ * <p>
+ * When a checksum cache is provided, only the source checksums are computed
+ * for the entire range. The destination is only compared for the bins that
+ * could have changed since they were last verified, and the results are
+ * recorded in the cache.
+ * <p>
+ * When a progress journal is provided, only the sub-ranges that were not
+ * restored or verified by a previous attempt are compared, and the ranges
+ * verified by this executor are recorded in the journal.
+ * <p>
+ * When a restored range ledger is provided, the ranges restored earlier in the
+ * current run are not compared.
+ * <p>
+ * When a merge gap is provided, mismatched ranges separated by no more than
+ * the gap are merged, so each run of mismatched bins is planned and backed up
+ * with a single call to the backup executor.
+ * <p>
  * No work is done in the constructor of this object. Checksums will not be
  * executed until the first call to {@link #hasNext()}.
  *
  */
 public class ChecksumRangeExecutor implements Iterator<DestinationJob> {
 
+	/*
+	 * Each level of narrowing splits a mismatched bin into this many smaller bins.
+	 */
+	static final long SPLIT_FACTOR = 10L;
+
 	AsynchronousJobExecutor asynchronousJobExecutor;
 	BackupJobExecutor backupJobExecutor;
 	Long batchSize;
@@ -34,6 +65,11 @@ public class ChecksumRangeExecutor implements Iterator<DestinationJob> {
 	Long minimumId;
 	Long maximumId;
 	String salt;
+	Long minimumDeltaRangeSize;
+	ChecksumCache checksumCache;
+	ProgressJournal progressJournal;
+	RestoredRangeLedger restoredRangeLedger;
+	Long mismatchedBinMergeGap;
 	Iterator<DestinationJob> lastBackupJobs;
 	Iterator<RangeChecksum> mismatchedRanges;
 
@@ -41,23 +77,27 @@ public class ChecksumRangeExecutor implements Iterator<DestinationJob> {
 	 * No work is done in the constructor of this object. Checksums will not be
 	 * executed until the first call to {@link #hasNext()}.
 	 * 
-	 * @param asynchronousJobExecutor
-	 * @param backupJobExecutor
+	 * @param parameters The collaborators and settings shared by all types.
 	 * @param type
 	 * @param minimumId
 	 * @param maximumId
 	 * @param salt
 	 */
-	public ChecksumRangeExecutor(AsynchronousJobExecutor asynchronousJobExecutor, BackupJobExecutor backupJobExecutor,
-			Long batchSize, MigrationType type, Long minimumId, Long maximumId, String salt) {
+	public ChecksumRangeExecutor(ChecksumRangeParameters parameters, MigrationType type, Long minimumId,
+			Long maximumId, String salt) {
 		super();
-		this.asynchronousJobExecutor = asynchronousJobExecutor;
-		this.backupJobExecutor = backupJobExecutor;
-		this.batchSize = batchSize;
+		this.asynchronousJobExecutor = parameters.getAsynchronousJobExecutor();
+		this.backupJobExecutor = parameters.getBackupJobExecutor();
+		this.batchSize = parameters.getBatchSize();
 		this.type = type;
 		this.minimumId = minimumId;
 		this.maximumId = maximumId;
 		this.salt = salt;
+		this.minimumDeltaRangeSize = parameters.getMinimumDeltaRangeSize();
+		this.checksumCache = parameters.getChecksumCache();
+		this.progressJournal = parameters.getProgressJournal();
+		this.restoredRangeLedger = parameters.getRestoredRangeLedger();
+		this.mismatchedBinMergeGap = parameters.getMismatchedBinMergeGap();
 		// start with an empty iterator.
 		lastBackupJobs = new LinkedList<DestinationJob>().iterator();
 	}
@@ -80,7 +120,7 @@ public class ChecksumRangeExecutor implements Iterator<DestinationJob> {
 			}
 			// Start n number of backup jobs for the mismatched ID range.
 			RangeChecksum misMatchRange = mismatchedRanges.next();
-			lastBackupJobs = backupJobExecutor.executeBackupJob(type, misMatchRange.getMinimumId(),
+			lastBackupJobs = backupJobExecutor.executeMismatchBackupJob(type, misMatchRange.getMinimumId(),
 					misMatchRange.getMaximumId());
 			return lastBackupJobs.hasNext();
 		}
@@ -100,20 +140,238 @@ public class ChecksumRangeExecutor implements Iterator<DestinationJob> {
 	Iterator<RangeChecksum> findAllMismatchedRanges() {
 		List<RangeChecksum> mismatchedRangesList = new LinkedList<>();
 		if (this.minimumId != null) {
-			BatchChecksumRequest request = new BatchChecksumRequest();
-			request.setMigrationType(this.type);
-			request.setBatchSize(this.batchSize);
-			request.setMinimumId(this.minimumId);
-			request.setMaximumId(this.maximumId);
-			request.setSalt(this.salt);
-			// get all checksums for this range from both the source and destination.
-			ResultPair<BatchChecksumResponse> results = asynchronousJobExecutor.executeSourceAndDestinationJob(request,
-					BatchChecksumResponse.class);
-			mismatchedRangesList = findAllMismatchedRanges(results.getSourceResult().getCheksums(), results.getDestinationResult().getCheksums());
+			for (IdRange range : findRangesToCompare()) {
+				mismatchedRangesList.addAll(findMismatchedRanges(range.getMinimumId(), range.getMaximumId()));
+			}
+			if (this.mismatchedBinMergeGap != null) {
+				mismatchedRangesList = mergeNearbyRanges(mismatchedRangesList, this.mismatchedBinMergeGap);
+			}
 		}
 		return mismatchedRangesList.iterator();
 	}
 
+	/**
+	 * Merge the given ranges that overlap or are separated by no more than the
+	 * given number of IDs. The bin number of each merged range is the bin number
+	 * of its first range.
+	 * 
+	 * @param ranges
+	 * @param maximumGap
+	 * @return The merged ranges ordered by ID.
+	 */
+	static List<RangeChecksum> mergeNearbyRanges(List<RangeChecksum> ranges, long maximumGap) {
+		List<RangeChecksum> sorted = new ArrayList<>(ranges);
+		sorted.sort(Comparator.comparing(RangeChecksum::getMinimumId));
+		List<RangeChecksum> merged = new LinkedList<>();
+		RangeChecksum current = null;
+		for (RangeChecksum range : sorted) {
+			if (current != null && range.getMinimumId() - current.getMaximumId() - 1 <= maximumGap) {
+				current.setMaximumId(Math.max(current.getMaximumId(), range.getMaximumId()));
+			} else {
+				current = new RangeChecksum();
+				current.setBinNumber(range.getBinNumber());
+				current.setMinimumId(range.getMinimumId());
+				current.setMaximumId(range.getMaximumId());
+				merged.add(current);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Find the sub-ranges of this executor's range that must be compared. Ranges
+	 * verified by a previous attempt or restored earlier in this run are
+	 * excluded.
+	 * 
+	 * @return
+	 */
+	List<IdRange> findRangesToCompare() {
+		List<IdRange> ranges;
+		if (this.progressJournal != null) {
+			ranges = progressJournal.findUnverifiedRanges(this.type, this.minimumId, this.maximumId);
+		} else {
+			ranges = new LinkedList<>();
+			IdRange range = new IdRange();
+			range.setMinimumId(this.minimumId);
+			range.setMaximumId(this.maximumId);
+			ranges.add(range);
+		}
+		if (this.restoredRangeLedger == null) {
+			return ranges;
+		}
+		List<IdRange> unrestored = new LinkedList<>();
+		for (IdRange range : ranges) {
+			unrestored.addAll(
+					restoredRangeLedger.findUnrestoredRanges(this.type, range.getMinimumId(), range.getMaximumId()));
+		}
+		return unrestored;
+	}
+
+	/**
+	 * Find all of the mismatched ranges within the given range.
+	 * 
+	 * @param minimumId
+	 * @param maximumId
+	 * @return
+	 */
+	List<RangeChecksum> findMismatchedRanges(Long minimumId, Long maximumId) {
+		if (this.progressJournal != null) {
+			List<RangeChecksum> mismatchedBins = findMismatchedBins(minimumId, maximumId);
+			progressJournal.recordVerified(this.type, minimumId, maximumId, mismatchedBins);
+			return mismatchedBins;
+		} else if (this.checksumCache != null || this.minimumDeltaRangeSize != null) {
+			return findMismatchedBins(minimumId, maximumId);
+		} else {
+			ResultPair<BatchChecksumResponse> results = executeChecksums(minimumId, maximumId, this.batchSize);
+			return findAllMismatchedRanges(results.getSourceResult().getCheksums(),
+					results.getDestinationResult().getCheksums());
+		}
+	}
+
+	/**
+	 * Find all of the mismatched bins within the given range using the checksum
+	 * cache and narrowing when either is enabled. The range of each returned bin
+	 * covers the rows of the bin on both the source and the destination.
+	 * 
+	 * @param minimumId
+	 * @param maximumId
+	 * @return
+	 */
+	List<RangeChecksum> findMismatchedBins(Long minimumId, Long maximumId) {
+		if (this.checksumCache != null) {
+			return narrowMismatchedBins(findMismatchedBinsUsingCache(minimumId, maximumId), this.batchSize);
+		}
+		return narrowMismatchedRanges(minimumId, maximumId, this.batchSize);
+	}
+
+	/**
+	 * Get all checksums for the given range from both the source and destination.
+	 * 
+	 * @param minimumId
+	 * @param maximumId
+	 * @param binSize
+	 * @return
+	 */
+	ResultPair<BatchChecksumResponse> executeChecksums(Long minimumId, Long maximumId, Long binSize) {
+		BatchChecksumRequest request = new BatchChecksumRequest();
+		request.setMigrationType(this.type);
+		request.setBatchSize(binSize);
+		request.setMinimumId(minimumId);
+		request.setMaximumId(maximumId);
+		request.setSalt(this.salt);
+		return asynchronousJobExecutor.executeSourceAndDestinationJob(request, BatchChecksumResponse.class);
+	}
+
+	/**
+	 * Find all of the mismatched bins in the given range using the checksum
+	 * cache. The source checksums of the entire range are compared to the cache,
+	 * and each unverified range of full bins is then compared with the
+	 * destination.
+	 * 
+	 * @param minimumId
+	 * @param maximumId
+	 * @return
+	 */
+	List<RangeChecksum> findMismatchedBinsUsingCache(Long minimumId, Long maximumId) {
+		BatchChecksumRequest request = new BatchChecksumRequest();
+		request.setMigrationType(this.type);
+		request.setBatchSize(this.batchSize);
+		request.setMinimumId(minimumId);
+		request.setMaximumId(maximumId);
+		request.setSalt(this.salt);
+		BatchChecksumResponse sourceResponse = asynchronousJobExecutor.executeSourceJob(request,
+				BatchChecksumResponse.class);
+		List<IdRange> unverifiedRanges = checksumCache.findUnverifiedRanges(this.type, minimumId,
+				maximumId, sourceResponse.getCheksums());
+		List<RangeChecksum> mismatchedBins = new LinkedList<>();
+		for (IdRange range : unverifiedRanges) {
+			ResultPair<BatchChecksumResponse> results = executeChecksums(range.getMinimumId(),
+					range.getMaximumId(), this.batchSize);
+			List<RangeChecksum> rangeMismatches = findAllMismatchedBins(results.getSourceResult().getCheksums(),
+					results.getDestinationResult().getCheksums());
+			checksumCache.recordResults(this.type, range.getMinimumId(), range.getMaximumId(),
+					results.getSourceResult().getCheksums(), rangeMismatches);
+			mismatchedBins.addAll(rangeMismatches);
+		}
+		return mismatchedBins;
+	}
+
+	/**
+	 * Find all of the mismatched ranges within the given range. Each mismatched
+	 * bin that is larger than the minimum delta range size is narrowed by
+	 * comparing the checksums of smaller bins within it.
+	 * 
+	 * @param minimumId
+	 * @param maximumId
+	 * @param binSize
+	 * @return
+	 */
+	List<RangeChecksum> narrowMismatchedRanges(Long minimumId, Long maximumId, Long binSize) {
+		ResultPair<BatchChecksumResponse> results = executeChecksums(minimumId, maximumId, binSize);
+		List<RangeChecksum> mismatchedBins = findAllMismatchedBins(results.getSourceResult().getCheksums(),
+				results.getDestinationResult().getCheksums());
+		return narrowMismatchedBins(mismatchedBins, binSize);
+	}
+
+	/**
+	 * Narrow each of the given mismatched bins that is larger than the minimum
+	 * delta range size. The bins are returned as-is if narrowing is disabled.
+	 * 
+	 * @param mismatchedBins
+	 * @param binSize The size of the given bins.
+	 * @return
+	 */
+	List<RangeChecksum> narrowMismatchedBins(List<RangeChecksum> mismatchedBins, Long binSize) {
+		if (minimumDeltaRangeSize == null) {
+			return mismatchedBins;
+		}
+		long childBinSize = Math.max(binSize / SPLIT_FACTOR, minimumDeltaRangeSize);
+		List<RangeChecksum> narrowed = new LinkedList<>();
+		for (RangeChecksum bin : mismatchedBins) {
+			long rangeSize = bin.getMaximumId() - bin.getMinimumId() + 1;
+			if (rangeSize <= minimumDeltaRangeSize || childBinSize >= binSize) {
+				// this range is small enough to backup.
+				narrowed.add(bin);
+			} else {
+				narrowed.addAll(narrowMismatchedRanges(bin.getMinimumId(), bin.getMaximumId(), childBinSize));
+			}
+		}
+		return narrowed;
+	}
+
+	/**
+	 * Find all of the mismatched bins for the given source and destination
+	 * checksums. The range of each returned bin covers the rows of the bin on both
+	 * the source and the destination.
+	 * 
+	 * @param sourceResult
+	 * @param destinationResult
+	 * @return
+	 */
+	static List<RangeChecksum> findAllMismatchedBins(List<RangeChecksum> sourceResult,
+			List<RangeChecksum> destinationResult) {
+		Map<Long, RangeChecksum> destinationBinToRange = new HashMap<>();
+		if (destinationResult != null) {
+			for (RangeChecksum range : destinationResult) {
+				destinationBinToRange.put(range.getBinNumber(), range);
+			}
+		}
+		List<RangeChecksum> mismatchedBins = new LinkedList<>();
+		for (RangeChecksum mismatch : findAllMismatchedRanges(sourceResult, destinationResult)) {
+			RangeChecksum destinationChecksum = destinationBinToRange.get(mismatch.getBinNumber());
+			RangeChecksum bin = new RangeChecksum();
+			bin.setBinNumber(mismatch.getBinNumber());
+			bin.setMinimumId(mismatch.getMinimumId());
+			bin.setMaximumId(mismatch.getMaximumId());
+			if (destinationChecksum != null) {
+				bin.setMinimumId(Math.min(mismatch.getMinimumId(), destinationChecksum.getMinimumId()));
+				bin.setMaximumId(Math.max(mismatch.getMaximumId(), destinationChecksum.getMaximumId()));
+			}
+			mismatchedBins.add(bin);
+		}
+		return mismatchedBins;
+	}
+
 	/**
 	 * Find all of the mismatched ranges for the given source and destination checksums.
 	 * 
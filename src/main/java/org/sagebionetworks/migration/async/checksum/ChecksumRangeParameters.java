@@ -0,0 +1,121 @@
+package org.sagebionetworks.migration.async.checksum;
+
+import org.sagebionetworks.migration.async.AsynchronousJobExecutor;
+import org.sagebionetworks.migration.async.BackupJobExecutor;
+import org.sagebionetworks.migration.async.ProgressJournal;
+import org.sagebionetworks.migration.async.RestoredRangeLedger;
+
+/**
+ * The collaborators and settings shared by every {@link ChecksumRangeExecutor}
+ * of a migration. Optional features are disabled when left null.
+ *
+ */
+public class ChecksumRangeParameters {
+
+	AsynchronousJobExecutor asynchronousJobExecutor;
+	BackupJobExecutor backupJobExecutor;
+	Long batchSize;
+	Long minimumDeltaRangeSize;
+	ChecksumCache checksumCache;
+	ProgressJournal progressJournal;
+	RestoredRangeLedger restoredRangeLedger;
+	Long mismatchedBinMergeGap;
+
+	public AsynchronousJobExecutor getAsynchronousJobExecutor() {
+		return asynchronousJobExecutor;
+	}
+
+	public void setAsynchronousJobExecutor(AsynchronousJobExecutor asynchronousJobExecutor) {
+		this.asynchronousJobExecutor = asynchronousJobExecutor;
+	}
+
+	public BackupJobExecutor getBackupJobExecutor() {
+		return backupJobExecutor;
+	}
+
+	public void setBackupJobExecutor(BackupJobExecutor backupJobExecutor) {
+		this.backupJobExecutor = backupJobExecutor;
+	}
+
+	/**
+	 * The number of IDs in each checksum bin.
+	 * 
+	 * @return
+	 */
+	public Long getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(Long batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * When not null, mismatched bins are narrowed until they are no larger than
+	 * this size.
+	 * 
+	 * @return
+	 */
+	public Long getMinimumDeltaRangeSize() {
+		return minimumDeltaRangeSize;
+	}
+
+	public void setMinimumDeltaRangeSize(Long minimumDeltaRangeSize) {
+		this.minimumDeltaRangeSize = minimumDeltaRangeSize;
+	}
+
+	/**
+	 * When not null, bins verified in previous runs are not compared on the
+	 * destination. The salt of each executor must be the salt of the cache.
+	 * 
+	 * @return
+	 */
+	public ChecksumCache getChecksumCache() {
+		return checksumCache;
+	}
+
+	public void setChecksumCache(ChecksumCache checksumCache) {
+		this.checksumCache = checksumCache;
+	}
+
+	/**
+	 * When not null, ranges verified by a previous attempt are skipped.
+	 * 
+	 * @return
+	 */
+	public ProgressJournal getProgressJournal() {
+		return progressJournal;
+	}
+
+	public void setProgressJournal(ProgressJournal progressJournal) {
+		this.progressJournal = progressJournal;
+	}
+
+	/**
+	 * When not null, ranges restored earlier in this run are skipped.
+	 * 
+	 * @return
+	 */
+	public RestoredRangeLedger getRestoredRangeLedger() {
+		return restoredRangeLedger;
+	}
+
+	public void setRestoredRangeLedger(RestoredRangeLedger restoredRangeLedger) {
+		this.restoredRangeLedger = restoredRangeLedger;
+	}
+
+	/**
+	 * When not null, mismatched ranges separated by no more than this many IDs
+	 * are merged.
+	 * 
+	 * @return
+	 */
+	public Long getMismatchedBinMergeGap() {
+		return mismatchedBinMergeGap;
+	}
+
+	public void setMismatchedBinMergeGap(Long mismatchedBinMergeGap) {
+		this.mismatchedBinMergeGap = mismatchedBinMergeGap;
+	}
+
+}
@@ -5,6 +5,8 @@ import java.util.Iterator;
 import org.sagebionetworks.migration.async.AsynchronousJobExecutor;
 import org.sagebionetworks.migration.async.BackupJobExecutor;
 import org.sagebionetworks.migration.async.DestinationJob;
+import org.sagebionetworks.migration.async.ProgressJournal;
+import org.sagebionetworks.migration.async.RestoredRangeLedger;
 import org.sagebionetworks.migration.config.Configuration;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 
@@ -12,24 +14,41 @@ import com.google.inject.Inject;
 
 public class RangeCheksumBuilderImpl implements RangeCheksumBuilder {
 	
-	AsynchronousJobExecutor asynchronousJobExecutor;
-	BackupJobExecutor backupJobExecutor;
-	long batchSize;
+	ChecksumRangeParameters parameters;
 	
 	@Inject
 	public RangeCheksumBuilderImpl(AsynchronousJobExecutor asynchronousJobExecutor,
-			BackupJobExecutor backupJobExecutor, Configuration config) {
+			BackupJobExecutor backupJobExecutor, Configuration config, ChecksumCache checksumCache,
+			ProgressJournal progressJournal, RestoredRangeLedger restoredRangeLedger) {
 		super();
-		this.asynchronousJobExecutor = asynchronousJobExecutor;
-		this.backupJobExecutor = backupJobExecutor;
-		this.batchSize = config.getMaximumBackupBatchSize();
+		parameters = new ChecksumRangeParameters();
+		parameters.setAsynchronousJobExecutor(asynchronousJobExecutor);
+		parameters.setBackupJobExecutor(backupJobExecutor);
+		parameters.setBatchSize((long) config.getMaximumBackupBatchSize());
+		long mismatchedBinMergeGap = config.getMismatchedBinMergeGap();
+		if (config.isChecksumBisectionEnabled()) {
+			long minimumDeltaRangeSize = Math.max(1, config.getMinimumDeltaRangeSize());
+			parameters.setMinimumDeltaRangeSize(minimumDeltaRangeSize);
+			// a larger gap would merge the narrowed ranges back together.
+			mismatchedBinMergeGap = Math.min(mismatchedBinMergeGap, minimumDeltaRangeSize);
+		}
+		if (mismatchedBinMergeGap > 0) {
+			parameters.setMismatchedBinMergeGap(mismatchedBinMergeGap);
+		}
+		if (checksumCache.isEnabled()) {
+			parameters.setChecksumCache(checksumCache);
+		}
+		if (progressJournal.isEnabled()) {
+			parameters.setProgressJournal(progressJournal);
+		}
+		parameters.setRestoredRangeLedger(restoredRangeLedger);
 	}
 
 
 	@Override
 	public Iterator<DestinationJob> providerRangeCheck(MigrationType type, Long minimumId, Long maximumId,
 			String salt) {
-		return new ChecksumRangeExecutor(asynchronousJobExecutor, backupJobExecutor, batchSize, type, minimumId, maximumId, salt);
+		return new ChecksumRangeExecutor(parameters, type, minimumId, maximumId, salt);
 	}
 
 }
@@ -24,6 +24,12 @@ public interface Configuration {
 	 */
 	public SynapseConnectionInfo getDestinationConnectionInfo();
 
+	/**
+	 * The maximum number of threads used to discover migration jobs. Each type is
+	 * processed on its own thread.
+	 * 
+	 * @return
+	 */
 	public int getMaximumNumberThreads();
 
 	/**
@@ -33,6 +39,25 @@ public interface Configuration {
 	 */
 	public int getMaximumBackupBatchSize();
 
+	/**
+	 * The maximum number of backup jobs that can be running on the source at the
+	 * same time for a single MigrationType. When set to one, each backup must
+	 * finish before the next backup for that type is started.
+	 * 
+	 * @return
+	 */
+	public int getMaximumBackupJobsPerType();
+
+	/**
+	 * The target duration of a single backup and restore job. When greater than
+	 * zero, the number of rows in each backup range is tuned for each
+	 * MigrationType so each job takes about this long. When zero, every range
+	 * uses {@link #getMaximumBackupBatchSize()} rows.
+	 * 
+	 * @return
+	 */
+	public long getTargetJobDurationMs();
+
 	/**
 	 * The minimum size for a DeltaRange (before deltas are calculated serially vs checksum
 	 *
@@ -40,12 +65,116 @@ public interface Configuration {
 	 */
 	public int getMinimumDeltaRangeSize();
 
+	/**
+	 * When enabled, each mismatched checksum bin is narrowed with finer-grained
+	 * checksums until the mismatched sub-ranges are no larger than
+	 * {@link #getMinimumDeltaRangeSize()}. Only those sub-ranges are backed up.
+	 * 
+	 * @return
+	 */
+	public boolean isChecksumBisectionEnabled();
+
+	/**
+	 * When enabled, the full table checksums of each primary type are compared
+	 * before any range checksums. Range checksums only run for types with
+	 * mismatched full table checksums.
+	 * 
+	 * @return
+	 */
+	public boolean isTypeChecksumPrePassEnabled();
+
+	/**
+	 * Path of a local file used to remember which checksum bins were verified
+	 * equal across migration runs. The cache is only valid for a single
+	 * destination stack.
+	 * 
+	 * @return The path of the file or null if the checksum cache is disabled.
+	 */
+	public String getChecksumCacheFile();
+
+	/**
+	 * Path of a local file used to journal the ranges that were restored or
+	 * verified during a migration. A migration that fails, or a process that is
+	 * re-launched, will resume from the journal. The journal is deleted when the
+	 * migration completes successfully.
+	 * 
+	 * @return The path of the file or null if the progress journal is disabled.
+	 */
+	public String getProgressJournalFile();
+
+	/**
+	 * The maximum age of a progress journal that can be resumed. An older journal
+	 * is discarded since the stacks could have changed since it was written.
+	 * 
+	 * @return By default, one day.
+	 */
+	public long getProgressJournalMaxAgeMs();
+
+	/**
+	 * The pairs of MigrationTypes that cannot be restored on the destination at
+	 * the same time, such as: 'CHANGE:NODE,CHANGE:ACL'. The wildcard '*' matches
+	 * any type. Conflicts are symmetric and a type always conflicts with itself.
+	 * With the default, a CHANGE restore only starts when no other restore is
+	 * running, and no other restore starts while a CHANGE restore is running.
+	 * 
+	 * @return By default, 'CHANGE:*'.
+	 */
+	public String getRestoreConflicts();
+
+	/**
+	 * The maximum number of restore jobs of each MigrationType that can run on
+	 * the destination at the same time, such as: 'NODE:4,ACL:2'. Concurrent
+	 * restores of the same type always have disjoint ID ranges. Only types that
+	 * do not deadlock on disjoint ranges should be listed.
+	 * 
+	 * @return By default, empty so each type is limited to a single restore.
+	 */
+	public String getMaximumRestoreJobsPerType();
+
+	/**
+	 * The maximum number of restore jobs of a single MigrationType that can wait
+	 * to be started. Once reached, the production of new backups for that type
+	 * blocks until its restores catch up.
+	 * 
+	 * @return By default, zero for no limit.
+	 */
+	public int getMaximumWaitingRestoreJobsPerType();
+
+	/**
+	 * The maximum number of restore jobs of all types that can wait to be
+	 * started. Once reached, the production of new backups blocks until the
+	 * restores catch up.
+	 * 
+	 * @return By default, zero for no limit.
+	 */
+	public int getMaximumWaitingRestoreJobs();
+
+	/**
+	 * Mismatched checksum bins separated by no more than this many IDs are
+	 * merged into a single range before it is backed up, so a run of mismatched
+	 * bins is planned and backed up as a whole. Merging saves a backup plan for
+	 * each range, but the matching IDs between the merged bins are backed up and
+	 * restored as well. With a gap as wide as a bin, alternating mismatched and
+	 * matching bins can double the rows copied by the delta phase.
+	 * 
+	 * @return By default, zero so mismatched bins are never merged.
+	 */
+	public long getMismatchedBinMergeGap();
+
 	public long getWorkerTimeoutMs();
 
 	/**
 	 * Maximum number of migration retries
 	 */
 	public int getMaxRetries();
+
+	/**
+	 * The maximum number of times each restore job is attempted before its
+	 * failure fails the migration.
+	 * 
+	 * @return By default, 3.
+	 */
+	public int getMaxRestoreJobRetries();
 	
 	
 	/**
@@ -68,6 +197,16 @@ public interface Configuration {
 	 */
 	public boolean includeFullTableChecksums();
 
+	/**
+	 * When enabled, the full table checksums of a type are skipped if its final
+	 * counts, minimum ID or maximum ID already prove that the source and
+	 * destination do not match. The checksums then wait for the final counts
+	 * rather than running while the counts are gathered.
+	 * 
+	 * @return By default, true.
+	 */
+	public boolean skipFullTableChecksumsOnCountMismatch();
+
 	/**
 	 * Log the configuration.
 	 */
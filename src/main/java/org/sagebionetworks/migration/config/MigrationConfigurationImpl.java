@@ -30,6 +30,7 @@ public class MigrationConfigurationImpl implements Configuration {
 	static final String KEY_USERNAME = "org.sagebionetworks.username";
 	static final String KEY_MAX_THREADS = "org.sagebionetworks.max.threads";
 	static final String KEY_MAX_BACKUP_BATCHSIZE = "org.sagebionetworks.max.backup.batchsize";
+	static final String KEY_MAX_BACKUP_JOBS_PER_TYPE = "org.sagebionetworks.max.backup.jobs.per.type";
 	static final String KEY_MIN_DELTA_RANGESIZE = "org.sagebionetworks.min.delta.rangesize";
 	static final String KEY_THREAD_TIMOUT_MS = "org.sagebionetworks.worker.thread.timout.ms";
 	static final String KEY_MAX_RETRIES = "org.sagebionetworks.max.retries";
@@ -37,6 +38,31 @@ public class MigrationConfigurationImpl implements Configuration {
 	static final String KEY_BACKUP_ALIAS_TYPE = "org.sagebionetworks.backup.alias.type";
 	static final String KEY_DELAY_BEFORE_START_MS = "org.sagebionetworks.delay.before.start.ms";
 	static final String KEY_INCLUDE_FULL_TABLE_CHECKSUM = "org.sagebionerworks.include.full.table.checksum";
+	static final String KEY_SKIP_FULL_TABLE_CHECKSUM_ON_COUNT_MISMATCH = "org.sagebionetworks.skip.full.table.checksum.on.count.mismatch";
+	static final String DEFAULT_SKIP_FULL_TABLE_CHECKSUM_ON_COUNT_MISMATCH = "true";
+
+	static final String DEFAULT_MAX_BACKUP_JOBS_PER_TYPE = "1";
+	static final String KEY_TARGET_JOB_DURATION_MS = "org.sagebionetworks.target.job.duration.ms";
+	static final String DEFAULT_TARGET_JOB_DURATION_MS = "0";
+	static final String KEY_CHECKSUM_BISECTION_ENABLED = "org.sagebionetworks.checksum.bisection.enabled";
+	static final String DEFAULT_CHECKSUM_BISECTION_ENABLED = "false";
+	static final String KEY_TYPE_CHECKSUM_PRE_PASS_ENABLED = "org.sagebionetworks.type.checksum.pre.pass.enabled";
+	static final String DEFAULT_TYPE_CHECKSUM_PRE_PASS_ENABLED = "false";
+	static final String KEY_CHECKSUM_CACHE_FILE = "org.sagebionetworks.checksum.cache.file";
+	static final String KEY_PROGRESS_JOURNAL_FILE = "org.sagebionetworks.progress.journal.file";
+	static final String KEY_PROGRESS_JOURNAL_MAX_AGE_MS = "org.sagebionetworks.progress.journal.max.age.ms";
+	static final String DEFAULT_PROGRESS_JOURNAL_MAX_AGE_MS = "86400000";
+	static final String KEY_RESTORE_CONFLICTS = "org.sagebionetworks.restore.conflicts";
+	static final String DEFAULT_RESTORE_CONFLICTS = "CHANGE:*";
+	static final String KEY_MAX_RESTORE_JOBS_PER_TYPE = "org.sagebionetworks.max.restore.jobs.per.type";
+	static final String DEFAULT_MAX_RESTORE_JOBS_PER_TYPE = "";
+	static final String KEY_MAX_WAITING_RESTORE_JOBS_PER_TYPE = "org.sagebionetworks.max.waiting.restore.jobs.per.type";
+	static final String KEY_MAX_WAITING_RESTORE_JOBS = "org.sagebionetworks.max.waiting.restore.jobs";
+	static final String DEFAULT_MAX_WAITING_RESTORE_JOBS = "0";
+	static final String KEY_MISMATCHED_BIN_MERGE_GAP = "org.sagebionetworks.mismatched.bin.merge.gap";
+	static final String DEFAULT_MISMATCHED_BIN_MERGE_GAP = "0";
+	static final String KEY_MAX_RESTORE_JOB_RETRIES = "org.sagebionetworks.max.restore.job.retries";
+	static final String DEFAULT_MAX_RESTORE_JOB_RETRIES = "3";
 	
 	Logger logger;
 	SystemPropertiesProvider propProvider;
@@ -85,10 +111,82 @@ public class MigrationConfigurationImpl implements Configuration {
 		return Integer.parseInt(getProperty(KEY_MAX_BACKUP_BATCHSIZE));
 	}
 
+	@Override
+	public int getMaximumBackupJobsPerType() {
+		return Integer.parseInt(getProperty(KEY_MAX_BACKUP_JOBS_PER_TYPE, DEFAULT_MAX_BACKUP_JOBS_PER_TYPE));
+	}
+
+	@Override
+	public long getTargetJobDurationMs() {
+		return Long.parseLong(getProperty(KEY_TARGET_JOB_DURATION_MS, DEFAULT_TARGET_JOB_DURATION_MS));
+	}
+
 	@Override
 	public int getMinimumDeltaRangeSize() {
 		return Integer.parseInt(getProperty(KEY_MIN_DELTA_RANGESIZE));
 	}
+
+	@Override
+	public boolean isChecksumBisectionEnabled() {
+		return Boolean.parseBoolean(getProperty(KEY_CHECKSUM_BISECTION_ENABLED, DEFAULT_CHECKSUM_BISECTION_ENABLED));
+	}
+
+	@Override
+	public boolean isTypeChecksumPrePassEnabled() {
+		return Boolean.parseBoolean(getProperty(KEY_TYPE_CHECKSUM_PRE_PASS_ENABLED, DEFAULT_TYPE_CHECKSUM_PRE_PASS_ENABLED));
+	}
+
+	@Override
+	public String getChecksumCacheFile() {
+		String path = getProperty(KEY_CHECKSUM_CACHE_FILE, null);
+		if (path == null || path.trim().isEmpty()) {
+			return null;
+		}
+		return path.trim();
+	}
+	
+	@Override
+	public String getProgressJournalFile() {
+		String path = getProperty(KEY_PROGRESS_JOURNAL_FILE, null);
+		if (path == null || path.trim().isEmpty()) {
+			return null;
+		}
+		return path.trim();
+	}
+	
+	@Override
+	public long getProgressJournalMaxAgeMs() {
+		return Long.parseLong(getProperty(KEY_PROGRESS_JOURNAL_MAX_AGE_MS, DEFAULT_PROGRESS_JOURNAL_MAX_AGE_MS));
+	}
+	
+	@Override
+	public String getRestoreConflicts() {
+		return getProperty(KEY_RESTORE_CONFLICTS, DEFAULT_RESTORE_CONFLICTS);
+	}
+	
+	@Override
+	public String getMaximumRestoreJobsPerType() {
+		return getProperty(KEY_MAX_RESTORE_JOBS_PER_TYPE, DEFAULT_MAX_RESTORE_JOBS_PER_TYPE);
+	}
+	
+	@Override
+	public int getMaximumWaitingRestoreJobsPerType() {
+		return Integer.parseInt(getProperty(KEY_MAX_WAITING_RESTORE_JOBS_PER_TYPE, DEFAULT_MAX_WAITING_RESTORE_JOBS));
+	}
+	
+	@Override
+	public int getMaximumWaitingRestoreJobs() {
+		return Integer.parseInt(getProperty(KEY_MAX_WAITING_RESTORE_JOBS, DEFAULT_MAX_WAITING_RESTORE_JOBS));
+	}
+	
+	@Override
+	public long getMismatchedBinMergeGap() {
+		String gap = getProperty(KEY_MISMATCHED_BIN_MERGE_GAP, DEFAULT_MISMATCHED_BIN_MERGE_GAP);
+		if (gap.trim().isEmpty()) {
+			return Long.parseLong(DEFAULT_MISMATCHED_BIN_MERGE_GAP);
+		}
+		return Long.parseLong(gap.trim());
+	}
 	
 	@Override
 	public long getWorkerTimeoutMs(){
@@ -100,6 +198,11 @@ public class MigrationConfigurationImpl implements Configuration {
 		return Integer.parseInt(getProperty(KEY_MAX_RETRIES));
 	}
 
+	@Override
+	public int getMaxRestoreJobRetries() {
+		return Integer.parseInt(getProperty(KEY_MAX_RESTORE_JOB_RETRIES, DEFAULT_MAX_RESTORE_JOB_RETRIES));
+	}
+
 	@Override
 	public float getFullTableMigrationThresholdPercentage() {
 		return Float.parseFloat(getProperty(KEY_THRESHOLD_PERCENTAGE));
@@ -114,6 +217,12 @@ public class MigrationConfigurationImpl implements Configuration {
 	public boolean includeFullTableChecksums() {
 		return Boolean.parseBoolean(getProperty(KEY_INCLUDE_FULL_TABLE_CHECKSUM));
 	}
+
+	@Override
+	public boolean skipFullTableChecksumsOnCountMismatch() {
+		return Boolean.parseBoolean(getProperty(KEY_SKIP_FULL_TABLE_CHECKSUM_ON_COUNT_MISMATCH,
+				DEFAULT_SKIP_FULL_TABLE_CHECKSUM_ON_COUNT_MISMATCH));
+	}
 	
 	/**
 	 * 
@@ -127,6 +236,17 @@ public class MigrationConfigurationImpl implements Configuration {
 		}
 		return value;
 	}
+
+	/**
+	 * Get an optional property.
+	 * 
+	 * @param key
+	 * @param defaultValue Returned when the property is not set.
+	 * @return
+	 */
+	String getProperty(String key, String defaultValue) {
+		return this.systemProperties.getProperty(key, defaultValue);
+	}
 	
 	/**
 	 * Load the the properties from the given file path.
@@ -165,9 +285,23 @@ public class MigrationConfigurationImpl implements Configuration {
 		logger.info("Source: "+getSourceConnectionInfo().toString());
 		logger.info("Destination: "+getDestinationConnectionInfo().toString());
 		logger.info("Max number of retries: "+getMaxRetries());
+		logger.info("Max restore job retries: "+getMaxRestoreJobRetries());
 		logger.info("Batch size: "+getMaximumBackupBatchSize());
+		logger.info("Max backup jobs per type: "+getMaximumBackupJobsPerType());
+		logger.info("Target job duration MS: "+getTargetJobDurationMs());
 		logger.info("BackupAliasType: "+getBackupAliasType());
 		logger.info("Include full table checksums: "+includeFullTableChecksums());
+		logger.info("Skip full table checksums on count mismatch: "+skipFullTableChecksumsOnCountMismatch());
+		logger.info("Checksum bisection enabled: "+isChecksumBisectionEnabled());
+		logger.info("Type checksum pre-pass enabled: "+isTypeChecksumPrePassEnabled());
+		logger.info("Checksum cache file: "+getChecksumCacheFile());
+		logger.info("Progress journal file: "+getProgressJournalFile());
+		logger.info("Progress journal max age MS: "+getProgressJournalMaxAgeMs());
+		logger.info("Restore conflicts: "+getRestoreConflicts());
+		logger.info("Max restore jobs per type: "+getMaximumRestoreJobsPerType());
+		logger.info("Max waiting restore jobs per type: "+getMaximumWaitingRestoreJobsPerType());
+		logger.info("Max waiting restore jobs: "+getMaximumWaitingRestoreJobs());
+		logger.info("Mismatched bin merge gap: "+getMismatchedBinMergeGap());
 		logger.info("Asynchronous job timeout MS: "+getWorkerTimeoutMs());
 		logger.info("Delay before migration starts MS: "+getDelayBeforeMigrationStartMS());
 		logger.info("Destination row count to ignore: "+getDestinationRowCountToIgnore());
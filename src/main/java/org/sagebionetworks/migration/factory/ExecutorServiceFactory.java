@@ -0,0 +1,29 @@
+package org.sagebionetworks.migration.factory;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Abstraction for creating thread pools without static method calls.
+ *
+ */
+public interface ExecutorServiceFactory {
+
+	/**
+	 * Create a new thread pool with a fixed number of daemon threads. The caller
+	 * is responsible for shutting down the returned pool.
+	 * 
+	 * @param threadNamePrefix Prefix used to name each thread in the pool.
+	 * @param numberOfThreads  The maximum number of threads in the pool.
+	 * @return
+	 */
+	public ExecutorService createFixedThreadPool(String threadNamePrefix, int numberOfThreads);
+
+	/**
+	 * Create a new thread pool of daemon threads that grows as needed and reuses
+	 * idle threads.
+	 * 
+	 * @param threadNamePrefix Prefix used to name each thread in the pool.
+	 * @return
+	 */
+	public ExecutorService createCachedThreadPool(String threadNamePrefix);
+}
@@ -0,0 +1,36 @@
+package org.sagebionetworks.migration.factory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Simple wrapper for the static Executors methods. All threads are daemon
+ * threads so an abandoned pool will not keep the process alive.
+ *
+ */
+public class ExecutorServiceFactoryImpl implements ExecutorServiceFactory {
+
+	@Override
+	public ExecutorService createFixedThreadPool(String threadNamePrefix, int numberOfThreads) {
+		return Executors.newFixedThreadPool(Math.max(1, numberOfThreads), createDaemonThreadFactory(threadNamePrefix));
+	}
+
+	@Override
+	public ExecutorService createCachedThreadPool(String threadNamePrefix) {
+		return Executors.newCachedThreadPool(createDaemonThreadFactory(threadNamePrefix));
+	}
+
+	/**
+	 * Create a factory for named daemon threads.
+	 * 
+	 * @param threadNamePrefix
+	 * @return
+	 */
+	static ThreadFactory createDaemonThreadFactory(String threadNamePrefix) {
+		return new ThreadFactoryBuilder().setDaemon(true).setNameFormat(threadNamePrefix + "-%d").build();
+	}
+
+}
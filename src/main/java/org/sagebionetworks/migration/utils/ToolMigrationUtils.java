@@ -6,14 +6,22 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 import org.sagebionetworks.client.SynapseAdminClient;
 import org.sagebionetworks.client.exceptions.SynapseException;
+import org.sagebionetworks.migration.AsyncMigrationException;
+import org.sagebionetworks.repo.model.migration.IdRange;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.MigrationTypeCount;
 import org.sagebionetworks.repo.model.migration.MigrationTypeCounts;
 import org.sagebionetworks.schema.adapter.JSONObjectAdapterException;
 
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+
 public class ToolMigrationUtils {
 
 	/**
@@ -73,4 +81,73 @@ public class ToolMigrationUtils {
 		return result;
 	}
 
+	/**
+	 * Create the canonical form of the given inclusive range of IDs, so ranges
+	 * that touch are merged by a RangeSet.
+	 * 
+	 * @param minimumId
+	 * @param maximumId
+	 * @return
+	 */
+	public static Range<Long> toRange(long minimumId, long maximumId) {
+		return Range.closed(minimumId, maximumId).canonical(DiscreteDomain.longs());
+	}
+
+	/**
+	 * Convert the given range of IDs to an inclusive IdRange.
+	 * 
+	 * @param range A range with both end points.
+	 * @return
+	 */
+	public static IdRange toIdRange(Range<Long> range) {
+		Range<Long> canonical = range.canonical(DiscreteDomain.longs());
+		return createIdRange(canonical.lowerEndpoint(), canonical.upperEndpoint() - 1);
+	}
+
+	public static IdRange createIdRange(long minimumId, long maximumId) {
+		IdRange range = new IdRange();
+		range.setMinimumId(minimumId);
+		range.setMaximumId(maximumId);
+		return range;
+	}
+
+	/**
+	 * Find the parts of the given inclusive range that are not covered by the
+	 * given ranges.
+	 * 
+	 * @param covered
+	 * @param minimumId
+	 * @param maximumId
+	 * @return The uncovered ranges ordered by ID.
+	 */
+	public static List<IdRange> findUncoveredRanges(RangeSet<Long> covered, long minimumId, long maximumId) {
+		List<IdRange> uncovered = new LinkedList<>();
+		for (Range<Long> gap : covered.complement().subRangeSet(toRange(minimumId, maximumId)).asRanges()) {
+			uncovered.add(toIdRange(gap));
+		}
+		return uncovered;
+	}
+
+	/**
+	 * Unwrap the cause of a failed future or stage. Errors are re-thrown as-is.
+	 * 
+	 * @param failure An ExecutionException, a CompletionException or the cause
+	 *                itself.
+	 * @return
+	 */
+	public static RuntimeException unwrap(Throwable failure) {
+		Throwable cause = failure;
+		while ((cause instanceof ExecutionException || cause instanceof CompletionException)
+				&& cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		return new AsyncMigrationException(cause);
+	}
+
 }
@@ -1,5 +1,9 @@
 package org.sagebionetworks.migration;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.*;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.never;
@@ -8,6 +12,11 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.Logger;
 import org.junit.Before;
@@ -18,6 +27,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.sagebionetworks.migration.async.MigrationDriver;
 import org.sagebionetworks.migration.async.ResultPair;
 import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactory;
 import org.sagebionetworks.migration.utils.ToolMigrationUtils;
 import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
 import org.sagebionetworks.repo.model.migration.MigrationType;
@@ -25,6 +35,7 @@ import org.sagebionetworks.repo.model.migration.MigrationTypeChecksum;
 import org.sagebionetworks.repo.model.migration.MigrationTypeCount;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 
 @RunWith(MockitoJUnitRunner.class)
 public class FullMigrationImplTest {
@@ -43,6 +54,8 @@ public class FullMigrationImplTest {
 	MigrationDriver mockAsynchronousMigration;
 	@Mock
 	Configuration mockConfiguration;
+	@Mock
+	ExecutorServiceFactory mockExecutorServiceFactory;
 	
 	List<MigrationType> allCommonTypes;
 	List<MigrationType> commonPrimaryTypes;
@@ -86,15 +99,22 @@ public class FullMigrationImplTest {
 		countResultsTwo = new ResultPair<List<MigrationTypeCount>>();
 		countResultsTwo.setDestinationResult(Lists.newArrayList(endCount));
 		
-		when(mockTypeService.getMigrationTypeCounts(anyListOf(MigrationType.class))).thenReturn(countResultsOne, countResultsTwo);
+		when(mockTypeService.getMigrationTypeCounts(anyListOf(MigrationType.class))).thenReturn(countResultsOne);
+		when(mockTypeService.startMigrationTypeCounts(anyListOf(MigrationType.class)))
+				.thenReturn(CompletableFuture.completedFuture(countResultsTwo));
 		
 		typesToMigrate = ToolMigrationUtils.buildTypeToMigrateMetadata(
 				countResultsOne.getSourceResult(), countResultsOne.getDestinationResult(), commonPrimaryTypes);
 		
+		when(mockConfiguration.getMaximumNumberThreads()).thenReturn(4);
+		when(mockExecutorServiceFactory.createFixedThreadPool(anyString(), anyInt()))
+				.thenAnswer(invocation -> MoreExecutors.newDirectExecutorService());
+		
 		fullMigration = new FullMigrationImpl(mockLoggerFactory, mockStackStatusService, mockTypeService,
-				mockTypeReporter, mockAsynchronousMigration, mockConfiguration);
+				mockTypeReporter, mockAsynchronousMigration, mockConfiguration, mockExecutorServiceFactory);
 		
 		when(mockConfiguration.includeFullTableChecksums()).thenReturn(true);
+		when(mockConfiguration.skipFullTableChecksumsOnCountMismatch()).thenReturn(true);
 		when(mockStackStatusService.isSourceReadOnly()).thenReturn(true);
 		
 		checksumResutls = new ResultPair<MigrationTypeChecksum>();
@@ -109,7 +129,8 @@ public class FullMigrationImplTest {
 		verify(mockTypeService).getCommonPrimaryMigrationTypes();
 		verify(mockAsynchronousMigration).migratePrimaryTypes(typesToMigrate);
 		// called at start and end.
-		verify(mockTypeService, times(2)).getMigrationTypeCounts(allCommonTypes);
+		verify(mockTypeService).getMigrationTypeCounts(allCommonTypes);
+		verify(mockTypeService).startMigrationTypeCounts(allCommonTypes);
 		verify(mockTypeReporter).runCountDownBeforeStart();
 		// start
 		verify(mockTypeReporter).reportCountDifferences(countResultsOne);
@@ -117,6 +138,148 @@ public class FullMigrationImplTest {
 		verify(mockTypeReporter).reportCountDifferences(countResultsTwo);
 		verify(mockTypeService, times(allCommonTypes.size())).getFullTableChecksums(any(MigrationType.class));
 		verify(mockTypeReporter, times(allCommonTypes.size())).reportChecksums(any(MigrationType.class), eq(checksumResutls));
+		verify(mockExecutorServiceFactory).createFixedThreadPool(FullMigrationImpl.CHECKSUM_THREAD_NAME, 4);
+	}
+	
+	@Test
+	public void testRunFullTableChecksumsConcurrent() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		when(mockExecutorServiceFactory.createFixedThreadPool(anyString(), anyInt())).thenReturn(executor);
+		CountDownLatch nodeStarted = new CountDownLatch(1);
+		ResultPair<MigrationTypeChecksum> nodeChecksums = new ResultPair<>();
+		ResultPair<MigrationTypeChecksum> revisionChecksums = new ResultPair<>();
+		// the NODE checksum cannot finish until the NODE_REVISION checksum has started.
+		CountDownLatch revisionStarted = new CountDownLatch(1);
+		when(mockTypeService.getFullTableChecksums(MigrationType.NODE)).thenAnswer(invocation -> {
+			nodeStarted.countDown();
+			assertTrue(revisionStarted.await(10, TimeUnit.SECONDS));
+			return nodeChecksums;
+		});
+		when(mockTypeService.getFullTableChecksums(MigrationType.NODE_REVISION)).thenAnswer(invocation -> {
+			revisionStarted.countDown();
+			return revisionChecksums;
+		});
+		// call under test
+		fullMigration.runFullTableChecksums(allCommonTypes, CompletableFuture.completedFuture(countResultsTwo));
+		verify(mockTypeReporter).reportChecksums(MigrationType.NODE, nodeChecksums);
+		verify(mockTypeReporter).reportChecksums(MigrationType.NODE_REVISION, revisionChecksums);
+		assertTrue(executor.isShutdown());
+	}
+	
+	@Test
+	public void testRunFullTableChecksumsFailure() {
+		AsyncMigrationException exception = new AsyncMigrationException("failed");
+		when(mockTypeService.getFullTableChecksums(MigrationType.NODE)).thenThrow(exception);
+		try {
+			// call under test
+			fullMigration.runFullTableChecksums(allCommonTypes, CompletableFuture.completedFuture(countResultsTwo));
+			fail();
+		} catch (AsyncMigrationException e) {
+			assertEquals(exception, e);
+		}
+		verify(mockTypeReporter, never()).reportChecksums(eq(MigrationType.NODE), any());
+	}
+	
+	@Test
+	public void testRunFullMigrationFinalCountsFailure() {
+		AsyncMigrationException exception = new AsyncMigrationException("failed");
+		CompletableFuture<ResultPair<List<MigrationTypeCount>>> failed = new CompletableFuture<>();
+		failed.completeExceptionally(exception);
+		when(mockTypeService.startMigrationTypeCounts(anyListOf(MigrationType.class))).thenReturn(failed);
+		try {
+			// call under test
+			fullMigration.runFullMigration();
+			fail();
+		} catch (AsyncMigrationException e) {
+			assertEquals(exception, e);
+		}
+		// the checksums still run when the counts fail.
+		verify(mockTypeService, times(allCommonTypes.size())).getFullTableChecksums(any(MigrationType.class));
+		verify(mockTypeReporter, never()).reportCountDifferences(countResultsTwo);
+	}
+	
+	@Test
+	public void testRunFullMigrationCountMismatch() {
+		// the final counts prove NODE does not match.
+		ResultPair<List<MigrationTypeCount>> finalCounts = new ResultPair<>();
+		finalCounts.setSourceResult(Lists.newArrayList(createCount(MigrationType.NODE, 10L, 1L, 10L)));
+		finalCounts.setDestinationResult(Lists.newArrayList(createCount(MigrationType.NODE, 9L, 1L, 10L)));
+		when(mockTypeService.startMigrationTypeCounts(anyListOf(MigrationType.class)))
+				.thenReturn(CompletableFuture.completedFuture(finalCounts));
+		// call under test
+		fullMigration.runFullMigration();
+		// the checksums of NODE are skipped.
+		verify(mockTypeService, never()).getFullTableChecksums(MigrationType.NODE);
+		verify(mockTypeReporter, never()).reportChecksums(eq(MigrationType.NODE), any());
+		verify(mockTypeService).getFullTableChecksums(MigrationType.NODE_REVISION);
+		verify(mockTypeReporter).reportChecksums(MigrationType.NODE_REVISION, checksumResutls);
+		verify(mockTypeReporter).reportCountDifferences(finalCounts);
+	}
+	
+	@Test
+	public void testRunFullMigrationCountMismatchSkipDisabled() {
+		when(mockConfiguration.skipFullTableChecksumsOnCountMismatch()).thenReturn(false);
+		ResultPair<List<MigrationTypeCount>> finalCounts = new ResultPair<>();
+		finalCounts.setSourceResult(Lists.newArrayList(createCount(MigrationType.NODE, 10L, 1L, 10L)));
+		finalCounts.setDestinationResult(Lists.newArrayList(createCount(MigrationType.NODE, 9L, 1L, 10L)));
+		when(mockTypeService.startMigrationTypeCounts(anyListOf(MigrationType.class)))
+				.thenReturn(CompletableFuture.completedFuture(finalCounts));
+		// call under test
+		fullMigration.runFullMigration();
+		// the checksums of every type run regardless of the counts.
+		verify(mockTypeService).getFullTableChecksums(MigrationType.NODE);
+		verify(mockTypeReporter).reportChecksums(MigrationType.NODE, checksumResutls);
+	}
+	
+	@Test
+	public void testRunFullTableChecksumsWaitForCounts() {
+		CompletableFuture<ResultPair<List<MigrationTypeCount>>> finalCounts = new CompletableFuture<>();
+		CompletableFuture<Void> done = CompletableFuture
+				.runAsync(() -> fullMigration.runFullTableChecksums(allCommonTypes, finalCounts));
+		// no checksum starts before the counts are known.
+		verify(mockTypeService, never()).getFullTableChecksums(any(MigrationType.class));
+		finalCounts.complete(countResultsTwo);
+		done.join();
+		verify(mockTypeService, times(allCommonTypes.size())).getFullTableChecksums(any(MigrationType.class));
+	}
+	
+	@Test
+	public void testRunFullMigrationChecksumFailureCancelsCounts() {
+		CompletableFuture<ResultPair<List<MigrationTypeCount>>> finalCounts = new CompletableFuture<>();
+		when(mockTypeService.startMigrationTypeCounts(anyListOf(MigrationType.class))).thenReturn(finalCounts);
+		when(mockConfiguration.skipFullTableChecksumsOnCountMismatch()).thenReturn(false);
+		AsyncMigrationException exception = new AsyncMigrationException("failed");
+		when(mockTypeService.getFullTableChecksums(MigrationType.NODE)).thenThrow(exception);
+		try {
+			// call under test
+			fullMigration.runFullMigration();
+			fail();
+		} catch (AsyncMigrationException e) {
+			assertEquals(exception, e);
+		}
+		assertTrue(finalCounts.isCancelled());
+	}
+	
+	@Test
+	public void testIsCountMismatch() {
+		ResultPair<List<MigrationTypeCount>> counts = new ResultPair<>();
+		counts.setSourceResult(Lists.newArrayList(createCount(MigrationType.NODE, 10L, 1L, 10L),
+				createCount(MigrationType.ACL, 3L, 1L, 3L), createCount(MigrationType.NODE_REVISION, 4L, 1L, 4L)));
+		counts.setDestinationResult(Lists.newArrayList(createCount(MigrationType.NODE, 10L, 1L, 10L),
+				createCount(MigrationType.ACL, 3L, 2L, 3L)));
+		assertFalse(FullMigrationImpl.isCountMismatch(MigrationType.NODE, counts));
+		assertTrue(FullMigrationImpl.isCountMismatch(MigrationType.ACL, counts));
+		// cannot prove a mismatch without both counts.
+		assertFalse(FullMigrationImpl.isCountMismatch(MigrationType.NODE_REVISION, counts));
+	}
+
+	static MigrationTypeCount createCount(MigrationType type, Long count, Long minId, Long maxId) {
+		MigrationTypeCount typeCount = new MigrationTypeCount();
+		typeCount.setType(type);
+		typeCount.setCount(count);
+		typeCount.setMinid(minId);
+		typeCount.setMaxid(maxId);
+		return typeCount;
 	}
 	
 	@Test
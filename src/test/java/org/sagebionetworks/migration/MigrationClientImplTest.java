@@ -15,6 +15,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.migration.async.ProgressJournal;
 import org.sagebionetworks.migration.config.Configuration;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -30,6 +31,8 @@ public class MigrationClientImplTest {
 	StackStatusService mockStackStatus;
 	@Mock
 	FullMigration mockFullMigration;
+	@Mock
+	ProgressJournal mockProgressJournal;
 	
 	int maxNumberRetries;
 	MigrationClientImpl client;
@@ -40,7 +43,8 @@ public class MigrationClientImplTest {
 		when(mockConfig.getMaxRetries()).thenReturn(maxNumberRetries);
 		when(loggerFactory.getLogger(any())).thenReturn(mockLogger);
 		when(mockConfig.remainInReadOnlyAfterMigration()).thenReturn(false);
-		client = new MigrationClientImpl(mockConfig, mockStackStatus, mockFullMigration, loggerFactory);
+		client = new MigrationClientImpl(mockConfig, mockStackStatus, mockFullMigration, mockProgressJournal,
+				loggerFactory);
 	}
 	
 	@Test
@@ -52,6 +56,8 @@ public class MigrationClientImplTest {
 		verify(mockStackStatus).setDestinationReadWrite();
 		verify(mockFullMigration).runFullMigration();
 		verify(mockLogger, atLeast(3)).info(anyString());
+		// the journal is no longer needed after a successful migration.
+		verify(mockProgressJournal).clear();
 	}
 
 	@Test
@@ -107,6 +113,8 @@ public class MigrationClientImplTest {
 		// the destination must not be set back to READ-WRITE
 		verify(mockStackStatus, never()).setDestinationReadWrite();
 		verify(mockLogger, times(maxNumberRetries)).error(anyString(), any(Throwable.class));
+		// the journal must be kept so the next run can resume.
+		verify(mockProgressJournal, never()).clear();
 	}
 	
 	@Test
@@ -1,9 +1,11 @@
 package org.sagebionetworks.migration;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -172,6 +174,24 @@ public class TypeServiceImplTest {
 		assertEquals(expected, results);
 	}
 	
+	@Test
+	public void testStartMigrationTypeCounts() throws Exception {
+		ResultPair<List<MigrationTypeCount>> expected = new ResultPair<>();
+		expected.setDestinationResult(destinationCounts);
+		expected.setSourceResult(sourceCounts);
+		List<MigrationType> types = Lists.newArrayList(MigrationType.NODE);
+		AsyncMigrationTypeCountsRequest request = new AsyncMigrationTypeCountsRequest();
+		request.setTypes(types);
+		CompletableFuture<ResultPair<MigrationTypeCounts>> future = new CompletableFuture<>();
+		when(mockAsynchronousJobExecutor.<AsyncMigrationTypeCountsRequest, MigrationTypeCounts>startSourceAndDestinationJob(
+				request, MigrationTypeCounts.class)).thenReturn(future);
+		// call under test
+		CompletableFuture<ResultPair<List<MigrationTypeCount>>> results = typeService.startMigrationTypeCounts(types);
+		assertFalse(results.isDone());
+		future.complete(countsResults);
+		assertEquals(expected, results.get());
+	}
+	
 	@Test
 	public void testGetFullTableChecksums() {
 		MigrationType type = MigrationType.NODE;
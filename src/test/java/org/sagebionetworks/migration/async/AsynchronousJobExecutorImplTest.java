@@ -1,12 +1,15 @@
 package org.sagebionetworks.migration.async;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -39,10 +42,9 @@ public class AsynchronousJobExecutorImplTest {
 	SynapseAdminClient mockSourceClient;
 	@Mock
 	SynapseAdminClient mockDestinationClient;
-	@Mock
-	AsynchronousJobFuture<RestoreTypeResponse> mockSourceFuture;
-	@Mock
-	AsynchronousJobFuture<RestoreTypeResponse> mockDestinationFuture;
+
+	CompletableFuture<RestoreTypeResponse> sourceFuture;
+	CompletableFuture<RestoreTypeResponse> destinationFuture;
 
 	AsynchronousJobStatus status;
 
@@ -60,11 +62,11 @@ public class AsynchronousJobExecutorImplTest {
 		request.setBackupFileKey("backup file");
 		sourceReponse = new RestoreTypeResponse();
 		sourceReponse.setRestoredRowCount(99L);
-		when(mockSourceFuture.get()).thenReturn(sourceReponse);
+		sourceFuture = CompletableFuture.completedFuture(sourceReponse);
 		
 		destinationResponse = new RestoreTypeResponse();
 		destinationResponse.setRestoredRowCount(0L);
-		when(mockDestinationFuture.get()).thenReturn(destinationResponse);
+		destinationFuture = CompletableFuture.completedFuture(destinationResponse);
 
 
 		migrationRequest = new AsyncMigrationRequest();
@@ -81,13 +83,22 @@ public class AsynchronousJobExecutorImplTest {
 		when(mockDestinationClient.startAdminAsynchronousJob(migrationRequest)).thenReturn(status);
 
 		when(mockFutureFactory.createFuture(status, JobTarget.SOURCE, mockSourceClient, RestoreTypeResponse.class))
-				.thenReturn(mockSourceFuture);
+				.thenReturn(sourceFuture);
 		when(mockFutureFactory.createFuture(status, JobTarget.DESTINATION, mockDestinationClient,
-				RestoreTypeResponse.class)).thenReturn(mockDestinationFuture);
+				RestoreTypeResponse.class)).thenReturn(destinationFuture);
 
 		jobExecutor = new AsynchronousJobExecutorImpl(mockClientFactory, mockConfig, mockFutureFactory);
 	}
 
+	/**
+	 * @return A future for a job that failed.
+	 */
+	static CompletableFuture<RestoreTypeResponse> failedFuture() {
+		CompletableFuture<RestoreTypeResponse> future = new CompletableFuture<>();
+		future.completeExceptionally(new AsyncMigrationException("failed"));
+		return future;
+	}
+
 	@Test
 	public void testGetClientForJobTarget() {
 		assertEquals(mockSourceClient, jobExecutor.getClientForJobTarget(JobTarget.SOURCE));
@@ -98,8 +109,8 @@ public class AsynchronousJobExecutorImplTest {
 	public void testStartJobSource() throws SynapseException {
 		JobTarget jobTarget = JobTarget.SOURCE;
 		// call under test
-		Future<RestoreTypeResponse> future = jobExecutor.startJob(jobTarget, request, RestoreTypeResponse.class);
-		assertEquals(mockSourceFuture, future);
+		CompletableFuture<RestoreTypeResponse> future = jobExecutor.startJob(jobTarget, request, RestoreTypeResponse.class);
+		assertEquals(sourceFuture, future);
 		verify(mockSourceClient).startAdminAsynchronousJob(migrationRequest);
 		// start the job on the source.
 		verify(mockFutureFactory).createFuture(status, jobTarget, mockSourceClient, RestoreTypeResponse.class);
@@ -109,8 +120,8 @@ public class AsynchronousJobExecutorImplTest {
 	public void testStartJobDestination() throws SynapseException {
 		JobTarget jobTarget = JobTarget.DESTINATION;
 		// call under test
-		Future<RestoreTypeResponse> future = jobExecutor.startJob(jobTarget, request, RestoreTypeResponse.class);
-		assertEquals(mockDestinationFuture, future);
+		CompletableFuture<RestoreTypeResponse> future = jobExecutor.startJob(jobTarget, request, RestoreTypeResponse.class);
+		assertEquals(destinationFuture, future);
 		verify(mockDestinationClient).startAdminAsynchronousJob(migrationRequest);
 		// start the job on the source.
 		verify(mockFutureFactory).createFuture(status, jobTarget, mockDestinationClient, RestoreTypeResponse.class);
@@ -127,8 +138,8 @@ public class AsynchronousJobExecutorImplTest {
 	@Test
 	public void testStartDestionationJob() throws SynapseException {
 		// call under test
-		Future<RestoreTypeResponse> future = jobExecutor.startDestionationJob(request, RestoreTypeResponse.class);
-		assertEquals(mockDestinationFuture, future);
+		CompletableFuture<RestoreTypeResponse> future = jobExecutor.startDestionationJob(request, RestoreTypeResponse.class);
+		assertEquals(destinationFuture, future);
 		verify(mockDestinationClient).startAdminAsynchronousJob(migrationRequest);
 		verify(mockFutureFactory).createFuture(status, JobTarget.DESTINATION, mockDestinationClient,
 				RestoreTypeResponse.class);
@@ -137,8 +148,8 @@ public class AsynchronousJobExecutorImplTest {
 	@Test
 	public void testStartSourceJob() throws SynapseException {
 		// call under test
-		Future<RestoreTypeResponse> future = jobExecutor.startSourceJob(request, RestoreTypeResponse.class);
-		assertEquals(mockSourceFuture, future);
+		CompletableFuture<RestoreTypeResponse> future = jobExecutor.startSourceJob(request, RestoreTypeResponse.class);
+		assertEquals(sourceFuture, future);
 		verify(mockSourceClient).startAdminAsynchronousJob(migrationRequest);
 		verify(mockFutureFactory).createFuture(status, JobTarget.SOURCE, mockSourceClient, RestoreTypeResponse.class);
 	}
@@ -153,9 +164,46 @@ public class AsynchronousJobExecutorImplTest {
 		assertEquals(destinationResponse, results.getDestinationResult());
 	}
 	
+	@Test
+	public void testStartSourceAndDestinationJob() throws Exception {
+		sourceFuture = new CompletableFuture<>();
+		when(mockFutureFactory.createFuture(status, JobTarget.SOURCE, mockSourceClient, RestoreTypeResponse.class))
+				.thenReturn(sourceFuture);
+		// call under test
+		CompletableFuture<ResultPair<RestoreTypeResponse>> future = jobExecutor.startSourceAndDestinationJob(request,
+				RestoreTypeResponse.class);
+		// both jobs should be started without waiting.
+		verify(mockSourceClient).startAdminAsynchronousJob(migrationRequest);
+		verify(mockDestinationClient).startAdminAsynchronousJob(migrationRequest);
+		assertFalse(future.isDone());
+		sourceFuture.complete(sourceReponse);
+		assertEquals(sourceReponse, future.get().getSourceResult());
+		assertEquals(destinationResponse, future.get().getDestinationResult());
+	}
+	
+	@Test
+	public void testStartSourceAndDestinationJobDestinationStartFailed() throws Exception {
+		sourceFuture = new CompletableFuture<>();
+		when(mockFutureFactory.createFuture(status, JobTarget.SOURCE, mockSourceClient, RestoreTypeResponse.class))
+				.thenReturn(sourceFuture);
+		when(mockDestinationClient.startAdminAsynchronousJob(migrationRequest))
+				.thenThrow(new SynapseBadRequestException());
+		try {
+			// call under test
+			jobExecutor.startSourceAndDestinationJob(request, RestoreTypeResponse.class);
+			fail();
+		} catch (AsyncMigrationException e) {
+			// expected
+		}
+		// the source job is no longer watched.
+		assertTrue(sourceFuture.isCancelled());
+	}
+	
 	@Test (expected=AsyncMigrationException.class)
 	public void testExecuteSourceAndDestinationJobError() throws InterruptedException, ExecutionException {
-		when(mockSourceFuture.get()).thenThrow(new ExecutionException(new RuntimeException("failed")));
+		sourceFuture = failedFuture();
+		when(mockFutureFactory.createFuture(status, JobTarget.SOURCE, mockSourceClient, RestoreTypeResponse.class))
+				.thenReturn(sourceFuture);
 		// call under test
 		jobExecutor.executeSourceAndDestinationJob(request,
 				RestoreTypeResponse.class);
@@ -170,7 +218,8 @@ public class AsynchronousJobExecutorImplTest {
 	
 	@Test (expected=AsyncMigrationException.class)
 	public void testExecuteDestinationJobException() throws Exception {
-		when(mockDestinationFuture.get()).thenThrow(new ExecutionException(new RuntimeException("failed")));
+		when(mockFutureFactory.createFuture(status, JobTarget.DESTINATION, mockDestinationClient,
+				RestoreTypeResponse.class)).thenReturn(failedFuture());
 		// call under test
 		jobExecutor.executeDestinationJob(request, RestoreTypeResponse.class);
 	}
@@ -184,7 +233,8 @@ public class AsynchronousJobExecutorImplTest {
 	
 	@Test (expected=AsyncMigrationException.class)
 	public void testExecuteSourceJobException() throws Exception {
-		when(mockSourceFuture.get()).thenThrow(new ExecutionException(new RuntimeException("failed")));
+		when(mockFutureFactory.createFuture(status, JobTarget.SOURCE, mockSourceClient, RestoreTypeResponse.class))
+				.thenReturn(failedFuture());
 		// call under test
 		jobExecutor.executeSourceJob(request, RestoreTypeResponse.class);
 	}
@@ -0,0 +1,255 @@
+package org.sagebionetworks.migration.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.migration.async.AsynchronousJobPollerImpl.*;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.client.SynapseAdminClient;
+import org.sagebionetworks.client.exceptions.SynapseBadRequestException;
+import org.sagebionetworks.client.exceptions.SynapseException;
+import org.sagebionetworks.migration.AsyncMigrationException;
+import org.sagebionetworks.migration.Reporter;
+import org.sagebionetworks.repo.model.asynch.AsynchJobState;
+import org.sagebionetworks.repo.model.asynch.AsynchronousJobStatus;
+import org.sagebionetworks.repo.model.migration.AsyncMigrationResponse;
+import org.sagebionetworks.repo.model.migration.RestoreTypeResponse;
+import org.sagebionetworks.util.Clock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsynchronousJobPollerImplTest {
+
+	@Mock
+	SynapseAdminClient mockClient;
+	@Mock
+	Reporter mockReporter;
+	@Mock
+	Clock mockClock;
+
+	String jobId;
+	AsynchronousJobStatus processingStatus;
+	AsynchronousJobStatus completeStatus;
+	AsynchronousJobStatus failedStatus;
+
+	AsyncMigrationResponse jobResponse;
+	RestoreTypeResponse wrappedReponse;
+	String errorMessage;
+
+	JobTarget jobTarget;
+	long timeoutMS;
+	long startMS;
+
+	AsynchronousJobPollerImpl poller;
+
+	@Before
+	public void before() throws SynapseException {
+		jobId = "123";
+		jobTarget = JobTarget.DESTINATION;
+
+		wrappedReponse = new RestoreTypeResponse();
+		wrappedReponse.setRestoredRowCount(99L);
+
+		jobResponse = new AsyncMigrationResponse();
+		jobResponse.setAdminResponse(wrappedReponse);
+
+		processingStatus = new AsynchronousJobStatus();
+		processingStatus.setJobId(jobId);
+		processingStatus.setJobState(AsynchJobState.PROCESSING);
+
+		completeStatus = new AsynchronousJobStatus();
+		completeStatus.setJobId(jobId);
+		completeStatus.setJobState(AsynchJobState.COMPLETE);
+		completeStatus.setResponseBody(jobResponse);
+
+		errorMessage = "some kind of error";
+		failedStatus = new AsynchronousJobStatus();
+		failedStatus.setJobId(jobId);
+		failedStatus.setJobState(AsynchJobState.FAILED);
+		failedStatus.setErrorMessage(errorMessage);
+
+		timeoutMS = 60000L;
+		startMS = 5000L;
+		when(mockClock.currentTimeMillis()).thenReturn(startMS);
+		// complete each future on the calling thread.
+		poller = new AsynchronousJobPollerImpl(mockReporter, mockClock, timeoutMS, Runnable::run);
+	}
+
+	@Test
+	public void testCompleteOnCompletionExecutor() throws Exception {
+		List<Runnable> completions = new LinkedList<>();
+		poller = new AsynchronousJobPollerImpl(mockReporter, mockClock, timeoutMS, completions::add);
+		CompletableFuture<RestoreTypeResponse> future = poller.watchJob(completeStatus, jobTarget, mockClient);
+		CompletableFuture<RestoreTypeResponse> failedFuture = poller.watchJob(failedStatus, JobTarget.SOURCE,
+				mockClient);
+		fireAt(startMS);
+		// the timer thread does not complete the futures.
+		assertFalse(future.isDone());
+		assertFalse(failedFuture.isDone());
+		assertEquals(2, completions.size());
+		completions.forEach(Runnable::run);
+		assertEquals(wrappedReponse, future.get());
+		assertTrue(failedFuture.isCompletedExceptionally());
+	}
+
+	/**
+	 * Fire the timer at the given time.
+	 * 
+	 * @param now
+	 */
+	void fireAt(long now) {
+		when(mockClock.currentTimeMillis()).thenReturn(now);
+		poller.run();
+	}
+
+	@Test
+	public void testComplete() throws Exception {
+		when(mockClient.getAdminAsynchronousJobStatus(jobId)).thenReturn(processingStatus, processingStatus,
+				completeStatus);
+		CompletableFuture<RestoreTypeResponse> future = poller.watchJob(processingStatus, jobTarget, mockClient);
+		fireAt(startMS);
+		assertFalse(future.isDone());
+		fireAt(startMS + MINIMUM_POLL_INTERVAL_MS);
+		assertFalse(future.isDone());
+		fireAt(startMS + 3 * MINIMUM_POLL_INTERVAL_MS);
+		assertTrue(future.isDone());
+		assertEquals(wrappedReponse, future.get());
+		verify(mockClient, times(3)).getAdminAsynchronousJobStatus(jobId);
+		// once done no more get status calls should occur
+		fireAt(startMS + 100 * MINIMUM_POLL_INTERVAL_MS);
+		verify(mockClient, times(3)).getAdminAsynchronousJobStatus(jobId);
+		verify(mockReporter, times(1)).reportProgress(jobTarget, processingStatus);
+	}
+
+	@Test
+	public void testAlreadyComplete() throws Exception {
+		CompletableFuture<RestoreTypeResponse> future = poller.watchJob(completeStatus, jobTarget, mockClient);
+		fireAt(startMS);
+		assertEquals(wrappedReponse, future.get());
+		// status is only fetched for processing jobs.
+		verify(mockClient, never()).getAdminAsynchronousJobStatus(jobId);
+	}
+
+	@Test
+	public void testCancelled() throws Exception {
+		when(mockClient.getAdminAsynchronousJobStatus(jobId)).thenReturn(processingStatus);
+		CompletableFuture<RestoreTypeResponse> future = poller.watchJob(processingStatus, jobTarget, mockClient);
+		fireAt(startMS);
+		verify(mockClient, times(1)).getAdminAsynchronousJobStatus(jobId);
+		// call under test
+		future.cancel(false);
+		fireAt(startMS + MAXIMUM_POLL_INTERVAL_MS);
+		// a cancelled job is no longer polled.
+		verify(mockClient, times(1)).getAdminAsynchronousJobStatus(jobId);
+	}
+
+	@Test
+	public void testBackoff() throws Exception {
+		when(mockClient.getAdminAsynchronousJobStatus(jobId)).thenReturn(processingStatus);
+		poller.watchJob(processingStatus, jobTarget, mockClient);
+		// polls at 0, 100, 300, 700, 1500, 3100, 5100 ms after the start.
+		for (long offset = 0; offset <= 5100L; offset += MINIMUM_POLL_INTERVAL_MS) {
+			fireAt(startMS + offset);
+		}
+		verify(mockClient, times(7)).getAdminAsynchronousJobStatus(jobId);
+		// the interval should not exceed the maximum.
+		fireAt(startMS + 5100L + MAXIMUM_POLL_INTERVAL_MS - 1);
+		verify(mockClient, times(7)).getAdminAsynchronousJobStatus(jobId);
+		fireAt(startMS + 5100L + MAXIMUM_POLL_INTERVAL_MS);
+		verify(mockClient, times(8)).getAdminAsynchronousJobStatus(jobId);
+	}
+
+	@Test
+	public void testMultipleTargets() throws Exception {
+		SynapseAdminClient mockSourceClient = org.mockito.Mockito.mock(SynapseAdminClient.class);
+		// the same job ID can be used on both the source and destination.
+		when(mockSourceClient.getAdminAsynchronousJobStatus(jobId)).thenReturn(completeStatus);
+		when(mockClient.getAdminAsynchronousJobStatus(jobId)).thenReturn(failedStatus);
+		CompletableFuture<RestoreTypeResponse> sourceFuture = poller.watchJob(processingStatus, JobTarget.SOURCE,
+				mockSourceClient);
+		CompletableFuture<RestoreTypeResponse> destinationFuture = poller.watchJob(processingStatus,
+				JobTarget.DESTINATION, mockClient);
+		fireAt(startMS);
+		assertEquals(wrappedReponse, sourceFuture.get());
+		assertTrue(destinationFuture.isCompletedExceptionally());
+	}
+
+	@Test
+	public void testFailed() throws Exception {
+		when(mockClient.getAdminAsynchronousJobStatus(jobId)).thenReturn(failedStatus);
+		CompletableFuture<RestoreTypeResponse> future = poller.watchJob(processingStatus, jobTarget, mockClient);
+		fireAt(startMS);
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof AsyncMigrationException);
+			assertTrue(e.getCause().getMessage().contains(errorMessage));
+		}
+	}
+
+	@Test
+	public void testReportThrottled() throws Exception {
+		when(mockClient.getAdminAsynchronousJobStatus(jobId)).thenReturn(processingStatus);
+		poller.watchJob(processingStatus, jobTarget, mockClient);
+		// each fire is after the next poll is due.
+		Long halfTime = MINIMUM_MS_BETWEEN_REPORTS / 2L;
+		fireAt(startMS);
+		fireAt(startMS + halfTime);
+		fireAt(startMS + 2 * halfTime);
+		fireAt(startMS + 3 * halfTime);
+		verify(mockClient, times(4)).getAdminAsynchronousJobStatus(jobId);
+		// progress should occur the first time, then every other time.
+		verify(mockReporter, times(2)).reportProgress(jobTarget, processingStatus);
+	}
+
+	@Test
+	public void testStatusException() throws Exception {
+		SynapseBadRequestException error = new SynapseBadRequestException();
+		when(mockClient.getAdminAsynchronousJobStatus(jobId)).thenThrow(error);
+		CompletableFuture<RestoreTypeResponse> future = poller.watchJob(processingStatus, jobTarget, mockClient);
+		fireAt(startMS);
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof AsyncMigrationException);
+			assertEquals(error, e.getCause().getCause());
+		}
+		// failed jobs are no longer polled.
+		fireAt(startMS + MAXIMUM_POLL_INTERVAL_MS);
+		verify(mockClient, times(1)).getAdminAsynchronousJobStatus(jobId);
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		when(mockClient.getAdminAsynchronousJobStatus(jobId)).thenReturn(processingStatus);
+		CompletableFuture<RestoreTypeResponse> future = poller.watchJob(processingStatus, jobTarget, mockClient);
+		fireAt(startMS);
+		fireAt(startMS + timeoutMS + 1);
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			// For this case the timeout is wrapped in AsyncMigrationException.
+			assertTrue(e.getCause() instanceof AsyncMigrationException);
+			assertTrue(e.getCause().getCause() instanceof TimeoutException);
+			assertEquals(TIMEOUT_MESSAGE, e.getCause().getCause().getMessage());
+		}
+	}
+}
@@ -5,12 +5,14 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -26,6 +28,7 @@ import org.sagebionetworks.repo.model.migration.CalculateOptimalRangeRequest;
 import org.sagebionetworks.repo.model.migration.CalculateOptimalRangeResponse;
 import org.sagebionetworks.repo.model.migration.IdRange;
 import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.util.Clock;
 
 import com.google.common.collect.Lists;
 
@@ -36,6 +39,16 @@ public class BackupJobExecutorImplTest {
 	Configuration mockConfiguration;
 	@Mock
 	AsynchronousJobExecutor mockAsynchronousJobExecutor;
+	@Mock
+	CompletableFuture mockBackupFuture;
+	@Mock
+	ProgressJournal mockProgressJournal;
+	@Mock
+	IdDensityIndex mockIdDensityIndex;
+	@Mock
+	RowsPerRangeController mockRowsPerRangeController;
+	@Mock
+	Clock mockClock;
 
 	BackupJobExecutorImpl executor;
 
@@ -50,7 +63,7 @@ public class BackupJobExecutorImplTest {
 	String backupFile;
 
 	@Before
-	public void before() {
+	public void before() throws Exception {
 		batchSize = 1;
 		when(mockConfiguration.getMaximumBackupBatchSize()).thenReturn(batchSize);
 		backupAliasType = BackupAliasType.TABLE_NAME;
@@ -65,9 +78,14 @@ public class BackupJobExecutorImplTest {
 		backupFile = "backupFile";
 		backupTypeResponse.setBackupFileKey(backupFile);
 		
-		when(mockAsynchronousJobExecutor.executeSourceJob(any(AdminRequest.class), any())).thenReturn(rangeResponse, backupTypeResponse);
+		when(mockAsynchronousJobExecutor.executeSourceJob(any(AdminRequest.class), any())).thenReturn(rangeResponse);
+		when(mockBackupFuture.get()).thenReturn(backupTypeResponse);
+		when(mockAsynchronousJobExecutor.startSourceJob(any(AdminRequest.class), any())).thenReturn(mockBackupFuture);
+
+		when(mockRowsPerRangeController.getRowsPerRange(migrationType)).thenReturn((long) batchSize);
 
-		executor = new BackupJobExecutorImpl(mockConfiguration, mockAsynchronousJobExecutor);
+		executor = new BackupJobExecutorImpl(mockConfiguration, mockAsynchronousJobExecutor, mockProgressJournal,
+				mockIdDensityIndex, mockRowsPerRangeController, mockClock);
 	}
 
 	@Test
@@ -159,14 +177,8 @@ public class BackupJobExecutorImplTest {
 		List<BackupTypeRangeRequest> results = BackupJobExecutorImpl.createContiguousBackupRangeRequests(
 				backupAliasType, batchSize, migrationType, minimumId, maximumId, range);
 		assertNotNull(results);
-		assertEquals(1, results.size());
-		// one
-		BackupTypeRangeRequest request = results.get(0);
-		assertEquals(backupAliasType, request.getAliasType());
-		assertEquals(new Long(batchSize), request.getBatchSize());
-		assertEquals(migrationType, request.getMigrationType());
-		assertEquals(new Long(1), request.getMinimumId());
-		assertEquals(new Long(8), request.getMaximumId());
+		// nothing to backup.
+		assertTrue(results.isEmpty());
 	}
 
 	/**
@@ -197,6 +209,8 @@ public class BackupJobExecutorImplTest {
 		expectedRangeRequset.setMaximumId(maximumId);
 		expectedRangeRequset.setOptimalRowsPerRange((long) batchSize);
 		verify(mockAsynchronousJobExecutor).executeSourceJob(expectedRangeRequset, CalculateOptimalRangeResponse.class);
+		verify(mockIdDensityIndex).recordOptimalRanges(migrationType, minimumId, maximumId, batchSize,
+				rangeResponse.getRanges());
 
 		assertTrue(iterator.hasNext());
 		DestinationJob job = iterator.next();
@@ -209,4 +223,171 @@ public class BackupJobExecutorImplTest {
 		assertFalse(iterator.hasNext());
 	}
 
+	@Test
+	public void testExecuteBackupJobEmptySource() {
+		long minimumId = 1L;
+		long maximumId = 8L;
+		rangeResponse.setRanges(new LinkedList<>());
+		// call under test
+		Iterator<DestinationJob> iterator = executor.executeBackupJob(migrationType, minimumId, maximumId);
+		assertTrue(iterator.hasNext());
+		DeleteDestinationJob expected = new DeleteDestinationJob();
+		expected.setMigrationType(migrationType);
+		expected.setMinimumId(minimumId);
+		expected.setMaximumId(maximumId);
+		assertEquals(expected, iterator.next());
+		assertFalse(iterator.hasNext());
+		// the empty range must not be backed up.
+		verify(mockAsynchronousJobExecutor, never()).startSourceJob(any(AdminRequest.class), any());
+	}
+
+	@Test
+	public void testExecuteBackupJobTunedRowsPerRange() {
+		long minimumId = 1L;
+		long maximumId = 8L;
+		when(mockRowsPerRangeController.getRowsPerRange(migrationType)).thenReturn(5000L);
+		// call under test
+		executor.executeBackupJob(migrationType, minimumId, maximumId);
+		CalculateOptimalRangeRequest expectedRangeRequset = new CalculateOptimalRangeRequest();
+		expectedRangeRequset.setMigrationType(migrationType);
+		expectedRangeRequset.setMinimumId(minimumId);
+		expectedRangeRequset.setMaximumId(maximumId);
+		expectedRangeRequset.setOptimalRowsPerRange(5000L);
+		verify(mockAsynchronousJobExecutor).executeSourceJob(expectedRangeRequset, CalculateOptimalRangeResponse.class);
+	}
+
+	@Test
+	public void testExecuteBackupJobFinished() {
+		long minimumId = 1L;
+		long maximumId = 8L;
+		when(mockProgressJournal.isFinished(migrationType, minimumId, maximumId)).thenReturn(true);
+		// call under test
+		Iterator<DestinationJob> iterator = executor.executeBackupJob(migrationType, minimumId, maximumId);
+		assertFalse(iterator.hasNext());
+		// nothing should be started on the source.
+		verify(mockAsynchronousJobExecutor, never()).executeSourceJob(any(AdminRequest.class), any());
+		verify(mockAsynchronousJobExecutor, never()).startSourceJob(any(AdminRequest.class), any());
+	}
+
+	@Test
+	public void testExecuteBackupJobSkipFinishedRanges() {
+		long minimumId = 1L;
+		long maximumId = 8L;
+		rangeResponse.setRanges(Lists.newArrayList(createIdRange(3L, 4L), createIdRange(5L, 6L)));
+		// the first range was restored by a previous attempt.
+		when(mockProgressJournal.isFinished(migrationType, 1L, 4L)).thenReturn(true);
+		// call under test
+		Iterator<DestinationJob> iterator = executor.executeBackupJob(migrationType, minimumId, maximumId);
+		assertTrue(iterator.hasNext());
+		RestoreDestinationJob restoreJob = (RestoreDestinationJob) iterator.next();
+		assertEquals(new Long(5L), restoreJob.getMinimumId());
+		assertEquals(new Long(maximumId), restoreJob.getMaximumId());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testExecuteMismatchBackupJobRestored() {
+		long minimumId = 1L;
+		long maximumId = 8L;
+		rangeResponse.setRanges(Lists.newArrayList(createIdRange(3L, 4L), createIdRange(5L, 6L)));
+		// the range was restored by a previous attempt but its checksum did not match.
+		when(mockProgressJournal.isFinished(any(MigrationType.class), any(Long.class), any(Long.class)))
+				.thenReturn(true);
+		// call under test
+		Iterator<DestinationJob> iterator = executor.executeMismatchBackupJob(migrationType, minimumId, maximumId);
+		RestoreDestinationJob restoreJob = (RestoreDestinationJob) iterator.next();
+		assertEquals(new Long(minimumId), restoreJob.getMinimumId());
+		assertEquals(new Long(4L), restoreJob.getMaximumId());
+		restoreJob = (RestoreDestinationJob) iterator.next();
+		assertEquals(new Long(5L), restoreJob.getMinimumId());
+		assertEquals(new Long(maximumId), restoreJob.getMaximumId());
+		assertFalse(iterator.hasNext());
+		verify(mockProgressJournal, never()).isFinished(any(MigrationType.class), any(Long.class), any(Long.class));
+	}
+
+	@Test
+	public void testExecuteBackupJobFromIndex() {
+		long minimumId = 1L;
+		long maximumId = 8L;
+		when(mockIdDensityIndex.findOptimalRanges(migrationType, minimumId, maximumId, batchSize))
+				.thenReturn(Lists.newArrayList(createIdRange(2L, 3L), createIdRange(6L, 7L)));
+		// call under test
+		Iterator<DestinationJob> iterator = executor.executeBackupJob(migrationType, minimumId, maximumId);
+		// the ranges are planned without the source.
+		verify(mockAsynchronousJobExecutor, never()).executeSourceJob(any(AdminRequest.class), any());
+		RestoreDestinationJob restoreJob = (RestoreDestinationJob) iterator.next();
+		assertEquals(new Long(1L), restoreJob.getMinimumId());
+		assertEquals(new Long(3L), restoreJob.getMaximumId());
+		restoreJob = (RestoreDestinationJob) iterator.next();
+		assertEquals(new Long(4L), restoreJob.getMinimumId());
+		assertEquals(new Long(8L), restoreJob.getMaximumId());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testExecuteBackupJobIndexFullType() {
+		long minimumId = 5L;
+		long maximumId = 8L;
+		when(mockIdDensityIndex.getRangeToIndex(migrationType)).thenReturn(createIdRange(1L, 20L));
+		rangeResponse.setRanges(Lists.newArrayList(createIdRange(1L, 6L), createIdRange(7L, 12L)));
+		// call under test
+		Iterator<DestinationJob> iterator = executor.executeBackupJob(migrationType, minimumId, maximumId);
+		// the full range of the type is calculated and indexed.
+		CalculateOptimalRangeRequest expectedRangeRequset = new CalculateOptimalRangeRequest();
+		expectedRangeRequset.setMigrationType(migrationType);
+		expectedRangeRequset.setMinimumId(1L);
+		expectedRangeRequset.setMaximumId(20L);
+		expectedRangeRequset.setOptimalRowsPerRange((long) batchSize);
+		verify(mockAsynchronousJobExecutor).executeSourceJob(expectedRangeRequset, CalculateOptimalRangeResponse.class);
+		verify(mockIdDensityIndex).recordOptimalRanges(migrationType, 1L, 20L, batchSize, rangeResponse.getRanges());
+		// only the requested range is backed up.
+		RestoreDestinationJob restoreJob = (RestoreDestinationJob) iterator.next();
+		assertEquals(new Long(5L), restoreJob.getMinimumId());
+		assertEquals(new Long(6L), restoreJob.getMaximumId());
+		restoreJob = (RestoreDestinationJob) iterator.next();
+		assertEquals(new Long(7L), restoreJob.getMinimumId());
+		assertEquals(new Long(8L), restoreJob.getMaximumId());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testExecuteBackupJobIndexCapped() {
+		long minimumId = 500L;
+		long maximumId = 509L;
+		when(mockIdDensityIndex.getRangeToIndex(migrationType)).thenReturn(createIdRange(1L, 1000000L));
+		rangeResponse.setRanges(Lists.newArrayList(createIdRange(455L, 554L)));
+		// call under test
+		executor.executeBackupJob(migrationType, minimumId, maximumId);
+		// only ten times the requested range is calculated, not the full type.
+		CalculateOptimalRangeRequest expectedRangeRequset = new CalculateOptimalRangeRequest();
+		expectedRangeRequset.setMigrationType(migrationType);
+		expectedRangeRequset.setMinimumId(455L);
+		expectedRangeRequset.setMaximumId(554L);
+		expectedRangeRequset.setOptimalRowsPerRange((long) batchSize);
+		verify(mockAsynchronousJobExecutor).executeSourceJob(expectedRangeRequset, CalculateOptimalRangeResponse.class);
+		verify(mockIdDensityIndex).recordOptimalRanges(migrationType, 455L, 554L, batchSize, rangeResponse.getRanges());
+	}
+
+	@Test
+	public void testExecuteBackupJobIndexFullTypeEmptyRange() {
+		long minimumId = 5L;
+		long maximumId = 8L;
+		when(mockIdDensityIndex.getRangeToIndex(migrationType)).thenReturn(createIdRange(1L, 20L));
+		rangeResponse.setRanges(Lists.newArrayList(createIdRange(1L, 4L), createIdRange(9L, 12L)));
+		// call under test
+		Iterator<DestinationJob> iterator = executor.executeBackupJob(migrationType, minimumId, maximumId);
+		// the source has no rows in the requested range.
+		assertTrue(iterator.next() instanceof DeleteDestinationJob);
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testClipRanges() {
+		List<IdRange> sparseRange = Lists.newArrayList(createIdRange(1L, 3L), createIdRange(4L, 6L),
+				createIdRange(9L, 12L));
+		// call under test
+		List<IdRange> results = BackupJobExecutorImpl.clipRanges(sparseRange, 5L, 10L);
+		assertEquals(Lists.newArrayList(createIdRange(5L, 6L), createIdRange(9L, 10L)), results);
+	}
+
 }
@@ -0,0 +1,162 @@
+package org.sagebionetworks.migration.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.migration.AsyncMigrationException;
+import org.sagebionetworks.repo.model.migration.BackupTypeRangeRequest;
+import org.sagebionetworks.repo.model.migration.BackupTypeResponse;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.util.Clock;
+
+import com.google.common.collect.Lists;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BackupRangeIteratorTest {
+
+	@Mock
+	AsynchronousJobExecutor mockAsynchronousJobExecutor;
+	@Mock
+	CompletableFuture mockFutureOne;
+	@Mock
+	CompletableFuture mockFutureTwo;
+	@Mock
+	CompletableFuture mockFutureThree;
+
+	MigrationType type;
+	BackupTypeRangeRequest requestOne;
+	BackupTypeRangeRequest requestTwo;
+	BackupTypeRangeRequest requestThree;
+	List<BackupTypeRangeRequest> requests;
+
+	@Before
+	public void before() throws Exception {
+		type = MigrationType.NODE;
+		requestOne = createRequest(1L, 10L);
+		requestTwo = createRequest(11L, 20L);
+		requestThree = createRequest(21L, 30L);
+		requests = Lists.newArrayList(requestOne, requestTwo, requestThree);
+
+		when(mockFutureOne.get()).thenReturn(createResponse("one"));
+		when(mockFutureTwo.get()).thenReturn(createResponse("two"));
+		when(mockFutureThree.get()).thenReturn(createResponse("three"));
+		when(mockAsynchronousJobExecutor.startSourceJob(requestOne, BackupTypeResponse.class)).thenReturn(mockFutureOne);
+		when(mockAsynchronousJobExecutor.startSourceJob(requestTwo, BackupTypeResponse.class)).thenReturn(mockFutureTwo);
+		when(mockAsynchronousJobExecutor.startSourceJob(requestThree, BackupTypeResponse.class)).thenReturn(mockFutureThree);
+	}
+
+	@Test
+	public void testSequential() {
+		BackupRangeIterator iterator = new BackupRangeIterator(mockAsynchronousJobExecutor, requests, 1);
+		assertTrue(iterator.hasNext());
+		// call under test
+		assertEquals(new RestoreDestinationJob(type, "one", 1L, 10L), iterator.next());
+		// only the first backup should be started.
+		verify(mockAsynchronousJobExecutor).startSourceJob(requestOne, BackupTypeResponse.class);
+		verify(mockAsynchronousJobExecutor, never()).startSourceJob(requestTwo, BackupTypeResponse.class);
+		assertEquals(new RestoreDestinationJob(type, "two", 11L, 20L), iterator.next());
+		assertEquals(new RestoreDestinationJob(type, "three", 21L, 30L), iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testPipelined() {
+		BackupRangeIterator iterator = new BackupRangeIterator(mockAsynchronousJobExecutor, requests, 2);
+		assertTrue(iterator.hasNext());
+		// call under test
+		assertEquals(new RestoreDestinationJob(type, "one", 1L, 10L), iterator.next());
+		// the second backup should be started before the first is returned.
+		verify(mockAsynchronousJobExecutor).startSourceJob(requestOne, BackupTypeResponse.class);
+		verify(mockAsynchronousJobExecutor).startSourceJob(requestTwo, BackupTypeResponse.class);
+		verify(mockAsynchronousJobExecutor, never()).startSourceJob(requestThree, BackupTypeResponse.class);
+		assertTrue(iterator.hasNext());
+		assertEquals(new RestoreDestinationJob(type, "two", 11L, 20L), iterator.next());
+		verify(mockAsynchronousJobExecutor).startSourceJob(requestThree, BackupTypeResponse.class);
+		assertTrue(iterator.hasNext());
+		assertEquals(new RestoreDestinationJob(type, "three", 21L, 30L), iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testMoreInFlightThanRequests() {
+		BackupRangeIterator iterator = new BackupRangeIterator(mockAsynchronousJobExecutor, requests, 10);
+		// call under test
+		assertEquals(new RestoreDestinationJob(type, "one", 1L, 10L), iterator.next());
+		// all backups should be started with the first call.
+		verify(mockAsynchronousJobExecutor, times(3)).startSourceJob(any(BackupTypeRangeRequest.class), any());
+		assertEquals(new RestoreDestinationJob(type, "two", 11L, 20L), iterator.next());
+		assertEquals(new RestoreDestinationJob(type, "three", 21L, 30L), iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testInFlightLessThanOne() {
+		BackupRangeIterator iterator = new BackupRangeIterator(mockAsynchronousJobExecutor, requests, 0);
+		// call under test
+		assertEquals(new RestoreDestinationJob(type, "one", 1L, 10L), iterator.next());
+		verify(mockAsynchronousJobExecutor, times(1)).startSourceJob(any(BackupTypeRangeRequest.class), any());
+	}
+
+	@Test
+	public void testRecordBackupDuration() {
+		RowsPerRangeController mockController = mock(RowsPerRangeController.class);
+		Clock mockClock = mock(Clock.class);
+		when(mockClock.currentTimeMillis()).thenReturn(1000L, 2500L);
+		CompletableFuture<BackupTypeResponse> future = new CompletableFuture<>();
+		when(mockAsynchronousJobExecutor.startSourceJob(requestOne, BackupTypeResponse.class)).thenReturn(future);
+		BackupRangeIterator iterator = new BackupRangeIterator(mockAsynchronousJobExecutor,
+				Lists.newArrayList(requestOne), 1, mockController, mockClock);
+		iterator.startBackups();
+		verify(mockController, never()).recordBackup(any(MigrationType.class), any(String.class), anyLong());
+		// call under test
+		future.complete(createResponse("one"));
+		verify(mockController).recordBackup(type, "one", 1500L);
+		assertEquals(new RestoreDestinationJob(type, "one", 1L, 10L), iterator.next());
+	}
+
+	@Test
+	public void testBackupFailed() throws Exception {
+		ExecutionException error = new ExecutionException(new RuntimeException("failed"));
+		when(mockFutureOne.get()).thenThrow(error);
+		BackupRangeIterator iterator = new BackupRangeIterator(mockAsynchronousJobExecutor, requests, 2);
+		try {
+			// call under test
+			iterator.next();
+			fail();
+		} catch (AsyncMigrationException e) {
+			assertEquals(error, e.getCause());
+		}
+	}
+
+	BackupTypeRangeRequest createRequest(long min, long max) {
+		BackupTypeRangeRequest request = new BackupTypeRangeRequest();
+		request.setMigrationType(type);
+		request.setMinimumId(min);
+		request.setMaximumId(max);
+		return request;
+	}
+
+	static BackupTypeResponse createResponse(String backupFileKey) {
+		BackupTypeResponse response = new BackupTypeResponse();
+		response.setBackupFileKey(backupFileKey);
+		return response;
+	}
+}
@@ -0,0 +1,64 @@
+package org.sagebionetworks.migration.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+import com.google.common.collect.Lists;
+
+public class DeleteDestinationJobTest {
+
+	DeleteDestinationJob job;
+
+	@Before
+	public void before() {
+		job = new DeleteDestinationJob();
+		job.setMigrationType(MigrationType.NODE);
+	}
+
+	/**
+	 * Compare ranges by value since IdRange does not define equals.
+	 */
+	static void assertRanges(List<IdRange> ranges, long... bounds) {
+		assertEquals(bounds.length / 2, ranges.size());
+		for (int i = 0; i < ranges.size(); i++) {
+			assertEquals(new Long(bounds[i * 2]), ranges.get(i).getMinimumId());
+			assertEquals(new Long(bounds[i * 2 + 1]), ranges.get(i).getMaximumId());
+		}
+	}
+
+	@Test
+	public void testGetRangesToDeleteEmpty() {
+		assertTrue(job.getRangesToDelete().isEmpty());
+	}
+
+	@Test
+	public void testGetRangesToDeleteRowIds() {
+		job.setRowIdsToDelete(Lists.newArrayList(9L, 3L, 1L, 2L, 3L, 5L, 6L));
+		// call under test
+		assertRanges(job.getRangesToDelete(), 1, 3, 5, 6, 9, 9);
+	}
+
+	@Test
+	public void testGetRangesToDeleteRange() {
+		job.setMinimumId(10L);
+		job.setMaximumId(20L);
+		// call under test
+		assertRanges(job.getRangesToDelete(), 10, 20);
+	}
+
+	@Test
+	public void testGetRangesToDeleteRowIdsAndRange() {
+		job.setRowIdsToDelete(Lists.newArrayList(1L, 8L, 9L, 12L, 21L, 30L));
+		job.setMinimumId(10L);
+		job.setMaximumId(20L);
+		// call under test
+		assertRanges(job.getRangesToDelete(), 1, 1, 8, 21, 30, 30);
+	}
+}
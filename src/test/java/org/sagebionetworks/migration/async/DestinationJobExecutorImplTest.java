@@ -1,22 +1,37 @@
 package org.sagebionetworks.migration.async;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
-import java.util.concurrent.Future;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.migration.AsyncMigrationException;
 import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactory;
 import org.sagebionetworks.repo.model.daemon.BackupAliasType;
 import org.sagebionetworks.repo.model.migration.AdminRequest;
+import org.sagebionetworks.repo.model.migration.BackupTypeRangeRequest;
+import org.sagebionetworks.repo.model.migration.BackupTypeResponse;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.RestoreTypeRequest;
 import org.sagebionetworks.repo.model.migration.RestoreTypeResponse;
+import org.sagebionetworks.util.Clock;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 
 @RunWith(MockitoJUnitRunner.class)
 public class DestinationJobExecutorImplTest {
@@ -26,7 +41,18 @@ public class DestinationJobExecutorImplTest {
 	@Mock
 	AsynchronousJobExecutor mockAsynchronousJobExecutor;
 	@Mock
-	Future mockFuture;
+	ProgressJournal mockProgressJournal;
+	@Mock
+	RestoredRangeLedger mockRestoredRangeLedger;
+	@Mock
+	RowsPerRangeController mockRowsPerRangeController;
+	@Mock
+	Clock mockClock;
+	@Mock
+	ExecutorServiceFactory mockExecutorServiceFactory;
+	
+	CompletableFuture<RestoreTypeResponse> restoreFuture;
+	CompletableFuture<BackupTypeResponse> backupFuture;
 	
 	DestinationJobExecutorImpl destinationExecutor;
 	
@@ -38,6 +64,8 @@ public class DestinationJobExecutorImplTest {
 	Long minimumId;
 	Long maximumId;
 	RestoreDestinationJob restoreJob;
+	DeleteDestinationJob deleteJob;
+	String emptyBackupFileKey;
 	
 	@Before
 	public void before() {
@@ -53,9 +81,25 @@ public class DestinationJobExecutorImplTest {
 		
 		restoreJob = new RestoreDestinationJob(type, backupFileKey, minimumId, maximumId);
 		
-		when(mockAsynchronousJobExecutor.startDestionationJob(any(AdminRequest.class), any())).thenReturn(mockFuture);
+		deleteJob = new DeleteDestinationJob();
+		deleteJob.setMigrationType(type);
+		deleteJob.setRowIdsToDelete(Lists.newArrayList(7L, 5L, 6L, 9L));
+		emptyBackupFileKey = "empty backup file key";
+		
+		restoreFuture = new CompletableFuture<>();
+		backupFuture = new CompletableFuture<>();
+		when(mockAsynchronousJobExecutor.startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class)))
+				.thenReturn(backupFuture);
+		when(mockAsynchronousJobExecutor.startDestionationJob(any(AdminRequest.class), eq(RestoreTypeResponse.class)))
+				.thenReturn(restoreFuture);
 		
-		destinationExecutor = new DestinationJobExecutorImpl(mockConfig, mockAsynchronousJobExecutor);
+		when(mockClock.currentTimeMillis()).thenReturn(1000L, 4000L);
+		
+		when(mockExecutorServiceFactory.createCachedThreadPool(anyString()))
+				.thenAnswer(invocation -> MoreExecutors.newDirectExecutorService());
+		
+		destinationExecutor = new DestinationJobExecutorImpl(mockConfig, mockAsynchronousJobExecutor, mockProgressJournal,
+				mockRestoredRangeLedger, mockRowsPerRangeController, mockClock, mockExecutorServiceFactory);
 	}
 	
 	@Test
@@ -68,8 +112,197 @@ public class DestinationJobExecutorImplTest {
 		expectedRequest.setMinimumRowId(minimumId);
 		expectedRequest.setMaximumRowId(maximumId);
 		// call under test
-		Future future = destinationExecutor.startDestinationJob(restoreJob);
-		assertEquals(mockFuture, future);
+		CompletableFuture future = destinationExecutor.startDestinationJob(restoreJob);
 		verify(mockAsynchronousJobExecutor).startDestionationJob(expectedRequest, RestoreTypeResponse.class);
+		assertFalse(future.isDone());
+		// the range is only journaled when the restore completes.
+		verify(mockProgressJournal, never()).recordRestored(any(MigrationType.class), any(Long.class), any(Long.class));
+		RestoreTypeResponse response = new RestoreTypeResponse();
+		response.setRestoredRowCount(2L);
+		restoreFuture.complete(response);
+		assertTrue(future.isDone());
+		assertEquals(response, future.join());
+		verify(mockProgressJournal).recordRestored(type, minimumId, maximumId);
+		verify(mockRestoredRangeLedger).recordRestored(type, minimumId, maximumId);
+		verify(mockRowsPerRangeController).recordRestore(type, backupFileKey, 2L, 3000L);
+	}
+	
+	@Test
+	public void testStartDestinationJobFailed() {
+		// call under test
+		CompletableFuture future = destinationExecutor.startDestinationJob(restoreJob);
+		restoreFuture.completeExceptionally(new IllegalStateException("failed"));
+		assertTrue(future.isCompletedExceptionally());
+		// failed restores must not be journaled.
+		verify(mockProgressJournal, never()).recordRestored(any(MigrationType.class), any(Long.class), any(Long.class));
+		verify(mockRestoredRangeLedger, never()).recordRestored(any(MigrationType.class), any(Long.class), any(Long.class));
+		verify(mockRowsPerRangeController, never()).recordRestore(any(MigrationType.class), any(String.class),
+				any(Long.class), anyLong());
+	}
+	
+	RestoreTypeRequest createDeleteRequest(long minimumId, long maximumId) {
+		RestoreTypeRequest request = new RestoreTypeRequest();
+		request.setAliasType(aliasType);
+		request.setBatchSize((long) batchSize);
+		request.setMigrationType(type);
+		request.setBackupFileKey(emptyBackupFileKey);
+		request.setMinimumRowId(minimumId);
+		request.setMaximumRowId(maximumId);
+		return request;
+	}
+	
+	BackupTypeResponse createBackupResponse(String key) {
+		BackupTypeResponse response = new BackupTypeResponse();
+		response.setBackupFileKey(key);
+		return response;
+	}
+	
+	@Test
+	public void testStartDestinationJobDelete() {
+		CompletableFuture<RestoreTypeResponse> secondRestore = new CompletableFuture<>();
+		when(mockAsynchronousJobExecutor.startDestionationJob(any(AdminRequest.class), eq(RestoreTypeResponse.class)))
+				.thenReturn(restoreFuture, secondRestore);
+		// call under test
+		CompletableFuture future = destinationExecutor.startDestinationJob(deleteJob);
+		// the empty backup is created from the first range to delete.
+		BackupTypeRangeRequest expectedBackup = new BackupTypeRangeRequest();
+		expectedBackup.setAliasType(aliasType);
+		expectedBackup.setBatchSize((long) batchSize);
+		expectedBackup.setMigrationType(type);
+		expectedBackup.setMinimumId(5L);
+		expectedBackup.setMaximumId(7L);
+		verify(mockAsynchronousJobExecutor).startSourceJob(expectedBackup, BackupTypeResponse.class);
+		verify(mockAsynchronousJobExecutor, never()).startDestionationJob(any(AdminRequest.class), eq(RestoreTypeResponse.class));
+		backupFuture.complete(createBackupResponse(emptyBackupFileKey));
+		// each contiguous run is deleted in turn.
+		verify(mockAsynchronousJobExecutor).startDestionationJob(createDeleteRequest(5L, 7L), RestoreTypeResponse.class);
+		verify(mockAsynchronousJobExecutor, never()).startDestionationJob(createDeleteRequest(9L, 9L), RestoreTypeResponse.class);
+		restoreFuture.complete(new RestoreTypeResponse());
+		verify(mockProgressJournal).recordRestored(type, 5L, 7L);
+		verify(mockRestoredRangeLedger).recordRestored(type, 5L, 7L);
+		verify(mockAsynchronousJobExecutor).startDestionationJob(createDeleteRequest(9L, 9L), RestoreTypeResponse.class);
+		assertFalse(future.isDone());
+		secondRestore.complete(new RestoreTypeResponse());
+		verify(mockProgressJournal).recordRestored(type, 9L, 9L);
+		assertTrue(future.isDone());
+		// deletes do not restore any rows.
+		verify(mockRowsPerRangeController, never()).recordRestore(any(MigrationType.class), any(String.class),
+				any(Long.class), anyLong());
+	}
+	
+	@Test
+	public void testStartDestinationJobDeleteReuseEmptyBackup() {
+		restoreFuture.complete(new RestoreTypeResponse());
+		backupFuture.complete(createBackupResponse(emptyBackupFileKey));
+		destinationExecutor.startDestinationJob(deleteJob);
+		DeleteDestinationJob rangeJob = new DeleteDestinationJob();
+		rangeJob.setMigrationType(type);
+		rangeJob.setMinimumId(100L);
+		rangeJob.setMaximumId(200L);
+		// call under test
+		CompletableFuture future = destinationExecutor.startDestinationJob(rangeJob);
+		assertTrue(future.isDone());
+		verify(mockAsynchronousJobExecutor, times(1)).startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class));
+		verify(mockAsynchronousJobExecutor).startDestionationJob(createDeleteRequest(100L, 200L), RestoreTypeResponse.class);
+	}
+	
+	@Test
+	public void testStartDestinationJobDeleteBackupFailed() {
+		backupFuture.completeExceptionally(new IllegalStateException("failed"));
+		// call under test
+		CompletableFuture future = destinationExecutor.startDestinationJob(deleteJob);
+		assertTrue(future.isCompletedExceptionally());
+		verify(mockAsynchronousJobExecutor, never()).startDestionationJob(any(AdminRequest.class), eq(RestoreTypeResponse.class));
+		// the failed backup must not be reused.
+		CompletableFuture<BackupTypeResponse> retryFuture = CompletableFuture.completedFuture(createBackupResponse(emptyBackupFileKey));
+		when(mockAsynchronousJobExecutor.startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class)))
+				.thenReturn(retryFuture);
+		destinationExecutor.startDestinationJob(deleteJob);
+		verify(mockAsynchronousJobExecutor, times(2)).startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class));
+		verify(mockAsynchronousJobExecutor).startDestionationJob(createDeleteRequest(5L, 7L), RestoreTypeResponse.class);
+	}
+	
+	@Test
+	public void testStartDestinationJobDeleteUsesDeleteThreads() {
+		verify(mockExecutorServiceFactory).createCachedThreadPool(DestinationJobExecutorImpl.DELETE_THREAD_NAME);
+		ExecutorService mockDeleteExecutor = mock(ExecutorService.class);
+		when(mockExecutorServiceFactory.createCachedThreadPool(anyString())).thenReturn(mockDeleteExecutor);
+		destinationExecutor = new DestinationJobExecutorImpl(mockConfig, mockAsynchronousJobExecutor, mockProgressJournal,
+				mockRestoredRangeLedger, mockRowsPerRangeController, mockClock, mockExecutorServiceFactory);
+		// call under test
+		destinationExecutor.startDestinationJob(deleteJob);
+		backupFuture.complete(createBackupResponse(emptyBackupFileKey));
+		// the deletes are not started on the thread that completed the backup.
+		verify(mockAsynchronousJobExecutor, never()).startDestionationJob(any(AdminRequest.class), eq(RestoreTypeResponse.class));
+		verify(mockDeleteExecutor).execute(any(Runnable.class));
+	}
+	
+	@Test
+	public void testStartDestinationJobDeleteConcurrent() {
+		// call under test
+		CompletableFuture first = destinationExecutor.startDestinationJob(deleteJob);
+		CompletableFuture second = destinationExecutor.startDestinationJob(deleteJob);
+		// both jobs wait on the same backup.
+		verify(mockAsynchronousJobExecutor, times(1)).startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class));
+		backupFuture.complete(createBackupResponse(emptyBackupFileKey));
+		restoreFuture.complete(new RestoreTypeResponse());
+		assertTrue(first.isDone());
+		assertTrue(second.isDone());
+	}
+	
+	@Test
+	public void testStartDestinationJobDeleteBackupStartFailed() {
+		when(mockAsynchronousJobExecutor.startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class)))
+				.thenThrow(new IllegalStateException("failed"));
+		// call under test
+		CompletableFuture future = destinationExecutor.startDestinationJob(deleteJob);
+		assertTrue(future.isCompletedExceptionally());
+		// the failed backup must not be reused.
+		when(mockAsynchronousJobExecutor.startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class)))
+				.thenReturn(backupFuture);
+		destinationExecutor.startDestinationJob(deleteJob);
+		verify(mockAsynchronousJobExecutor, times(2)).startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class));
+	}
+	
+	@Test
+	public void testStartDestinationJobDeleteBackupNotEmpty() {
+		backupFuture.complete(createBackupResponse(emptyBackupFileKey));
+		RestoreTypeResponse response = new RestoreTypeResponse();
+		response.setRestoredRowCount(1L);
+		restoreFuture.complete(response);
+		// call under test
+		CompletableFuture future = destinationExecutor.startDestinationJob(deleteJob);
+		assertTrue(future.isCompletedExceptionally());
+		try {
+			future.join();
+			fail();
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof AsyncMigrationException);
+		}
+		verify(mockProgressJournal, never()).recordRestored(any(MigrationType.class), any(Long.class), any(Long.class));
+		verify(mockRestoredRangeLedger, never()).recordRestored(any(MigrationType.class), any(Long.class), any(Long.class));
+		// the backup must not be used for another delete.
+		destinationExecutor.startDestinationJob(deleteJob);
+		verify(mockAsynchronousJobExecutor, times(2)).startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class));
+	}
+	
+	@Test
+	public void testClear() {
+		backupFuture.complete(createBackupResponse(emptyBackupFileKey));
+		restoreFuture.complete(new RestoreTypeResponse());
+		destinationExecutor.startDestinationJob(deleteJob);
+		// call under test
+		destinationExecutor.clear();
+		destinationExecutor.startDestinationJob(deleteJob);
+		verify(mockAsynchronousJobExecutor, times(2)).startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class));
+	}
+	
+	@Test
+	public void testStartDestinationJobDeleteNothing() {
+		deleteJob.setRowIdsToDelete(Collections.emptyList());
+		// call under test
+		CompletableFuture future = destinationExecutor.startDestinationJob(deleteJob);
+		assertTrue(future.isDone());
+		verify(mockAsynchronousJobExecutor, never()).startSourceJob(any(AdminRequest.class), eq(BackupTypeResponse.class));
 	}
 }
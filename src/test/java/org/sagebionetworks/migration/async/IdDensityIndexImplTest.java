@@ -0,0 +1,112 @@
+package org.sagebionetworks.migration.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
+import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+import com.google.common.collect.Lists;
+
+public class IdDensityIndexImplTest {
+
+	IdDensityIndexImpl index;
+	MigrationType type;
+	long rowsPerRange;
+
+	@Before
+	public void before() {
+		index = new IdDensityIndexImpl();
+		type = MigrationType.NODE;
+		rowsPerRange = 100L;
+		index.reset(Lists.newArrayList(new TypeToMigrateMetadata(type, 1L, 1000L, 500L, null, null, null),
+				new TypeToMigrateMetadata(MigrationType.ACL, null, null, 0L, null, null, null)));
+	}
+
+	@Test
+	public void testGetRangeToIndex() {
+		// call under test
+		IdRange range = index.getRangeToIndex(type);
+		assertEquals(ToolMigrationUtils.createIdRange(1L, 1000L), range);
+		// the source of ACL is empty.
+		assertNull(index.getRangeToIndex(MigrationType.ACL));
+		// once indexed the full range is not needed again.
+		index.recordOptimalRanges(type, 1L, 10L, rowsPerRange, Lists.newArrayList(range(1L, 10L)));
+		assertNull(index.getRangeToIndex(type));
+	}
+
+	@Test
+	public void testReset() {
+		index.recordOptimalRanges(type, 1L, 1000L, rowsPerRange, Lists.newArrayList(range(1L, 1000L)));
+		// call under test
+		index.reset(Lists.newArrayList());
+		assertTrue(index.findOptimalRanges(type, 1L, 1000L, rowsPerRange).isEmpty());
+		assertNull(index.getRangeToIndex(type));
+	}
+
+	@Test
+	public void testFindOptimalRanges() {
+		index.recordOptimalRanges(type, 1L, 1000L, rowsPerRange,
+				Lists.newArrayList(range(1L, 99L), range(150L, 300L), range(400L, 900L)));
+		// call under test
+		List<IdRange> results = index.findOptimalRanges(type, 50L, 500L, rowsPerRange);
+		assertEquals(Lists.newArrayList(range(50L, 99L), range(150L, 300L), range(400L, 500L)), results);
+	}
+
+	@Test
+	public void testFindOptimalRangesCombined() {
+		index.recordOptimalRanges(type, 1L, 1000L, rowsPerRange,
+				Lists.newArrayList(range(1L, 99L), range(150L, 300L), range(400L, 900L)));
+		// call under test
+		List<IdRange> results = index.findOptimalRanges(type, 1L, 1000L, rowsPerRange * 2);
+		assertEquals(Lists.newArrayList(range(1L, 300L), range(400L, 900L)), results);
+	}
+
+	@Test
+	public void testFindOptimalRangesTooLarge() {
+		index.recordOptimalRanges(type, 1L, 1000L, rowsPerRange, Lists.newArrayList(range(1L, 900L)));
+		// call under test
+		assertTrue(index.findOptimalRanges(type, 1L, 1000L, rowsPerRange / 2).isEmpty());
+	}
+
+	@Test
+	public void testFindOptimalRangesNotCovered() {
+		index.recordOptimalRanges(type, 1L, 500L, rowsPerRange, Lists.newArrayList(range(1L, 400L)));
+		// call under test
+		assertTrue(index.findOptimalRanges(type, 300L, 600L, rowsPerRange).isEmpty());
+		assertTrue(index.findOptimalRanges(MigrationType.ACL, 1L, 10L, rowsPerRange).isEmpty());
+	}
+
+	@Test
+	public void testFindOptimalRangesNoRows() {
+		index.recordOptimalRanges(type, 1L, 1000L, rowsPerRange, Lists.newArrayList(range(1L, 99L)));
+		// call under test
+		assertTrue(index.findOptimalRanges(type, 100L, 1000L, rowsPerRange).isEmpty());
+	}
+
+	@Test
+	public void testRecordOptimalRangesReplaces() {
+		index.recordOptimalRanges(type, 1L, 1000L, rowsPerRange * 2,
+				Lists.newArrayList(range(1L, 400L), range(401L, 1000L)));
+		// a smaller calculation within the range replaces the overlapped ranges.
+		index.recordOptimalRanges(type, 300L, 500L, rowsPerRange, Lists.newArrayList(range(300L, 399L), range(400L, 500L)));
+		// call under test
+		List<IdRange> results = index.findOptimalRanges(type, 300L, 450L, rowsPerRange);
+		assertEquals(Lists.newArrayList(range(300L, 399L), range(400L, 450L)), results);
+		// the straddling ranges outside the recorded range are kept.
+		assertTrue(index.findOptimalRanges(type, 1L, 600L, rowsPerRange).isEmpty());
+		results = index.findOptimalRanges(type, 1L, 1000L, rowsPerRange * 2);
+		assertEquals(Lists.newArrayList(range(1L, 299L), range(300L, 500L), range(501L, 1000L)), results);
+	}
+
+	IdRange range(long min, long max) {
+		return ToolMigrationUtils.createIdRange(min, max);
+	}
+}
@@ -1,25 +1,44 @@
 package org.sagebionetworks.migration.async;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.migration.AsyncMigrationException;
 import org.sagebionetworks.migration.async.checksum.ChecksumDeltaBuilder;
 import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactory;
 import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
 import org.sagebionetworks.repo.model.migration.MigrationType;
-import org.sagebionetworks.util.Clock;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 
 @RunWith(MockitoJUnitRunner.class)
 public class MigrationDriverImplTest {
@@ -31,9 +50,19 @@ public class MigrationDriverImplTest {
 	@Mock
 	ChecksumDeltaBuilder mockChecksumChangeBuilder;
 	@Mock
-	Clock mockClock;
-	@Mock
 	RestoreJobQueue mockRestoreJobQueue;
+	@Mock
+	DestinationJobExecutor mockDestinationJobExecutor;
+	@Mock
+	RowsPerRangeController mockRowsPerRangeController;
+	@Mock
+	RestoredRangeLedger mockRestoredRangeLedger;
+	@Mock
+	IdDensityIndex mockIdDensityIndex;
+	@Mock
+	ExecutorServiceFactory mockExecutorServiceFactory;
+	@Mock
+	Iterator<DestinationJob> mockIterator;
 
 	List<TypeToMigrateMetadata> primaryTypes;
 	RestoreDestinationJob jobOne;
@@ -62,13 +91,19 @@ public class MigrationDriverImplTest {
 		toMigrate.setDestCount(3L);
 		primaryTypes = Lists.newArrayList(toMigrate);
 
-		when(mockMissingFromDestinationBuilder.buildDestinationJobs(primaryTypes)).thenReturn(missingJobs.iterator());
+		when(mockMissingFromDestinationBuilder.buildDestinationJobs(primaryTypes)).thenReturn(Collections.singletonList(missingJobs.iterator()));
 		when(mockChecksumChangeBuilder.buildAllRestoreJobsForMismatchedChecksums(primaryTypes))
-				.thenReturn(deltaJobs.iterator());
-		when(mockRestoreJobQueue.isDone()).thenReturn(false, false, true);
+				.thenReturn(Collections.singletonList(deltaJobs.iterator()));
+		when(mockRestoreJobQueue.whenAllJobsDone(any(MigrationType.class)))
+				.thenReturn(CompletableFuture.completedFuture(null));
+		when(mockConfig.getMaximumNumberThreads()).thenReturn(2);
+		// run each type on the calling thread.
+		when(mockExecutorServiceFactory.createFixedThreadPool(anyString(), anyInt()))
+				.thenAnswer(invocation -> MoreExecutors.newDirectExecutorService());
 
 		migrationDriver = new MigrationDriverImpl(mockConfig, mockMissingFromDestinationBuilder,
-				mockChecksumChangeBuilder, mockRestoreJobQueue, mockClock);
+				mockChecksumChangeBuilder, mockRestoreJobQueue, mockDestinationJobExecutor,
+				mockRowsPerRangeController, mockRestoredRangeLedger, mockIdDensityIndex, mockExecutorServiceFactory);
 	}
 
 	@Test
@@ -80,19 +115,166 @@ public class MigrationDriverImplTest {
 		// Three jobs should be pushed to the queue
 		verify(mockRestoreJobQueue, times(3)).pushJob(any(DestinationJob.class));
 		verify(mockRestoreJobQueue).pushJob(jobOne);
+		verify(mockRestoreJobQueue).pushJob(jobTwo);
+		verify(mockRestoreJobQueue).pushJob(jobThree);
+		// one pool for all phases sized by the configuration.
+		verify(mockExecutorServiceFactory).createFixedThreadPool(MigrationDriverImpl.DISCOVERY_THREAD_NAME, 2);
+
+		// Should wait once per phase for the restore jobs of the type to finish.
+		verify(mockRestoreJobQueue, times(2)).whenAllJobsDone(MigrationType.NODE);
+		verify(mockRestoreJobQueue, never()).awaitAllJobsDone();
+		verify(mockRestoreJobQueue).setWorkEstimates(primaryTypes);
+		// the ledger only covers this run.
+		verify(mockRestoredRangeLedger).clear();
+		// empty backups are not reused across runs.
+		verify(mockDestinationJobExecutor).clear();
+		verify(mockRowsPerRangeController).clear();
+		verify(mockIdDensityIndex).reset(primaryTypes);
+	}
+
+	@Test
+	public void testStartTypePipeline() {
+		CompletableFuture<Void> phaseOneDone = new CompletableFuture<>();
+		CompletableFuture<Void> phaseTwoDone = new CompletableFuture<>();
+		when(mockRestoreJobQueue.whenAllJobsDone(MigrationType.NODE)).thenReturn(phaseOneDone, phaseTwoDone);
+		Executor executor = Runnable::run;
+		// call under test
+		CompletableFuture<Void> pipeline = migrationDriver.startTypePipeline(MigrationType.NODE,
+				missingJobs.iterator(), deltaJobs.iterator(), executor);
 		verify(mockRestoreJobQueue).pushJob(jobOne);
-		verify(mockRestoreJobQueue).pushJob(jobOne);
+		verify(mockRestoreJobQueue).pushJob(jobTwo);
+		// phase two cannot start until the restores of phase one are done.
+		verify(mockRestoreJobQueue, never()).pushJob(jobThree);
+		phaseOneDone.complete(null);
+		verify(mockRestoreJobQueue).pushJob(jobThree);
+		assertFalse(pipeline.isDone());
+		phaseTwoDone.complete(null);
+		assertTrue(pipeline.isDone());
+	}
 
-		// Should sleep twice waiting for the restore jobs to finish.
-		verify(mockClock, times(2)).sleep(MigrationDriverImpl.SLEEP_TIME_MS);
+	@Test
+	public void testStartTypePipelineTypesIndependent() {
+		RestoreDestinationJob aclMissing = new RestoreDestinationJob(MigrationType.ACL, "aclKey1");
+		RestoreDestinationJob aclDelta = new RestoreDestinationJob(MigrationType.ACL, "aclKey2");
+		// the restores of nodes never finish.
+		when(mockRestoreJobQueue.whenAllJobsDone(MigrationType.NODE)).thenReturn(new CompletableFuture<>());
+		Executor executor = Runnable::run;
+		// call under test
+		migrationDriver.startTypePipeline(MigrationType.NODE, missingJobs.iterator(), deltaJobs.iterator(), executor);
+		CompletableFuture<Void> aclPipeline = migrationDriver.startTypePipeline(MigrationType.ACL,
+				Lists.<DestinationJob>newArrayList(aclMissing).iterator(),
+				Lists.<DestinationJob>newArrayList(aclDelta).iterator(), executor);
+		// ACL reaches phase two while nodes are still restoring.
+		verify(mockRestoreJobQueue).pushJob(aclDelta);
+		assertTrue(aclPipeline.isDone());
+		verify(mockRestoreJobQueue, never()).pushJob(jobThree);
 	}
 
-	@Test(expected = RuntimeException.class)
+	@Test
+	public void testMigratePrimaryTypesDiscoveryFailure() throws InterruptedException {
+		AsyncMigrationException error = new AsyncMigrationException("failed");
+		when(mockIterator.hasNext()).thenReturn(true);
+		when(mockIterator.next()).thenThrow(error);
+		when(mockMissingFromDestinationBuilder.buildDestinationJobs(primaryTypes))
+				.thenReturn(Collections.singletonList(mockIterator));
+		try {
+			// call under test
+			migrationDriver.migratePrimaryTypes(primaryTypes);
+			fail();
+		} catch (AsyncMigrationException e) {
+			// the original exception should be thrown
+			assertEquals(error, e);
+		}
+		verify(mockRestoreJobQueue, never()).pushJob(jobThree);
+		// the jobs already pushed must finish before the failure is thrown.
+		verify(mockRestoreJobQueue).awaitAllJobsDone();
+	}
+
+	@Test
+	public void testMigratePrimaryTypesRestoreFailure() throws InterruptedException {
+		AsyncMigrationException error = new AsyncMigrationException("failed");
+		CompletableFuture<Void> failed = new CompletableFuture<>();
+		failed.completeExceptionally(error);
+		when(mockRestoreJobQueue.whenAllJobsDone(MigrationType.NODE)).thenReturn(failed);
+		try {
+			// call under test
+			migrationDriver.migratePrimaryTypes(primaryTypes);
+			fail();
+		} catch (AsyncMigrationException e) {
+			assertEquals(error, e);
+		}
+		// phase two must not start for a type with failed restores.
+		verify(mockRestoreJobQueue, never()).pushJob(jobThree);
+	}
+
+	@Test
 	public void testMigratePrimaryTypesInterupt() throws InterruptedException {
-		// Interrupt should become runtime.
-		doThrow(new InterruptedException()).when(mockClock).sleep(any(Long.class));
-		// call under test
-		migrationDriver.migratePrimaryTypes(primaryTypes);
+		AsyncMigrationException error = new AsyncMigrationException("failed");
+		CompletableFuture<Void> failed = new CompletableFuture<>();
+		failed.completeExceptionally(error);
+		when(mockRestoreJobQueue.whenAllJobsDone(MigrationType.NODE)).thenReturn(failed);
+		InterruptedException interrupt = new InterruptedException();
+		doThrow(interrupt).when(mockRestoreJobQueue).awaitAllJobsDone();
+		try {
+			// call under test
+			migrationDriver.migratePrimaryTypes(primaryTypes);
+			fail();
+		} catch (AsyncMigrationException e) {
+			// the original exception is thrown with the interrupt attached.
+			assertEquals(error, e);
+			assertEquals(interrupt, e.getSuppressed()[0]);
+		}
+		// the interrupt is preserved.
+		assertTrue(Thread.interrupted());
+	}
+
+	@Test
+	public void testMigratePrimaryTypesLaterFailureSuppressed() throws InterruptedException {
+		AsyncMigrationException error = new AsyncMigrationException("failed");
+		CompletableFuture<Void> failed = new CompletableFuture<>();
+		failed.completeExceptionally(error);
+		when(mockRestoreJobQueue.whenAllJobsDone(MigrationType.NODE)).thenReturn(failed);
+		AsyncMigrationException later = new AsyncMigrationException("later");
+		doThrow(later).when(mockRestoreJobQueue).awaitAllJobsDone();
+		try {
+			// call under test
+			migrationDriver.migratePrimaryTypes(primaryTypes);
+			fail();
+		} catch (AsyncMigrationException e) {
+			// the first failure is not replaced by the later one.
+			assertEquals(error, e);
+			assertEquals(later, e.getSuppressed()[0]);
+		}
+	}
+
+	@Test
+	public void testMigratePrimaryTypesAwaitDiscoveryTermination() throws InterruptedException {
+		ExecutorService mockExecutor = mock(ExecutorService.class);
+		when(mockExecutorServiceFactory.createFixedThreadPool(anyString(), anyInt())).thenReturn(mockExecutor);
+		when(mockConfig.getWorkerTimeoutMs()).thenReturn(1000L);
+		when(mockExecutor.awaitTermination(1000L, TimeUnit.MILLISECONDS)).thenReturn(false);
+		// run each task on the calling thread.
+		doAnswer(invocation -> {
+			((Runnable) invocation.getArguments()[0]).run();
+			return null;
+		}).when(mockExecutor).execute(any(Runnable.class));
+		AsyncMigrationException error = new AsyncMigrationException("failed");
+		CompletableFuture<Void> failed = new CompletableFuture<>();
+		failed.completeExceptionally(error);
+		when(mockRestoreJobQueue.whenAllJobsDone(MigrationType.NODE)).thenReturn(failed);
+		try {
+			// call under test
+			migrationDriver.migratePrimaryTypes(primaryTypes);
+			fail();
+		} catch (AsyncMigrationException e) {
+			assertEquals(error, e);
+			// discovery did not stop in time.
+			assertEquals(1, e.getSuppressed().length);
+		}
+		InOrder inOrder = inOrder(mockExecutor, mockRestoreJobQueue);
+		inOrder.verify(mockExecutor).shutdownNow();
+		inOrder.verify(mockExecutor).awaitTermination(1000L, TimeUnit.MILLISECONDS);
+		inOrder.verify(mockRestoreJobQueue).awaitAllJobsDone();
 	}
 
 }
@@ -84,7 +84,10 @@ public class MissingFromDestinationBuilderImplTest {
 		
 		List<TypeToMigrateMetadata> primaryTypes = Lists.newArrayList(one, two);
 		
-		Iterator<DestinationJob> iterator = builder.buildDestinationJobs(primaryTypes);
+		List<Iterator<DestinationJob>> iterators = builder.buildDestinationJobs(primaryTypes);
+		// one iterator per type
+		assertEquals(2, iterators.size());
+		Iterator<DestinationJob> iterator = iterators.get(0);
 		assertTrue(iterator.hasNext());
 		DestinationJob job = iterator.next();
 		assertTrue(job instanceof RestoreDestinationJob);
@@ -98,6 +101,9 @@ public class MissingFromDestinationBuilderImplTest {
 		restoreJob = (RestoreDestinationJob) job;
 		assertEquals(MigrationType.NODE, restoreJob.getMigrationType());
 		assertEquals("two", restoreJob.getBackupFileKey());
+		assertFalse(iterator.hasNext());
+		
+		iterator = iterators.get(1);
 		
 		assertTrue(iterator.hasNext());
 		job = iterator.next();
@@ -128,7 +134,10 @@ public class MissingFromDestinationBuilderImplTest {
 
 		List<TypeToMigrateMetadata> primaryTypes = Lists.newArrayList(one, two);
 
-		Iterator<DestinationJob> iterator = builder.buildDestinationJobs(primaryTypes);
+		List<Iterator<DestinationJob>> iterators = builder.buildDestinationJobs(primaryTypes);
+		// one iterator per type
+		assertEquals(2, iterators.size());
+		Iterator<DestinationJob> iterator = iterators.get(0);
 		assertTrue(iterator.hasNext());
 		DestinationJob job = iterator.next();
 		assertTrue(job instanceof RestoreDestinationJob);
@@ -142,6 +151,9 @@ public class MissingFromDestinationBuilderImplTest {
 		restoreJob = (RestoreDestinationJob) job;
 		assertEquals(MigrationType.NODE, restoreJob.getMigrationType());
 		assertEquals("two", restoreJob.getBackupFileKey());
+		assertFalse(iterator.hasNext());
+		
+		iterator = iterators.get(1);
 
 		assertTrue(iterator.hasNext());
 		job = iterator.next();
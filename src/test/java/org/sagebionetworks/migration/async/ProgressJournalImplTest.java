@@ -0,0 +1,244 @@
+package org.sagebionetworks.migration.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.config.SynapseConnectionInfo;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.RangeChecksum;
+import org.sagebionetworks.util.Clock;
+
+import com.google.common.collect.Lists;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProgressJournalImplTest {
+
+	@Mock
+	Configuration mockConfig;
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+	@Mock
+	Clock mockClock;
+
+	Path journalFile;
+	MigrationType type;
+
+	ProgressJournalImpl journal;
+
+	@Before
+	public void before() throws IOException {
+		journalFile = Files.createTempFile("progress", ".journal");
+		Files.delete(journalFile);
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		when(mockConfig.getProgressJournalFile()).thenReturn(journalFile.toString());
+		when(mockConfig.getProgressJournalMaxAgeMs()).thenReturn(1000L);
+		when(mockConfig.getSourceConnectionInfo())
+				.thenReturn(new SynapseConnectionInfo("sourceAuth", "sourceRepo", "user", "key"));
+		when(mockConfig.getDestinationConnectionInfo())
+				.thenReturn(new SynapseConnectionInfo("destinationAuth", "destinationRepo", "user", "key"));
+		when(mockClock.currentTimeMillis()).thenReturn(5000L);
+		type = MigrationType.NODE;
+		journal = new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock);
+	}
+
+	@After
+	public void after() throws IOException {
+		Files.deleteIfExists(journalFile);
+	}
+
+	@Test
+	public void testIsEnabled() {
+		assertTrue(journal.isEnabled());
+		when(mockConfig.getProgressJournalFile()).thenReturn(null);
+		assertFalse(new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock).isEnabled());
+	}
+
+	@Test
+	public void testDisabled() {
+		when(mockConfig.getProgressJournalFile()).thenReturn(null);
+		journal = new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock);
+		// call under test
+		journal.recordRestored(type, 1L, 10L);
+		assertFalse(journal.isFinished(type, 1L, 10L));
+		List<IdRange> unfinished = journal.findUnverifiedRanges(type, 1L, 10L);
+		assertEquals(1, unfinished.size());
+		assertRange(1L, 10L, unfinished.get(0));
+		assertFalse(Files.exists(journalFile));
+	}
+
+	@Test
+	public void testRecordRestored() {
+		// call under test
+		journal.recordRestored(type, 1L, 10L);
+		journal.recordRestored(type, 11L, 20L);
+		// adjacent ranges are merged.
+		assertTrue(journal.isFinished(type, 5L, 15L));
+		assertFalse(journal.isFinished(type, 5L, 21L));
+		assertFalse(journal.isFinished(MigrationType.ACL, 5L, 15L));
+	}
+
+	@Test
+	public void testRecordRestoredNullRange() {
+		// call under test
+		journal.recordRestored(type, null, null);
+		assertFalse(Files.exists(journalFile));
+	}
+
+	@Test
+	public void testRecordVerified() {
+		RangeChecksum mismatch = new RangeChecksum();
+		mismatch.setMinimumId(20L);
+		mismatch.setMaximumId(29L);
+		// call under test
+		journal.recordVerified(type, 1L, 49L, Lists.newArrayList(mismatch));
+		assertTrue(journal.isFinished(type, 1L, 19L));
+		assertTrue(journal.isFinished(type, 30L, 49L));
+		assertFalse(journal.isFinished(type, 20L, 20L));
+		List<IdRange> unfinished = journal.findUnverifiedRanges(type, 1L, 99L);
+		assertEquals(2, unfinished.size());
+		assertRange(20L, 29L, unfinished.get(0));
+		assertRange(50L, 99L, unfinished.get(1));
+	}
+
+	@Test
+	public void testFindUnverifiedRangesRestored() {
+		journal.recordRestored(type, 1L, 49L);
+		journal.recordVerified(type, 50L, 59L, Collections.emptyList());
+		// call under test
+		List<IdRange> unverified = journal.findUnverifiedRanges(type, 1L, 99L);
+		// restored ranges must still be compared.
+		assertEquals(2, unverified.size());
+		assertRange(1L, 49L, unverified.get(0));
+		assertRange(60L, 99L, unverified.get(1));
+	}
+
+	@Test
+	public void testFindUnverifiedRangesEmpty() {
+		// call under test
+		List<IdRange> unfinished = journal.findUnverifiedRanges(type, 1L, 99L);
+		assertEquals(1, unfinished.size());
+		assertRange(1L, 99L, unfinished.get(0));
+	}
+
+	@Test
+	public void testFindUnverifiedRangesAllVerified() {
+		journal.recordVerified(type, 1L, 99L, Collections.emptyList());
+		// call under test
+		List<IdRange> unverified = journal.findUnverifiedRanges(type, 10L, 20L);
+		assertTrue(unverified.isEmpty());
+	}
+
+	@Test
+	public void testResume() {
+		journal.recordRestored(type, 1L, 10L);
+		journal.recordVerified(type, 11L, 20L, Collections.emptyList());
+		// a new journal should resume from the file.
+		ProgressJournalImpl resumed = new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock);
+		// call under test
+		assertTrue(resumed.isFinished(type, 1L, 20L));
+		assertFalse(resumed.isFinished(type, 1L, 21L));
+		List<IdRange> unverified = resumed.findUnverifiedRanges(type, 1L, 20L);
+		assertEquals(1, unverified.size());
+		assertRange(1L, 10L, unverified.get(0));
+	}
+
+	@Test
+	public void testResumeExpired() {
+		journal.recordRestored(type, 1L, 10L);
+		when(mockClock.currentTimeMillis()).thenReturn(6001L);
+		ProgressJournalImpl resumed = new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock);
+		// call under test
+		assertFalse(resumed.isFinished(type, 1L, 10L));
+		assertFalse(Files.exists(journalFile));
+	}
+
+	@Test
+	public void testResumeAtMaxAge() {
+		journal.recordRestored(type, 1L, 10L);
+		when(mockClock.currentTimeMillis()).thenReturn(6000L);
+		ProgressJournalImpl resumed = new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock);
+		// call under test
+		assertTrue(resumed.isFinished(type, 1L, 10L));
+	}
+
+	@Test
+	public void testResumeDestinationChanged() {
+		journal.recordRestored(type, 1L, 10L);
+		when(mockConfig.getDestinationConnectionInfo())
+				.thenReturn(new SynapseConnectionInfo("destinationAuth", "otherRepo", "user", "key"));
+		ProgressJournalImpl resumed = new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock);
+		// call under test
+		assertFalse(resumed.isFinished(type, 1L, 10L));
+		// the new journal starts with its own header.
+		resumed.recordRestored(type, 20L, 30L);
+		resumed = new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock);
+		assertFalse(resumed.isFinished(type, 1L, 10L));
+		assertTrue(resumed.isFinished(type, 20L, 30L));
+	}
+
+	@Test
+	public void testResumeSourceChanged() {
+		journal.recordRestored(type, 1L, 10L);
+		when(mockConfig.getSourceConnectionInfo())
+				.thenReturn(new SynapseConnectionInfo("sourceAuth", "otherRepo", "user", "key"));
+		ProgressJournalImpl resumed = new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock);
+		// call under test
+		assertFalse(resumed.isFinished(type, 1L, 10L));
+	}
+
+	@Test
+	public void testResumeNoHeader() throws IOException {
+		Files.write(journalFile, Lists.newArrayList("RESTORED,NODE,1,10"), StandardCharsets.UTF_8);
+		// call under test
+		assertFalse(journal.isFinished(type, 1L, 10L));
+	}
+
+	@Test
+	public void testResumeMalformedEntries() throws IOException {
+		Files.write(journalFile, Lists.newArrayList("STARTED,5000,sourceRepo,destinationRepo", "RESTORED,NODE,1,10",
+				"RESTORED,NOT_A_TYPE,1,10", "VERIFIED,NODE,11"), StandardCharsets.UTF_8);
+		// call under test
+		assertTrue(journal.isFinished(type, 1L, 10L));
+		assertFalse(journal.isFinished(type, 11L, 11L));
+	}
+
+	@Test
+	public void testClear() {
+		journal.recordRestored(type, 1L, 10L);
+		assertTrue(Files.exists(journalFile));
+		// call under test
+		journal.clear();
+		assertFalse(Files.exists(journalFile));
+		assertFalse(journal.isFinished(type, 1L, 10L));
+		// a journal started after a clear is resumable.
+		journal.recordRestored(type, 20L, 30L);
+		assertTrue(new ProgressJournalImpl(mockConfig, mockLoggerFactory, mockClock).isFinished(type, 20L, 30L));
+	}
+
+	static void assertRange(Long minimumId, Long maximumId, IdRange range) {
+		assertEquals(minimumId, range.getMinimumId());
+		assertEquals(maximumId, range.getMaximumId());
+	}
+}
@@ -0,0 +1,97 @@
+package org.sagebionetworks.migration.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RestoreConflictModelImplTest {
+
+	@Mock
+	Configuration mockConfig;
+
+	@Test
+	public void testSameTypeConflicts() {
+		RestoreConflictModelImpl model = new RestoreConflictModelImpl("");
+		assertTrue(model.isConflict(MigrationType.NODE, MigrationType.NODE));
+		assertFalse(model.isConflict(MigrationType.NODE, MigrationType.ACL));
+		assertFalse(model.isConflict(MigrationType.CHANGE, MigrationType.ACL));
+	}
+
+	@Test
+	public void testNullConflicts() {
+		RestoreConflictModelImpl model = new RestoreConflictModelImpl((String) null);
+		assertTrue(model.isConflict(MigrationType.CHANGE, MigrationType.CHANGE));
+		assertFalse(model.isConflict(MigrationType.CHANGE, MigrationType.NODE));
+	}
+
+	@Test
+	public void testPairsAreSymmetric() {
+		RestoreConflictModelImpl model = new RestoreConflictModelImpl(" CHANGE : NODE ,CHANGE:ACL");
+		assertTrue(model.isConflict(MigrationType.CHANGE, MigrationType.NODE));
+		assertTrue(model.isConflict(MigrationType.NODE, MigrationType.CHANGE));
+		assertTrue(model.isConflict(MigrationType.ACL, MigrationType.CHANGE));
+		assertFalse(model.isConflict(MigrationType.NODE, MigrationType.ACL));
+		assertFalse(model.isConflict(MigrationType.CHANGE, MigrationType.NODE_REVISION));
+	}
+
+	@Test
+	public void testWildcard() {
+		RestoreConflictModelImpl model = new RestoreConflictModelImpl("CHANGE:*");
+		assertTrue(model.isConflict(MigrationType.CHANGE, MigrationType.NODE));
+		assertTrue(model.isConflict(MigrationType.ACL, MigrationType.CHANGE));
+		assertFalse(model.isConflict(MigrationType.NODE, MigrationType.ACL));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotAPair() {
+		new RestoreConflictModelImpl("CHANGE");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownType() {
+		new RestoreConflictModelImpl("CHANGE:NOT_A_TYPE");
+	}
+
+	@Test
+	public void testFromConfiguration() {
+		when(mockConfig.getRestoreConflicts()).thenReturn("CHANGE:NODE");
+		when(mockConfig.getMaximumRestoreJobsPerType()).thenReturn("NODE:4");
+		RestoreConflictModelImpl model = new RestoreConflictModelImpl(mockConfig);
+		assertTrue(model.isConflict(MigrationType.NODE, MigrationType.CHANGE));
+		assertFalse(model.isConflict(MigrationType.ACL, MigrationType.CHANGE));
+		assertEquals(4, model.getMaximumConcurrentRestores(MigrationType.NODE));
+	}
+
+	@Test
+	public void testMaximumConcurrentRestoresDefault() {
+		RestoreConflictModelImpl model = new RestoreConflictModelImpl("CHANGE:*", "");
+		assertEquals(1, model.getMaximumConcurrentRestores(MigrationType.NODE));
+	}
+
+	@Test
+	public void testMaximumConcurrentRestores() {
+		RestoreConflictModelImpl model = new RestoreConflictModelImpl("CHANGE:*", " NODE : 4,ACL:2");
+		assertEquals(4, model.getMaximumConcurrentRestores(MigrationType.NODE));
+		assertEquals(2, model.getMaximumConcurrentRestores(MigrationType.ACL));
+		assertEquals(1, model.getMaximumConcurrentRestores(MigrationType.CHANGE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaximumConcurrentRestoresLessThanOne() {
+		new RestoreConflictModelImpl("CHANGE:*", "NODE:0");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaximumConcurrentRestoresNotAPair() {
+		new RestoreConflictModelImpl("CHANGE:*", "NODE");
+	}
+}
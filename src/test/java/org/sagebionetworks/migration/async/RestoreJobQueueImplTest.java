@@ -2,24 +2,37 @@ package org.sagebionetworks.migration.async;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.logging.log4j.Logger;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.sagebionetworks.migration.AsyncMigrationException;
 import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
 import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.util.Clock;
+
+import com.google.common.collect.Lists;
 
 @RunWith(MockitoJUnitRunner.class)
 public class RestoreJobQueueImplTest {
@@ -31,17 +44,20 @@ public class RestoreJobQueueImplTest {
 	@Mock
 	Logger mockLogger;
 	@Mock
-	Future mockNodeOneFuture;
-	@Mock
-	Future mockNodeTwoFuture;
-	@Mock
-	Future mockAclOneFuture;
-	@Mock
-	Future mockAclTwoFuture;
-	@Mock
-	Future mockChangeFuture;
+	Clock mockClock;
+
+	CompletableFuture nodeOneFuture;
+	CompletableFuture nodeTwoFuture;
+	CompletableFuture aclOneFuture;
+	CompletableFuture aclTwoFuture;
+	CompletableFuture changeFuture;
 
+	RestoreConflictModel conflictModel;
 	RestoreJobQueueImpl queue;
+	/*
+	 * Completion tasks are captured so each test controls when they run.
+	 */
+	Queue<Runnable> completionTasks;
 
 	RestoreDestinationJob nodeOne;
 	RestoreDestinationJob nodeTwo;
@@ -53,7 +69,10 @@ public class RestoreJobQueueImplTest {
 	@Before
 	public void before() {
 		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
-		queue = new RestoreJobQueueImpl(mockJobExecutor, mockLoggerFactory);
+		completionTasks = new ConcurrentLinkedQueue<>();
+		conflictModel = new RestoreConflictModelImpl("CHANGE:*");
+		// each job is only attempted once unless a test overrides.
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 1, mockLoggerFactory);
 
 		nodeOne = new RestoreDestinationJob(MigrationType.NODE, "keyOne");
 		nodeTwo = new RestoreDestinationJob(MigrationType.NODE, "keyTwo");
@@ -61,44 +80,91 @@ public class RestoreJobQueueImplTest {
 		aclTwo = new RestoreDestinationJob(MigrationType.ACL, "keyFour");
 		changeJob = new RestoreDestinationJob(MigrationType.CHANGE, "keyChange");
 
-		when(mockJobExecutor.startDestinationJob(nodeOne)).thenReturn(mockNodeOneFuture);
-		when(mockJobExecutor.startDestinationJob(nodeTwo)).thenReturn(mockNodeTwoFuture);
-		when(mockJobExecutor.startDestinationJob(aclOne)).thenReturn(mockAclOneFuture);
-		when(mockJobExecutor.startDestinationJob(aclTwo)).thenReturn(mockAclTwoFuture);
-		when(mockJobExecutor.startDestinationJob(changeJob)).thenReturn(mockChangeFuture);
+		nodeOneFuture = new CompletableFuture<>();
+		nodeTwoFuture = new CompletableFuture<>();
+		aclOneFuture = new CompletableFuture<>();
+		aclTwoFuture = new CompletableFuture<>();
+		changeFuture = new CompletableFuture<>();
 
-		when(mockNodeOneFuture.isDone()).thenReturn(false, false, false, true);
-		when(mockNodeTwoFuture.isDone()).thenReturn(false, true);
-		when(mockAclOneFuture.isDone()).thenReturn(false, false, true);
-		when(mockAclTwoFuture.isDone()).thenReturn(false, false, false, true);
-		
-		when(mockChangeFuture.isDone()).thenReturn(false, true);
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenReturn(nodeOneFuture);
+		when(mockJobExecutor.startDestinationJob(nodeTwo)).thenReturn(nodeTwoFuture);
+		when(mockJobExecutor.startDestinationJob(aclOne)).thenReturn(aclOneFuture);
+		when(mockJobExecutor.startDestinationJob(aclTwo)).thenReturn(aclTwoFuture);
+		when(mockJobExecutor.startDestinationJob(changeJob)).thenReturn(changeFuture);
+	}
+
+	/**
+	 * Complete the given job's future and run its completion task.
+	 * 
+	 * @param future
+	 */
+	void finishJob(CompletableFuture future) {
+		future.complete(null);
+		runCompletionTasks();
+	}
+
+	/**
+	 * Fail the given job's future and run its completion task.
+	 * 
+	 * @param future
+	 * @param failure
+	 */
+	void failJob(CompletableFuture future, Throwable failure) {
+		future.completeExceptionally(failure);
+		runCompletionTasks();
+	}
+
+	void runCompletionTasks() {
+		Runnable task;
+		while ((task = completionTasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Push the given job and run the dispatch it requests.
+	 * 
+	 * @param job
+	 */
+	void pushJob(DestinationJob job) {
+		queue.pushJob(job);
+		runCompletionTasks();
+	}
+
+	/**
+	 * Fire the timer and run the dispatch it requests.
+	 */
+	void runQueue() {
+		queue.run();
+		runCompletionTasks();
 	}
 
 	@Test
 	public void testAll() {
 		// add all of the jobs to the queue
-		queue.pushJob(nodeOne);
-		queue.pushJob(nodeTwo);
-		queue.pushJob(aclOne);
-		queue.pushJob(aclTwo);
-
-		// Fire the timer until all jobs are done
-		while (!queue.isDone()) {
-			queue.timerFired();
-		}
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
+		pushJob(aclOne);
+		pushJob(aclTwo);
 
-		// all four jobs should be started
-		verify(mockJobExecutor, times(4)).startDestinationJob(any(DestinationJob.class));
+		// one job of each type should start immediately.
+		verify(mockJobExecutor, times(2)).startDestinationJob(any(DestinationJob.class));
 		verify(mockJobExecutor).startDestinationJob(nodeOne);
-		verify(mockJobExecutor).startDestinationJob(nodeTwo);
 		verify(mockJobExecutor).startDestinationJob(aclOne);
+		assertFalse(queue.isDone());
+
+		// the next node job should start as soon as the first finishes.
+		finishJob(nodeOneFuture);
+		verify(mockJobExecutor).startDestinationJob(nodeTwo);
+		verify(mockJobExecutor, never()).startDestinationJob(aclTwo);
+		finishJob(aclOneFuture);
 		verify(mockJobExecutor).startDestinationJob(aclTwo);
+		assertFalse(queue.isDone());
 
-		verify(mockLogger, times(3)).info("Currently running: 2 restore jobs.  Waiting to start 2 restore jobs.");
-		verify(mockLogger, times(1)).info("Currently running: 2 restore jobs.  Waiting to start 1 restore jobs.");
-		verify(mockLogger, times(2)).info("Currently running: 2 restore jobs.  Waiting to start 0 restore jobs.");
-		verify(mockLogger, times(1)).info("Currently running: 1 restore jobs.  Waiting to start 0 restore jobs.");
+		finishJob(nodeTwoFuture);
+		finishJob(aclTwoFuture);
+		assertTrue(queue.isDone());
+		verify(mockJobExecutor, times(4)).startDestinationJob(any(DestinationJob.class));
 	}
 	
 	/**
@@ -107,45 +173,449 @@ public class RestoreJobQueueImplTest {
 	@Test
 	public void testChagneJobs() {
 		// add all of the jobs to the queue
-		queue.pushJob(nodeOne);
-		queue.pushJob(aclOne);
-		queue.pushJob(changeJob);
+		pushJob(nodeOne);
+		pushJob(aclOne);
+		pushJob(changeJob);
 
-		// Fire the timer until all jobs are done
-		while (!queue.isDone()) {
-			queue.timerFired();
-		}
-		
+		verify(mockJobExecutor, never()).startDestinationJob(changeJob);
+		finishJob(nodeOneFuture);
+		verify(mockJobExecutor, never()).startDestinationJob(changeJob);
+		finishJob(aclOneFuture);
+		verify(mockJobExecutor).startDestinationJob(changeJob);
+		assertFalse(queue.isDone());
+		finishJob(changeFuture);
+		assertTrue(queue.isDone());
 		verify(mockJobExecutor, times(3)).startDestinationJob(any(DestinationJob.class));
+	}
+
+	/**
+	 * By default no other job can start while a change job is running.
+	 */
+	@Test
+	public void testNoJobsStartWhileChangeJobRuns() {
+		pushJob(changeJob);
+		verify(mockJobExecutor).startDestinationJob(changeJob);
+		pushJob(nodeOne);
+		pushJob(aclOne);
+		verify(mockJobExecutor, never()).startDestinationJob(nodeOne);
+		verify(mockJobExecutor, never()).startDestinationJob(aclOne);
+		finishJob(changeFuture);
 		verify(mockJobExecutor).startDestinationJob(nodeOne);
 		verify(mockJobExecutor).startDestinationJob(aclOne);
+	}
+
+	/**
+	 * Change jobs can run with any type that is not declared to conflict.
+	 */
+	@Test
+	public void testChangeJobsWithoutConflict() {
+		conflictModel = new RestoreConflictModelImpl("CHANGE:NODE");
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 1, mockLoggerFactory);
+		pushJob(nodeOne);
+		pushJob(aclOne);
+		pushJob(changeJob);
+		verify(mockJobExecutor, never()).startDestinationJob(changeJob);
+		// the change job does not need to wait for the acl job.
+		finishJob(nodeOneFuture);
+		verify(mockJobExecutor).startDestinationJob(changeJob);
+		// a node job cannot start while the change job is running.
+		pushJob(nodeTwo);
+		verify(mockJobExecutor, never()).startDestinationJob(nodeTwo);
+		finishJob(changeFuture);
+		verify(mockJobExecutor).startDestinationJob(nodeTwo);
+	}
+
+	/**
+	 * A job waiting on a conflict holds back conflicting jobs queued after it.
+	 */
+	@Test
+	public void testWaitingJobNotStarved() {
+		pushJob(nodeOne);
+		pushJob(changeJob);
+		// acl conflicts with the waiting change job.
+		pushJob(aclOne);
+		verify(mockJobExecutor, never()).startDestinationJob(aclOne);
+		finishJob(nodeOneFuture);
+		verify(mockJobExecutor).startDestinationJob(changeJob);
+		verify(mockJobExecutor, never()).startDestinationJob(aclOne);
+		finishJob(changeFuture);
+		verify(mockJobExecutor).startDestinationJob(aclOne);
+	}
+
+	/**
+	 * Jobs of the same type with disjoint ranges run concurrently up to the limit.
+	 */
+	@Test
+	public void testSameTypeDisjointRanges() {
+		conflictModel = new RestoreConflictModelImpl("CHANGE:*", "NODE:2");
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 1, mockLoggerFactory);
+		RestoreDestinationJob rangeOne = new RestoreDestinationJob(MigrationType.NODE, "one", 0L, 9L);
+		RestoreDestinationJob rangeTwo = new RestoreDestinationJob(MigrationType.NODE, "two", 10L, 19L);
+		RestoreDestinationJob rangeThree = new RestoreDestinationJob(MigrationType.NODE, "three", 20L, 29L);
+		CompletableFuture rangeOneFuture = new CompletableFuture<>();
+		when(mockJobExecutor.startDestinationJob(rangeOne)).thenReturn(rangeOneFuture);
+		when(mockJobExecutor.startDestinationJob(rangeTwo)).thenReturn(new CompletableFuture<>());
+		when(mockJobExecutor.startDestinationJob(rangeThree)).thenReturn(new CompletableFuture<>());
+		pushJob(rangeOne);
+		pushJob(rangeTwo);
+		pushJob(rangeThree);
+		verify(mockJobExecutor).startDestinationJob(rangeOne);
+		verify(mockJobExecutor).startDestinationJob(rangeTwo);
+		// limited to two node jobs.
+		verify(mockJobExecutor, never()).startDestinationJob(rangeThree);
+		finishJob(rangeOneFuture);
+		verify(mockJobExecutor).startDestinationJob(rangeThree);
+		runQueue();
+		verify(mockLogger).info("Currently running: 2 restore jobs.  Waiting to start 0 restore jobs.");
+	}
+
+	/**
+	 * Jobs of the same type with overlapping ranges are never run concurrently.
+	 */
+	@Test
+	public void testSameTypeOverlappingRanges() {
+		conflictModel = new RestoreConflictModelImpl("CHANGE:*", "NODE:2");
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 1, mockLoggerFactory);
+		RestoreDestinationJob rangeOne = new RestoreDestinationJob(MigrationType.NODE, "one", 0L, 10L);
+		RestoreDestinationJob rangeTwo = new RestoreDestinationJob(MigrationType.NODE, "two", 10L, 19L);
+		CompletableFuture rangeOneFuture = new CompletableFuture<>();
+		when(mockJobExecutor.startDestinationJob(rangeOne)).thenReturn(rangeOneFuture);
+		when(mockJobExecutor.startDestinationJob(rangeTwo)).thenReturn(new CompletableFuture<>());
+		pushJob(rangeOne);
+		pushJob(rangeTwo);
+		verify(mockJobExecutor, never()).startDestinationJob(rangeTwo);
+		finishJob(rangeOneFuture);
+		verify(mockJobExecutor).startDestinationJob(rangeTwo);
+	}
+
+	/**
+	 * Jobs without a range cannot run with any other job of the same type.
+	 */
+	@Test
+	public void testSameTypeWithoutRange() {
+		conflictModel = new RestoreConflictModelImpl("CHANGE:*", "NODE:2");
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 1, mockLoggerFactory);
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
+		verify(mockJobExecutor, never()).startDestinationJob(nodeTwo);
+		finishJob(nodeOneFuture);
+		verify(mockJobExecutor).startDestinationJob(nodeTwo);
+	}
+
+	@Test
+	public void testIsOverlapping() {
+		RestoreDestinationJob one = new RestoreDestinationJob(MigrationType.NODE, "one", 0L, 9L);
+		assertFalse(RestoreJobQueueImpl.isOverlapping(one, new RestoreDestinationJob(MigrationType.NODE, "two", 10L, 19L)));
+		assertTrue(RestoreJobQueueImpl.isOverlapping(one, new RestoreDestinationJob(MigrationType.NODE, "two", 9L, 19L)));
+		assertTrue(RestoreJobQueueImpl.isOverlapping(one, new RestoreDestinationJob(MigrationType.NODE, "two", 2L, 3L)));
+		assertTrue(RestoreJobQueueImpl.isOverlapping(one, nodeTwo));
+		assertTrue(RestoreJobQueueImpl.isOverlapping(one, new DeleteDestinationJob()));
+	}
+
+	@Test
+	public void testIsOverlappingDelete() {
+		RestoreDestinationJob one = new RestoreDestinationJob(MigrationType.NODE, "one", 0L, 9L);
+		DeleteDestinationJob delete = new DeleteDestinationJob();
+		delete.setMigrationType(MigrationType.NODE);
+		delete.setRowIdsToDelete(Lists.newArrayList(15L, 12L));
+		assertFalse(RestoreJobQueueImpl.isOverlapping(one, delete));
+		delete.setMinimumId(5L);
+		delete.setMaximumId(6L);
+		assertTrue(RestoreJobQueueImpl.isOverlapping(one, delete));
+		assertTrue(RestoreJobQueueImpl.isOverlapping(delete, new RestoreDestinationJob(MigrationType.NODE, "two", 13L, 14L)));
+	}
+
+	/**
+	 * The types with the most remaining work are started first.
+	 */
+	@Test
+	public void testLargestTypeStartedFirst() {
+		queue.setWorkEstimates(Lists.newArrayList(
+				new TypeToMigrateMetadata(MigrationType.ACL, 1L, 10L, 10L, null, null, 0L),
+				new TypeToMigrateMetadata(MigrationType.NODE, 1L, 1000L, 1000L, null, null, 0L)));
+		// all jobs wait on the change job.
+		pushJob(changeJob);
+		pushJob(aclOne);
+		pushJob(nodeOne);
+		finishJob(changeFuture);
+		InOrder inOrder = inOrder(mockJobExecutor);
+		inOrder.verify(mockJobExecutor).startDestinationJob(nodeOne);
+		inOrder.verify(mockJobExecutor).startDestinationJob(aclOne);
+	}
+
+	/**
+	 * A waiting job holds back the lower priority jobs that conflict with it.
+	 */
+	@Test
+	public void testHigherPriorityChangeJobHoldsBack() {
+		queue.setWorkEstimates(Lists.newArrayList(
+				new TypeToMigrateMetadata(MigrationType.CHANGE, 1L, 1000L, 1000L, null, null, 0L)));
+		pushJob(nodeOne);
+		pushJob(aclOne);
+		pushJob(changeJob);
+		pushJob(nodeTwo);
+		pushJob(aclTwo);
+		finishJob(nodeOneFuture);
+		// acl is still running so the change job must wait and the node job is held back.
+		verify(mockJobExecutor, never()).startDestinationJob(nodeTwo);
+		finishJob(aclOneFuture);
 		verify(mockJobExecutor).startDestinationJob(changeJob);
+		verify(mockJobExecutor, never()).startDestinationJob(nodeTwo);
+		finishJob(changeFuture);
+		verify(mockJobExecutor).startDestinationJob(nodeTwo);
+		verify(mockJobExecutor).startDestinationJob(aclTwo);
+	}
+
+	@Test
+	public void testDeductFinishedWork() {
+		queue.setWorkEstimates(Lists.newArrayList(
+				new TypeToMigrateMetadata(MigrationType.NODE, 1L, 200L, 100L, null, null, 0L),
+				new TypeToMigrateMetadata(MigrationType.ACL, null, null, null, null, null, null)));
+		assertEquals(100L, queue.getRemainingRows(MigrationType.NODE));
+		assertEquals(0L, queue.getRemainingRows(MigrationType.ACL));
+		assertEquals(0L, queue.getRemainingRows(MigrationType.CHANGE));
+		RestoreDestinationJob rangeJob = new RestoreDestinationJob(MigrationType.NODE, "range", 1L, 40L);
+		CompletableFuture rangeFuture = new CompletableFuture<>();
+		when(mockJobExecutor.startDestinationJob(rangeJob)).thenReturn(rangeFuture);
+		pushJob(rangeJob);
+		// the work is only deducted when the job finishes.
+		assertEquals(100L, queue.getRemainingRows(MigrationType.NODE));
+		finishJob(rangeFuture);
+		// half of the IDs have a row.
+		assertEquals(80L, queue.getRemainingRows(MigrationType.NODE));
+		// jobs without a range are not deducted.
+		pushJob(nodeOne);
+		finishJob(nodeOneFuture);
+		assertEquals(80L, queue.getRemainingRows(MigrationType.NODE));
+	}
+
+	@Test
+	public void testDeductFinishedWorkFailedJob() {
+		queue.setWorkEstimates(Lists.newArrayList(
+				new TypeToMigrateMetadata(MigrationType.NODE, 1L, 100L, 100L, null, null, 0L)));
+		RestoreDestinationJob rangeJob = new RestoreDestinationJob(MigrationType.NODE, "range", 1L, 40L);
+		CompletableFuture rangeFuture = new CompletableFuture<>();
+		when(mockJobExecutor.startDestinationJob(rangeJob)).thenReturn(rangeFuture);
+		pushJob(rangeJob);
+		failJob(rangeFuture, new AsyncMigrationException("failed"));
+		assertEquals(100L, queue.getRemainingRows(MigrationType.NODE));
+	}
+
+	/**
+	 * Push the given job from another thread.
+	 * 
+	 * @param job
+	 * @param failures Any exception thrown by the push is added to this list.
+	 * @return The started thread.
+	 */
+	Thread pushJobOnThread(DestinationJob job, List<Throwable> failures) {
+		Thread thread = new Thread(() -> {
+			try {
+				pushJob(job);
+			} catch (Throwable e) {
+				failures.add(e);
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	@Test
+	public void testPushJobPerTypeHighWaterMark() throws InterruptedException {
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 1, 1, 0,
+				mockLoggerFactory);
+		RestoreDestinationJob nodeThree = new RestoreDestinationJob(MigrationType.NODE, "keyNodeThree");
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
+		// other types are not limited.
+		pushJob(aclOne);
+		pushJob(aclTwo);
+		List<Throwable> failures = new CopyOnWriteArrayList<>();
+		Thread pusher = pushJobOnThread(nodeThree, failures);
+		pusher.join(200);
+		// blocked since one node job is already waiting.
+		assertTrue(pusher.isAlive());
+		// starts the waiting node job.
+		finishJob(nodeOneFuture);
+		pusher.join(5000);
+		assertFalse(pusher.isAlive());
+		assertTrue(failures.isEmpty());
+		assertEquals(2, queue.waitingJobCount.get());
+	}
+
+	@Test
+	public void testPushJobGlobalHighWaterMark() throws InterruptedException {
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 1, 0, 1,
+				mockLoggerFactory);
+		pushJob(nodeOne);
+		pushJob(aclOne);
+		pushJob(nodeTwo);
+		List<Throwable> failures = new CopyOnWriteArrayList<>();
+		Thread pusher = pushJobOnThread(aclTwo, failures);
+		pusher.join(200);
+		assertTrue(pusher.isAlive());
+		// the node job is still waiting.
+		finishJob(aclOneFuture);
+		pusher.join(200);
+		assertTrue(pusher.isAlive());
+		finishJob(nodeOneFuture);
+		pusher.join(5000);
+		assertFalse(pusher.isAlive());
+		assertTrue(failures.isEmpty());
+		// run the dispatch requested by the pusher.
+		runCompletionTasks();
+		verify(mockJobExecutor).startDestinationJob(aclTwo);
+	}
+
+	@Test
+	public void testPushJobHighWaterMarkTerminate() throws InterruptedException {
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 1, 1, 0,
+				mockLoggerFactory);
+		RestoreDestinationJob nodeThree = new RestoreDestinationJob(MigrationType.NODE, "keyNodeThree");
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
+		List<Throwable> failures = new CopyOnWriteArrayList<>();
+		Thread pusher = pushJobOnThread(nodeThree, failures);
+		pusher.join(200);
+		assertTrue(pusher.isAlive());
+		OutOfMemoryError terminate = new OutOfMemoryError("Out of memory");
+		failJob(nodeOneFuture, terminate);
+		pusher.join(5000);
+		assertFalse(pusher.isAlive());
+		assertEquals(1, failures.size());
+		assertEquals(terminate, failures.get(0).getCause());
+		verify(mockJobExecutor, never()).startDestinationJob(nodeThree);
+	}
+
+	@Test
+	public void testIsAtHighWaterMark() {
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 1, 2, 3,
+				mockLoggerFactory);
+		// the dispatch is not run so the jobs are not started.
+		queue.pushJob(nodeOne);
+		assertFalse(queue.isAtHighWaterMark(MigrationType.NODE));
+		queue.pushJob(nodeTwo);
+		assertTrue(queue.isAtHighWaterMark(MigrationType.NODE));
+		assertFalse(queue.isAtHighWaterMark(MigrationType.ACL));
+		queue.pushJob(aclOne);
+		assertTrue(queue.isAtHighWaterMark(MigrationType.ACL));
+	}
+
+	@Test
+	public void testDrainAndRemoveWaitingJob() {
+		// the dispatch is not run so the jobs stay in the inbox.
+		queue.pushJob(nodeOne);
+		queue.pushJob(nodeTwo);
+		assertEquals(2, queue.inbox.size());
+		assertEquals(2, queue.waitingJobCount.get());
+		assertEquals(2, queue.getWaitingJobCount(MigrationType.NODE));
+		assertEquals(0, queue.getWaitingJobCount(MigrationType.ACL));
+		queue.drainInbox();
+		assertTrue(queue.inbox.isEmpty());
+		Deque<RestoreJobQueueImpl.WaitingJob> waitingOfType = queue.waitingJobs.get(MigrationType.NODE);
+		assertEquals(nodeOne, waitingOfType.peekFirst().job);
+		assertEquals(nodeTwo, waitingOfType.peekLast().job);
+		queue.removeWaitingJob(waitingOfType.peekLast());
+		queue.removeWaitingJob(waitingOfType.peekFirst());
+		assertEquals(0, queue.waitingJobCount.get());
+		assertEquals(0, queue.getWaitingJobCount(MigrationType.NODE));
+		// types without waiting jobs are removed.
+		assertFalse(queue.waitingJobs.containsKey(MigrationType.NODE));
+	}
+
+	/**
+	 * Producers only add to the inbox. The jobs are started by the dispatcher.
+	 */
+	@Test
+	public void testPushJobDoesNotStartJobs() {
+		queue.pushJob(nodeOne);
+		queue.pushJob(aclOne);
+		verify(mockJobExecutor, never()).startDestinationJob(any(DestinationJob.class));
+		assertFalse(queue.isDone());
+		// only one dispatcher is requested while one is pending.
+		assertEquals(1, completionTasks.size());
+		runCompletionTasks();
+		verify(mockJobExecutor).startDestinationJob(nodeOne);
+		verify(mockJobExecutor).startDestinationJob(aclOne);
+	}
+
+	/**
+	 * Jobs are started on the destination without holding the monitor.
+	 */
+	@Test
+	public void testStartJobWithoutLock() {
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenAnswer(invocation -> {
+			assertFalse(Thread.holdsLock(queue));
+			return nodeOneFuture;
+		});
+		pushJob(nodeOne);
+		verify(mockJobExecutor).startDestinationJob(nodeOne);
+		finishJob(nodeOneFuture);
+		assertTrue(queue.isDone());
+	}
+
+	/**
+	 * A dispatch requested while the dispatcher is running causes another pass.
+	 */
+	@Test
+	public void testDispatchRequestedWhileRunning() {
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenAnswer(invocation -> {
+			// pushed while the dispatcher is starting the first job.
+			queue.pushJob(aclOne);
+			return nodeOneFuture;
+		});
+		pushJob(nodeOne);
+		verify(mockJobExecutor).startDestinationJob(nodeOne);
+		verify(mockJobExecutor).startDestinationJob(aclOne);
+		assertTrue(completionTasks.isEmpty());
+	}
 
-		verify(mockLogger, times(3)).info("Currently running: 2 restore jobs.  Waiting to start 1 restore jobs.");
-		verify(mockLogger, times(1)).info("Currently running: 1 restore jobs.  Waiting to start 1 restore jobs.");
-		verify(mockLogger, times(2)).info("Currently running: 1 restore jobs.  Waiting to start 0 restore jobs.");
+	/**
+	 * Types with equal work are started in the order their jobs were pushed.
+	 */
+	@Test
+	public void testEqualWorkPushOrder() {
+		pushJob(changeJob);
+		pushJob(nodeOne);
+		pushJob(aclOne);
+		finishJob(changeFuture);
+		InOrder inOrder = inOrder(mockJobExecutor);
+		inOrder.verify(mockJobExecutor).startDestinationJob(nodeOne);
+		inOrder.verify(mockJobExecutor).startDestinationJob(aclOne);
+	}
+
+	@Test
+	public void testIsAtHighWaterMarkNoLimits() {
+		for (int i = 0; i < 100; i++) {
+			queue.addWaitingJob(new RestoreJobQueueImpl.WaitingJob(nodeOne, i), false);
+		}
+		assertFalse(queue.isAtHighWaterMark(MigrationType.NODE));
+	}
+
+	@Test
+	public void testRun() {
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
+		// call under test
+		runQueue();
+		verify(mockLogger).info("Currently running: 1 restore jobs.  Waiting to start 1 restore jobs.");
+		verify(mockJobExecutor, never()).startDestinationJob(nodeTwo);
 	}
 	
 	@Test
-	public void testLastException() throws InterruptedException, ExecutionException {
-		when(mockNodeOneFuture.isDone()).thenReturn(true);
+	public void testLastException() {
 		AsyncMigrationException firstException = new AsyncMigrationException("One");
-		when(mockNodeOneFuture.get()).thenThrow(firstException);
-		when(mockNodeTwoFuture.isDone()).thenReturn(true);
 		AsyncMigrationException secondException = new AsyncMigrationException("two");
-		when(mockNodeTwoFuture.get()).thenThrow(secondException);
 		// push both jobs to the queue
-		queue.pushJob(nodeOne);
-		queue.pushJob(nodeTwo);
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
 		
 		assertFalse(queue.isDone());
-		queue.timerFired();
-		assertFalse(queue.isDone());
-		queue.timerFired();
-		assertFalse(queue.isDone());
-		queue.timerFired();
+		failJob(nodeOneFuture, firstException);
+		// the failure should not stop the next job.
+		verify(mockJobExecutor).startDestinationJob(nodeTwo);
 		assertFalse(queue.isDone());
-		queue.timerFired();
+		failJob(nodeTwoFuture, secondException);
 		try {
 			// second exception should be thrown.
 			queue.isDone();
@@ -153,6 +623,25 @@ public class RestoreJobQueueImplTest {
 		}catch(AsyncMigrationException e) {
 			assertEquals(secondException, e.getCause());
 		}
+		// the exception is only thrown once.
+		assertTrue(queue.isDone());
+	}
+
+	/**
+	 * A failure from a dependent stage is wrapped in a CompletionException.
+	 */
+	@Test
+	public void testDependentStageFailure() {
+		IllegalStateException exception = new IllegalStateException("failed");
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenReturn(nodeOneFuture.thenApply(r -> r));
+		pushJob(nodeOne);
+		failJob(nodeOneFuture, exception);
+		try {
+			queue.isDone();
+			fail();
+		}catch(AsyncMigrationException e) {
+			assertEquals(exception, e.getCause());
+		}
 	}
 	
 	/**
@@ -164,10 +653,8 @@ public class RestoreJobQueueImplTest {
 	public void testForPLFM_5474IsDone(){
 		OutOfMemoryError terminate = new OutOfMemoryError("Out of memory");
 		when(mockJobExecutor.startDestinationJob(nodeOne)).thenThrow(terminate);
-		// push one job
-		queue.pushJob(nodeOne);
-		// Exception should not be thrown on timer fired
-		queue.timerFired();
+		// Exception should not be thrown on the push that starts the job
+		pushJob(nodeOne);
 		try {
 			queue.isDone();
 			fail();
@@ -185,13 +672,30 @@ public class RestoreJobQueueImplTest {
 	public void testForPLFM_5474PushJob(){
 		OutOfMemoryError terminate = new OutOfMemoryError("Out of memory");
 		when(mockJobExecutor.startDestinationJob(nodeOne)).thenThrow(terminate);
-		// push one job
-		queue.pushJob(nodeOne);
-		// Exception should not be thrown on timer fired
-		queue.timerFired();
+		// Exception should not be thrown on the push that starts the job
+		pushJob(nodeOne);
 		try {
 			// call under test
-			queue.pushJob(nodeTwo);
+			pushJob(nodeTwo);
+			fail();
+		}catch(RuntimeException e) {
+			assertEquals(e.getCause(), terminate);
+		}
+	}
+
+	/**
+	 * An error from a running job should terminate.
+	 */
+	@Test
+	public void testJobError() {
+		OutOfMemoryError terminate = new OutOfMemoryError("Out of memory");
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
+		failJob(nodeOneFuture, terminate);
+		// no other jobs should start after termination.
+		verify(mockJobExecutor, never()).startDestinationJob(nodeTwo);
+		try {
+			queue.isDone();
 			fail();
 		}catch(RuntimeException e) {
 			assertEquals(e.getCause(), terminate);
@@ -200,27 +704,196 @@ public class RestoreJobQueueImplTest {
 	
 	@Test
 	public void testForPLFM_5474StartAsych(){
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 2, mockLoggerFactory);
+		when(mockClock.currentTimeMillis()).thenReturn(0L);
 		AsyncMigrationException nonTermiante = new AsyncMigrationException("Some random exception");
 		// fail the first time then succeed the second time.
-		when(mockJobExecutor.startDestinationJob(nodeOne)).thenThrow(nonTermiante).thenReturn(mockNodeOneFuture);
-		when(mockNodeOneFuture.isDone()).thenReturn(true);
-		// push one job
-		queue.pushJob(nodeOne);
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenThrow(nonTermiante).thenReturn(nodeOneFuture);
 		// First will fail
-		queue.timerFired();
+		pushJob(nodeOne);
 		assertFalse(queue.isDone());
-		// Second works
-		queue.timerFired();
+		// the job is not retried until the backoff expires.
+		runQueue();
+		verify(mockJobExecutor, times(1)).startDestinationJob(nodeOne);
+		// Second works when the timer fires
+		when(mockClock.currentTimeMillis()).thenReturn(RestoreJobQueueImpl.INITIAL_RETRY_DELAY_MS);
+		runQueue();
+		verify(mockJobExecutor, times(2)).startDestinationJob(nodeOne);
 		assertFalse(queue.isDone());
 		// second should finish
-		queue.timerFired();
+		finishJob(nodeOneFuture);
+		// the retry succeeded so no exception is exposed.
+		assertTrue(queue.isDone());
+	}
+
+	@Test
+	public void testStartFailureRetriesExhausted(){
+		AsyncMigrationException nonTermiante = new AsyncMigrationException("Some random exception");
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenThrow(nonTermiante);
+		pushJob(nodeOne);
 		try {
-			// Exception from first failure should be exposed.
+			// Exception from the only attempt should be exposed.
 			queue.isDone();
 			fail();
 		}catch(RuntimeException e) {
 			assertEquals(e.getCause(), nonTermiante);
 		}
+		runQueue();
+		// the job must not be retried.
+		verify(mockJobExecutor, times(1)).startDestinationJob(nodeOne);
+	}
+
+	@Test
+	public void testRetryFailedJob() {
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 3, mockLoggerFactory);
+		when(mockClock.currentTimeMillis()).thenReturn(0L);
+		CompletableFuture retryFuture = new CompletableFuture<>();
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenReturn(nodeOneFuture, retryFuture);
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
+		pushJob(aclOne);
+		failJob(nodeOneFuture, new AsyncMigrationException("deadlock"));
+		// later jobs of the same type wait behind the failed job.
+		verify(mockJobExecutor, never()).startDestinationJob(nodeTwo);
+		// jobs of other types are not held back.
+		finishJob(aclOneFuture);
+		runQueue();
+		verify(mockJobExecutor, never()).startDestinationJob(nodeTwo);
+		assertFalse(queue.isDone());
+		verify(mockJobExecutor, times(1)).startDestinationJob(nodeOne);
+		// retried in place once the backoff expires.
+		when(mockClock.currentTimeMillis()).thenReturn(RestoreJobQueueImpl.INITIAL_RETRY_DELAY_MS);
+		runQueue();
+		verify(mockJobExecutor, times(2)).startDestinationJob(nodeOne);
+		verify(mockJobExecutor, never()).startDestinationJob(nodeTwo);
+		finishJob(retryFuture);
+		// the next job starts once the failed job succeeds.
+		verify(mockJobExecutor).startDestinationJob(nodeTwo);
+		finishJob(nodeTwoFuture);
+		assertTrue(queue.isDone());
+		assertTrue(queue.failedJobs.isEmpty());
+	}
+
+	@Test
+	public void testRetryFailedJobExhausted() {
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, completionTasks::add, mockClock, 2, mockLoggerFactory);
+		when(mockClock.currentTimeMillis()).thenReturn(0L);
+		CompletableFuture retryFuture = new CompletableFuture<>();
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenReturn(nodeOneFuture, retryFuture);
+		AsyncMigrationException lastFailure = new AsyncMigrationException("two");
+		pushJob(nodeOne);
+		failJob(nodeOneFuture, new AsyncMigrationException("one"));
+		assertFalse(queue.isDone());
+		when(mockClock.currentTimeMillis()).thenReturn(RestoreJobQueueImpl.INITIAL_RETRY_DELAY_MS);
+		runQueue();
+		failJob(retryFuture, lastFailure);
+		try {
+			// the failure of the last attempt should be exposed.
+			queue.isDone();
+			fail();
+		}catch(AsyncMigrationException e) {
+			assertEquals(lastFailure, e.getCause());
+		}
+		runQueue();
+		verify(mockJobExecutor, times(2)).startDestinationJob(nodeOne);
+		assertTrue(queue.isDone());
+	}
+
+	@Test
+	public void testGetRetryDelayMs() {
+		assertEquals(1000L, RestoreJobQueueImpl.getRetryDelayMs(1));
+		assertEquals(2000L, RestoreJobQueueImpl.getRetryDelayMs(2));
+		assertEquals(4000L, RestoreJobQueueImpl.getRetryDelayMs(3));
+		assertEquals(RestoreJobQueueImpl.MAXIMUM_RETRY_DELAY_MS, RestoreJobQueueImpl.getRetryDelayMs(100));
+	}
+
+	@Test
+	public void testAwaitAllJobsDone() throws InterruptedException {
+		// jobs finish as soon as they start.
+		when(mockJobExecutor.startDestinationJob(any(DestinationJob.class)))
+				.thenReturn(CompletableFuture.completedFuture(null));
+		queue = new RestoreJobQueueImpl(mockJobExecutor, conflictModel, Runnable::run, mockClock, 1, mockLoggerFactory);
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
+		pushJob(aclOne);
+		pushJob(changeJob);
+		// call under test
+		queue.awaitAllJobsDone();
+		verify(mockJobExecutor, times(4)).startDestinationJob(any(DestinationJob.class));
+	}
+
+	@Test
+	public void testAwaitAllJobsDoneTerminated() throws InterruptedException {
+		OutOfMemoryError terminate = new OutOfMemoryError("Out of memory");
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenThrow(terminate);
+		pushJob(nodeOne);
+		try {
+			// call under test
+			queue.awaitAllJobsDone();
+			fail();
+		}catch(RuntimeException e) {
+			assertEquals(e.getCause(), terminate);
+		}
+	}
+
+	@Test
+	public void testWhenAllJobsDone() {
+		pushJob(nodeOne);
+		pushJob(nodeTwo);
+		pushJob(aclOne);
+		// call under test
+		CompletableFuture<Void> nodeDone = queue.whenAllJobsDone(MigrationType.NODE);
+		CompletableFuture<Void> aclDone = queue.whenAllJobsDone(MigrationType.ACL);
+		assertFalse(nodeDone.isDone());
+		assertFalse(aclDone.isDone());
+		finishJob(aclOneFuture);
+		// ACL is done while nodes are still running.
+		assertTrue(aclDone.isDone());
+		assertFalse(aclDone.isCompletedExceptionally());
+		assertFalse(nodeDone.isDone());
+		finishJob(nodeOneFuture);
+		assertFalse(nodeDone.isDone());
+		finishJob(nodeTwoFuture);
+		assertTrue(nodeDone.isDone());
+		assertFalse(nodeDone.isCompletedExceptionally());
+	}
+
+	@Test
+	public void testWhenAllJobsDoneNoJobs() {
+		// call under test
+		assertTrue(queue.whenAllJobsDone(MigrationType.NODE).isDone());
+	}
+
+	@Test
+	public void testWhenAllJobsDoneFailure() {
+		AsyncMigrationException exception = new AsyncMigrationException("failed");
+		pushJob(nodeOne);
+		pushJob(aclOne);
+		CompletableFuture<Void> nodeDone = queue.whenAllJobsDone(MigrationType.NODE);
+		CompletableFuture<Void> aclDone = queue.whenAllJobsDone(MigrationType.ACL);
+		failJob(nodeOneFuture, exception);
+		assertTrue(nodeDone.isCompletedExceptionally());
+		try {
+			nodeDone.join();
+			fail();
+		} catch (CompletionException e) {
+			assertEquals(exception, e.getCause().getCause());
+		}
+		finishJob(aclOneFuture);
+		assertFalse(aclDone.isCompletedExceptionally());
+		// the failure is only reported once.
+		assertTrue(queue.isDone());
+	}
+
+	@Test
+	public void testWhenAllJobsDoneTerminated() {
+		OutOfMemoryError terminate = new OutOfMemoryError("Out of memory");
+		pushJob(aclOne);
+		CompletableFuture<Void> aclDone = queue.whenAllJobsDone(MigrationType.ACL);
+		when(mockJobExecutor.startDestinationJob(nodeOne)).thenThrow(terminate);
+		// call under test
+		pushJob(nodeOne);
+		assertTrue(aclDone.isCompletedExceptionally());
 	}
 	
 }
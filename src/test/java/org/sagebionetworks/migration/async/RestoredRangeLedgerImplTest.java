@@ -0,0 +1,71 @@
+package org.sagebionetworks.migration.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+public class RestoredRangeLedgerImplTest {
+
+	RestoredRangeLedgerImpl ledger;
+	MigrationType type;
+
+	@Before
+	public void before() {
+		ledger = new RestoredRangeLedgerImpl();
+		type = MigrationType.NODE;
+	}
+
+	@Test
+	public void testFindUnrestoredRangesEmpty() {
+		// call under test
+		List<IdRange> unrestored = ledger.findUnrestoredRanges(type, 1L, 100L);
+		assertEquals(1, unrestored.size());
+		assertEquals(new Long(1L), unrestored.get(0).getMinimumId());
+		assertEquals(new Long(100L), unrestored.get(0).getMaximumId());
+	}
+
+	@Test
+	public void testFindUnrestoredRanges() {
+		ledger.recordRestored(type, 10L, 19L);
+		// adjacent ranges are merged.
+		ledger.recordRestored(type, 20L, 29L);
+		ledger.recordRestored(type, 50L, 200L);
+		// other types are independent.
+		ledger.recordRestored(MigrationType.ACL, 1L, 100L);
+		// call under test
+		List<IdRange> unrestored = ledger.findUnrestoredRanges(type, 1L, 100L);
+		assertEquals(2, unrestored.size());
+		assertEquals(new Long(1L), unrestored.get(0).getMinimumId());
+		assertEquals(new Long(9L), unrestored.get(0).getMaximumId());
+		assertEquals(new Long(30L), unrestored.get(1).getMinimumId());
+		assertEquals(new Long(49L), unrestored.get(1).getMaximumId());
+	}
+
+	@Test
+	public void testFindUnrestoredRangesAllRestored() {
+		ledger.recordRestored(type, 1L, 100L);
+		// call under test
+		assertTrue(ledger.findUnrestoredRanges(type, 10L, 20L).isEmpty());
+	}
+
+	@Test
+	public void testRecordRestoredNullRange() {
+		ledger.recordRestored(type, null, 100L);
+		// call under test
+		assertEquals(1, ledger.findUnrestoredRanges(type, 1L, 100L).size());
+	}
+
+	@Test
+	public void testClear() {
+		ledger.recordRestored(type, 1L, 100L);
+		// call under test
+		ledger.clear();
+		assertEquals(1, ledger.findUnrestoredRanges(type, 1L, 100L).size());
+	}
+}
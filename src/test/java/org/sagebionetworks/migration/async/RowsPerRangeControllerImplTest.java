@@ -0,0 +1,131 @@
+package org.sagebionetworks.migration.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RowsPerRangeControllerImplTest {
+
+	@Mock
+	Configuration mockConfig;
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+
+	MigrationType type;
+	RowsPerRangeControllerImpl controller;
+
+	@Before
+	public void before() {
+		type = MigrationType.NODE_REVISION;
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		when(mockConfig.getMaximumBackupBatchSize()).thenReturn(1000);
+		// target one minute per job.
+		when(mockConfig.getTargetJobDurationMs()).thenReturn(60000L);
+		controller = new RowsPerRangeControllerImpl(mockConfig, mockLoggerFactory);
+	}
+
+	@Test
+	public void testGetRowsPerRangeNoSamples() {
+		// call under test
+		assertEquals(1000L, controller.getRowsPerRange(type));
+	}
+
+	@Test
+	public void testDisabled() {
+		when(mockConfig.getTargetJobDurationMs()).thenReturn(0L);
+		controller = new RowsPerRangeControllerImpl(mockConfig, mockLoggerFactory);
+		controller.recordBackup(type, "key", 100000L);
+		// call under test
+		controller.recordRestore(type, "key", 1000L, 100000L);
+		assertEquals(1000L, controller.getRowsPerRange(type));
+	}
+
+	@Test
+	public void testSlowJobsShrink() {
+		// 1000 rows took four minutes.
+		controller.recordBackup(type, "key", 60000L);
+		// call under test
+		controller.recordRestore(type, "key", 1000L, 180000L);
+		// each step is limited to half the current size.
+		assertEquals(500L, controller.getRowsPerRange(type));
+		// the backup was consumed with the restore.
+		assertEquals(0, controller.backupDurations.size());
+		// other types are not changed.
+		assertEquals(1000L, controller.getRowsPerRange(MigrationType.NODE));
+	}
+
+	@Test
+	public void testFastJobsGrow() {
+		// 1000 rows took one second.
+		controller.recordRestore(type, "key", 1000L, 1000L);
+		// each step is limited to double the current size.
+		assertEquals(2000L, controller.getRowsPerRange(type));
+	}
+
+	@Test
+	public void testConverge() {
+		// 1000 rows took two minutes.
+		controller.recordRestore(type, "one", 1000L, 120000L);
+		// 500 rows took one minute.
+		controller.recordRestore(type, "two", 500L, 60000L);
+		// call under test
+		assertEquals(500L, controller.getRowsPerRange(type));
+	}
+
+	@Test
+	public void testLimits() {
+		for (int i = 0; i < 20; i++) {
+			controller.recordRestore(type, "fast" + i, 1000L, 1L);
+		}
+		assertEquals(1000L * RowsPerRangeControllerImpl.MAXIMUM_SCALE_FACTOR, controller.getRowsPerRange(type));
+		for (int i = 0; i < 20; i++) {
+			controller.recordRestore(type, "slow" + i, 1L, 10000000L);
+		}
+		assertEquals(1000L / RowsPerRangeControllerImpl.MAXIMUM_SCALE_FACTOR, controller.getRowsPerRange(type));
+	}
+
+	@Test
+	public void testEmptyRestoreIgnored() {
+		controller.recordBackup(type, "key", 100000L);
+		// call under test
+		controller.recordRestore(type, "key", 0L, 100000L);
+		assertEquals(1000L, controller.getRowsPerRange(type));
+		assertEquals(0, controller.backupDurations.size());
+	}
+
+	@Test
+	public void testClear() {
+		controller.recordRestore(type, "key", 1000L, 240000L);
+		// this backup is never restored.
+		controller.recordBackup(type, "orphan", 100000L);
+		// call under test
+		controller.clear();
+		assertEquals(0, controller.backupDurations.size());
+		// the tuned rows per range are kept.
+		assertEquals(500L, controller.getRowsPerRange(type));
+	}
+
+	@Test
+	public void testPendingBackupsBounded() {
+		for (int i = 0; i <= RowsPerRangeControllerImpl.MAXIMUM_PENDING_BACKUPS; i++) {
+			controller.recordBackup(type, "key" + i, 1000L);
+		}
+		assertEquals(RowsPerRangeControllerImpl.MAXIMUM_PENDING_BACKUPS, controller.backupDurations.size());
+		// the oldest backup is dropped first.
+		assertFalse(controller.backupDurations.containsKey("key0"));
+	}
+}
@@ -0,0 +1,238 @@
+package org.sagebionetworks.migration.async.checksum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.config.SynapseConnectionInfo;
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.RangeChecksum;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChecksumCacheImplTest {
+
+	@Mock
+	Configuration mockConfig;
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+
+	Path cacheFile;
+	MigrationType type;
+	RangeChecksum binOne;
+	RangeChecksum binTwo;
+	RangeChecksum binThree;
+
+	ChecksumCacheImpl cache;
+
+	@Before
+	public void before() throws IOException {
+		cacheFile = Files.createTempFile("checksum-cache", ".properties");
+		Files.delete(cacheFile);
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		when(mockConfig.getChecksumCacheFile()).thenReturn(cacheFile.toString());
+		when(mockConfig.getMaximumBackupBatchSize()).thenReturn(10);
+		when(mockConfig.getSourceConnectionInfo())
+				.thenReturn(new SynapseConnectionInfo("sourceAuth", "sourceRepo", "user", "key"));
+		when(mockConfig.getDestinationConnectionInfo())
+				.thenReturn(new SynapseConnectionInfo("destinationAuth", "destinationRepo", "user", "key"));
+		type = MigrationType.NODE;
+		binOne = ChecksumRangeExecutorTest.createChecksum(0L, 1L, 9L, "one");
+		binTwo = ChecksumRangeExecutorTest.createChecksum(1L, 10L, 19L, "two");
+		binThree = ChecksumRangeExecutorTest.createChecksum(2L, 20L, 29L, "three");
+		cache = new ChecksumCacheImpl(mockConfig, mockLoggerFactory);
+	}
+
+	@After
+	public void after() throws IOException {
+		Files.deleteIfExists(cacheFile);
+	}
+
+	@Test
+	public void testIsEnabled() {
+		assertTrue(cache.isEnabled());
+		when(mockConfig.getChecksumCacheFile()).thenReturn(null);
+		assertFalse(new ChecksumCacheImpl(mockConfig, mockLoggerFactory).isEnabled());
+	}
+
+	@Test
+	public void testFindUnverifiedRangesEmptyCache() {
+		// call under test
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L, Lists.newArrayList(binOne, binTwo));
+		// nothing was compared with the destination.
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(1L, 29L)), results);
+	}
+
+	@Test
+	public void testFindUnverifiedRangesVerified() {
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne, binTwo), Collections.emptyList());
+		RangeChecksum changedTwo = ChecksumRangeExecutorTest.createChecksum(1L, 10L, 19L, "changed");
+		// call under test
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L,
+				Lists.newArrayList(binOne, changedTwo, binThree));
+		// only the changed and new bins need to be compared.
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(10L, 29L)), results);
+	}
+
+	@Test
+	public void testFindUnverifiedRangesMissingFromSource() {
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne, binTwo), Collections.emptyList());
+		RangeChecksum smallerOne = ChecksumRangeExecutorTest.createChecksum(0L, 5L, 9L, "smaller");
+		// call under test
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L, Lists.newArrayList(smallerOne));
+		// bin one changed and bin two no longer exists on the source.
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(1L, 19L)), results);
+	}
+
+	@Test
+	public void testFindUnverifiedRangesOutsideOfRange() {
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne, binThree), Collections.emptyList());
+		// call under test
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 19L, Lists.newArrayList(binOne));
+		assertTrue(results.isEmpty());
+	}
+
+	@Test
+	public void testFindUnverifiedRangesNeverCompared() {
+		cache.recordResults(type, 1L, 19L, Lists.newArrayList(binOne), Collections.emptyList());
+		// call under test
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 39L, Lists.newArrayList(binOne));
+		// the destination could have rows in bins that are empty on the source.
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(20L, 39L)), results);
+	}
+
+	@Test
+	public void testFindUnverifiedRangesPartiallyCompared() {
+		cache.recordResults(type, 1L, 14L, Lists.newArrayList(binOne), Collections.emptyList());
+		// call under test
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L, Lists.newArrayList(binOne));
+		// the partially compared bin is compared again in full.
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(10L, 29L)), results);
+	}
+
+	@Test
+	public void testFindUnverifiedRangesFullBins() {
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne), Collections.emptyList());
+		RangeChecksum newTwo = ChecksumRangeExecutorTest.createChecksum(1L, 12L, 15L, "new");
+		// call under test
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L, Lists.newArrayList(binOne, newTwo));
+		// the destination could have rows anywhere in the bin.
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(10L, 19L)), results);
+	}
+
+	@Test
+	public void testRecordResultsMismatch() {
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne, binTwo), Lists.newArrayList(binTwo));
+		// call under test
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L, Lists.newArrayList(binOne, binTwo));
+		// a mismatched bin must be compared again even if the source did not change.
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(10L, 19L)), results);
+	}
+
+	@Test
+	public void testRecordResultsRemovesEmptyBins() {
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne, binTwo), Lists.newArrayList(binTwo));
+		// bin two no longer exists on either stack.
+		cache.recordResults(type, 10L, 19L, Collections.emptyList(), Collections.emptyList());
+		// call under test
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L, Lists.newArrayList(binOne));
+		assertTrue(results.isEmpty());
+	}
+
+	@Test
+	public void testPersisted() {
+		String salt = cache.getSalt();
+		assertNotNull(salt);
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne, binTwo), Lists.newArrayList(binTwo));
+		assertTrue(Files.exists(cacheFile));
+		// load a new cache from the same file.
+		cache = new ChecksumCacheImpl(mockConfig, mockLoggerFactory);
+		assertEquals(salt, cache.getSalt());
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L, Lists.newArrayList(binOne, binTwo));
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(10L, 19L)), results);
+	}
+
+	@Test
+	public void testBatchSizeChanged() {
+		String salt = cache.getSalt();
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne, binTwo), Collections.emptyList());
+		when(mockConfig.getMaximumBackupBatchSize()).thenReturn(20);
+		cache = new ChecksumCacheImpl(mockConfig, mockLoggerFactory);
+		// the bins are no longer the same so a new cache is started.
+		assertNotEquals(salt, cache.getSalt());
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L, Lists.newArrayList(binOne, binTwo));
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(1L, 29L)), results);
+	}
+
+	@Test
+	public void testDestinationChanged() {
+		String salt = cache.getSalt();
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne, binTwo), Collections.emptyList());
+		when(mockConfig.getDestinationConnectionInfo())
+				.thenReturn(new SynapseConnectionInfo("destinationAuth", "otherRepo", "user", "key"));
+		cache = new ChecksumCacheImpl(mockConfig, mockLoggerFactory);
+		// nothing was verified on the new destination so a new cache is started.
+		assertNotEquals(salt, cache.getSalt());
+		List<IdRange> results = cache.findUnverifiedRanges(type, 1L, 29L, Lists.newArrayList(binOne, binTwo));
+		assertEquals(Lists.newArrayList(ToolMigrationUtils.createIdRange(1L, 29L)), results);
+	}
+
+	@Test
+	public void testSourceChanged() {
+		String salt = cache.getSalt();
+		cache.recordResults(type, 1L, 29L, Lists.newArrayList(binOne, binTwo), Collections.emptyList());
+		when(mockConfig.getSourceConnectionInfo())
+				.thenReturn(new SynapseConnectionInfo("sourceAuth", "otherRepo", "user", "key"));
+		cache = new ChecksumCacheImpl(mockConfig, mockLoggerFactory);
+		// the source is not the same so a new cache is started.
+		assertNotEquals(salt, cache.getSalt());
+	}
+
+	@Test
+	public void testFormatAndParseRanges() {
+		RangeSet<Long> ranges = TreeRangeSet.create();
+		ranges.add(ToolMigrationUtils.toRange(1L, 9L));
+		ranges.add(ToolMigrationUtils.toRange(20L, 29L));
+		String formatted = ChecksumCacheImpl.formatRanges(ranges);
+		assertEquals("1-9,20-29", formatted);
+		RangeSet<Long> parsed = TreeRangeSet.create();
+		// call under test
+		ChecksumCacheImpl.parseRanges(formatted, parsed);
+		assertEquals(ranges, parsed);
+	}
+
+	@Test
+	public void testFormatAndParseBin() {
+		RangeChecksum parsed = ChecksumCacheImpl.parseBin(binOne.getBinNumber(), ChecksumCacheImpl.formatBin(binOne));
+		assertEquals(binOne, parsed);
+		RangeChecksum mismatch = ChecksumCacheImpl.copyRange(binOne);
+		parsed = ChecksumCacheImpl.parseBin(binOne.getBinNumber(), ChecksumCacheImpl.formatBin(mismatch));
+		assertEquals(mismatch, parsed);
+	}
+}
@@ -0,0 +1,230 @@
+package org.sagebionetworks.migration.async.checksum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sagebionetworks.migration.AsyncMigrationException;
+import org.sagebionetworks.migration.LoggerFactory;
+import org.sagebionetworks.migration.async.AsynchronousJobExecutor;
+import org.sagebionetworks.migration.async.DestinationJob;
+import org.sagebionetworks.migration.async.ResultPair;
+import org.sagebionetworks.migration.config.Configuration;
+import org.sagebionetworks.migration.factory.ExecutorServiceFactory;
+import org.sagebionetworks.migration.utils.TypeToMigrateMetadata;
+import org.sagebionetworks.repo.model.migration.AsyncMigrationTypeChecksumRequest;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.MigrationTypeChecksum;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChecksumDeltaBuilderImplTest {
+
+	@Mock
+	RangeCheksumBuilder mockRangeProvider;
+	@Mock
+	ChecksumCache mockChecksumCache;
+	@Mock
+	Configuration mockConfig;
+	@Mock
+	AsynchronousJobExecutor mockAsynchronousJobExecutor;
+	@Mock
+	LoggerFactory mockLoggerFactory;
+	@Mock
+	Logger mockLogger;
+	@Mock
+	ExecutorServiceFactory mockExecutorServiceFactory;
+	@Mock
+	Iterator<DestinationJob> mockNodeIterator;
+	@Mock
+	Iterator<DestinationJob> mockAclIterator;
+
+	TypeToMigrateMetadata nodeMetadata;
+	TypeToMigrateMetadata aclMetadata;
+	List<TypeToMigrateMetadata> primaryTypes;
+	String salt;
+
+	ChecksumDeltaBuilderImpl builder;
+
+	@Before
+	public void before() {
+		salt = "salt";
+		when(mockChecksumCache.isEnabled()).thenReturn(true);
+		when(mockChecksumCache.getSalt()).thenReturn(salt);
+		when(mockLoggerFactory.getLogger(any())).thenReturn(mockLogger);
+		when(mockConfig.getMaximumNumberThreads()).thenReturn(2);
+		// both types look unchanged from their counts.
+		nodeMetadata = new TypeToMigrateMetadata(MigrationType.NODE, 1L, 100L, 50L, 1L, 100L, 50L);
+		aclMetadata = new TypeToMigrateMetadata(MigrationType.ACL, 5L, 10L, 6L, 5L, 10L, 6L);
+		primaryTypes = Lists.newArrayList(nodeMetadata, aclMetadata);
+		when(mockRangeProvider.providerRangeCheck(MigrationType.NODE, 1L, 100L, salt)).thenReturn(mockNodeIterator);
+		when(mockRangeProvider.providerRangeCheck(MigrationType.ACL, 5L, 10L, salt)).thenReturn(mockAclIterator);
+		when(mockNodeIterator.hasNext()).thenReturn(true);
+		when(mockAclIterator.hasNext()).thenReturn(true);
+		when(mockExecutorServiceFactory.createCachedThreadPool(anyString()))
+				.thenAnswer(invocation -> MoreExecutors.newDirectExecutorService());
+		builder = new ChecksumDeltaBuilderImpl(mockRangeProvider, mockChecksumCache, mockConfig,
+				mockAsynchronousJobExecutor, mockLoggerFactory, mockExecutorServiceFactory);
+	}
+
+	@Test
+	public void testBuildPrePassDisabled() {
+		when(mockConfig.isTypeChecksumPrePassEnabled()).thenReturn(false);
+		// call under test
+		List<Iterator<DestinationJob>> iterators = builder.buildAllRestoreJobsForMismatchedChecksums(primaryTypes);
+		assertEquals(2, iterators.size());
+		assertSame(mockNodeIterator, iterators.get(0));
+		assertSame(mockAclIterator, iterators.get(1));
+		verify(mockAsynchronousJobExecutor, never()).startSourceAndDestinationJob(any(), any());
+	}
+
+	@Test
+	public void testBuildPrePass() {
+		when(mockConfig.isTypeChecksumPrePassEnabled()).thenReturn(true);
+		setupTypeChecksum(MigrationType.NODE, "one", "one");
+		setupTypeChecksum(MigrationType.ACL, "two", "three");
+		// call under test
+		List<Iterator<DestinationJob>> iterators = builder.buildAllRestoreJobsForMismatchedChecksums(primaryTypes);
+		assertEquals(2, iterators.size());
+		// the range checks are not built until needed.
+		verify(mockRangeProvider, never()).providerRangeCheck(any(MigrationType.class), any(Long.class),
+				any(Long.class), anyString());
+		// node is unchanged.
+		assertFalse(iterators.get(0).hasNext());
+		verify(mockRangeProvider, never()).providerRangeCheck(MigrationType.NODE, 1L, 100L, salt);
+		// acl changed.
+		assertTrue(iterators.get(1).hasNext());
+		verify(mockRangeProvider).providerRangeCheck(MigrationType.ACL, 5L, 10L, salt);
+	}
+
+	@Test
+	public void testBuildPrePassMetadataMismatch() {
+		when(mockConfig.isTypeChecksumPrePassEnabled()).thenReturn(true);
+		setupTypeChecksum(MigrationType.ACL, "two", "two");
+		// the destination is missing rows.
+		nodeMetadata.setDestCount(49L);
+		// call under test
+		List<Iterator<DestinationJob>> iterators = builder.buildAllRestoreJobsForMismatchedChecksums(primaryTypes);
+		assertSame(mockNodeIterator, iterators.get(0));
+		assertFalse(iterators.get(1).hasNext());
+		// no checksum for node.
+		verify(mockAsynchronousJobExecutor, times(1)).startSourceAndDestinationJob(any(), any());
+	}
+
+	@Test
+	public void testBuildPrePassFailure() {
+		when(mockConfig.isTypeChecksumPrePassEnabled()).thenReturn(true);
+		setupTypeChecksum(MigrationType.NODE, "one", "one");
+		CompletableFuture<ResultPair<MigrationTypeChecksum>> failed = new CompletableFuture<>();
+		failed.completeExceptionally(new AsyncMigrationException("failed"));
+		when(mockAsynchronousJobExecutor.startSourceAndDestinationJob(createRequest(MigrationType.ACL),
+				MigrationTypeChecksum.class)).thenReturn(failed);
+		// call under test
+		List<Iterator<DestinationJob>> iterators = builder.buildAllRestoreJobsForMismatchedChecksums(primaryTypes);
+		// falls back to the range checks.
+		assertTrue(iterators.get(1).hasNext());
+		verify(mockRangeProvider).providerRangeCheck(MigrationType.ACL, 5L, 10L, salt);
+	}
+
+	@Test
+	public void testStartTypeChecksumsLimitsConcurrency() {
+		when(mockConfig.isTypeChecksumPrePassEnabled()).thenReturn(true);
+		when(mockConfig.getMaximumNumberThreads()).thenReturn(1);
+		CompletableFuture<ResultPair<MigrationTypeChecksum>> nodeFuture = new CompletableFuture<>();
+		when(mockAsynchronousJobExecutor.startSourceAndDestinationJob(createRequest(MigrationType.NODE),
+				MigrationTypeChecksum.class)).thenReturn(nodeFuture);
+		setupTypeChecksum(MigrationType.ACL, "two", "two");
+		// call under test
+		List<CompletableFuture<ResultPair<MigrationTypeChecksum>>> futures = builder.startTypeChecksums(primaryTypes);
+		assertEquals(2, futures.size());
+		// acl waits for node.
+		verify(mockAsynchronousJobExecutor, never()).startSourceAndDestinationJob(createRequest(MigrationType.ACL),
+				MigrationTypeChecksum.class);
+		nodeFuture.completeExceptionally(new AsyncMigrationException("failed"));
+		// a failure does not stop the lane.
+		verify(mockAsynchronousJobExecutor).startSourceAndDestinationJob(createRequest(MigrationType.ACL),
+				MigrationTypeChecksum.class);
+		assertTrue(ChecksumDeltaBuilderImpl.isChecksumMatch(futures.get(1).join()));
+	}
+
+	@Test
+	public void testStartTypeChecksumsStartFailure() {
+		when(mockConfig.isTypeChecksumPrePassEnabled()).thenReturn(true);
+		when(mockAsynchronousJobExecutor.startSourceAndDestinationJob(createRequest(MigrationType.NODE),
+				MigrationTypeChecksum.class)).thenThrow(new AsyncMigrationException("failed"));
+		setupTypeChecksum(MigrationType.ACL, "two", "two");
+		// call under test
+		List<CompletableFuture<ResultPair<MigrationTypeChecksum>>> futures = builder.startTypeChecksums(primaryTypes);
+		// the failure to start is returned as a failed future.
+		assertTrue(futures.get(0).isCompletedExceptionally());
+		assertTrue(ChecksumDeltaBuilderImpl.isChecksumMatch(futures.get(1).join()));
+	}
+
+	@Test
+	public void testStartTypeChecksumsUsesStartThreads() {
+		verify(mockExecutorServiceFactory).createCachedThreadPool(ChecksumDeltaBuilderImpl.TYPE_CHECKSUM_THREAD_NAME);
+		ExecutorService mockStartExecutor = mock(ExecutorService.class);
+		when(mockExecutorServiceFactory.createCachedThreadPool(anyString())).thenReturn(mockStartExecutor);
+		builder = new ChecksumDeltaBuilderImpl(mockRangeProvider, mockChecksumCache, mockConfig,
+				mockAsynchronousJobExecutor, mockLoggerFactory, mockExecutorServiceFactory);
+		when(mockConfig.isTypeChecksumPrePassEnabled()).thenReturn(true);
+		// call under test
+		builder.startTypeChecksums(primaryTypes);
+		// no checksum is started on the calling thread.
+		verify(mockAsynchronousJobExecutor, never()).startSourceAndDestinationJob(any(), any());
+		verify(mockStartExecutor, times(2)).execute(any(Runnable.class));
+	}
+
+	@Test
+	public void testIsChecksumMatch() {
+		assertTrue(ChecksumDeltaBuilderImpl.isChecksumMatch(createPair("one", "one")));
+		assertFalse(ChecksumDeltaBuilderImpl.isChecksumMatch(createPair("one", "two")));
+		assertFalse(ChecksumDeltaBuilderImpl.isChecksumMatch(createPair(null, null)));
+	}
+
+	void setupTypeChecksum(MigrationType type, String source, String destination) {
+		when(mockAsynchronousJobExecutor.startSourceAndDestinationJob(createRequest(type), MigrationTypeChecksum.class))
+				.thenReturn(CompletableFuture.completedFuture(createPair(source, destination)));
+	}
+
+	static AsyncMigrationTypeChecksumRequest createRequest(MigrationType type) {
+		AsyncMigrationTypeChecksumRequest request = new AsyncMigrationTypeChecksumRequest();
+		request.setMigrationType(type);
+		request.setType(type.name());
+		return request;
+	}
+
+	static ResultPair<MigrationTypeChecksum> createPair(String source, String destination) {
+		ResultPair<MigrationTypeChecksum> pair = new ResultPair<>();
+		pair.setSourceResult(createChecksum(source));
+		pair.setDestinationResult(createChecksum(destination));
+		return pair;
+	}
+
+	static MigrationTypeChecksum createChecksum(String checksum) {
+		MigrationTypeChecksum result = new MigrationTypeChecksum();
+		result.setChecksum(checksum);
+		return result;
+	}
+}
@@ -20,10 +20,14 @@ import org.sagebionetworks.migration.async.AsynchronousJobExecutor;
 import org.sagebionetworks.migration.async.BackupJobExecutor;
 import org.sagebionetworks.migration.async.DeleteDestinationJob;
 import org.sagebionetworks.migration.async.DestinationJob;
+import org.sagebionetworks.migration.async.ProgressJournal;
+import org.sagebionetworks.migration.async.RestoredRangeLedgerImpl;
 import org.sagebionetworks.migration.async.ResultPair;
+import org.sagebionetworks.migration.utils.ToolMigrationUtils;
 import org.sagebionetworks.repo.model.migration.AdminResponse;
 import org.sagebionetworks.repo.model.migration.BatchChecksumRequest;
 import org.sagebionetworks.repo.model.migration.BatchChecksumResponse;
+import org.sagebionetworks.repo.model.migration.IdRange;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.RangeChecksum;
 
@@ -50,6 +54,7 @@ public class ChecksumRangeExecutorTest {
 	RangeChecksum srcTwo;
 	RangeChecksum destOne;
 
+	ChecksumRangeParameters parameters;
 	ChecksumRangeExecutor extractor;
 
 	@Before
@@ -73,7 +78,7 @@ public class ChecksumRangeExecutorTest {
 		three.setRowIdsToDelete(Lists.newArrayList(555L));
 		jobsTwo = Lists.newArrayList(three);
 
-		when(mockBackupJobExecutor.executeBackupJob(any(MigrationType.class), any(Long.class), any(Long.class)))
+		when(mockBackupJobExecutor.executeMismatchBackupJob(any(MigrationType.class), any(Long.class), any(Long.class)))
 				.thenReturn(jobsOne.iterator(), jobsTwo.iterator());
 
 		srcOne = new RangeChecksum();
@@ -107,8 +112,11 @@ public class ChecksumRangeExecutorTest {
 		resultPair.setDestinationResult(destinationResponse);
 		when(mockAsynchronousJobExecutor.executeSourceAndDestinationJob(any(), any())).thenReturn(resultPair);
 
-		extractor = new ChecksumRangeExecutor(mockAsynchronousJobExecutor, mockBackupJobExecutor, batchSize, type,
-				minimumId, maximumId, salt);
+		parameters = new ChecksumRangeParameters();
+		parameters.setAsynchronousJobExecutor(mockAsynchronousJobExecutor);
+		parameters.setBackupJobExecutor(mockBackupJobExecutor);
+		parameters.setBatchSize(batchSize);
+		extractor = new ChecksumRangeExecutor(parameters, type, minimumId, maximumId, salt);
 	}
 
 	@Test
@@ -229,8 +237,7 @@ public class ChecksumRangeExecutorTest {
 	@Test
 	public void testFindAllMismatchedRangesMinIdNull() {
 		when(mockAsynchronousJobExecutor.executeSourceAndDestinationJob(any(), any())).thenThrow(new IllegalArgumentException());
-		extractor = new ChecksumRangeExecutor(mockAsynchronousJobExecutor, mockBackupJobExecutor, batchSize, type,
-				null, null, salt);
+		extractor = new ChecksumRangeExecutor(parameters, type, null, null, salt);
 		// call under test
 		Iterator<RangeChecksum> it = extractor.findAllMismatchedRanges();
 		assertNotNull(it);
@@ -251,8 +258,272 @@ public class ChecksumRangeExecutorTest {
 		assertFalse(extractor.hasNext());
 
 		verify(mockAsynchronousJobExecutor).executeSourceAndDestinationJob(any(), any());
-		verify(mockBackupJobExecutor).executeBackupJob(type, srcOne.getMinimumId(), srcOne.getMaximumId());
-		verify(mockBackupJobExecutor).executeBackupJob(type, srcTwo.getMinimumId(), srcTwo.getMaximumId());
+		verify(mockBackupJobExecutor).executeMismatchBackupJob(type, srcOne.getMinimumId(), srcOne.getMaximumId());
+		verify(mockBackupJobExecutor).executeMismatchBackupJob(type, srcTwo.getMinimumId(), srcTwo.getMaximumId());
+	}
+
+	@Test
+	public void testFindAllMismatchedBins() {
+		RangeChecksum destTwo = copy(srcTwo);
+		destTwo.setMinimumId(2L);
+		destTwo.setCount(4L);
+		List<RangeChecksum> srcList = Lists.newArrayList(srcOne, srcTwo);
+		List<RangeChecksum> destList = Lists.newArrayList(copy(srcOne), destTwo);
+		// Call under test
+		List<RangeChecksum> results = ChecksumRangeExecutor.findAllMismatchedBins(srcList, destList);
+		assertEquals(1, results.size());
+		// the range should include the rows from both the source and destination.
+		assertEquals(srcTwo.getBinNumber(), results.get(0).getBinNumber());
+		assertEquals(new Long(2L), results.get(0).getMinimumId());
+		assertEquals(new Long(5L), results.get(0).getMaximumId());
+	}
+
+	@Test
+	public void testNarrowMismatchedRanges() {
+		batchSize = 1000L;
+		parameters.setBatchSize(batchSize);
+		Long minimumDeltaRangeSize = 10L;
+		// the entire range mismatched.
+		stubChecksums(1L, 999L, 1000L, createChecksum(0L, 1L, 999L, "a"), createChecksum(0L, 1L, 999L, "b"));
+		// only bin 3 mismatched at a bin size of 100.
+		stubChecksums(1L, 999L, 100L, createChecksum(3L, 300L, 399L, "c"), createChecksum(3L, 300L, 399L, "d"));
+		// only bin 35 mismatched at a bin size of 10.
+		stubChecksums(300L, 399L, 10L, createChecksum(35L, 350L, 359L, "e"), createChecksum(35L, 350L, 355L, "f"));
+		parameters.setMinimumDeltaRangeSize(minimumDeltaRangeSize);
+		extractor = new ChecksumRangeExecutor(parameters, type, 1L, 999L, salt);
+		// call under test
+		assertTrue(extractor.hasNext());
+		verify(mockAsynchronousJobExecutor, times(3)).executeSourceAndDestinationJob(any(), any());
+		// only the smallest mismatched range should be backed up.
+		verify(mockBackupJobExecutor).executeMismatchBackupJob(type, 350L, 359L);
+	}
+
+	@Test
+	public void testNarrowMismatchedRangesCannotSplit() {
+		batchSize = 1000L;
+		parameters.setBatchSize(batchSize);
+		Long minimumDeltaRangeSize = 1000L;
+		stubChecksums(1L, 1999L, 1000L, createChecksum(1L, 1000L, 1999L, "a"), createChecksum(1L, 1000L, 1999L, "b"));
+		parameters.setMinimumDeltaRangeSize(minimumDeltaRangeSize);
+		extractor = new ChecksumRangeExecutor(parameters, type, 1L, 1999L, salt);
+		// call under test
+		List<RangeChecksum> results = extractor.narrowMismatchedRanges(1L, 1999L, batchSize);
+		assertEquals(1, results.size());
+		assertEquals(new Long(1000L), results.get(0).getMinimumId());
+		assertEquals(new Long(1999L), results.get(0).getMaximumId());
+		verify(mockAsynchronousJobExecutor, times(1)).executeSourceAndDestinationJob(any(), any());
+	}
+
+	@Test
+	public void testFindMismatchedBinsUsingCache() {
+		batchSize = 10L;
+		parameters.setBatchSize(batchSize);
+		ChecksumCache mockCache = mock(ChecksumCache.class);
+		BatchChecksumResponse sourceResponse = new BatchChecksumResponse();
+		sourceResponse.setCheksums(Lists.newArrayList(createChecksum(0L, 1L, 9L, "a")));
+		when(mockAsynchronousJobExecutor.executeSourceJob(any(BatchChecksumRequest.class), any()))
+				.thenReturn(sourceResponse);
+		// bins one, two and five could have changed.
+		when(mockCache.findUnverifiedRanges(type, 1L, 59L, sourceResponse.getCheksums())).thenReturn(Lists.newArrayList(
+				ToolMigrationUtils.createIdRange(10L, 29L), ToolMigrationUtils.createIdRange(50L, 59L)));
+		RangeChecksum sourceTwo = createChecksum(2L, 20L, 29L, "b");
+		// only bin two is mismatched.
+		stubChecksums(10L, 29L, batchSize, sourceTwo, createChecksum(2L, 20L, 29L, "c"));
+		RangeChecksum sourceFive = createChecksum(5L, 50L, 59L, "d");
+		stubChecksums(50L, 59L, batchSize, sourceFive, copy(sourceFive));
+		parameters.setChecksumCache(mockCache);
+		extractor = new ChecksumRangeExecutor(parameters, type, 1L, 59L, salt);
+		// call under test
+		Iterator<RangeChecksum> results = extractor.findAllMismatchedRanges();
+		assertTrue(results.hasNext());
+		RangeChecksum mismatch = results.next();
+		assertEquals(new Long(20L), mismatch.getMinimumId());
+		assertEquals(new Long(29L), mismatch.getMaximumId());
+		assertFalse(results.hasNext());
+		// one destination check for each unverified range.
+		verify(mockAsynchronousJobExecutor, times(2)).executeSourceAndDestinationJob(any(), any());
+		verify(mockCache).recordResults(eq(type), eq(10L), eq(29L), eq(Lists.newArrayList(sourceTwo)), any());
+		verify(mockCache).recordResults(type, 50L, 59L, Lists.newArrayList(sourceFive), new LinkedList<>());
+	}
+
+	@Test
+	public void testFindAllMismatchedRangesWithJournal() {
+		batchSize = 10L;
+		parameters.setBatchSize(batchSize);
+		ProgressJournal mockJournal = mock(ProgressJournal.class);
+		// only two sub-ranges were not verified by a previous attempt.
+		when(mockJournal.findUnverifiedRanges(type, 1L, 59L))
+				.thenReturn(Lists.newArrayList(createIdRange(1L, 9L), createIdRange(50L, 59L)));
+		RangeChecksum sourceOne = createChecksum(0L, 1L, 9L, "a");
+		stubChecksums(1L, 9L, batchSize, sourceOne, copy(sourceOne));
+		stubChecksums(50L, 59L, batchSize, createChecksum(5L, 50L, 59L, "b"), createChecksum(5L, 52L, 59L, "c"));
+		parameters.setProgressJournal(mockJournal);
+		extractor = new ChecksumRangeExecutor(parameters, type, 1L, 59L, salt);
+		// call under test
+		Iterator<RangeChecksum> results = extractor.findAllMismatchedRanges();
+		assertTrue(results.hasNext());
+		RangeChecksum mismatch = results.next();
+		assertEquals(new Long(50L), mismatch.getMinimumId());
+		assertEquals(new Long(59L), mismatch.getMaximumId());
+		assertFalse(results.hasNext());
+		// verified ranges are not compared.
+		verify(mockAsynchronousJobExecutor, times(2)).executeSourceAndDestinationJob(any(), any());
+		verify(mockJournal).recordVerified(type, 1L, 9L, new LinkedList<>());
+		verify(mockJournal).recordVerified(eq(type), eq(50L), eq(59L), any());
+	}
+
+	@Test
+	public void testFindAllMismatchedRangesWithJournalAllFinished() {
+		ProgressJournal mockJournal = mock(ProgressJournal.class);
+		when(mockJournal.findUnverifiedRanges(type, minimumId, maximumId)).thenReturn(new LinkedList<>());
+		parameters.setProgressJournal(mockJournal);
+		extractor = new ChecksumRangeExecutor(parameters, type, minimumId, maximumId, salt);
+		// call under test
+		assertFalse(extractor.hasNext());
+		verify(mockAsynchronousJobExecutor, never()).executeSourceAndDestinationJob(any(), any());
+		verify(mockBackupJobExecutor, never()).executeMismatchBackupJob(any(MigrationType.class), any(Long.class),
+				any(Long.class));
+	}
+
+	@Test
+	public void testFindAllMismatchedRangesSkipRestored() {
+		batchSize = 10L;
+		parameters.setBatchSize(batchSize);
+		RestoredRangeLedgerImpl ledger = new RestoredRangeLedgerImpl();
+		// the middle of the range was restored earlier in this run.
+		ledger.recordRestored(type, 10L, 49L);
+		RangeChecksum sourceOne = createChecksum(0L, 1L, 9L, "a");
+		stubChecksums(1L, 9L, batchSize, sourceOne, copy(sourceOne));
+		stubChecksums(50L, 59L, batchSize, createChecksum(5L, 50L, 59L, "b"), createChecksum(5L, 50L, 59L, "c"));
+		parameters.setRestoredRangeLedger(ledger);
+		extractor = new ChecksumRangeExecutor(parameters, type, 1L, 59L, salt);
+		// call under test
+		Iterator<RangeChecksum> results = extractor.findAllMismatchedRanges();
+		assertTrue(results.hasNext());
+		RangeChecksum mismatch = results.next();
+		assertEquals(new Long(50L), mismatch.getMinimumId());
+		assertEquals(new Long(59L), mismatch.getMaximumId());
+		assertFalse(results.hasNext());
+		// the restored range is not compared.
+		verify(mockAsynchronousJobExecutor, times(2)).executeSourceAndDestinationJob(any(), any());
+	}
+
+	@Test
+	public void testFindAllMismatchedRangesAllRestored() {
+		RestoredRangeLedgerImpl ledger = new RestoredRangeLedgerImpl();
+		ledger.recordRestored(type, minimumId, maximumId);
+		parameters.setRestoredRangeLedger(ledger);
+		extractor = new ChecksumRangeExecutor(parameters, type, minimumId, maximumId, salt);
+		// call under test
+		assertFalse(extractor.hasNext());
+		verify(mockAsynchronousJobExecutor, never()).executeSourceAndDestinationJob(any(), any());
+	}
+
+	@Test
+	public void testFindRangesToCompareJournalAndLedger() {
+		ProgressJournal mockJournal = mock(ProgressJournal.class);
+		when(mockJournal.findUnverifiedRanges(type, 1L, 99L))
+				.thenReturn(Lists.newArrayList(createIdRange(1L, 20L), createIdRange(60L, 99L)));
+		RestoredRangeLedgerImpl ledger = new RestoredRangeLedgerImpl();
+		ledger.recordRestored(type, 11L, 70L);
+		parameters.setProgressJournal(mockJournal);
+		parameters.setRestoredRangeLedger(ledger);
+		extractor = new ChecksumRangeExecutor(parameters, type, 1L, 99L, salt);
+		// call under test
+		List<IdRange> ranges = extractor.findRangesToCompare();
+		assertEquals(2, ranges.size());
+		assertEquals(new Long(1L), ranges.get(0).getMinimumId());
+		assertEquals(new Long(10L), ranges.get(0).getMaximumId());
+		assertEquals(new Long(71L), ranges.get(1).getMinimumId());
+		assertEquals(new Long(99L), ranges.get(1).getMaximumId());
+	}
+
+	@Test
+	public void testMergeNearbyRanges() {
+		List<RangeChecksum> ranges = Lists.newArrayList(createChecksum(5L, 500L, 599L, "e"),
+				createChecksum(1L, 100L, 199L, "a"), createChecksum(2L, 205L, 290L, "b"),
+				createChecksum(3L, 250L, 320L, "c"), createChecksum(8L, 800L, 899L, "h"));
+		// call under test
+		List<RangeChecksum> merged = ChecksumRangeExecutor.mergeNearbyRanges(ranges, 5L);
+		assertEquals(3, merged.size());
+		assertEquals(new Long(1L), merged.get(0).getBinNumber());
+		assertEquals(new Long(100L), merged.get(0).getMinimumId());
+		assertEquals(new Long(320L), merged.get(0).getMaximumId());
+		assertEquals(new Long(500L), merged.get(1).getMinimumId());
+		assertEquals(new Long(599L), merged.get(1).getMaximumId());
+		assertEquals(new Long(800L), merged.get(2).getMinimumId());
+		assertEquals(new Long(899L), merged.get(2).getMaximumId());
+	}
+
+	@Test
+	public void testMergeNearbyRangesGapTooLarge() {
+		List<RangeChecksum> ranges = Lists.newArrayList(createChecksum(1L, 100L, 199L, "a"),
+				createChecksum(2L, 206L, 299L, "b"));
+		// call under test
+		assertEquals(2, ChecksumRangeExecutor.mergeNearbyRanges(ranges, 5L).size());
+		assertEquals(1, ChecksumRangeExecutor.mergeNearbyRanges(ranges, 6L).size());
+	}
+
+	@Test
+	public void testHasNextMergedBins() {
+		batchSize = 100L;
+		parameters.setBatchSize(batchSize);
+		// bins one and two mismatch and are separated by a small gap.
+		BatchChecksumResponse source = new BatchChecksumResponse();
+		source.setCheksums(Lists.newArrayList(createChecksum(1L, 100L, 195L, "a"), createChecksum(2L, 203L, 299L, "b")));
+		BatchChecksumResponse destination = new BatchChecksumResponse();
+		destination.setCheksums(Lists.newArrayList(createChecksum(1L, 100L, 195L, "x"), createChecksum(2L, 203L, 299L, "y")));
+		ResultPair<AdminResponse> resultPair = new ResultPair<>();
+		resultPair.setSourceResult(source);
+		resultPair.setDestinationResult(destination);
+		when(mockAsynchronousJobExecutor.executeSourceAndDestinationJob(any(), any())).thenReturn(resultPair);
+		parameters.setMismatchedBinMergeGap(batchSize);
+		extractor = new ChecksumRangeExecutor(parameters, type, 100L, 299L, salt);
+		// call under test
+		extractor.hasNext();
+		// a single backup plan for both bins.
+		verify(mockBackupJobExecutor).executeMismatchBackupJob(type, 100L, 299L);
+		verify(mockBackupJobExecutor, times(1)).executeMismatchBackupJob(any(MigrationType.class), any(Long.class),
+				any(Long.class));
+	}
+
+	/**
+	 * Stub the checksums for a single range.
+	 */
+	void stubChecksums(Long minimumId, Long maximumId, Long binSize, RangeChecksum source,
+			RangeChecksum destination) {
+		BatchChecksumRequest request = new BatchChecksumRequest();
+		request.setMigrationType(type);
+		request.setBatchSize(binSize);
+		request.setMinimumId(minimumId);
+		request.setMaximumId(maximumId);
+		request.setSalt(salt);
+		BatchChecksumResponse sourceResponse = new BatchChecksumResponse();
+		sourceResponse.setCheksums(Lists.newArrayList(source));
+		BatchChecksumResponse destinationResponse = new BatchChecksumResponse();
+		destinationResponse.setCheksums(Lists.newArrayList(destination));
+		ResultPair<BatchChecksumResponse> resultPair = new ResultPair<>();
+		resultPair.setSourceResult(sourceResponse);
+		resultPair.setDestinationResult(destinationResponse);
+		when(mockAsynchronousJobExecutor.executeSourceAndDestinationJob(request, BatchChecksumResponse.class))
+				.thenReturn(resultPair);
+	}
+
+	static RangeChecksum createChecksum(Long bin, Long minimumId, Long maximumId, String checksum) {
+		RangeChecksum range = new RangeChecksum();
+		range.setBinNumber(bin);
+		range.setMinimumId(minimumId);
+		range.setMaximumId(maximumId);
+		range.setCount(checksum == null ? null : maximumId - minimumId + 1);
+		range.setChecksum(checksum);
+		return range;
+	}
+
+	static IdRange createIdRange(Long minimumId, Long maximumId) {
+		IdRange range = new IdRange();
+		range.setMinimumId(minimumId);
+		range.setMaximumId(maximumId);
+		return range;
 	}
 
 	/**
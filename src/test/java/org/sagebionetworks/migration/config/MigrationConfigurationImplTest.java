@@ -148,7 +148,170 @@ public class MigrationConfigurationImplTest {
 	public void testLogConfiguration() {
 		// call under test
 		config.logConfiguration();
-		verify(mockLogger, times(9)).info(anyString());
+		verify(mockLogger, times(23)).info(anyString());
+	}
+	
+	@Test
+	public void testGetMaximumBackupJobsPerTypeDefault() {
+		// by default only one backup per type can run at a time.
+		assertEquals(1, config.getMaximumBackupJobsPerType());
+	}
+	
+	@Test
+	public void testGetMaximumBackupJobsPerTypeSet() {
+		props.put(MigrationConfigurationImpl.KEY_MAX_BACKUP_JOBS_PER_TYPE, "4");
+		assertEquals(4, config.getMaximumBackupJobsPerType());
+	}
+	
+	@Test
+	public void testGetTargetJobDurationMsDefault() {
+		// disabled by default.
+		assertEquals(0L, config.getTargetJobDurationMs());
+	}
+	
+	@Test
+	public void testGetTargetJobDurationMsSet() {
+		props.put(MigrationConfigurationImpl.KEY_TARGET_JOB_DURATION_MS, "60000");
+		assertEquals(60000L, config.getTargetJobDurationMs());
+	}
+	
+	@Test
+	public void testIsChecksumBisectionEnabledDefault() {
+		assertFalse(config.isChecksumBisectionEnabled());
+	}
+	
+	@Test
+	public void testIsChecksumBisectionEnabledSet() {
+		props.put(MigrationConfigurationImpl.KEY_CHECKSUM_BISECTION_ENABLED, "true");
+		assertTrue(config.isChecksumBisectionEnabled());
+	}
+	
+	@Test
+	public void testSkipFullTableChecksumsOnCountMismatchDefault() {
+		assertTrue(config.skipFullTableChecksumsOnCountMismatch());
+	}
+	
+	@Test
+	public void testSkipFullTableChecksumsOnCountMismatchSet() {
+		props.put(MigrationConfigurationImpl.KEY_SKIP_FULL_TABLE_CHECKSUM_ON_COUNT_MISMATCH, "false");
+		assertFalse(config.skipFullTableChecksumsOnCountMismatch());
+	}
+	
+	@Test
+	public void testIsTypeChecksumPrePassEnabledDefault() {
+		assertFalse(config.isTypeChecksumPrePassEnabled());
+	}
+	
+	@Test
+	public void testIsTypeChecksumPrePassEnabledSet() {
+		props.put(MigrationConfigurationImpl.KEY_TYPE_CHECKSUM_PRE_PASS_ENABLED, "true");
+		assertTrue(config.isTypeChecksumPrePassEnabled());
+	}
+	
+	@Test
+	public void testGetChecksumCacheFileDefault() {
+		assertEquals(null, config.getChecksumCacheFile());
+	}
+	
+	@Test
+	public void testGetChecksumCacheFileEmpty() {
+		props.put(MigrationConfigurationImpl.KEY_CHECKSUM_CACHE_FILE, " ");
+		assertEquals(null, config.getChecksumCacheFile());
+	}
+	
+	@Test
+	public void testGetChecksumCacheFileSet() {
+		props.put(MigrationConfigurationImpl.KEY_CHECKSUM_CACHE_FILE, "/tmp/checksums.properties");
+		assertEquals("/tmp/checksums.properties", config.getChecksumCacheFile());
+	}
+	
+	@Test
+	public void testGetProgressJournalFileDefault() {
+		assertEquals(null, config.getProgressJournalFile());
+	}
+	
+	@Test
+	public void testGetProgressJournalFileEmpty() {
+		props.put(MigrationConfigurationImpl.KEY_PROGRESS_JOURNAL_FILE, " ");
+		assertEquals(null, config.getProgressJournalFile());
+	}
+	
+	@Test
+	public void testGetProgressJournalFileSet() {
+		props.put(MigrationConfigurationImpl.KEY_PROGRESS_JOURNAL_FILE, "/tmp/progress.journal");
+		assertEquals("/tmp/progress.journal", config.getProgressJournalFile());
+	}
+	
+	@Test
+	public void testGetMaxRestoreJobRetriesDefault() {
+		assertEquals(3, config.getMaxRestoreJobRetries());
+	}
+	
+	@Test
+	public void testGetMaxRestoreJobRetriesSet() {
+		props.put(MigrationConfigurationImpl.KEY_MAX_RESTORE_JOB_RETRIES, "5");
+		assertEquals(5, config.getMaxRestoreJobRetries());
+	}
+	
+	@Test
+	public void testGetProgressJournalMaxAgeMsDefault() {
+		assertEquals(86400000L, config.getProgressJournalMaxAgeMs());
+	}
+	
+	@Test
+	public void testGetProgressJournalMaxAgeMsSet() {
+		props.put(MigrationConfigurationImpl.KEY_PROGRESS_JOURNAL_MAX_AGE_MS, "3600000");
+		assertEquals(3600000L, config.getProgressJournalMaxAgeMs());
+	}
+	
+	@Test
+	public void testGetRestoreConflictsDefault() {
+		// by default change restores conflict with all other restores.
+		assertEquals("CHANGE:*", config.getRestoreConflicts());
+	}
+	
+	@Test
+	public void testGetRestoreConflictsSet() {
+		props.put(MigrationConfigurationImpl.KEY_RESTORE_CONFLICTS, "CHANGE:NODE");
+		assertEquals("CHANGE:NODE", config.getRestoreConflicts());
+	}
+	
+	@Test
+	public void testGetMaximumRestoreJobsPerTypeDefault() {
+		assertEquals("", config.getMaximumRestoreJobsPerType());
+	}
+	
+	@Test
+	public void testGetMaximumRestoreJobsPerTypeSet() {
+		props.put(MigrationConfigurationImpl.KEY_MAX_RESTORE_JOBS_PER_TYPE, "NODE:4");
+		assertEquals("NODE:4", config.getMaximumRestoreJobsPerType());
+	}
+	
+	@Test
+	public void testGetMaximumWaitingRestoreJobsDefault() {
+		// no limits by default.
+		assertEquals(0, config.getMaximumWaitingRestoreJobsPerType());
+		assertEquals(0, config.getMaximumWaitingRestoreJobs());
+	}
+	
+	@Test
+	public void testGetMaximumWaitingRestoreJobsSet() {
+		props.put(MigrationConfigurationImpl.KEY_MAX_WAITING_RESTORE_JOBS_PER_TYPE, "10");
+		props.put(MigrationConfigurationImpl.KEY_MAX_WAITING_RESTORE_JOBS, "50");
+		assertEquals(10, config.getMaximumWaitingRestoreJobsPerType());
+		assertEquals(50, config.getMaximumWaitingRestoreJobs());
+	}
+	
+	@Test
+	public void testGetMismatchedBinMergeGapDefault() {
+		// bins are not merged by default.
+		assertEquals(0L, config.getMismatchedBinMergeGap());
+	}
+	
+	@Test
+	public void testGetMismatchedBinMergeGapSet() {
+		props.put(MigrationConfigurationImpl.KEY_MISMATCHED_BIN_MERGE_GAP, "2000");
+		assertEquals(2000L, config.getMismatchedBinMergeGap());
 	}
 	
 	@Test
@@ -5,15 +5,22 @@ import static org.junit.Assert.*;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.sagebionetworks.migration.AsyncMigrationException;
+import org.sagebionetworks.repo.model.migration.IdRange;
 import org.sagebionetworks.repo.model.migration.MigrationType;
 import org.sagebionetworks.repo.model.migration.MigrationTypeCounts;
 import org.sagebionetworks.repo.model.migration.MigrationTypeCount;
 import org.sagebionetworks.repo.model.migration.MigrationTypeList;
 
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+
 public class ToolMigrationUtilsTest {
 	
 	List<MigrationTypeCount> srcTypeCounts;
@@ -32,6 +39,38 @@ public class ToolMigrationUtilsTest {
 	public void tearDown() throws Exception {
 	}
 
+	@Test
+	public void testToRangeMergesTouchingRanges() {
+		RangeSet<Long> ranges = TreeRangeSet.create();
+		ranges.add(ToolMigrationUtils.toRange(1L, 9L));
+		ranges.add(ToolMigrationUtils.toRange(10L, 19L));
+		assertEquals(1, ranges.asRanges().size());
+		IdRange merged = ToolMigrationUtils.toIdRange(ranges.span());
+		assertEquals(new Long(1L), merged.getMinimumId());
+		assertEquals(new Long(19L), merged.getMaximumId());
+	}
+
+	@Test
+	public void testFindUncoveredRanges() {
+		RangeSet<Long> covered = TreeRangeSet.create();
+		covered.add(ToolMigrationUtils.toRange(10L, 19L));
+		covered.add(ToolMigrationUtils.toRange(50L, 200L));
+		// call under test
+		List<IdRange> uncovered = ToolMigrationUtils.findUncoveredRanges(covered, 1L, 100L);
+		assertEquals(2, uncovered.size());
+		assertEquals(new Long(1L), uncovered.get(0).getMinimumId());
+		assertEquals(new Long(9L), uncovered.get(0).getMaximumId());
+		assertEquals(new Long(20L), uncovered.get(1).getMinimumId());
+		assertEquals(new Long(49L), uncovered.get(1).getMaximumId());
+	}
+
+	@Test
+	public void testFindUncoveredRangesAllCovered() {
+		RangeSet<Long> covered = TreeRangeSet.create();
+		covered.add(ToolMigrationUtils.toRange(1L, 100L));
+		assertTrue(ToolMigrationUtils.findUncoveredRanges(covered, 10L, 20L).isEmpty());
+	}
+
 	@Test
 	public void testGenerateMigrationTypeCounts() {
 		assertNotNull(srcTypeCounts);
@@ -160,6 +199,28 @@ public class ToolMigrationUtilsTest {
 		assertEquals(expectedOutcomes.size(), outcomes.size());
 	}
 	
+	@Test
+	public void testUnwrapRuntimeException() {
+		IllegalStateException cause = new IllegalStateException();
+		// call under test
+		assertEquals(cause, ToolMigrationUtils.unwrap(new ExecutionException(new CompletionException(cause))));
+	}
+	
+	@Test
+	public void testUnwrapCheckedException() {
+		Exception cause = new Exception();
+		// call under test
+		RuntimeException result = ToolMigrationUtils.unwrap(new ExecutionException(cause));
+		assertTrue(result instanceof AsyncMigrationException);
+		assertEquals(cause, result.getCause());
+	}
+	
+	@Test(expected = OutOfMemoryError.class)
+	public void testUnwrapError() {
+		// call under test
+		ToolMigrationUtils.unwrap(new CompletionException(new OutOfMemoryError()));
+	}
+	
 	private List<MigrationTypeCount> generateMigrationTypeCounts() {
 		Random r = new Random();
 		List<MigrationTypeCount> l = new LinkedList<MigrationTypeCount>();